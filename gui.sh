@@ -12,7 +12,7 @@ LAUNCH_FLAGS="-Xmx256m "
 
 usage() {
   echo "Usage: `basename $0` [-h] WM_HOST WM_PORT \
-REGION"
+REGION [AGG_HOST AGG_PORT [PERIOD_MS]]"
 }
 
 parseopts() {
@@ -0,0 +1,561 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+import javax.swing.JComponent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.owlplatform.sigvis.DataCache2.ValueType;
+import com.owlplatform.sigvis.panels.AmbientCloud;
+import com.owlplatform.sigvis.panels.BarChart;
+import com.owlplatform.sigvis.panels.DisplayPanel;
+import com.owlplatform.sigvis.panels.HeatStripes;
+import com.owlplatform.sigvis.panels.InterpolatedHeatMap;
+import com.owlplatform.sigvis.panels.IntersectionLineMap;
+import com.owlplatform.sigvis.panels.LineChart;
+import com.owlplatform.sigvis.panels.RssiStDvLineChart;
+import com.owlplatform.sigvis.panels.SignalLineMap;
+import com.owlplatform.sigvis.panels.SignalToDistanceMap;
+import com.owlplatform.sigvis.panels.VoronoiHeatMap;
+import com.owlplatform.sigvis.panels.VoronoiRSSIQualityMap;
+
+/**
+ * Renders a panel from a saved cache to a sequence of PNG images without a
+ * display. Each image shows the panel at a different time offset into the
+ * cache, and the images are numbered from oldest to newest so that they can be
+ * played back as a time-lapse. Frames are divided among worker threads, each
+ * with its own instance of the panel.
+ * 
+ * @author Robert Moore
+ * 
+ */
+public class BatchRenderer {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(BatchRenderer.class);
+
+  public static final String USAGE = "Usage: BatchRenderer [options] CACHE_FILE\n"
+      + "  -p TYPE     panel type (default rssi-voronoi), one of:\n"
+      + "              " + PanelType.listNames() + "\n"
+      + "  -d DEVICE   device to display, for panels that show one device\n"
+      + "  -t          the device is a transmitter (default receiver)\n"
+      + "  -s WxH      image size (default 1024x768)\n"
+      + "  -o DIR      output directory (default \"frames\")\n"
+      + "  -n PREFIX   image file name prefix (default the panel type)\n"
+      + "  -r MS       time span to render, ending at the cache time (default 60000)\n"
+      + "  -i MS       time between frames (default 1000)\n"
+      + "  -f LIST     comma-separated time offsets instead of -r and -i\n"
+      + "  -a MS       maximum age of displayed data\n"
+      + "  -j N        number of worker threads (default one per core)";
+
+  /**
+   * The panels that can be rendered, with the same settings as the
+   * corresponding menu items in {@link SimpleFrame}.
+   */
+  public static enum PanelType {
+    RSSI_BARS("rssi-bars", -100f, -20f, 10000l) {
+      @Override
+      JComponent create(DataCache2 cache) {
+        return new BarChart(ValueType.RSSI, cache);
+      }
+    },
+    VARIANCE_BARS("var-bars", 0f, 50f, 10000l) {
+      @Override
+      JComponent create(DataCache2 cache) {
+        return new BarChart(ValueType.VARIANCE, cache);
+      }
+    },
+    RSSI_VORONOI("rssi-voronoi", -100f, -20f, 10000l) {
+      @Override
+      JComponent create(DataCache2 cache) {
+        return new VoronoiHeatMap(ValueType.RSSI, cache);
+      }
+    },
+    VARIANCE_VORONOI("var-voronoi", 0f, 50f, 10000l) {
+      @Override
+      JComponent create(DataCache2 cache) {
+        return new VoronoiHeatMap(ValueType.VARIANCE, cache);
+      }
+    },
+    RSSI_LINES("rssi-lines", -100f, -20f, 60000l) {
+      @Override
+      JComponent create(DataCache2 cache) {
+        return new LineChart(ValueType.RSSI, cache);
+      }
+    },
+    VARIANCE_LINES("var-lines", 0f, 50f, 60000l) {
+      @Override
+      JComponent create(DataCache2 cache) {
+        return new LineChart(ValueType.VARIANCE, cache);
+      }
+    },
+    RSSI_RINGS("rssi-rings", -100f, -20f, 10000l) {
+      @Override
+      JComponent create(DataCache2 cache) {
+        return new SignalToDistanceMap(cache);
+      }
+    },
+    RSSI_STRIPES("rssi-stripes", -100f, -20f, 60000l) {
+      @Override
+      JComponent create(DataCache2 cache) {
+        HeatStripes stripes = new HeatStripes(ValueType.RSSI, cache);
+        stripes.setThresholdValue(-100f);
+        return stripes;
+      }
+    },
+    VARIANCE_STRIPES("var-stripes", 0f, 20f, 60000l) {
+      @Override
+      JComponent create(DataCache2 cache) {
+        HeatStripes stripes = new HeatStripes(ValueType.VARIANCE, cache);
+        stripes.setThresholdValue(1f);
+        return stripes;
+      }
+    },
+    RSSI_LINE_MAP("rssi-linemap", -100f, 0f, 10000l) {
+      @Override
+      JComponent create(DataCache2 cache) {
+        return new SignalLineMap(ValueType.RSSI, cache);
+      }
+    },
+    VARIANCE_LINE_MAP("var-linemap", 1f, 20f, 10000l) {
+      @Override
+      JComponent create(DataCache2 cache) {
+        return new SignalLineMap(ValueType.VARIANCE, cache);
+      }
+    },
+    RSSI_INTERSECTIONS("rssi-intersections", -100f, 0f, 10000l) {
+      @Override
+      JComponent create(DataCache2 cache) {
+        return new IntersectionLineMap(ValueType.RSSI, cache);
+      }
+    },
+    VARIANCE_INTERSECTIONS("var-intersections", 1f, 20f, 10000l) {
+      @Override
+      JComponent create(DataCache2 cache) {
+        return new IntersectionLineMap(ValueType.VARIANCE, cache);
+      }
+    },
+    RSSI_QUALITY("rssi-quality", -100f, -20f, 10000l) {
+      @Override
+      JComponent create(DataCache2 cache) {
+        return new VoronoiRSSIQualityMap(ValueType.RSSI, cache);
+      }
+    },
+    VARIANCE_QUALITY("var-quality", 0f, 50f, 10000l) {
+      @Override
+      JComponent create(DataCache2 cache) {
+        return new VoronoiRSSIQualityMap(ValueType.VARIANCE, cache);
+      }
+    },
+    RSSI_INTERPOLATED("rssi-interpolated", -100f, -20f, 10000l) {
+      @Override
+      JComponent create(DataCache2 cache) {
+        return new InterpolatedHeatMap(ValueType.RSSI, cache);
+      }
+    },
+    RSSI_STDDEV_LINES("rssi-stddev-lines", -100f, -20f, 60000l) {
+      @Override
+      JComponent create(DataCache2 cache) {
+        return new RssiStDvLineChart(cache);
+      }
+    },
+    AMBIENT("ambient", -100f, -40f, 30000l) {
+      @Override
+      JComponent create(DataCache2 cache) {
+        return new AmbientCloud(cache);
+      }
+    };
+
+    private final String name;
+    final float minValue;
+    final float maxValue;
+    final long maxAge;
+
+    private PanelType(final String name, final float minValue,
+        final float maxValue, final long maxAge) {
+      this.name = name;
+      this.minValue = minValue;
+      this.maxValue = maxValue;
+      this.maxAge = maxAge;
+    }
+
+    /**
+     * Creates a new panel of this type. The returned component must implement
+     * {@link DisplayPanel}.
+     */
+    abstract JComponent create(DataCache2 cache);
+
+    public String getName() {
+      return this.name;
+    }
+
+    public static PanelType forName(final String name) {
+      for (PanelType type : values()) {
+        if (type.name.equals(name)) {
+          return type;
+        }
+      }
+      return null;
+    }
+
+    static String listNames() {
+      StringBuilder sb = new StringBuilder();
+      for (PanelType type : values()) {
+        if (sb.length() > 0) {
+          sb.append(", ");
+        }
+        sb.append(type.name);
+      }
+      return sb.toString();
+    }
+  }
+
+  protected final DataCache2 cache;
+
+  protected PanelType panelType = PanelType.RSSI_VORONOI;
+
+  protected String deviceId = null;
+
+  protected boolean deviceIsTransmitter = false;
+
+  protected int width = 1024;
+
+  protected int height = 768;
+
+  protected long maxAge = -1;
+
+  protected File outputDir = new File("frames");
+
+  protected String prefix = null;
+
+  protected int numThreads = Runtime.getRuntime().availableProcessors();
+
+  public static void main(String[] args) {
+    System.setProperty("java.awt.headless", "true");
+
+    long[] offsets = null;
+    long span = 60000l;
+    long interval = 1000l;
+    PanelType type = PanelType.RSSI_VORONOI;
+    String device = null;
+    boolean transmitter = false;
+    int width = 1024;
+    int height = 768;
+    String outDir = "frames";
+    String prefix = null;
+    long maxAge = -1;
+    int threads = -1;
+    String cacheFile = null;
+
+    try {
+      for (int i = 0; i < args.length; ++i) {
+        String arg = args[i];
+        if ("-t".equals(arg)) {
+          transmitter = true;
+        } else if (arg.startsWith("-") && arg.length() == 2
+            && i + 1 < args.length) {
+          String value = args[++i];
+          switch (arg.charAt(1)) {
+          case 'p':
+            type = PanelType.forName(value);
+            if (type == null) {
+              System.err.println("Unknown panel type \"" + value + "\".");
+              System.err.println(USAGE);
+              System.exit(1);
+            }
+            break;
+          case 'd':
+            device = value;
+            break;
+          case 's':
+            int x = value.indexOf('x');
+            width = Integer.parseInt(value.substring(0, x));
+            height = Integer.parseInt(value.substring(x + 1));
+            break;
+          case 'o':
+            outDir = value;
+            break;
+          case 'n':
+            prefix = value;
+            break;
+          case 'r':
+            span = Long.parseLong(value);
+            break;
+          case 'i':
+            interval = Long.parseLong(value);
+            break;
+          case 'f':
+            String[] parts = value.split(",");
+            offsets = new long[parts.length];
+            for (int j = 0; j < parts.length; ++j) {
+              offsets[j] = Long.parseLong(parts[j].trim());
+            }
+            break;
+          case 'a':
+            maxAge = Long.parseLong(value);
+            break;
+          case 'j':
+            threads = Integer.parseInt(value);
+            break;
+          default:
+            System.err.println("Unknown option " + arg);
+            System.err.println(USAGE);
+            System.exit(1);
+          }
+        } else if (cacheFile == null && !arg.startsWith("-")) {
+          cacheFile = arg;
+        } else {
+          System.err.println("Unexpected argument " + arg);
+          System.err.println(USAGE);
+          System.exit(1);
+        }
+      }
+    } catch (RuntimeException re) {
+      System.err.println("Invalid arguments: " + re.getMessage());
+      System.err.println(USAGE);
+      System.exit(1);
+    }
+
+    if (cacheFile == null || width <= 0 || height <= 0 || interval <= 0) {
+      System.err.println(USAGE);
+      System.exit(1);
+    }
+    if (offsets == null) {
+      offsets = makeOffsets(span, interval);
+    }
+
+    DataCache2 cache = new DataCache2(new ConnectionHandler());
+    try {
+      log.info("Loading {}", cacheFile);
+      cache.loadFromFile(new File(cacheFile));
+    } catch (Exception e) {
+      log.error("Unable to load cache from " + cacheFile + ".", e);
+      cache.shutdown();
+      System.exit(1);
+    }
+
+    BatchRenderer renderer = new BatchRenderer(cache);
+    renderer.setPanelType(type);
+    renderer.setDevice(device, transmitter);
+    renderer.setSize(width, height);
+    renderer.setOutputDir(new File(outDir));
+    renderer.setPrefix(prefix);
+    renderer.setMaxAge(maxAge);
+    if (threads > 0) {
+      renderer.setNumThreads(threads);
+    }
+
+    int failed = renderer.render(offsets);
+    cache.shutdown();
+    System.exit(failed == 0 ? 0 : 2);
+  }
+
+  /**
+   * @return offsets from {@code span} down to 0, every {@code interval}
+   *         milliseconds, so that frames go from oldest to newest.
+   */
+  static long[] makeOffsets(final long span, final long interval) {
+    int count = (int) (span / interval) + 1;
+    long[] offsets = new long[count];
+    for (int i = 0; i < count; ++i) {
+      offsets[i] = span - i * interval;
+    }
+    return offsets;
+  }
+
+  public BatchRenderer(final DataCache2 cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Renders one image per offset, in parallel. Images are numbered in the
+   * order of {@code offsets}.
+   * 
+   * @param offsets
+   *          time offsets into the cache, in milliseconds.
+   * @return the number of frames that could not be rendered or saved.
+   */
+  public int render(final long[] offsets) {
+    if (!this.outputDir.isDirectory() && !this.outputDir.mkdirs()) {
+      log.error("Unable to create output directory {}", this.outputDir);
+      return offsets.length;
+    }
+    final String filePrefix = this.prefix == null ? this.panelType.getName()
+        : this.prefix;
+
+    // Contiguous runs of frames, so each panel sees time move forward
+    int threads = Math.max(1, Math.min(this.numThreads, offsets.length));
+    ExecutorService workers = Executors.newFixedThreadPool(threads);
+    List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+    long start = System.currentTimeMillis();
+    for (int t = 0; t < threads; ++t) {
+      final int first = (int) ((long) offsets.length * t / threads);
+      final int last = (int) ((long) offsets.length * (t + 1) / threads);
+      results.add(workers.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          return Integer.valueOf(BatchRenderer.this.renderFrames(offsets,
+              first, last, filePrefix));
+        }
+      }));
+    }
+    workers.shutdown();
+
+    int failed = 0;
+    for (Future<Integer> result : results) {
+      try {
+        failed += result.get().intValue();
+      } catch (InterruptedException ie) {
+        log.warn("Interrupted while waiting for frames.");
+        failed += offsets.length;
+      } catch (ExecutionException ee) {
+        log.error("Unable to render frames.", ee.getCause());
+        failed += offsets.length;
+      }
+    }
+    failed = Math.min(failed, offsets.length);
+    log.info("Rendered {} of {} frames in {}ms using {} threads.",
+        new Object[] { Integer.valueOf(offsets.length - failed),
+            Integer.valueOf(offsets.length),
+            Long.valueOf(System.currentTimeMillis() - start),
+            Integer.valueOf(threads) });
+    return failed;
+  }
+
+  /**
+   * Renders frames {@code first} (inclusive) to {@code last} (exclusive) with
+   * a new panel. Called on a worker thread.
+   * 
+   * @return the number of frames that failed.
+   */
+  protected int renderFrames(final long[] offsets, final int first,
+      final int last, final String filePrefix) {
+    JComponent component = this.createPanel();
+    DisplayPanel panel = (DisplayPanel) component;
+    component.setSize(this.width, this.height);
+    BufferedImage image = new BufferedImage(this.width, this.height,
+        BufferedImage.TYPE_INT_RGB);
+    Font font = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+
+    int failed = 0;
+    for (int i = first; i < last; ++i) {
+      panel.setTimeOffset(offsets[i]);
+      Graphics2D g2 = image.createGraphics();
+      try {
+        g2.setColor(Color.BLACK);
+        g2.fillRect(0, 0, this.width, this.height);
+        g2.setColor(Color.WHITE);
+        g2.setFont(font);
+        component.paint(g2);
+      } catch (Exception e) {
+        log.error("Unable to render frame at offset " + offsets[i] + ".", e);
+        ++failed;
+        continue;
+      } finally {
+        g2.dispose();
+      }
+
+      File file = new File(this.outputDir, String.format("%s-%05d.png",
+          filePrefix, Integer.valueOf(i)));
+      try {
+        ImageIO.write(image, "png", file);
+      } catch (Exception e) {
+        log.error("Unable to write " + file + ".", e);
+        ++failed;
+      }
+    }
+    return failed;
+  }
+
+  protected JComponent createPanel() {
+    JComponent component = this.panelType.create(this.cache);
+    DisplayPanel panel = (DisplayPanel) component;
+    panel.setMinValue(this.panelType.minValue);
+    panel.setMaxValue(this.panelType.maxValue);
+    panel.setMaxAge(this.maxAge > 0 ? this.maxAge : this.panelType.maxAge);
+    panel.setDisplayedId(this.deviceId);
+    panel.setDeviceIsTransmitter(this.deviceIsTransmitter);
+    if (panel.supportsAntiAlias()) {
+      panel.setAntiAlias(true);
+    }
+    if (panel.supportsTransparency()) {
+      panel.setTransparency(true);
+    }
+    // Each frame is painted once, so its raster can't be computed later
+    if (component instanceof InterpolatedHeatMap) {
+      ((InterpolatedHeatMap) component).setSynchronousRaster(true);
+    }
+    return component;
+  }
+
+  public void setPanelType(final PanelType panelType) {
+    this.panelType = panelType;
+  }
+
+  /**
+   * Sets the device displayed by panels that show a single device.
+   */
+  public void setDevice(final String deviceId, final boolean isTransmitter) {
+    this.deviceId = deviceId;
+    this.deviceIsTransmitter = isTransmitter;
+  }
+
+  public void setSize(final int width, final int height) {
+    this.width = width;
+    this.height = height;
+  }
+
+  public void setOutputDir(final File outputDir) {
+    this.outputDir = outputDir;
+  }
+
+  public void setPrefix(final String prefix) {
+    this.prefix = prefix;
+  }
+
+  /**
+   * @param maxAge
+   *          the maximum age of displayed data, or a non-positive value to use
+   *          the panel type's default.
+   */
+  public void setMaxAge(final long maxAge) {
+    this.maxAge = maxAge;
+  }
+
+  public void setNumThreads(final int numThreads) {
+    this.numThreads = numThreads;
+  }
+}
@@ -0,0 +1,285 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Delivers {@link DataCache2} events to its listeners on the Event Dispatch
+ * Thread, so that the ingest threads never wait on the user interface. Each
+ * device is only announced once as each kind (receiver, fiduciary or dynamic
+ * transmitter), and events are coalesced into batches that are delivered no
+ * more often than the minimum interval.
+ * 
+ * @author Robert Moore
+ * 
+ */
+public class CacheEventBus {
+
+  /**
+   * Default shortest time between batches, in milliseconds.
+   */
+  public static final long DEFAULT_MIN_INTERVAL = 200;
+
+  /**
+   * Schedules the delivery of batches for every cache.
+   */
+  private static final Timer flushTimer = new Timer("Cache Events", true);
+
+  /**
+   * The events that arrived between two deliveries.
+   */
+  public static class Batch {
+    private boolean reset = false;
+    private final Set<String> receivers = new LinkedHashSet<String>();
+    private final Set<String> fiduciaryTransmitters = new LinkedHashSet<String>();
+    private final Set<String> dynamicTransmitters = new LinkedHashSet<String>();
+    private final Set<String> expiredTransmitters = new LinkedHashSet<String>();
+    private final List<String> loadedFiles = new ArrayList<String>(1);
+
+    /**
+     * @return {@code true} if the listener should rebuild its view of every
+     *         device, for instance after a file was loaded.
+     */
+    public boolean isReset() {
+      return this.reset;
+    }
+
+    public Collection<String> getReceivers() {
+      return this.receivers;
+    }
+
+    public Collection<String> getFiduciaryTransmitters() {
+      return this.fiduciaryTransmitters;
+    }
+
+    public Collection<String> getDynamicTransmitters() {
+      return this.dynamicTransmitters;
+    }
+
+    /**
+     * @return the dynamic transmitters that were forgotten because they were
+     *         idle. A transmitter may both expire and be added again in the
+     *         same batch, so these should be handled before new devices.
+     */
+    public Collection<String> getExpiredTransmitters() {
+      return this.expiredTransmitters;
+    }
+
+    public List<String> getLoadedFiles() {
+      return this.loadedFiles;
+    }
+
+    @Override
+    public String toString() {
+      return (this.reset ? "reset, " : "") + this.receivers.size()
+          + " receivers, " + this.fiduciaryTransmitters.size()
+          + " fiduciary and " + this.dynamicTransmitters.size()
+          + " dynamic transmitters, " + this.expiredTransmitters.size()
+          + " expired";
+    }
+  }
+
+  private final Collection<DataCache2Listener> listeners;
+
+  private final Set<String> announcedReceivers = Collections
+      .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private final Set<String> announcedFiduciary = Collections
+      .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private final Set<String> announcedDynamic = Collections
+      .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private final Object lock = new Object();
+
+  private Batch pending = null;
+
+  private boolean flushScheduled = false;
+
+  private long lastFlush = 0;
+
+  private volatile long minInterval = DEFAULT_MIN_INTERVAL;
+
+  private final Runnable flusher = new Runnable() {
+    @Override
+    public void run() {
+      CacheEventBus.this.flush();
+    }
+  };
+
+  /**
+   * @param listeners
+   *          the listeners to deliver events to. The collection is read each
+   *          time a batch is delivered.
+   */
+  public CacheEventBus(final Collection<DataCache2Listener> listeners) {
+    this.listeners = listeners;
+  }
+
+  public long getMinInterval() {
+    return this.minInterval;
+  }
+
+  /**
+   * Sets the shortest time between batches, in milliseconds.
+   */
+  public void setMinInterval(final long minInterval) {
+    this.minInterval = minInterval;
+  }
+
+  public void receiverAdded(final String receiverId) {
+    if (!this.announcedReceivers.add(receiverId)) {
+      return;
+    }
+    synchronized (this.lock) {
+      this.getPending().receivers.add(receiverId);
+    }
+  }
+
+  public void transmitterAdded(final String transmitterId,
+      final boolean isFiduciary) {
+    Set<String> announced = isFiduciary ? this.announcedFiduciary
+        : this.announcedDynamic;
+    if (!announced.add(transmitterId)) {
+      return;
+    }
+    synchronized (this.lock) {
+      if (isFiduciary) {
+        this.getPending().fiduciaryTransmitters.add(transmitterId);
+      } else {
+        this.getPending().dynamicTransmitters.add(transmitterId);
+      }
+    }
+  }
+
+  /**
+   * Announces that a dynamic transmitter was forgotten, either because it was
+   * idle or because it became fiduciary, so it will be announced again if it
+   * is seen later. Only batch listeners are told.
+   */
+  public void transmitterExpired(final String transmitterId) {
+    if (!this.announcedDynamic.remove(transmitterId)) {
+      return;
+    }
+    synchronized (this.lock) {
+      Batch batch = this.getPending();
+      batch.dynamicTransmitters.remove(transmitterId);
+      batch.expiredTransmitters.add(transmitterId);
+    }
+  }
+
+  public void fileLoaded(final String filename) {
+    synchronized (this.lock) {
+      this.getPending().loadedFiles.add(filename);
+    }
+  }
+
+  /**
+   * Tells listeners to rebuild their view of every device. Devices that were
+   * already announced will not be announced again.
+   */
+  public void reset() {
+    synchronized (this.lock) {
+      this.getPending().reset = true;
+    }
+  }
+
+  /**
+   * Forgets every announced device, so each will be announced again when it
+   * is next seen.
+   */
+  public void clear() {
+    this.announcedReceivers.clear();
+    this.announcedFiduciary.clear();
+    this.announcedDynamic.clear();
+  }
+
+  /**
+   * Must be called while holding {@link #lock}.
+   * 
+   * @return the batch for new events, after scheduling its delivery.
+   */
+  private Batch getPending() {
+    if (this.pending == null) {
+      this.pending = new Batch();
+    }
+    if (!this.flushScheduled) {
+      this.flushScheduled = true;
+      long delay = Math.max(0, this.lastFlush + this.minInterval
+          - System.currentTimeMillis());
+      flushTimer.schedule(new TimerTask() {
+        @Override
+        public void run() {
+          SwingUtilities.invokeLater(CacheEventBus.this.flusher);
+        }
+      }, delay);
+    }
+    return this.pending;
+  }
+
+  /**
+   * Delivers the pending batch. Called on the Event Dispatch Thread.
+   */
+  protected void flush() {
+    Batch batch;
+    synchronized (this.lock) {
+      batch = this.pending;
+      this.pending = null;
+      this.flushScheduled = false;
+      this.lastFlush = System.currentTimeMillis();
+    }
+    if (batch == null) {
+      return;
+    }
+    for (DataCache2Listener listener : this.listeners) {
+      if (listener instanceof DataCache2BatchListener) {
+        ((DataCache2BatchListener) listener).eventsDelivered(batch);
+        continue;
+      }
+      if (batch.reset) {
+        listener.receiverAdded(null);
+        listener.transmitterAdded(null, true);
+      }
+      for (String receiver : batch.receivers) {
+        listener.receiverAdded(receiver);
+      }
+      for (String transmitter : batch.fiduciaryTransmitters) {
+        listener.transmitterAdded(transmitter, true);
+      }
+      for (String transmitter : batch.dynamicTransmitters) {
+        listener.transmitterAdded(transmitter, false);
+      }
+      for (String filename : batch.loadedFiles) {
+        listener.fileLoaded(filename);
+      }
+    }
+  }
+}
@@ -25,6 +25,8 @@ import java.awt.GridLayout;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 
+import com.owlplatform.sigvis.structs.SlabAllocator;
+
 public class CacheStatsPanel extends JPanel {
   private final DataCache2 cache;
   
@@ -40,12 +42,16 @@ public class CacheStatsPanel extends JPanel {
   private final JLabel cacheRssiPoints = new JLabel("   0");
   private final JLabel cacheVarPoints = new JLabel("   0");
   private final JLabel cacheSigDistPoints = new JLabel("   0");
+  private final JLabel cacheBudget = new JLabel("   0");
+  private final JLabel cacheEvictions = new JLabel("   0");
+  private final JLabel cacheOffHeap = new JLabel("   0");
+  private final JLabel cacheHistory = new JLabel("   0");
   
   public CacheStatsPanel(final DataCache2 cache){
     super();
     this.cache = cache;
     
-    this.setLayout(new GridLayout(5,2));
+    this.setLayout(new GridLayout(9,2));
     
     JPanel flowPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
     flowPanel.add(new JLabel("No. Fid. Txers:"));
@@ -87,6 +93,38 @@ public class CacheStatsPanel extends JPanel {
     flowPanel.add(this.cacheSigDistPoints);
     this.add(flowPanel);
     
+    flowPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+    flowPanel.add(new JLabel("Memory Budget:"));
+    this.add(flowPanel);
+    
+    flowPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    flowPanel.add(this.cacheBudget);
+    this.add(flowPanel);
+    
+    flowPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+    flowPanel.add(new JLabel("Evictions:"));
+    this.add(flowPanel);
+    
+    flowPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    flowPanel.add(this.cacheEvictions);
+    this.add(flowPanel);
+    
+    flowPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+    flowPanel.add(new JLabel("Off-Heap Storage:"));
+    this.add(flowPanel);
+    
+    flowPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    flowPanel.add(this.cacheOffHeap);
+    this.add(flowPanel);
+    
+    flowPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+    flowPanel.add(new JLabel("History:"));
+    this.add(flowPanel);
+    
+    flowPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    flowPanel.add(this.cacheHistory);
+    this.add(flowPanel);
+    
     this.validate();
   }
   
@@ -127,5 +165,45 @@ public class CacheStatsPanel extends JPanel {
     }
     this.cacheSigDistPoints.setText(String.format("%,d (~%.1f %s)",numSigDist,byteValue, BYTE_UNITS[unit]));
   }
+  
+  public void setRetention(final RetentionManager retention){
+    long budget = retention.getBudget();
+    if(budget <= 0){
+      this.cacheBudget.setText(String.format("~%s (no limit)",formatBytes(retention.getEstimatedBytes())));
+    }else{
+      this.cacheBudget.setText(String.format("~%s of %s (%.0f%%)",formatBytes(retention.getEstimatedBytes()),
+          formatBytes(budget),100f*retention.getEstimatedBytes()/budget));
+    }
+    this.cacheEvictions.setText(String.format("%,d thinned, %,d retention cuts (keeping %d min.)",
+        retention.getDownsampledValues(),retention.getRetentionReductions(),this.cache.getRetentionAge()/60000));
+  }
+  
+  public void setOffHeap(final SlabAllocator offHeap){
+    if(offHeap == null){
+      this.cacheOffHeap.setText("Disabled");
+      return;
+    }
+    this.cacheOffHeap.setText(String.format("%s used of %s reserved",
+        formatBytes(offHeap.getAllocatedBytes()),formatBytes(offHeap.getReservedBytes())));
+  }
+  
+  public void setBackfill(final HistoryBackfill backfill){
+    if(backfill == null){
+      this.cacheHistory.setText("None");
+      return;
+    }
+    String state = backfill.isCancelled() ? "Cancelled" : backfill.isFinished() ? "Loaded" : "Loading";
+    this.cacheHistory.setText(String.format("%s %d of %d chunks, %,d values (%d failed)",
+        state,backfill.getCompletedChunks(),backfill.getTotalChunks(),backfill.getValuesAdded(),backfill.getFailedChunks()));
+  }
+  
+  private static String formatBytes(long bytes){
+    int unit = 0;
+    float byteValue = bytes;
+    while(byteValue > 1024 && unit < BYTE_UNITS.length-1){
+      byteValue /= 1024f;
+      ++unit;
+    }
+    return String.format("%.1f %s",byteValue, BYTE_UNITS[unit]);
+  }
 }
-
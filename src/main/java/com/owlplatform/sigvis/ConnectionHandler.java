@@ -34,6 +34,14 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.imageio.ImageIO;
 import javax.swing.JButton;
@@ -59,16 +67,77 @@ public class ConnectionHandler {
       .getLogger(ConnectionHandler.class);
 
   private static final long JOIN_TIMEOUT = 1000;
+  private static final long AGGREGATOR_TIMEOUT = 5000;
+
+  /**
+   * How long to wait after the allowed devices change before rebuilding the
+   * streams, so that a burst of menu changes causes a single rebuild.
+   */
+  private static final long FILTER_DELAY = 500;
+
+  /**
+   * How long the previous streams keep running after the streams are rebuilt,
+   * so panels keep updating until the new streams deliver values.
+   */
+  private static final long STREAM_OVERLAP = 3000;
   private ClientWorldConnection wmc;
 
   private RssiHandler rssiHandler;
   private VarianceHandler varianceHandler;
+  private RawSampleIngester rawIngester;
   private DataCache2 cache;
 
   private String clientHost;
   private int clientPort;
   private String region;
 
+  private String aggregatorHost;
+  private int aggregatorPort;
+  private long rawEmissionPeriod = RawSampleIngester.DEFAULT_EMISSION_PERIOD;
+
+  /**
+   * Caches keyed by region name, when several regions share this connection.
+   */
+  private final ConcurrentHashMap<String, DataCache2> regionCaches = new ConcurrentHashMap<String, DataCache2>();
+
+  /**
+   * The region cache for each receiver sensor, shared by all regions so that a
+   * link value is routed with a single lookup.
+   */
+  private final ConcurrentHashMap<String, DataCache2> cacheBySensor = new ConcurrentHashMap<String, DataCache2>();
+
+  private volatile boolean streaming = false;
+
+  private volatile boolean filteredStreams = false;
+
+  /**
+   * The links requested by the current streams.
+   */
+  private volatile StreamFilter streamFilter = StreamFilter.ALL;
+
+  /**
+   * The links stored in the cache. While switching streams this also accepts
+   * the links of the previous streams.
+   */
+  private volatile StreamFilter ingestFilter = StreamFilter.ALL;
+
+  private Timer filterTimer;
+
+  private TimerTask pendingFilterUpdate;
+
+  /**
+   * Streams that are still running after a rebuild, until the overlap ends.
+   */
+  private RssiHandler retiringRssi;
+
+  private VarianceHandler retiringVariance;
+
+  /**
+   * Retrieves the history from before the streams started, or {@code null}
+   * if it hasn't been started.
+   */
+  private volatile HistoryBackfill backfill;
+
   private boolean shouldConnect = false;
 
   /**
@@ -122,6 +191,216 @@ public class ConnectionHandler {
 
   }
 
+  /**
+   * Adds a region to be streamed over this connection along with any other
+   * regions already added. Link values are routed to the cache of the region
+   * that contains their receiver. Once a region has been added, the region set
+   * by {@link #setRegion(String)} is ignored.
+   * 
+   * @param regionName
+   *          the name of the region.
+   * @param regionCache
+   *          the cache for the region's data.
+   */
+  public void addRegion(final String regionName, final DataCache2 regionCache) {
+    this.regionCaches.put(regionName, regionCache);
+    if (this.streaming) {
+      regionCache.setClone(false);
+      Thread loadThread = new Thread() {
+        @Override
+        public void run() {
+          ConnectionHandler.this.loadRegion(regionName, regionCache);
+        }
+      };
+      loadThread.start();
+    }
+  }
+
+  /**
+   * Stops routing link values to a region added by
+   * {@link #addRegion(String, DataCache2)}.
+   */
+  public void removeRegion(final String regionName) {
+    DataCache2 regionCache = this.regionCaches.remove(regionName);
+    if (regionCache == null) {
+      return;
+    }
+    for (Iterator<DataCache2> iter = this.cacheBySensor.values().iterator(); iter
+        .hasNext();) {
+      if (iter.next() == regionCache) {
+        iter.remove();
+      }
+    }
+  }
+
+  public boolean isMultiRegion() {
+    return !this.regionCaches.isEmpty();
+  }
+
+  /**
+   * @return the cache that link values observed by {@code receiverSensor}
+   *         belong in, or {@code null} if the receiver isn't in any region.
+   */
+  protected DataCache2 getCacheForSensor(final String receiverSensor) {
+    if (this.regionCaches.isEmpty()) {
+      return this.cache;
+    }
+    return this.cacheBySensor.get(receiverSensor);
+  }
+
+  /**
+   * @return the most recent time that any cache received an RSSI value.
+   */
+  protected long getLastRssiUpdate() {
+    if (this.regionCaches.isEmpty()) {
+      return this.cache.getLastRssiUpdate();
+    }
+    long latest = 0;
+    for (DataCache2 regionCache : this.regionCaches.values()) {
+      latest = Math.max(latest, regionCache.getLastRssiUpdate());
+    }
+    return latest;
+  }
+
+  /**
+   * Enables or disables filtered streams. When enabled, the world model is
+   * only asked for links between the devices allowed by the
+   * {@link FilteringDataCache}, and other link values are dropped as they
+   * arrive rather than being stored. The streams are rebuilt shortly after the
+   * allowed devices change.
+   */
+  public void setFilteredStreams(final boolean filteredStreams) {
+    this.filteredStreams = filteredStreams;
+    this.allowedDevicesChanged();
+  }
+
+  public boolean isFilteredStreams() {
+    return this.filteredStreams;
+  }
+
+  /**
+   * Called by a {@link FilteringDataCache} when its allowed devices change.
+   */
+  protected synchronized void allowedDevicesChanged() {
+    if (!this.streaming) {
+      return;
+    }
+    if (this.filterTimer == null) {
+      this.filterTimer = new Timer("Stream Filter", true);
+    }
+    if (this.pendingFilterUpdate != null) {
+      this.pendingFilterUpdate.cancel();
+    }
+    this.pendingFilterUpdate = new TimerTask() {
+      @Override
+      public void run() {
+        ConnectionHandler.this.updateStreamFilter();
+      }
+    };
+    this.filterTimer.schedule(this.pendingFilterUpdate, FILTER_DELAY);
+  }
+
+  /**
+   * @return the links allowed by every cache, or {@link StreamFilter#ALL} if
+   *         filtered streams are disabled or any cache allows every device.
+   */
+  protected StreamFilter getAllowedLinks() {
+    if (!this.filteredStreams) {
+      return StreamFilter.ALL;
+    }
+    Collection<DataCache2> caches = this.regionCaches.values();
+    if (caches.isEmpty()) {
+      if (this.cache == null) {
+        return StreamFilter.ALL;
+      }
+      caches = Collections.singleton(this.cache);
+    }
+    StreamFilter filter = null;
+    for (DataCache2 aCache : caches) {
+      if (!(aCache instanceof FilteringDataCache)
+          || ((FilteringDataCache) aCache).getAllowedDevices().isEmpty()) {
+        return StreamFilter.ALL;
+      }
+      StreamFilter cacheFilter = StreamFilter
+          .forSensors(((FilteringDataCache) aCache).getAllowedSensors());
+      filter = filter == null ? cacheFilter : filter.union(cacheFilter);
+    }
+    return filter == null ? StreamFilter.ALL : filter;
+  }
+
+  /**
+   * Rebuilds the streams for the currently allowed links. The previous streams
+   * keep running for {@link #STREAM_OVERLAP} milliseconds.
+   */
+  protected synchronized void updateStreamFilter() {
+    this.pendingFilterUpdate = null;
+    if (!this.streaming) {
+      return;
+    }
+    final StreamFilter newFilter = this.getAllowedLinks();
+    if (newFilter.equals(this.streamFilter)) {
+      return;
+    }
+    log.info("Changing streams from {} to {}.", this.streamFilter, newFilter);
+    this.ingestFilter = this.streamFilter.union(newFilter);
+    this.streamFilter = newFilter;
+
+    if (this.rawIngester == null) {
+      // Raw samples aren't requested by identifier, so only world model
+      // streams need to be rebuilt
+      this.retireStreams();
+      this.retiringRssi = this.rssiHandler;
+      this.retiringVariance = this.varianceHandler;
+      String regex = newFilter.getIdentifierRegex();
+      this.rssiHandler = new RssiHandler(this, regex);
+      this.rssiHandler.start();
+      this.varianceHandler = new VarianceHandler(this, regex);
+      this.varianceHandler.start();
+    }
+
+    this.filterTimer.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        synchronized (ConnectionHandler.this) {
+          if (ConnectionHandler.this.streamFilter == newFilter) {
+            ConnectionHandler.this.retireStreams();
+            ConnectionHandler.this.ingestFilter = newFilter;
+          }
+        }
+      }
+    }, STREAM_OVERLAP);
+  }
+
+  /**
+   * Stops the streams left running by the last rebuild.
+   */
+  private synchronized void retireStreams() {
+    if (this.retiringRssi != null) {
+      this.retiringRssi.shutdown();
+      this.retiringRssi = null;
+    }
+    if (this.retiringVariance != null) {
+      this.retiringVariance.shutdown();
+      this.retiringVariance = null;
+    }
+  }
+
+  /**
+   * Sets the aggregator to receive raw samples from. When set, link averages
+   * and variances are computed from the raw samples instead of being streamed
+   * from the world model, which still provides region and anchor information.
+   * 
+   * @param host
+   *          the hostname or IP address of the aggregator, or {@code null} to
+   *          stream link values from the world model.
+   * @param port
+   *          the TCP port on which the aggregator is listening for solvers.
+   */
+  public void setAggregatorConnection(final String host, final int port) {
+    this.aggregatorHost = host;
+    this.aggregatorPort = port;
+  }
+
   /**
    * Attempts to connect to the configured World Model as a client in order to
    * stream data into the cache. If the cache is null, or the connection fails
@@ -131,7 +410,7 @@ public class ConnectionHandler {
    *         are any errors.
    */
   public boolean connectAsClient() {
-    if (this.cache == null) {
+    if (this.cache == null && this.regionCaches.isEmpty()) {
       log.error("No cache set.  Unable to connect.");
       return false;
     }
@@ -141,7 +420,7 @@ public class ConnectionHandler {
       return false;
     }
 
-    if (this.region == null) {
+    if (this.region == null && this.regionCaches.isEmpty()) {
       log.error("No region specified. Can't connect.");
       return false;
     }
@@ -150,7 +429,12 @@ public class ConnectionHandler {
       log.error("Unable to connect. See log for details.");
       return false;
     }
-    this.cache.setClone(false);
+    if (this.cache != null) {
+      this.cache.setClone(false);
+    }
+    for (DataCache2 regionCache : this.regionCaches.values()) {
+      regionCache.setClone(false);
+    }
     this.shouldConnect = true;
     log.info("Connected to {}", this.wmc);
     return true;
@@ -245,8 +529,9 @@ public class ConnectionHandler {
         long now = System.currentTimeMillis();
         if (this.handler.shouldConnect
             && (now - this.lastCheck > this.interval)) {
-          if (this.handler.cache.lastRssiUpdate < this.lastCheck) {
-            int seconds = (int)(now - this.handler.cache.getLastRssiUpdate())/1000;
+          long lastUpdate = this.handler.getLastRssiUpdate();
+          if (lastUpdate < this.lastCheck) {
+            int seconds = (int)(now - lastUpdate)/1000;
             this.messageLabel.setText(String.format(MSG_FMT_STRING,seconds));
             if (!this.alreadyShown && !this.progressFrame.isVisible()) {
               Dimension screenSize = Toolkit.getDefaultToolkit()
@@ -289,6 +574,10 @@ public class ConnectionHandler {
 
   public void disconnectAsClient() {
     this.shouldConnect = false;
+    this.streaming = false;
+    this.cancelFilterUpdates();
+    this.stopRawIngest();
+    this.cancelBackfill();
     if (this.rssiHandler != null) {
       this.rssiHandler.shutdown();
       try {
@@ -322,19 +611,97 @@ public class ConnectionHandler {
 
   protected void getStarted() {
 
+    if (!this.regionCaches.isEmpty()) {
+      for (Map.Entry<String, DataCache2> entry : this.regionCaches.entrySet()) {
+        this.loadRegion(entry.getKey(), entry.getValue());
+      }
+      // One set of streams for every region
+      long liveStart = System.currentTimeMillis();
+      this.startStreams();
+      this.startBackfill(liveStart);
+      return;
+    }
+
     if (this.cache == null) {
       log.error("No cache set.  Cannot start.");
       return;
     }
 
     // Set-up the initial data from the world model
-    this.cache.setRegionUri(this.region);
-    String[] matchingUris = this.wmc.searchId("region\\." + this.region);
-    this.retrieveRegionInfo(matchingUris);
-    this.retrieveAnchors(this.region);
+    this.loadRegion(this.region, this.cache);
 
     // Retrieve transient data from world model
+    long liveStart = System.currentTimeMillis();
     this.startStreams();
+
+    // Fill in the history from before the streams started
+    this.startBackfill(liveStart);
+  }
+
+  /**
+   * Requests the link values from the retention age before {@code liveStart}
+   * up to {@code liveStart}, unless the "sigvis.backfill" property is
+   * "false".
+   */
+  protected synchronized void startBackfill(final long liveStart) {
+    if (!Boolean.parseBoolean(System.getProperty("sigvis.backfill", "true"))) {
+      return;
+    }
+    this.cancelBackfill();
+    long age = 0;
+    for (DataCache2 regionCache : this.getCaches()) {
+      age = Math.max(age, regionCache.getRetentionAge());
+    }
+    if (age <= 0 || this.wmc == null) {
+      return;
+    }
+    this.backfill = new HistoryBackfill(this.cache, this.wmc,
+        this.streamFilter.getIdentifierRegex(), liveStart - age, liveStart) {
+      @Override
+      protected DataCache2 getCache(final String receiverSensor) {
+        return ConnectionHandler.this.getCacheForSensor(receiverSensor);
+      }
+
+      @Override
+      protected boolean acceptsLink(final String receiverSensor,
+          final String transmitterSensor) {
+        return ConnectionHandler.this.ingestFilter.acceptsLink(receiverSensor,
+            transmitterSensor);
+      }
+
+      @Override
+      protected void finished() {
+        for (DataCache2 regionCache : ConnectionHandler.this.getCaches()) {
+          regionCache.reaggregateRssi();
+        }
+      }
+    };
+    this.backfill.start();
+  }
+
+  protected void cancelBackfill() {
+    HistoryBackfill current = this.backfill;
+    if (current != null) {
+      current.cancel();
+    }
+  }
+
+  /**
+   * @return the history backfill, or {@code null} if none has been started.
+   */
+  public HistoryBackfill getBackfill() {
+    return this.backfill;
+  }
+
+  /**
+   * @return every cache that receives values from this handler.
+   */
+  private Collection<DataCache2> getCaches() {
+    if (this.regionCaches.isEmpty()) {
+      return this.cache == null ? Collections.<DataCache2> emptyList()
+          : Collections.singletonList(this.cache);
+    }
+    return this.regionCaches.values();
   }
 
   /*
@@ -342,7 +709,24 @@ public class ConnectionHandler {
    * winlab.anchor.pipsqueak.transmitter.112
    */
 
+  /**
+   * Retrieves the region's dimensions, image and anchors from the world model
+   * into {@code regionCache}.
+   */
+  protected void loadRegion(final String regionName,
+      final DataCache2 regionCache) {
+    regionCache.setRegionUri(regionName);
+    String[] matchingUris = this.wmc.searchId("region\\." + regionName);
+    this.retrieveRegionInfo(matchingUris, regionCache);
+    this.retrieveAnchors(regionName, regionCache);
+  }
+
   protected void retrieveRegionInfo(String[] matchingUris) {
+    this.retrieveRegionInfo(matchingUris, this.cache);
+  }
+
+  protected void retrieveRegionInfo(final String[] matchingUris,
+      final DataCache2 regionCache) {
     for (String uri : matchingUris) {
       Response res = this.wmc.getCurrentSnapshot(uri, "location\\..*",
           "image\\.url");
@@ -372,43 +756,69 @@ public class ConnectionHandler {
       }
 
       if (width != 0 && height != 0) {
-        if (this.cache != null) {
-          this.cache
+        if (regionCache != null) {
+          regionCache
               .setRegionBounds(new Rectangle2D.Double(0, 0, width, height));
           log.info("Set region bounds: {},{}", width, height);
         }
       }
-      if (imageUrlString != null) {
-        BufferedImage regionImage;
-        try {
-
-          if (!imageUrlString.startsWith("http://")) {
-            imageUrlString = "http://" + imageUrlString;
-          }
-          if (this.cache != null) {
-            this.cache.setRegionImageUrl(imageUrlString);
-            URL imageUrl = new URL(imageUrlString);
-            URLConnection conn = imageUrl.openConnection();
-            conn.setConnectTimeout(5000);
-            conn.connect();
-            regionImage = ImageIO.read(conn.getInputStream());
-            this.cache.setRegionImage(regionImage);
-            log.info("Set image for {}: \"{}\".", uri, imageUrl);
-          }
-
-        } catch (MalformedURLException e) {
-          log.warn("Malformed URL: {}", imageUrlString);
-          e.printStackTrace();
-        } catch (IOException e) {
-          log.warn("Unable to load region image URL {} due to an exception.",
-              imageUrlString, e);
-          e.printStackTrace();
+      if (imageUrlString != null && regionCache != null) {
+        if (!imageUrlString.startsWith("http://")) {
+          imageUrlString = "http://" + imageUrlString;
+        }
+        if (regionCache.getRegionImage() != null
+            && imageUrlString.equals(regionCache.getRegionImageUrl())) {
+          // Restored from a session snapshot, so refresh it without holding
+          // up the anchors and streams
+          final String refreshUrl = imageUrlString;
+          final String regionUri = uri;
+          Thread refreshThread = new Thread("Region Image Refresh") {
+            @Override
+            public void run() {
+              ConnectionHandler.this.retrieveRegionImage(regionUri,
+                  refreshUrl, regionCache);
+            }
+          };
+          refreshThread.setDaemon(true);
+          refreshThread.start();
+        } else {
+          this.retrieveRegionImage(uri, imageUrlString, regionCache);
         }
       }
     }
   }
 
+  /**
+   * Downloads the region's background image into {@code regionCache}.
+   */
+  protected void retrieveRegionImage(final String uri,
+      final String imageUrlString, final DataCache2 regionCache) {
+    BufferedImage regionImage;
+    try {
+      regionCache.setRegionImageUrl(imageUrlString);
+      URL imageUrl = new URL(imageUrlString);
+      URLConnection conn = imageUrl.openConnection();
+      conn.setConnectTimeout(5000);
+      conn.connect();
+      regionImage = ImageIO.read(conn.getInputStream());
+      regionCache.setRegionImage(regionImage);
+      log.info("Set image for {}: \"{}\".", uri, imageUrl);
+    } catch (MalformedURLException e) {
+      log.warn("Malformed URL: {}", imageUrlString);
+      e.printStackTrace();
+    } catch (IOException e) {
+      log.warn("Unable to load region image URL {} due to an exception.",
+          imageUrlString, e);
+      e.printStackTrace();
+    }
+  }
+
   protected void retrieveAnchors(final String regionName) {
+    this.retrieveAnchors(regionName, this.cache);
+  }
+
+  protected void retrieveAnchors(final String regionName,
+      final DataCache2 regionCache) {
     log.info("Retrieving anchor locations.");
     boolean success = false;
     do {
@@ -419,6 +829,7 @@ public class ConnectionHandler {
 
         success = true;
         Collection<String> identifiers = state.getIdentifiers();
+        Set<String> anchors = new HashSet<String>();
         for (String uri : identifiers) {
           log.debug("Checking {}", uri);
           String sensorString = null;
@@ -456,21 +867,25 @@ public class ConnectionHandler {
             // HashableByteArray deviceHash = new HashableByteArray(deviceId);
             Point2D location = new Point2D.Double(x, y);
             if (uri.contains("transmitter")) {
-              this.cache.addFiduciaryTransmitter(uri);
+              regionCache.addFiduciaryTransmitter(uri);
             } else if (uri.contains("receiver")) {
-              this.cache.addReceiver(uri);
+              regionCache.addReceiver(uri);
+              this.cacheBySensor.put(sensorString, regionCache);
             } else {
               continue;
             }
 
-            this.cache.mapSensorToUri(sensorString, uri);
-            this.cache.setDeviceLocation(uri, location);
+            regionCache.mapSensorToUri(sensorString, uri);
+            regionCache.setDeviceLocation(uri, location);
+            anchors.add(uri);
           }
         }
+        // Drop anchors restored from a snapshot that have since been removed
+        regionCache.retainAnchors(anchors);
 
       } catch (Exception e) {
         log.error("Couldn't retrieve location data for anchors in "
-            + this.region + ".", e);
+            + regionName + ".", e);
         try {
           Thread.sleep(250);
         } catch (InterruptedException ie) {
@@ -479,18 +894,78 @@ public class ConnectionHandler {
       }
     } while (!success);
 
-    log.info("Loaded anchors.");
+    log.info("Loaded anchors for {}.", regionName);
   }
 
-  protected void startStreams() {
+  protected synchronized void startStreams() {
+    this.streaming = true;
+    this.streamFilter = this.getAllowedLinks();
+    this.ingestFilter = this.streamFilter;
+    if (this.aggregatorHost != null) {
+      if (this.startRawIngest()) {
+        return;
+      }
+      log.warn("Falling back to world model link values.");
+    }
 
-    this.rssiHandler = new RssiHandler(this);
+    String regex = this.streamFilter.getIdentifierRegex();
+    this.rssiHandler = new RssiHandler(this, regex);
     this.rssiHandler.start();
-    this.varianceHandler = new VarianceHandler(this);
+    this.varianceHandler = new VarianceHandler(this, regex);
     this.varianceHandler.start();
   }
 
+  protected boolean startRawIngest() {
+    this.stopRawIngest();
+    RawSampleIngester ingester = new RawSampleIngester(this.cache) {
+      @Override
+      protected DataCache2 getCache(final String receiverSensor) {
+        return ConnectionHandler.this.getCacheForSensor(receiverSensor);
+      }
+
+      @Override
+      protected boolean acceptsLink(final String receiverSensor,
+          final String transmitterSensor) {
+        return ConnectionHandler.this.ingestFilter.acceptsLink(receiverSensor,
+            transmitterSensor);
+      }
+    };
+    ingester.setEmissionPeriod(this.rawEmissionPeriod);
+    if (!ingester.start(this.aggregatorHost, this.aggregatorPort,
+        AGGREGATOR_TIMEOUT)) {
+      return false;
+    }
+    this.rawIngester = ingester;
+    return true;
+  }
+
+  private synchronized void cancelFilterUpdates() {
+    if (this.filterTimer != null) {
+      this.filterTimer.cancel();
+      this.filterTimer = null;
+      this.pendingFilterUpdate = null;
+    }
+    this.retireStreams();
+  }
+
+  protected void stopRawIngest() {
+    if (this.rawIngester != null) {
+      this.rawIngester.stop();
+      this.rawIngester = null;
+    }
+  }
+
   protected void noCacheListeners() {
+    // Keep streaming while any other region is still being displayed
+    for (DataCache2 regionCache : this.regionCaches.values()) {
+      if (regionCache.getNumListeners() > 0) {
+        return;
+      }
+    }
+    this.streaming = false;
+    this.cancelFilterUpdates();
+    this.stopRawIngest();
+    this.cancelBackfill();
     if (this.rssiHandler != null) {
       this.rssiHandler.shutdown();
       try {
@@ -518,10 +993,13 @@ public class ConnectionHandler {
   private static final class RssiHandler extends Thread {
 
     private final ConnectionHandler handler;
-    private boolean keepRunning = true;
+    private final String identifierRegex;
+    private volatile boolean keepRunning = true;
 
-    public RssiHandler(final ConnectionHandler handler) {
+    public RssiHandler(final ConnectionHandler handler,
+        final String identifierRegex) {
       this.handler = handler;
+      this.identifierRegex = identifierRegex;
     }
 
     @Override
@@ -535,7 +1013,8 @@ public class ConnectionHandler {
           break;
         }
         final StepResponse rssiResponse = this.handler.wmc.getStreamRequest(
-            ".*", System.currentTimeMillis(), 0, "link average");
+            this.identifierRegex, System.currentTimeMillis(), 0,
+            "link average");
 
         WorldState state = null;
         while (!rssiResponse.isComplete() && !rssiResponse.isError()
@@ -546,7 +1025,11 @@ public class ConnectionHandler {
             if (state == null) {
               break;
             }
+            StreamFilter filter = this.handler.ingestFilter;
             for (String uri : state.getIdentifiers()) {
+              if (!filter.acceptsLink(uri)) {
+                continue;
+              }
 
               int txSensStart = uri.indexOf('.');
               int rxSensStart = uri.lastIndexOf('.');
@@ -559,8 +1042,9 @@ public class ConnectionHandler {
               Attribute linkAvg = attribs.iterator().next();
               double value = DoubleConverter.get()
                   .decode(linkAvg.getData());
-              if (this.handler.cache != null) {
-                this.handler.cache.addRssi(rxerSensor, txerSensor,
+              DataCache2 target = this.handler.getCacheForSensor(rxerSensor);
+              if (target != null) {
+                target.addRssi(rxerSensor, txerSensor,
                     (float) value, linkAvg.getCreationDate());
               }
             }
@@ -582,10 +1066,13 @@ public class ConnectionHandler {
   private static final class VarianceHandler extends Thread {
 
     private final ConnectionHandler handler;
-    private boolean keepRunning = true;
+    private final String identifierRegex;
+    private volatile boolean keepRunning = true;
 
-    public VarianceHandler(final ConnectionHandler handler) {
+    public VarianceHandler(final ConnectionHandler handler,
+        final String identifierRegex) {
       this.handler = handler;
+      this.identifierRegex = identifierRegex;
     }
 
     @Override
@@ -598,7 +1085,8 @@ public class ConnectionHandler {
           break;
         }
         final StepResponse rssiResponse = this.handler.wmc.getStreamRequest(
-            ".*", System.currentTimeMillis(), 0, "link variance");
+            this.identifierRegex, System.currentTimeMillis(), 0,
+            "link variance");
 
         WorldState state = null;
         while (!rssiResponse.isComplete() && !rssiResponse.isError()
@@ -609,7 +1097,11 @@ public class ConnectionHandler {
             if (state == null) {
               break;
             }
+            StreamFilter filter = this.handler.ingestFilter;
             for (String uri : state.getIdentifiers()) {
+              if (!filter.acceptsLink(uri)) {
+                continue;
+              }
 
               int txSensStart = uri.indexOf('.');
               int rxSensStart = uri.lastIndexOf('.');
@@ -622,8 +1114,9 @@ public class ConnectionHandler {
               Attribute linkAvg = attribs.iterator().next();
               double value = DoubleConverter.get()
                   .decode(linkAvg.getData());
-              if (this.handler.cache != null) {
-                this.handler.cache.addVariance(rxerSensor, txerSensor,
+              DataCache2 target = this.handler.getCacheForSensor(rxerSensor);
+              if (target != null) {
+                target.addVariance(rxerSensor, txerSensor,
                     (float) value, linkAvg.getCreationDate());
               }
             }
@@ -652,4 +1145,30 @@ public class ConnectionHandler {
   public String getRegion() {
     return region;
   }
+
+  public String getAggregatorHost() {
+    return this.aggregatorHost;
+  }
+
+  public int getAggregatorPort() {
+    return this.aggregatorPort;
+  }
+
+  public long getRawEmissionPeriod() {
+    return this.rawEmissionPeriod;
+  }
+
+  /**
+   * Sets how often link values computed from raw samples are added to the
+   * cache.
+   * 
+   * @param rawEmissionPeriod
+   *          the time between updates, in milliseconds.
+   */
+  public void setRawEmissionPeriod(final long rawEmissionPeriod) {
+    this.rawEmissionPeriod = rawEmissionPeriod;
+    if (this.rawIngester != null) {
+      this.rawIngester.setEmissionPeriod(rawEmissionPeriod);
+    }
+  }
 }
@@ -32,20 +32,23 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.URL;
+import java.util.Collection;
 import java.util.Deque;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
 //import java.util.concurrent.LinkedBlockingDeque;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -61,8 +64,14 @@ import org.slf4j.LoggerFactory;
 
 import com.owlplatform.sigvis.structs.ChartItem;
 import com.owlplatform.sigvis.structs.ChartItemTimeComparator;
+import com.owlplatform.sigvis.structs.CompactSeries;
+import com.owlplatform.sigvis.structs.PathLossModel;
+import com.owlplatform.sigvis.structs.DeviceRegistry;
+import com.owlplatform.sigvis.structs.SignalToDistanceIndex;
 import com.owlplatform.sigvis.structs.SignalToDistanceItem;
-import com.owlplatform.sigvis.structs.SimpleChartItem;
+import com.owlplatform.sigvis.structs.SlabAllocator;
+import com.owlplatform.sigvis.structs.TimingWheel;
+import com.owlplatform.sigvis.structs.WindowAggregate;
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamOmitField;
@@ -92,6 +101,39 @@ public class DataCache2 implements Cloneable {
   @XStreamAlias("maxCacheAge")
   protected long maxCacheAge = 1000 * 60 * 10;
 
+  /**
+   * How long a dynamic transmitter can go unseen before it is forgotten.
+   */
+  public static final long DEFAULT_DEVICE_IDLE_TIMEOUT = 1000 * 60 * 15;
+
+  /**
+   * How often idle dynamic transmitters are expired, and the resolution of
+   * their idle timeout.
+   */
+  protected static final long DEVICE_EXPIRY_PERIOD = 1000;
+
+  /**
+   * How often expired values are removed, in milliseconds.
+   */
+  protected static final long EXPIRY_TICK = 1000;
+
+  /**
+   * The most series that are trimmed in one expiry tick. Any others that are
+   * due wait for the next tick.
+   */
+  protected static final int EXPIRY_BUDGET = 2000;
+
+  /**
+   * The shortest time between trims of a single series, so that a busy series
+   * loses several values at once instead of one per tick.
+   */
+  protected static final long EXPIRY_GRANULARITY = 5000;
+
+  /**
+   * How often the cache is checked against its memory budget.
+   */
+  protected static final long RETENTION_CHECK_PERIOD = 5000;
+
   /**
    * Two-dimensional region bounds for the defined region.
    */
@@ -117,22 +159,16 @@ public class DataCache2 implements Cloneable {
   protected String regionUri = null;
 
   /**
-   * Map of Receiver ID -> Transmitter ID -> Set of Average RSSI values.
+   * Map of Receiver ID -> Transmitter ID -> Series of Average RSSI values.
    */
   @XStreamAlias("averageRssiByRByT")
-  // protected final Map<String, Map<String, Deque<ChartItem<Float>>>>
-  // averageRssiByRByT = new ConcurrentHashMap<String, Map<String,
-  // Deque<ChartItem<Float>>>>();
-  protected final Map<String, Map<String, NavigableSet<ChartItem<Float>>>> averageRssiByRByT = new ConcurrentHashMap<String, Map<String, NavigableSet<ChartItem<Float>>>>();
+  protected final ConcurrentMap<String, ConcurrentMap<String, CompactSeries>> averageRssiByRByT = new ConcurrentHashMap<String, ConcurrentMap<String, CompactSeries>>();
 
   /**
-   * Map of Receiver ID -> Transmitter ID -> Set of RSSI variance values.
+   * Map of Receiver ID -> Transmitter ID -> Series of RSSI variance values.
    */
   @XStreamAlias("varianceByRByT")
-  // protected final Map<String, Map<String, Deque<ChartItem<Float>>>>
-  // varianceRssiByRByT = new ConcurrentHashMap<String, Map<String,
-  // Deque<ChartItem<Float>>>>();
-  protected final Map<String, Map<String, NavigableSet<ChartItem<Float>>>> varianceRssiByRByT = new ConcurrentHashMap<String, Map<String, NavigableSet<ChartItem<Float>>>>();
+  protected final ConcurrentMap<String, ConcurrentMap<String, CompactSeries>> varianceRssiByRByT = new ConcurrentHashMap<String, ConcurrentMap<String, CompactSeries>>();
 
   /**
    * List of objects that care when receivers or fiduciary transmitters become
@@ -141,6 +177,12 @@ public class DataCache2 implements Cloneable {
   @XStreamOmitField
   protected final ConcurrentLinkedQueue<DataCache2Listener> listeners = new ConcurrentLinkedQueue<DataCache2Listener>();
 
+  /**
+   * Delivers events to the listeners on the Event Dispatch Thread.
+   */
+  @XStreamOmitField
+  protected final CacheEventBus eventBus = new CacheEventBus(this.listeners);
+
   /**
    * Mapping from device (transmitter, receiver) ID values to their
    * 2-dimensional position within a region.
@@ -167,6 +209,13 @@ public class DataCache2 implements Cloneable {
   @XStreamAlias("dynamicTransmitterIds")
   protected final Set<String> dynamicTransmitterIds = new ConcurrentHashSet<String>();
 
+  /**
+   * Activity of the dynamic transmitters, used to expire idle ones.
+   */
+  @XStreamOmitField
+  protected final DeviceRegistry dynamicDevices = new DeviceRegistry(
+      DEFAULT_DEVICE_IDLE_TIMEOUT, DEVICE_EXPIRY_PERIOD, 1024);
+
   /**
    * Map of anchor sensor URI values to the anchor URIs.
    */
@@ -178,7 +227,40 @@ public class DataCache2 implements Cloneable {
    * receiver-fiduciary transmitter pairs. Mapped by receiver.
    */
   @XStreamAlias("sigToDistHistory")
-  protected Map<String, NavigableSet<SignalToDistanceItem>> sigToDistHistory = new ConcurrentHashMap<String, NavigableSet<SignalToDistanceItem>>();
+  protected ConcurrentMap<String, NavigableSet<SignalToDistanceItem>> sigToDistHistory = new ConcurrentHashMap<String, NavigableSet<SignalToDistanceItem>>();
+
+  /**
+   * Signal-ordered index of {@link #sigToDistHistory}, mapped by receiver.
+   * Rebuilt from the history when loading or cloning.
+   */
+  @XStreamOmitField
+  protected final ConcurrentMap<String, SignalToDistanceIndex> sigToDistBySignal = new ConcurrentHashMap<String, SignalToDistanceIndex>();
+
+  /**
+   * Path-loss fits over {@link #sigToDistHistory}, mapped by receiver.
+   */
+  @XStreamOmitField
+  protected final ConcurrentMap<String, PathLossModel> pathLossByReceiver = new ConcurrentHashMap<String, PathLossModel>();
+
+  /**
+   * Path-loss fit over {@link #sigToDistHistory} for all receivers.
+   */
+  @XStreamOmitField
+  protected final PathLossModel globalPathLoss = new PathLossModel();
+
+  /**
+   * Window lengths, in milliseconds, for which RSSI aggregates are kept.
+   */
+  @XStreamOmitField
+  protected volatile long[] aggregateWindows = new long[] { 1000l, 10000l,
+      60000l };
+
+  /**
+   * Sliding-window RSSI aggregates for each window length in
+   * {@link #aggregateWindows}, mapped by receiver and then transmitter.
+   */
+  @XStreamOmitField
+  protected final ConcurrentMap<String, ConcurrentMap<String, WindowAggregate[]>> rssiAggregatesByRByT = new ConcurrentHashMap<String, ConcurrentMap<String, WindowAggregate[]>>();
 
   /**
    * Flag to indicate whether this cache is a clone of another (live) cache.
@@ -186,6 +268,12 @@ public class DataCache2 implements Cloneable {
   @XStreamOmitField
   protected boolean isClone = false;
 
+  /**
+   * Saved when the cache is shut down, if set.
+   */
+  @XStreamOmitField
+  protected volatile SessionSnapshot sessionSnapshot = null;
+
   /**
    * The time at which this cache was created. Useful for determining the time
    * of the latest valid data for a cloned cache.
@@ -193,28 +281,59 @@ public class DataCache2 implements Cloneable {
   @XStreamAlias("creationTs")
   private long creationTs;
 
+  /**
+   * Keeps the cache within its memory budget.
+   */
+  @XStreamOmitField
+  protected final RetentionManager retentionManager = new RetentionManager(
+      this, RetentionManager.getDefaultBudget());
+
+  /**
+   * Off-heap storage for the compressed blocks of each series, or
+   * {@code null} to keep them on the heap. Enabled by the
+   * "sigvis.cache.offHeap" system property.
+   */
+  @XStreamOmitField
+  protected final SlabAllocator offHeapStorage = Boolean
+      .getBoolean("sigvis.cache.offHeap") ? new SlabAllocator() : null;
+
   @XStreamOmitField
   protected final CacheStatsPanel statsPanel = new CacheStatsPanel(this);
   @XStreamOmitField
   protected final ConnectionHandler handler;
   @XStreamOmitField
   protected final Timer taskTimer = new Timer();
+
+  /**
+   * Tells each series when its oldest value expires.
+   */
+  @XStreamOmitField
+  protected final TimingWheel<ExpiringSeries> expiryWheel = new TimingWheel<ExpiringSeries>(
+      EXPIRY_TICK, System.currentTimeMillis());
+
+  @XStreamOmitField
+  private final TimingWheel.Handler<ExpiringSeries> expiryHandler = new TimingWheel.Handler<ExpiringSeries>() {
+    @Override
+    public long itemDue(final ExpiringSeries series, final long now) {
+      return series.expire(now);
+    }
+  };
   @XStreamOmitField
-  protected volatile int numRssiPoints = 0;
+  protected final AtomicInteger numRssiPoints = new AtomicInteger();
   @XStreamOmitField
-  protected volatile int numVarPoints = 0;
+  protected final AtomicInteger numVarPoints = new AtomicInteger();
 
   @XStreamOmitField
-  protected volatile int numSigToDistPoints = 0;
+  protected final AtomicInteger numSigToDistPoints = new AtomicInteger();
 
   @XStreamOmitField
   protected volatile int numFidTxers = 0;
   @XStreamOmitField
   protected volatile int numRxers = 0;
   @XStreamOmitField
-  protected long lastRssiUpdate = System.currentTimeMillis();
+  protected volatile long lastRssiUpdate = System.currentTimeMillis();
   @XStreamOmitField
-  protected long lastVarianceUpdate = System.currentTimeMillis();
+  protected volatile long lastVarianceUpdate = System.currentTimeMillis();
 
   public DataCache2(final ConnectionHandler handler) {
     this(handler, System.currentTimeMillis());
@@ -239,9 +358,23 @@ public class DataCache2 implements Cloneable {
     this.taskTimer.schedule(new TimerTask() {
       @Override
       public void run() {
-        DataCache2.this.sweepCache();
+        DataCache2.this.expireDueSeries();
       }
-    }, 60000, 60000);
+    }, EXPIRY_TICK, EXPIRY_TICK);
+
+    this.taskTimer.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        DataCache2.this.expireDynamicTransmitters();
+      }
+    }, DEVICE_EXPIRY_PERIOD, DEVICE_EXPIRY_PERIOD);
+
+    this.taskTimer.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        DataCache2.this.enforceRetention();
+      }
+    }, RETENTION_CHECK_PERIOD, RETENTION_CHECK_PERIOD);
   }
 
   /**
@@ -273,18 +406,27 @@ public class DataCache2 implements Cloneable {
   }
 
   public void addReceiver(final String receiverId) {
-    this.receiverIds.add(receiverId);
-    this.statsPanel.setNumRxers(++this.numRxers);
+    // Anchors restored from a session snapshot are added again on connecting
+    if (this.receiverIds.add(receiverId)) {
+      this.statsPanel.setNumRxers(++this.numRxers);
+    }
     this.lastRssiUpdate = System.currentTimeMillis();
     this.lastRssiUpdate = System.currentTimeMillis();
   }
 
   public void addFiduciaryTransmitter(final String transmitterId) {
-    this.fiduciaryTransmitterIds.add(transmitterId);
+    boolean added = this.fiduciaryTransmitterIds.add(transmitterId);
     String justId = transmitterId.substring(transmitterId.lastIndexOf('.')+1,transmitterId.length());
     log.info("Removing fiduciary transmitter {} from dynamic list.",justId);
-    this.dynamicTransmitterIds.remove(justId);
-    this.statsPanel.setNumFidTxers(++this.numFidTxers);
+    boolean wasDynamic = this.dynamicTransmitterIds.remove(justId);
+    this.dynamicDevices.remove(justId);
+    if (wasDynamic) {
+      // Take it out of the dynamic menus
+      this.eventBus.transmitterExpired(justId);
+    }
+    if (added) {
+      this.statsPanel.setNumFidTxers(++this.numFidTxers);
+    }
     this.lastRssiUpdate = System.currentTimeMillis();
     this.lastVarianceUpdate = System.currentTimeMillis();
   }
@@ -301,48 +443,31 @@ public class DataCache2 implements Cloneable {
     // Enabling dynamic devices
     if (txer == null) {
       txer = txerSensor;
+      if (!this.recordDynamicTransmitter(txerSensor, timestamp)) {
+        return;
+      }
     }
 
-    Map<String, NavigableSet<ChartItem<Float>>> receiverItems = this.averageRssiByRByT
-        .get(rxer);
+    ConcurrentMap<String, CompactSeries> receiverItems = getReceiverMap(
+        this.averageRssiByRByT, rxer);
 
-    if (receiverItems == null) {
-      receiverItems = new ConcurrentHashMap<String, NavigableSet<ChartItem<Float>>>();
-      this.averageRssiByRByT.put(rxer, receiverItems);
-    }
-
-    NavigableSet<ChartItem<Float>> rssiQueue = receiverItems.get(txer);
+    // History backfill and the live streams may create a link at once
+    CompactSeries rssiQueue = receiverItems.get(txer);
     if (rssiQueue == null) {
-      rssiQueue = new ConcurrentSkipListSet<ChartItem<Float>>(
-          new ChartItemTimeComparator(false));
-      receiverItems.put(txer, rssiQueue);
+      CompactSeries created = this.newSeries();
+      rssiQueue = receiverItems.putIfAbsent(txer, created);
+      if (rssiQueue == null) {
+        rssiQueue = created;
+        this.scheduleExpiry(new RssiSeries(rxer, txer, rssiQueue), timestamp);
+      }
     }
 
-    SimpleChartItem<Float> theItem = new SimpleChartItem<Float>(
-        Float.valueOf(value), timestamp);
-    if (rssiQueue.add(theItem)) {
-      ++this.numRssiPoints;
+    if (rssiQueue.add(value, timestamp)) {
+      this.numRssiPoints.incrementAndGet();
+      this.aggregateRssi(rxer, txer, value, timestamp);
     }
     this.lastRssiUpdate = System.currentTimeMillis();
 
-    long oldestTs = System.currentTimeMillis() - this.maxCacheAge;
-
-    while (!rssiQueue.isEmpty()
-        && rssiQueue.first().getCreationTime() < oldestTs) {
-      rssiQueue.pollFirst();
-      --this.numRssiPoints;
-    }
-
-    if (!this.fiduciaryTransmitterIds.contains(txerSensor)
-        && !this.dynamicTransmitterIds.contains(txerSensor)) {
-      this.dynamicTransmitterIds.add(txerSensor);
-      log.info("Added dynamic transmitter {}", txerSensor);
-      for (DataCache2Listener listener : this.listeners) {
-        listener.transmitterAdded(txerSensor, false);
-      }
-
-    }
-    
     // Signal to distance update (only receivers and fiduciary transmitters)
     Point2D recPoint = this.getDeviceLocation(rxer);
     Point2D transPoint = this.getDeviceLocation(txer);
@@ -358,19 +483,17 @@ public class DataCache2 implements Cloneable {
     NavigableSet<SignalToDistanceItem> history = this.sigToDistHistory
         .get(rxer);
     if (history == null) {
-      history = new ConcurrentSkipListSet<SignalToDistanceItem>();
-      this.sigToDistHistory.put(rxer, history);
+      NavigableSet<SignalToDistanceItem> created = new ConcurrentSkipListSet<SignalToDistanceItem>();
+      history = this.sigToDistHistory.putIfAbsent(rxer, created);
+      if (history == null) {
+        history = created;
+        this.scheduleExpiry(new SigToDistSeries(rxer, history), timestamp);
+      }
     }
     if (history.add(newSigToDist)) {
-      ++this.numSigToDistPoints;
+      this.indexSigToDist(rxer, newSigToDist);
+      this.numSigToDistPoints.incrementAndGet();
     }
-    // Trim the old values
-    while (!history.isEmpty() && history.first().getCreationTime() < oldestTs) {
-      history.pollFirst();
-      --this.numSigToDistPoints;
-    }
-
-    
     // End signal to distance
   }
 
@@ -386,96 +509,189 @@ public class DataCache2 implements Cloneable {
     // Enabling dynamic devices
     if (txer == null) {
       txer = txerSensor;
+      if (!this.recordDynamicTransmitter(txerSensor, timestamp)) {
+        return;
+      }
     }
 
-    Map<String, NavigableSet<ChartItem<Float>>> transmitterItems = this.varianceRssiByRByT
-        .get(rxer);
+    ConcurrentMap<String, CompactSeries> transmitterItems = getReceiverMap(
+        this.varianceRssiByRByT, rxer);
 
-    if (transmitterItems == null) {
-      transmitterItems = new ConcurrentHashMap<String, NavigableSet<ChartItem<Float>>>();
-      this.varianceRssiByRByT.put(rxer, transmitterItems);
-    }
-
-    NavigableSet<ChartItem<Float>> varQueue = transmitterItems.get(txer);
+    CompactSeries varQueue = transmitterItems.get(txer);
     if (varQueue == null) {
-      varQueue = new ConcurrentSkipListSet<ChartItem<Float>>(
-          new ChartItemTimeComparator(false));
-      transmitterItems.put(txer, varQueue);
+      CompactSeries created = this.newVarianceSeries();
+      varQueue = transmitterItems.putIfAbsent(txer, created);
+      if (varQueue == null) {
+        varQueue = created;
+        this.scheduleExpiry(new VarianceSeries(rxer, txer, varQueue),
+            timestamp);
+      }
     }
 
-    SimpleChartItem<Float> theItem = new SimpleChartItem<Float>(
-        Float.valueOf(value), timestamp);
-    if (varQueue.add(theItem)) {
-      ++this.numVarPoints;
+    if (varQueue.add(value, timestamp)) {
+      this.numVarPoints.incrementAndGet();
     }
     this.lastVarianceUpdate = System.currentTimeMillis();
+  }
 
-    long oldestTs = System.currentTimeMillis() - this.maxCacheAge;
+  /**
+   * Records a sample from a transmitter that isn't mapped to a URI, at the
+   * time it was taken, and announces the transmitter to listeners if it hasn't
+   * been seen before. Backfilled values from an unknown transmitter that would
+   * already have expired are not recorded, so a transmitter that left long ago
+   * does not come back.
+   * 
+   * @return {@code true} if the value should be cached, or {@code false} if it
+   *         should be dropped.
+   */
+  private boolean recordDynamicTransmitter(final String txerSensor,
+      final long timestamp) {
+    long now = System.currentTimeMillis();
+    if (timestamp + this.dynamicDevices.getIdleTimeout() <= now
+        && !this.dynamicDevices.contains(txerSensor)) {
+      return false;
+    }
+    if (this.dynamicDevices.recordSample(txerSensor, Math.min(timestamp, now))) {
+      this.dynamicTransmitterIds.add(txerSensor);
+      log.info("Added dynamic transmitter {}", txerSensor);
+      this.eventBus.transmitterAdded(txerSensor, false);
+    }
+    return true;
+  }
 
-    while (!varQueue.isEmpty() && varQueue.first().getCreationTime() < oldestTs) {
-      varQueue.pollFirst();
-      --this.numVarPoints;
+  /**
+   * Forgets the dynamic transmitters that have been idle for longer than the
+   * idle timeout, along with their link histories.
+   */
+  protected void expireDynamicTransmitters() {
+    if (this.isClone) {
+      return;
     }
-    
-    if (!this.fiduciaryTransmitterIds.contains(txerSensor)
-        && !this.dynamicTransmitterIds.contains(txerSensor)) {
-      
-      log.info("Added dynamic transmitter {}", txerSensor);
-      for (DataCache2Listener listener : this.listeners) {
-        listener.transmitterAdded(txerSensor, false);
+    List<String> expired = this.dynamicDevices.expire(System
+        .currentTimeMillis());
+    if (expired.isEmpty()) {
+      return;
+    }
+    for (String txer : expired) {
+      this.dynamicTransmitterIds.remove(txer);
+      for (Map<String, CompactSeries> rxerMap : this.averageRssiByRByT
+          .values()) {
+        CompactSeries txerQ = rxerMap.remove(txer);
+        if (txerQ != null) {
+          this.numRssiPoints.addAndGet(-txerQ.size());
+          txerQ.clear();
+        }
+      }
+      for (Map<String, CompactSeries> rxerMap : this.varianceRssiByRByT
+          .values()) {
+        CompactSeries txerQ = rxerMap.remove(txer);
+        if (txerQ != null) {
+          this.numVarPoints.addAndGet(-txerQ.size());
+          txerQ.clear();
+        }
+      }
+      for (Map<String, WindowAggregate[]> rxerMap : this.rssiAggregatesByRByT
+          .values()) {
+        rxerMap.remove(txer);
       }
+      this.eventBus.transmitterExpired(txer);
     }
+    log.info("Expired {} idle dynamic transmitters.",
+        Integer.valueOf(expired.size()));
+  }
+
+  /**
+   * @return the activity of the dynamic transmitters, which can be sorted and
+   *         paged for display.
+   */
+  public DeviceRegistry getDynamicDevices() {
+    return this.dynamicDevices;
+  }
+
+  public long getDeviceIdleTimeout() {
+    return this.dynamicDevices.getIdleTimeout();
+  }
+
+  /**
+   * Sets how long a dynamic transmitter can go unseen before it is forgotten.
+   * 
+   * @param idleTimeout
+   *          the timeout in milliseconds.
+   */
+  public void setDeviceIdleTimeout(final long idleTimeout) {
+    this.dynamicDevices.setIdleTimeout(idleTimeout);
   }
 
   public List<ChartItem<Float>> getRssiList(final String receiver,
       final String transmitter, long oldest, long youngest) {
+    CompactSeries.Cursor cursor = this.getRssiCursor(receiver, transmitter,
+        oldest, youngest, null);
+    return cursor == null ? null : cursor.toList();
+  }
 
-    Map<String, NavigableSet<ChartItem<Float>>> receiverMap = this.averageRssiByRByT
+  public List<ChartItem<Float>> getVarianceList(final String receiver,
+      final String transmitter, final long oldest, final long youngest) {
+    CompactSeries.Cursor cursor = this.getVarianceCursor(receiver,
+        transmitter, oldest, youngest, null);
+    return cursor == null ? null : cursor.toList();
+  }
+
+  /**
+   * Opens a cursor over the RSSI values of a link with timestamps in [
+   * {@code oldest}, {@code youngest}], which reads them without creating a
+   * list or chart items.
+   * 
+   * @param cursor
+   *          the cursor to reuse, or {@code null} for a new one.
+   * @return the opened cursor, or {@code null} if there are no RSSI values for
+   *         the link.
+   */
+  public CompactSeries.Cursor getRssiCursor(final String receiver,
+      final String transmitter, final long oldest, final long youngest,
+      final CompactSeries.Cursor cursor) {
+
+    Map<String, CompactSeries> receiverMap = this.averageRssiByRByT
         .get(receiver);
 
     if (receiverMap == null) {
       return null;
     }
 
-    NavigableSet<ChartItem<Float>> transmitterQueue = receiverMap
-        .get(transmitter);
+    CompactSeries transmitterQueue = receiverMap.get(transmitter);
     if (transmitterQueue == null) {
       return null;
     }
-    SimpleChartItem<Float> fromItem = new SimpleChartItem<Float>(0f, oldest);
-    SimpleChartItem<Float> toItem = new SimpleChartItem<Float>(0f, youngest);
-    NavigableSet<ChartItem<Float>> subset = transmitterQueue.subSet(fromItem,
-        true, toItem, true);
-
-    LinkedList<ChartItem<Float>> returnedList = new LinkedList<ChartItem<Float>>();
-    returnedList.addAll(subset);
-    return returnedList;
+    this.retentionManager.linkViewed(receiver, transmitter);
+    return transmitterQueue.getCursor(oldest, youngest, cursor);
   }
 
-  public List<ChartItem<Float>> getVarianceList(final String receiver,
-      final String transmitter, final long oldest, final long youngest) {
+  /**
+   * Opens a cursor over the variance values of a link with timestamps in [
+   * {@code oldest}, {@code youngest}], which reads them without creating a
+   * list or chart items.
+   * 
+   * @param cursor
+   *          the cursor to reuse, or {@code null} for a new one.
+   * @return the opened cursor, or {@code null} if there are no variance
+   *         values for the link.
+   */
+  public CompactSeries.Cursor getVarianceCursor(final String receiver,
+      final String transmitter, final long oldest, final long youngest,
+      final CompactSeries.Cursor cursor) {
 
-    Map<String, NavigableSet<ChartItem<Float>>> receiverMap = this.varianceRssiByRByT
+    Map<String, CompactSeries> receiverMap = this.varianceRssiByRByT
         .get(receiver);
 
     if (receiverMap == null) {
       return null;
     }
 
-    NavigableSet<ChartItem<Float>> transmitterQueue = receiverMap
-        .get(transmitter);
+    CompactSeries transmitterQueue = receiverMap.get(transmitter);
     if (transmitterQueue == null) {
       return null;
     }
-
-    SimpleChartItem<Float> fromItem = new SimpleChartItem<Float>(0f, oldest);
-    SimpleChartItem<Float> toItem = new SimpleChartItem<Float>(0f, youngest);
-    NavigableSet<ChartItem<Float>> subset = transmitterQueue.subSet(fromItem,
-        true, toItem, true);
-
-    LinkedList<ChartItem<Float>> returnedList = new LinkedList<ChartItem<Float>>();
-    returnedList.addAll(subset);
-    return returnedList;
+    this.retentionManager.linkViewed(receiver, transmitter);
+    return transmitterQueue.getCursor(oldest, youngest, cursor);
   }
 
   /**
@@ -490,13 +706,9 @@ public class DataCache2 implements Cloneable {
   public void setDeviceLocation(final String deviceId, final Point2D location) {
     this.deviceLocations.put(deviceId, location);
     if (this.receiverIds.contains(deviceId)) {
-      for (DataCache2Listener listener : this.listeners) {
-        listener.receiverAdded(deviceId);
-      }
+      this.eventBus.receiverAdded(deviceId);
     } else if (this.fiduciaryTransmitterIds.contains(deviceId)) {
-      for (DataCache2Listener listener : this.listeners) {
-        listener.transmitterAdded(deviceId, true);
-      }
+      this.eventBus.transmitterAdded(deviceId, true);
     }
     this.lastRssiUpdate = System.currentTimeMillis();
     this.lastVarianceUpdate = System.currentTimeMillis();
@@ -506,6 +718,47 @@ public class DataCache2 implements Cloneable {
     return this.deviceLocations.get(deviceId);
   }
 
+  /**
+   * Forgets the receivers and fiduciary transmitters that are not in
+   * {@code anchorIds}, along with their locations and sensor mappings. Used
+   * to drop anchors restored from a session snapshot that the world model no
+   * longer has.
+   * 
+   * @param anchorIds
+   *          the URIs of the anchors to keep.
+   * @return the number of anchors removed.
+   */
+  public int retainAnchors(final Collection<String> anchorIds) {
+    List<String> removed = new LinkedList<String>();
+    for (String rxer : new LinkedList<String>(this.receiverIds)) {
+      if (!anchorIds.contains(rxer) && this.receiverIds.remove(rxer)) {
+        removed.add(rxer);
+        --this.numRxers;
+      }
+    }
+    for (String txer : new LinkedList<String>(
+        this.fiduciaryTransmitterIds)) {
+      if (!anchorIds.contains(txer)
+          && this.fiduciaryTransmitterIds.remove(txer)) {
+        removed.add(txer);
+        --this.numFidTxers;
+      }
+    }
+    if (removed.isEmpty()) {
+      return 0;
+    }
+    for (String uri : removed) {
+      this.deviceLocations.remove(uri);
+    }
+    this.sensorToUri.values().removeAll(removed);
+    this.statsPanel.setNumRxers(this.numRxers);
+    this.statsPanel.setNumFidTxers(this.numFidTxers);
+    this.eventBus.reset();
+    log.info("Removed {} anchors that are no longer in the world model.",
+        Integer.valueOf(removed.size()));
+    return removed.size();
+  }
+
   /**
    * Returns a list containing all dynamic transmitters seen from the world model
    * since connection (or since file load).
@@ -542,7 +795,7 @@ public class DataCache2 implements Cloneable {
     long desiredOrJustBefore = this.isClone ? this.creationTs - timeOffset
         : System.currentTimeMillis() - timeOffset;
 
-    Map<String, NavigableSet<ChartItem<Float>>> receiverSamples = this.averageRssiByRByT
+    Map<String, CompactSeries> receiverSamples = this.averageRssiByRByT
         .get(receiver);
 
     if (receiverSamples == null) {
@@ -550,35 +803,18 @@ public class DataCache2 implements Cloneable {
       return Float.NaN;
     }
 
-    NavigableSet<ChartItem<Float>> transmitterSamples = receiverSamples
-        .get(transmitter);
+    CompactSeries transmitterSamples = receiverSamples.get(transmitter);
 
     if (transmitterSamples == null) {
       // log.warn("No samples for {}", transmitter);
       return Float.NaN;
     }
-
-    SimpleChartItem<Float> searchItem = new SimpleChartItem<Float>(0f,
-        desiredOrJustBefore);
-    NavigableSet<ChartItem<Float>> itemsBefore = transmitterSamples.headSet(
-        searchItem, true);
-
-    float theValue = Float.NaN;
-    // From oldest to newest
-    for (Iterator<ChartItem<Float>> iter = itemsBefore.iterator(); iter
-        .hasNext();) {
-      ChartItem<Float> someItem = iter.next();
-      if (someItem.getCreationTime() < desiredOrJustBefore - window) {
-        continue;
-      }
-      if (someItem.getCreationTime() >= desiredOrJustBefore) {
-        break;
-      }
-
-      theValue = someItem.getValue().floatValue();
+    if (timeOffset > 0) {
+      this.retentionManager.linkViewed(receiver, transmitter);
     }
 
-    return theValue;
+    return transmitterSamples.getLatestValue(desiredOrJustBefore - window,
+        desiredOrJustBefore - 1);
   }
 
   /**
@@ -594,7 +830,7 @@ public class DataCache2 implements Cloneable {
    */
   public ChartItem<Float> getCurrentRssiItem(final String transmitter,
       final String receiver) {
-    Map<String, NavigableSet<ChartItem<Float>>> receiverSamples = this.averageRssiByRByT
+    Map<String, CompactSeries> receiverSamples = this.averageRssiByRByT
         .get(receiver);
 
     if (receiverSamples == null) {
@@ -602,15 +838,14 @@ public class DataCache2 implements Cloneable {
       return null;
     }
 
-    NavigableSet<ChartItem<Float>> transmitterSamples = receiverSamples
-        .get(transmitter);
+    CompactSeries transmitterSamples = receiverSamples.get(transmitter);
 
     if (transmitterSamples == null) {
       // log.warn("No samples for {}", transmitter);
       return null;
     }
 
-    ChartItem<Float> mostRecent = transmitterSamples.last();
+    ChartItem<Float> mostRecent = transmitterSamples.getNewest();
 
     if (mostRecent == null) {
       return null;
@@ -659,21 +894,20 @@ public class DataCache2 implements Cloneable {
    */
   public ChartItem<Float> getCurrentVarianceItem(final String transmitter,
       final String receiver) {
-    Map<String, NavigableSet<ChartItem<Float>>> receiverSamples = this.varianceRssiByRByT
+    Map<String, CompactSeries> receiverSamples = this.varianceRssiByRByT
         .get(receiver);
 
     if (receiverSamples == null) {
       return null;
     }
 
-    NavigableSet<ChartItem<Float>> transmitterSamples = receiverSamples
-        .get(transmitter);
+    CompactSeries transmitterSamples = receiverSamples.get(transmitter);
 
     if (transmitterSamples == null) {
       return null;
     }
 
-    ChartItem<Float> mostRecent = transmitterSamples.last();
+    ChartItem<Float> mostRecent = transmitterSamples.getNewest();
 
     if (mostRecent == null) {
       return null;
@@ -694,7 +928,7 @@ public class DataCache2 implements Cloneable {
     long desiredOrJustBefore = this.isClone ? this.creationTs - timeOffset
         : System.currentTimeMillis() - timeOffset;
 
-    Map<String, NavigableSet<ChartItem<Float>>> receiverSamples = this.varianceRssiByRByT
+    Map<String, CompactSeries> receiverSamples = this.varianceRssiByRByT
         .get(receiver);
 
     if (receiverSamples == null) {
@@ -702,35 +936,227 @@ public class DataCache2 implements Cloneable {
       return Float.NaN;
     }
 
-    NavigableSet<ChartItem<Float>> transmitterSamples = receiverSamples
-        .get(transmitter);
+    CompactSeries transmitterSamples = receiverSamples.get(transmitter);
 
     if (transmitterSamples == null) {
       // log.warn("No samples for {}", transmitter);
       return Float.NaN;
     }
-    SimpleChartItem<Float> searchItem = new SimpleChartItem<Float>(0f,
+    if (timeOffset > 0) {
+      this.retentionManager.linkViewed(receiver, transmitter);
+    }
+    return transmitterSamples.getLatestValue(desiredOrJustBefore - window,
         desiredOrJustBefore);
-    NavigableSet<ChartItem<Float>> itemsBefore = transmitterSamples.headSet(
-        searchItem, true);
+  }
 
-    float theValue = Float.NaN;
+  /**
+   * Adds an RSSI value to the sliding-window aggregates of a link.
+   */
+  protected void aggregateRssi(final String rxer, final String txer,
+      final float value, final long timestamp) {
+    ConcurrentMap<String, WindowAggregate[]> receiverAggregates = getReceiverMap(
+        this.rssiAggregatesByRByT, rxer);
+    WindowAggregate[] aggregates = receiverAggregates.get(txer);
+    if (aggregates == null) {
+      long[] windows = this.aggregateWindows;
+      WindowAggregate[] created = new WindowAggregate[windows.length];
+      for (int i = 0; i < windows.length; ++i) {
+        created[i] = new WindowAggregate(windows[i]);
+      }
+      aggregates = receiverAggregates.putIfAbsent(txer, created);
+      if (aggregates == null) {
+        aggregates = created;
+      }
+    }
+    for (WindowAggregate aggregate : aggregates) {
+      aggregate.add(value, timestamp);
+    }
+  }
+
+  /**
+   * Returns the map of transmitters for a receiver, creating it if needed.
+   * Only the first map created for a receiver is kept.
+   */
+  private static <V> ConcurrentMap<String, V> getReceiverMap(
+      final ConcurrentMap<String, ConcurrentMap<String, V>> byReceiver,
+      final String rxer) {
+    ConcurrentMap<String, V> receiverMap = byReceiver.get(rxer);
+    if (receiverMap == null) {
+      receiverMap = new ConcurrentHashMap<String, V>();
+      ConcurrentMap<String, V> existing = byReceiver.putIfAbsent(rxer,
+          receiverMap);
+      if (existing != null) {
+        receiverMap = existing;
+      }
+    }
+    return receiverMap;
+  }
 
-    // From oldest to newest
-    for (Iterator<ChartItem<Float>> iter = itemsBefore.iterator(); iter
-        .hasNext();) {
-      ChartItem<Float> someItem = iter.next();
-      if (someItem.getCreationTime() < desiredOrJustBefore - window) {
+  /**
+   * Rebuilds the sliding-window aggregates from the cached RSSI values.
+   */
+  protected void reaggregateRssi() {
+    this.rssiAggregatesByRByT.clear();
+    for (String rxer : this.averageRssiByRByT.keySet()) {
+      Map<String, CompactSeries> receiverItems = this.averageRssiByRByT
+          .get(rxer);
+      if (receiverItems == null) {
         continue;
       }
-      if (someItem.getCreationTime() > desiredOrJustBefore) {
-        break;
+      for (String txer : receiverItems.keySet()) {
+        CompactSeries rssiQueue = receiverItems.get(txer);
+        if (rssiQueue == null) {
+          continue;
+        }
+        for (ChartItem<Float> item : rssiQueue.getRange(Long.MIN_VALUE,
+            Long.MAX_VALUE)) {
+          this.aggregateRssi(rxer, txer, item.getValue().floatValue(),
+              item.getCreationTime());
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the count, mean, variance, minimum and maximum of the RSSI values
+   * for a link within the most recent {@code window} milliseconds. These are
+   * maintained as samples arrive and expire, so this is a constant-time call.
+   *
+   * @param transmitter
+   *          the transmitter that sent the packets.
+   * @param receiver
+   *          the receiver that observed them.
+   * @param window
+   *          the window length, which must be one of the configured
+   *          {@link #getAggregateWindows() aggregate windows}.
+   * @return the window statistics, or {@code null} if the window is not
+   *         configured or contains no values.
+   */
+  public WindowAggregate.Stats getWindowStats(final String transmitter,
+      final String receiver, final long window) {
+    Map<String, WindowAggregate[]> receiverAggregates = this.rssiAggregatesByRByT
+        .get(receiver);
+    if (receiverAggregates == null) {
+      return null;
+    }
+    WindowAggregate[] aggregates = receiverAggregates.get(transmitter);
+    if (aggregates == null) {
+      return null;
+    }
+    long now = this.isClone ? this.creationTs : System.currentTimeMillis();
+    for (WindowAggregate aggregate : aggregates) {
+      if (aggregate.getWindow() == window) {
+        return aggregate.getStats(now);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return a copy of the window lengths, in milliseconds, for which RSSI
+   *         aggregates are kept.
+   */
+  public long[] getAggregateWindows() {
+    return this.aggregateWindows.clone();
+  }
+
+  /**
+   * Sets the window lengths for which RSSI aggregates are kept, and rebuilds
+   * the aggregates from the cached RSSI values. Windows longer than the
+   * maximum cache age will only cover the cached values.
+   *
+   * @param windows
+   *          the window lengths, in milliseconds.
+   */
+  public synchronized void setAggregateWindows(final long... windows) {
+    this.aggregateWindows = windows.clone();
+    this.reaggregateRssi();
+  }
+
+  /**
+   * Adds a new signal-to-distance item to the signal index and path-loss
+   * models of a receiver.
+   */
+  protected void indexSigToDist(final String rxer,
+      final SignalToDistanceItem item) {
+    SignalToDistanceIndex index = this.sigToDistBySignal.get(rxer);
+    if (index == null) {
+      SignalToDistanceIndex created = new SignalToDistanceIndex();
+      index = this.sigToDistBySignal.putIfAbsent(rxer, created);
+      if (index == null) {
+        index = created;
+      }
+    }
+    index.add(item);
+
+    PathLossModel model = this.pathLossByReceiver.get(rxer);
+    if (model == null) {
+      PathLossModel created = new PathLossModel();
+      model = this.pathLossByReceiver.putIfAbsent(rxer, created);
+      if (model == null) {
+        model = created;
       }
+    }
+    model.add(item);
+    this.globalPathLoss.add(item);
+  }
+
+  /**
+   * Removes an expired signal-to-distance item from the signal index and
+   * path-loss models of a receiver.
+   */
+  protected void unindexSigToDist(final String rxer,
+      final SignalToDistanceItem item) {
+    SignalToDistanceIndex index = this.sigToDistBySignal.get(rxer);
+    if (index != null) {
+      index.remove(item);
+    }
+    PathLossModel model = this.pathLossByReceiver.get(rxer);
+    if (model != null) {
+      model.remove(item);
+    }
+    this.globalPathLoss.remove(item);
+  }
+
+  /**
+   * Builds the signal index and path-loss models of a receiver from its
+   * signal-to-distance history. Only used when loading or cloning, before the
+   * receiver has any other signal-to-distance data.
+   */
+  protected void reindexSigToDist(final String rxer,
+      final Collection<SignalToDistanceItem> history) {
+    this.sigToDistBySignal.put(rxer, new SignalToDistanceIndex(history));
+    PathLossModel model = new PathLossModel();
+    for (SignalToDistanceItem item : history) {
+      model.add(item);
+      this.globalPathLoss.add(item);
+    }
+    this.pathLossByReceiver.put(rxer, model);
+  }
 
-      theValue = someItem.getValue().floatValue();
+  /**
+   * Returns the path-loss fit (RSSI versus log-distance) for a receiver over
+   * the cached signal-to-distance data. The fit is maintained as samples
+   * arrive and expire, so this is a constant-time call.
+   *
+   * @return the fit, or {@code null} if there is not enough data.
+   */
+  public PathLossModel.Fit getPathLossFit(final String receiverId) {
+    PathLossModel model = this.pathLossByReceiver.get(receiverId);
+    if (model == null) {
+      return null;
     }
+    return model.getFit();
+  }
 
-    return theValue;
+  /**
+   * Returns the path-loss fit (RSSI versus log-distance) over the cached
+   * signal-to-distance data of all receivers.
+   *
+   * @return the fit, or {@code null} if there is not enough data.
+   */
+  public PathLossModel.Fit getGlobalPathLossFit() {
+    return this.globalPathLoss.getFit();
   }
 
   /**
@@ -762,6 +1188,45 @@ public class DataCache2 implements Cloneable {
     return itemList;
   }
 
+  /**
+   * Returns the signal-to-distance items for a receiver with signal values in
+   * [{@code minSignal}, {@code maxSignal}] and creation times in [
+   * {@code oldest}, {@code youngest}], ordered by signal value.
+   *
+   * @return the matching items, or {@code null} if there is no
+   *         signal-to-distance data for the receiver.
+   */
+  public List<SignalToDistanceItem> getSignalToDistance(
+      final String receiverId, final float minSignal, final float maxSignal,
+      final long oldest, final long youngest) {
+    SignalToDistanceIndex index = this.sigToDistBySignal.get(receiverId);
+    if (index == null) {
+      return null;
+    }
+    return index.getRange(minSignal, maxSignal, oldest, youngest);
+  }
+
+  /**
+   * Returns the signal-to-distance item for a receiver whose signal value is
+   * nearest to {@code signal}, either above or below it, within the time
+   * window. Items to or from {@code excludedId} are ignored.
+   *
+   * @param above
+   *          {@code true} to find the nearest item with a greater signal
+   *          value, {@code false} for the nearest item with a lesser value.
+   * @return the nearest item, or {@code null} if there is none.
+   */
+  public SignalToDistanceItem getNearestSignalToDistance(
+      final String receiverId, final float signal, final boolean above,
+      final long oldest, final long youngest, final String excludedId) {
+    SignalToDistanceIndex index = this.sigToDistBySignal.get(receiverId);
+    if (index == null) {
+      return null;
+    }
+    return above ? index.getNextAbove(signal, oldest, youngest, excludedId)
+        : index.getNextBelow(signal, oldest, youngest, excludedId);
+  }
+
   public DataCache2 clone() {
     DataCache2 returnedCache = new DataCache2(new ConnectionHandler(),
         this.creationTs);
@@ -788,6 +1253,9 @@ public class DataCache2 implements Cloneable {
 
     this.receiverIds.clear();
     this.numRxers = 0;
+    this.dynamicTransmitterIds.clear();
+    this.dynamicDevices.clear();
+    this.eventBus.clear();
 
     log.info("Region info and device locations cleared from cache.");
   }
@@ -798,14 +1266,16 @@ public class DataCache2 implements Cloneable {
    * locations, you should call {@link #clearAll()} instead.
    */
   public void clearCachedData() {
+    // Every series is about to be removed
+    this.expiryWheel.clear();
     for (String rxer : this.averageRssiByRByT.keySet()) {
-      Map<String, NavigableSet<ChartItem<Float>>> item = this.averageRssiByRByT
+      Map<String, CompactSeries> item = this.averageRssiByRByT
           .get(rxer);
       if (item == null) {
         continue;
       }
       for (String txer : item.keySet()) {
-        NavigableSet<ChartItem<Float>> deque = item.get(txer);
+        CompactSeries deque = item.get(txer);
         if (deque == null) {
           continue;
         }
@@ -816,13 +1286,13 @@ public class DataCache2 implements Cloneable {
     this.averageRssiByRByT.clear();
 
     for (String rxer : this.varianceRssiByRByT.keySet()) {
-      Map<String, NavigableSet<ChartItem<Float>>> item = this.varianceRssiByRByT
+      Map<String, CompactSeries> item = this.varianceRssiByRByT
           .get(rxer);
       if (item == null) {
         continue;
       }
       for (String txer : item.keySet()) {
-        NavigableSet<ChartItem<Float>> deque = item.get(txer);
+        CompactSeries deque = item.get(txer);
         if (deque == null) {
           continue;
         }
@@ -842,9 +1312,20 @@ public class DataCache2 implements Cloneable {
     }
 
     this.sigToDistHistory.clear();
-    this.numRssiPoints = 0;
-    this.numVarPoints = 0;
-    this.numSigToDistPoints = 0;
+    for (SignalToDistanceIndex index : this.sigToDistBySignal.values()) {
+      index.clear();
+    }
+    this.sigToDistBySignal.clear();
+    this.pathLossByReceiver.clear();
+    this.globalPathLoss.clear();
+    this.rssiAggregatesByRByT.clear();
+    if (this.offHeapStorage != null) {
+      // Every chunk has been freed, so the slabs can go
+      this.offHeapStorage.trim();
+    }
+    this.numRssiPoints.set(0);
+    this.numVarPoints.set(0);
+    this.numSigToDistPoints.set(0);
     this.lastRssiUpdate = System.currentTimeMillis();
     this.lastVarianceUpdate = System.currentTimeMillis();
 
@@ -863,6 +1344,24 @@ public class DataCache2 implements Cloneable {
     return receivers;
   }
 
+  /**
+   * Returns the transmitters with RSSI values at {@code receiver}. The returned
+   * List is not bound to the cache data and may be modified freely.
+   * 
+   * @param receiver
+   *          the receiver ID.
+   * @return the transmitter IDs, which may be URIs or sensor IDs.
+   */
+  public List<String> getLinkedTransmitterIds(final String receiver) {
+    List<String> transmitters = new LinkedList<String>();
+    Map<String, CompactSeries> receiverItems = this.averageRssiByRByT
+        .get(receiver);
+    if (receiverItems != null) {
+      transmitters.addAll(receiverItems.keySet());
+    }
+    return transmitters;
+  }
+
   /**
    * Returns a list of fiduciary transmitter ID values (URIs) as Strings. The
    * returned List is not bound to the cache data and may be modified freely.
@@ -906,40 +1405,38 @@ public class DataCache2 implements Cloneable {
       NavigableSet<SignalToDistanceItem> cloneReceiverSigToDist = new ConcurrentSkipListSet<SignalToDistanceItem>();
       cloneReceiverSigToDist.addAll(receiverSigToDist);
       clone.sigToDistHistory.put(receiver, cloneReceiverSigToDist);
+      clone.reindexSigToDist(receiver, cloneReceiverSigToDist);
     }
-    clone.numSigToDistPoints = this.numSigToDistPoints;
+    clone.numSigToDistPoints.set(this.numSigToDistPoints.get());
 
     for (String receiver : this.averageRssiByRByT.keySet()) {
-      Map<String, NavigableSet<ChartItem<Float>>> receiverQueues = this.averageRssiByRByT
+      Map<String, CompactSeries> receiverQueues = this.averageRssiByRByT
           .get(receiver);
-      ConcurrentHashMap<String, NavigableSet<ChartItem<Float>>> cloneReceiverQueues = new ConcurrentHashMap<String, NavigableSet<ChartItem<Float>>>();
+      ConcurrentHashMap<String, CompactSeries> cloneReceiverQueues = new ConcurrentHashMap<String, CompactSeries>();
       clone.averageRssiByRByT.put(receiver, cloneReceiverQueues);
       for (String transmitter : receiverQueues.keySet()) {
-        NavigableSet<ChartItem<Float>> transmitterQueue = receiverQueues
-            .get(transmitter);
-        NavigableSet<ChartItem<Float>> cloneTransmitterQueue = new ConcurrentSkipListSet<ChartItem<Float>>(
-            new ChartItemTimeComparator(false));
+        CompactSeries cloneTransmitterQueue = receiverQueues.get(transmitter)
+            .copy();
         cloneReceiverQueues.put(transmitter, cloneTransmitterQueue);
-        cloneTransmitterQueue.addAll(transmitterQueue);
         cloneNumRssi += cloneTransmitterQueue.size();
       }
     }
 
     for (String receiver : this.varianceRssiByRByT.keySet()) {
-      Map<String, NavigableSet<ChartItem<Float>>> receiverQueues = this.varianceRssiByRByT
+      Map<String, CompactSeries> receiverQueues = this.varianceRssiByRByT
           .get(receiver);
-      ConcurrentHashMap<String, NavigableSet<ChartItem<Float>>> cloneReceiverQueues = new ConcurrentHashMap<String, NavigableSet<ChartItem<Float>>>();
+      ConcurrentHashMap<String, CompactSeries> cloneReceiverQueues = new ConcurrentHashMap<String, CompactSeries>();
       clone.varianceRssiByRByT.put(receiver, cloneReceiverQueues);
       for (String transmitter : receiverQueues.keySet()) {
-        NavigableSet<ChartItem<Float>> transmitterQueue = receiverQueues
-            .get(transmitter);
-        NavigableSet<ChartItem<Float>> cloneTransmitterQueue = new ConcurrentSkipListSet<ChartItem<Float>>(
-            new ChartItemTimeComparator(false));
+        CompactSeries cloneTransmitterQueue = receiverQueues.get(transmitter)
+            .copy();
         cloneReceiverQueues.put(transmitter, cloneTransmitterQueue);
-        cloneTransmitterQueue.addAll(transmitterQueue);
         cloneNumVar += cloneTransmitterQueue.size();
       }
     }
+
+    clone.aggregateWindows = this.aggregateWindows.clone();
+    clone.reaggregateRssi();
   }
 
   public long getMaxCacheAge() {
@@ -947,7 +1444,62 @@ public class DataCache2 implements Cloneable {
   }
 
   public void setMaxCacheAge(long maxCacheAge) {
+    long previous = this.maxCacheAge;
     this.maxCacheAge = maxCacheAge;
+    if (maxCacheAge < previous) {
+      // Series are scheduled for the old age, so trim them all now
+      this.sweepCache();
+    }
+  }
+
+  /**
+   * @return how long values are actually kept, which is shorter than the
+   *         maximum cache age while the cache is over its memory budget.
+   */
+  public long getRetentionAge() {
+    long reduced = this.retentionManager.getReducedAge();
+    return reduced > 0 && reduced < this.maxCacheAge ? reduced
+        : this.maxCacheAge;
+  }
+
+  public RetentionManager getRetentionManager() {
+    return this.retentionManager;
+  }
+
+  /**
+   * @return the off-heap storage for cached values, or {@code null} if they
+   *         are kept on the heap.
+   */
+  public SlabAllocator getOffHeapStorage() {
+    return this.offHeapStorage;
+  }
+
+  /**
+   * @return a new, empty RSSI series that uses the cache's off-heap storage,
+   *         if any.
+   */
+  protected CompactSeries newSeries() {
+    return new CompactSeries(CompactSeries.DEFAULT_RESOLUTION,
+        this.offHeapStorage);
+  }
+
+  /**
+   * @return a new, empty variance series that uses the cache's off-heap
+   *         storage, if any.
+   */
+  protected CompactSeries newVarianceSeries() {
+    return new CompactSeries(CompactSeries.VARIANCE_RESOLUTION,
+        this.offHeapStorage);
+  }
+
+  /**
+   * Sets the memory budget for cached values.
+   * 
+   * @param budget
+   *          the budget in bytes, or 0 for no budget.
+   */
+  public void setMemoryBudget(final long budget) {
+    this.retentionManager.setBudget(budget);
   }
 
   public Rectangle2D getRegionBounds() {
@@ -986,39 +1538,336 @@ public class DataCache2 implements Cloneable {
     return creationTs;
   }
 
+  /**
+   * Removes expired values from every series at once. Normally values are
+   * removed a few series at a time by {@link #expireDueSeries()}, so this is
+   * only needed when the maximum age is reduced.
+   */
   protected void sweepCache() {
     if (this.isClone) {
       return;
     }
-    long oldestTs = System.currentTimeMillis() - this.maxCacheAge;
-    for (Map<String, NavigableSet<ChartItem<Float>>> rxerMap : this.averageRssiByRByT
+    long now = System.currentTimeMillis();
+    long oldestTs = now - this.getRetentionAge();
+    for (Map<String, CompactSeries> rxerMap : this.averageRssiByRByT
         .values()) {
-      for (NavigableSet<ChartItem<Float>> txerQ : rxerMap.values()) {
-        while (!txerQ.isEmpty() && txerQ.first().getCreationTime() < oldestTs) {
-          txerQ.pollFirst();
-          --this.numRssiPoints;
-        }
+      for (CompactSeries txerQ : rxerMap.values()) {
+        this.numRssiPoints.addAndGet(-txerQ.removeBefore(oldestTs));
       }
     }
 
-    for (Map<String, NavigableSet<ChartItem<Float>>> rxerMap : this.varianceRssiByRByT
+    for (Map<String, WindowAggregate[]> rxerMap : this.rssiAggregatesByRByT
         .values()) {
-      for (NavigableSet<ChartItem<Float>> txerQ : rxerMap.values()) {
-        while (!txerQ.isEmpty() && txerQ.first().getCreationTime() < oldestTs) {
-          txerQ.pollFirst();
-          --this.numVarPoints;
+      for (WindowAggregate[] aggregates : rxerMap.values()) {
+        for (WindowAggregate aggregate : aggregates) {
+          aggregate.evict(now);
         }
       }
     }
 
-    for (NavigableSet<SignalToDistanceItem> sigItems : this.sigToDistHistory
+    for (Map<String, CompactSeries> rxerMap : this.varianceRssiByRByT
         .values()) {
+      for (CompactSeries txerQ : rxerMap.values()) {
+        this.numVarPoints.addAndGet(-txerQ.removeBefore(oldestTs));
+      }
+    }
+
+    for (String rxer : this.sigToDistHistory.keySet()) {
+      NavigableSet<SignalToDistanceItem> sigItems = this.sigToDistHistory
+          .get(rxer);
+      if (sigItems == null) {
+        continue;
+      }
       while (!sigItems.isEmpty()
           && sigItems.first().getCreationTime() < oldestTs) {
-        sigItems.pollFirst();
-        --this.numSigToDistPoints;
+        SignalToDistanceItem expired = sigItems.pollFirst();
+        if (expired != null) {
+          this.unindexSigToDist(rxer, expired);
+        }
+        this.numSigToDistPoints.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Schedules the first expiry of a new series, whose first value has the
+   * timestamp {@code firstTs}.
+   */
+  protected void scheduleExpiry(final ExpiringSeries series, final long firstTs) {
+    if (this.isClone) {
+      return;
+    }
+    this.expiryWheel.schedule(series,
+        Math.max(firstTs + this.getRetentionAge(), System.currentTimeMillis()
+            + EXPIRY_GRANULARITY));
+  }
+
+  /**
+   * Schedules the expiry of every series in the cache, replacing anything
+   * already scheduled.
+   */
+  protected void scheduleAllExpiry() {
+    this.expiryWheel.clear();
+    for (Map.Entry<String, ConcurrentMap<String, CompactSeries>> rxerEntry : this.averageRssiByRByT
+        .entrySet()) {
+      for (Map.Entry<String, CompactSeries> txerEntry : rxerEntry.getValue()
+          .entrySet()) {
+        this.scheduleExpiry(new RssiSeries(rxerEntry.getKey(),
+            txerEntry.getKey(), txerEntry.getValue()), txerEntry.getValue()
+            .getOldestTime());
       }
     }
+    for (Map.Entry<String, ConcurrentMap<String, CompactSeries>> rxerEntry : this.varianceRssiByRByT
+        .entrySet()) {
+      for (Map.Entry<String, CompactSeries> txerEntry : rxerEntry.getValue()
+          .entrySet()) {
+        this.scheduleExpiry(new VarianceSeries(rxerEntry.getKey(),
+            txerEntry.getKey(), txerEntry.getValue()), txerEntry.getValue()
+            .getOldestTime());
+      }
+    }
+    for (Map.Entry<String, NavigableSet<SignalToDistanceItem>> entry : this.sigToDistHistory
+        .entrySet()) {
+      long oldest = Long.MIN_VALUE;
+      try {
+        oldest = entry.getValue().first().getCreationTime();
+      } catch (NoSuchElementException nsee) {
+        // Empty, so it expires as soon as possible
+      }
+      this.scheduleExpiry(new SigToDistSeries(entry.getKey(), entry.getValue()),
+          oldest);
+    }
+  }
+
+  /**
+   * Removes an expired, empty series from its receiver's map, unless a value
+   * was added to it meanwhile.
+   * 
+   * @return {@code true} if the series was removed and should no longer be
+   *         scheduled.
+   */
+  private static boolean removeIfEmpty(
+      final ConcurrentMap<String, CompactSeries> rxerMap, final String txer,
+      final CompactSeries items) {
+    if (!items.isEmpty() || !rxerMap.remove(txer, items)) {
+      return false;
+    }
+    // A value may have been added between the check and the removal
+    if (!items.isEmpty() && rxerMap.putIfAbsent(txer, items) == null) {
+      return false;
+    }
+    items.clear();
+    return true;
+  }
+
+  /**
+   * Trims the series whose oldest values have expired, up to
+   * {@link #EXPIRY_BUDGET} series at a time.
+   */
+  protected void expireDueSeries() {
+    if (this.isClone) {
+      return;
+    }
+    this.expiryWheel.advance(System.currentTimeMillis(), EXPIRY_BUDGET,
+        this.expiryHandler);
+  }
+
+  /**
+   * @return when the oldest value of {@code items} expires, or when to check
+   *         an empty series again.
+   */
+  private long nextExpiry(final NavigableSet<? extends ChartItem<?>> items,
+      final long now) {
+    long oldest = Long.MIN_VALUE;
+    if (!items.isEmpty()) {
+      try {
+        oldest = items.first().getCreationTime();
+      } catch (NoSuchElementException nsee) {
+        // Emptied by another thread
+      }
+    }
+    return this.nextExpiry(oldest, now);
+  }
+
+  /**
+   * @return when the oldest value of {@code items} expires, or when to check
+   *         an empty series again.
+   */
+  private long nextExpiry(final CompactSeries items, final long now) {
+    return this.nextExpiry(items.getOldestTime(), now);
+  }
+
+  /**
+   * @param oldest
+   *          the timestamp of the oldest value in a series, or
+   *          {@code Long.MIN_VALUE} if it is empty.
+   */
+  private long nextExpiry(final long oldest, final long now) {
+    long next = oldest == Long.MIN_VALUE ? now + this.getRetentionAge()
+        : oldest + this.getRetentionAge();
+    return Math.max(next, now + EXPIRY_GRANULARITY);
+  }
+
+  /**
+   * A time-ordered series of values in the cache, scheduled in the expiry
+   * wheel.
+   */
+  protected abstract class ExpiringSeries {
+    protected final String rxer;
+
+    protected ExpiringSeries(final String rxer) {
+      this.rxer = rxer;
+    }
+
+    /**
+     * Removes the expired values from the series.
+     * 
+     * @return when to trim the series next, or -1 if it is no longer in the
+     *         cache.
+     */
+    protected abstract long expire(final long now);
+  }
+
+  protected class RssiSeries extends ExpiringSeries {
+    private final String txer;
+    private final CompactSeries items;
+
+    protected RssiSeries(final String rxer, final String txer,
+        final CompactSeries items) {
+      super(rxer);
+      this.txer = txer;
+      this.items = items;
+    }
+
+    @Override
+    protected long expire(final long now) {
+      ConcurrentMap<String, CompactSeries> rxerMap = DataCache2.this.averageRssiByRByT
+          .get(this.rxer);
+      if (rxerMap == null || rxerMap.get(this.txer) != this.items) {
+        return -1;
+      }
+      DataCache2.this.numRssiPoints.addAndGet(-(this.items.removeBefore(now
+          - DataCache2.this.getRetentionAge())));
+      Map<String, WindowAggregate[]> aggregateMap = DataCache2.this.rssiAggregatesByRByT
+          .get(this.rxer);
+      if (removeIfEmpty(rxerMap, this.txer, this.items)) {
+        if (aggregateMap != null) {
+          aggregateMap.remove(this.txer);
+        }
+        return -1;
+      }
+      WindowAggregate[] aggregates = aggregateMap == null ? null
+          : aggregateMap.get(this.txer);
+      if (aggregates != null) {
+        for (WindowAggregate aggregate : aggregates) {
+          aggregate.evict(now);
+        }
+      }
+      return DataCache2.this.nextExpiry(this.items, now);
+    }
+  }
+
+  protected class VarianceSeries extends ExpiringSeries {
+    private final String txer;
+    private final CompactSeries items;
+
+    protected VarianceSeries(final String rxer, final String txer,
+        final CompactSeries items) {
+      super(rxer);
+      this.txer = txer;
+      this.items = items;
+    }
+
+    @Override
+    protected long expire(final long now) {
+      ConcurrentMap<String, CompactSeries> rxerMap = DataCache2.this.varianceRssiByRByT
+          .get(this.rxer);
+      if (rxerMap == null || rxerMap.get(this.txer) != this.items) {
+        return -1;
+      }
+      DataCache2.this.numVarPoints.addAndGet(-(this.items.removeBefore(now
+          - DataCache2.this.getRetentionAge())));
+      if (removeIfEmpty(rxerMap, this.txer, this.items)) {
+        return -1;
+      }
+      return DataCache2.this.nextExpiry(this.items, now);
+    }
+  }
+
+  protected class SigToDistSeries extends ExpiringSeries {
+    private final NavigableSet<SignalToDistanceItem> items;
+
+    protected SigToDistSeries(final String rxer,
+        final NavigableSet<SignalToDistanceItem> items) {
+      super(rxer);
+      this.items = items;
+    }
+
+    @Override
+    protected long expire(final long now) {
+      if (DataCache2.this.sigToDistHistory.get(this.rxer) != this.items) {
+        return -1;
+      }
+      long oldestTs = now - DataCache2.this.getRetentionAge();
+      while (!this.items.isEmpty()
+          && this.items.first().getCreationTime() < oldestTs) {
+        SignalToDistanceItem expired = this.items.pollFirst();
+        if (expired != null) {
+          DataCache2.this.unindexSigToDist(this.rxer, expired);
+          DataCache2.this.numSigToDistPoints.decrementAndGet();
+        }
+      }
+      if (this.items.isEmpty()
+          && DataCache2.this.sigToDistHistory.remove(this.rxer, this.items)) {
+        // A value may have been added between the check and the removal
+        if (this.items.isEmpty()
+            || DataCache2.this.sigToDistHistory.putIfAbsent(this.rxer,
+                this.items) != null) {
+          return -1;
+        }
+      }
+      return DataCache2.this.nextExpiry(this.items, now);
+    }
+  }
+
+  /**
+   * Checks the cache against its memory budget.
+   */
+  protected void enforceRetention() {
+    if (this.isClone) {
+      return;
+    }
+    this.retentionManager.enforce();
+  }
+
+  /**
+   * Removes every other RSSI and variance value from {@code from} up to
+   * {@code before} for a single link, halving the resolution of that part of
+   * its history.
+   * 
+   * @return the number of values removed.
+   */
+  protected int downsampleLink(final String rxer, final String txer,
+      final long from, final long before) {
+    int removedRssi = downsample(this.averageRssiByRByT, rxer, txer, from,
+        before);
+    this.numRssiPoints.addAndGet(-removedRssi);
+    int removedVar = downsample(this.varianceRssiByRByT, rxer, txer, from,
+        before);
+    this.numVarPoints.addAndGet(-removedVar);
+    return removedRssi + removedVar;
+  }
+
+  private static int downsample(
+      final Map<String, ? extends Map<String, CompactSeries>> values,
+      final String rxer,
+      final String txer, final long from, final long before) {
+    Map<String, CompactSeries> rxerMap = values.get(rxer);
+    CompactSeries items = rxerMap == null ? null : rxerMap.get(txer);
+    if (items == null) {
+      return 0;
+    }
+    return items.downsample(from, before);
   }
 
   public void showStatsPane(final Component parent) {
@@ -1030,15 +1879,31 @@ public class DataCache2 implements Cloneable {
     // log.debug("Updating statistics.");
     this.statsPanel.setNumRxers(this.numRxers);
     this.statsPanel.setNumFidTxers(this.numFidTxers);
-    this.statsPanel.setNumRssiPoints(this.numRssiPoints);
-    this.statsPanel.setNumVarPoints(this.numVarPoints);
-    this.statsPanel.setNumSigDistPoints(this.numSigToDistPoints);
+    this.statsPanel.setNumRssiPoints(this.numRssiPoints.get());
+    this.statsPanel.setNumVarPoints(this.numVarPoints.get());
+    this.statsPanel.setNumSigDistPoints(this.numSigToDistPoints.get());
+    this.statsPanel.setRetention(this.retentionManager);
+    this.statsPanel.setOffHeap(this.offHeapStorage);
+    this.statsPanel.setBackfill(this.handler == null ? null : this.handler
+        .getBackfill());
   }
 
   public void shutdown() {
+    // Save before the closing window clears the cache
+    SessionSnapshot snapshot = this.sessionSnapshot;
+    if (snapshot != null) {
+      snapshot.saveForExit();
+    }
     this.taskTimer.cancel();
   }
 
+  /**
+   * Sets the snapshot that is saved when the cache is shut down.
+   */
+  public void setSessionSnapshot(final SessionSnapshot sessionSnapshot) {
+    this.sessionSnapshot = sessionSnapshot;
+  }
+
   public static Logger getLog() {
     return log;
   }
@@ -1096,9 +1961,7 @@ public class DataCache2 implements Cloneable {
           e.printStackTrace();
         }
         System.out.println("Load completed.");
-        for (DataCache2Listener listener : DataCache2.this.listeners) {
-          listener.fileLoaded(file.getPath());
-        }
+        DataCache2.this.eventBus.fileLoaded(file.getPath());
       }
     };
     loadThread.setPriority(Thread.MIN_PRIORITY);
@@ -1106,11 +1969,34 @@ public class DataCache2 implements Cloneable {
 
   }
 
+  /**
+   * Loads a saved cache on the calling thread, without displaying any progress.
+   * Listeners are notified once the cache has been loaded.
+   * 
+   * @param file
+   *          the saved cache file.
+   * @throws Exception
+   *           if the file cannot be read or is not a saved cache.
+   */
+  public void loadFromFile(final File file) throws Exception {
+    XStream xstream = new XStream(new StaxDriver());
+    ObjectInputStream in = xstream
+        .createObjectInputStream(new GZIPInputStream(new BufferedInputStream(
+            new FileInputStream(file))));
+    try {
+      this.fromStream(file.getPath(), in);
+    } finally {
+      in.close();
+    }
+    this.eventBus.fileLoaded(file.getPath());
+  }
+
   protected synchronized void toStream(String filename, ObjectOutputStream out)
       throws IOException {
 
-    int maxProgress = this.numFidTxers + this.numRxers + this.numRssiPoints
-        + this.numVarPoints + this.numSigToDistPoints;
+    int maxProgress = this.numFidTxers + this.numRxers
+        + this.numRssiPoints.get() + this.numVarPoints.get()
+        + this.numSigToDistPoints.get();
     int currProgress = 0;
     ProgressMonitor monitor = new ProgressMonitor(null, "Saving to \""
         + filename + "\"", "A note", currProgress, maxProgress);
@@ -1190,7 +2076,7 @@ public class DataCache2 implements Cloneable {
 
       out.writeObject(rxer);
       // Grab a map, clone it if it's not null
-      Map<String, NavigableSet<ChartItem<Float>>> cacheRxMap = DataCache2.this.averageRssiByRByT
+      Map<String, CompactSeries> cacheRxMap = DataCache2.this.averageRssiByRByT
           .get(rxer);
 
       if (cacheRxMap != null) {
@@ -1201,13 +2087,13 @@ public class DataCache2 implements Cloneable {
         out.writeObject(Integer.valueOf(txers.size()));
 
         for (String txer : txers) {
-          NavigableSet<ChartItem<Float>> cacheTxItems = cacheRxMap.get(txer);
+          CompactSeries cacheTxItems = cacheRxMap.get(txer);
           if (cacheTxItems != null) {
             // Be sure to write receiver, txer, deque so we can reconstruct
             // later
 
             out.writeObject(txer);
-            out.writeObject(cacheTxItems);
+            out.writeObject(toItemSet(cacheTxItems));
 
             currProgress += cacheTxItems.size();
             if (currProgress > maxProgress) {
@@ -1229,7 +2115,7 @@ public class DataCache2 implements Cloneable {
 
       out.writeObject(rxer);
       // Grab a map, clone it if it's not null
-      Map<String, NavigableSet<ChartItem<Float>>> cacheRxMap = DataCache2.this.varianceRssiByRByT
+      Map<String, CompactSeries> cacheRxMap = DataCache2.this.varianceRssiByRByT
           .get(rxer);
 
       if (cacheRxMap != null) {
@@ -1239,13 +2125,13 @@ public class DataCache2 implements Cloneable {
         // Number of transmitters mapped for this receiver
         out.writeObject(Integer.valueOf(txers.size()));
         for (String txer : txers) {
-          NavigableSet<ChartItem<Float>> cacheTxItems = cacheRxMap.get(txer);
+          CompactSeries cacheTxItems = cacheRxMap.get(txer);
           if (cacheTxItems != null) {
             // Be sure to write receiver, txer, deque so we can reconstruct
             // later
 
             out.writeObject(txer);
-            out.writeObject(cacheTxItems);
+            out.writeObject(toItemSet(cacheTxItems));
 
             currProgress += cacheTxItems.size();
             if (currProgress > maxProgress) {
@@ -1294,6 +2180,18 @@ public class DataCache2 implements Cloneable {
 
   }
 
+  /**
+   * Copies a series into the time-ordered set that saved caches have always
+   * stored, so files remain readable by older versions.
+   */
+  private static NavigableSet<ChartItem<Float>> toItemSet(
+      final CompactSeries series) {
+    NavigableSet<ChartItem<Float>> items = new ConcurrentSkipListSet<ChartItem<Float>>(
+        new ChartItemTimeComparator(false));
+    items.addAll(series.getRange(Long.MIN_VALUE, Long.MAX_VALUE));
+    return items;
+  }
+
   protected synchronized void fromStream(String filename, ObjectInputStream in)
       throws Exception {
 
@@ -1350,11 +2248,11 @@ public class DataCache2 implements Cloneable {
     for (int i = 0; i < numRxers; ++i) {
       String rxer = (String) in.readObject();
 
-      Map<String, NavigableSet<ChartItem<Float>>> cacheRxMap = this.averageRssiByRByT
+      ConcurrentMap<String, CompactSeries> cacheRxMap = this.averageRssiByRByT
           .get(rxer);
 
       if (cacheRxMap == null) {
-        cacheRxMap = new ConcurrentHashMap<String, NavigableSet<ChartItem<Float>>>();
+        cacheRxMap = new ConcurrentHashMap<String, CompactSeries>();
         this.averageRssiByRByT.put(rxer, cacheRxMap);
       }
       // Number of transmitters
@@ -1363,8 +2261,9 @@ public class DataCache2 implements Cloneable {
         String txer = (String) in.readObject();
         NavigableSet<ChartItem<Float>> fileTxItems = (NavigableSet<ChartItem<Float>>) in
             .readObject();
-        this.numRssiPoints += fileTxItems.size();
-        cacheRxMap.put(txer, fileTxItems);
+        CompactSeries series = this.newSeries();
+        this.numRssiPoints.addAndGet(series.addAll(fileTxItems));
+        cacheRxMap.put(txer, series);
       }
     }
 
@@ -1374,11 +2273,11 @@ public class DataCache2 implements Cloneable {
     for (int i = 0; i < numRxers; ++i) {
       String rxer = (String) in.readObject();
 
-      Map<String, NavigableSet<ChartItem<Float>>> cacheRxMap = this.varianceRssiByRByT
+      ConcurrentMap<String, CompactSeries> cacheRxMap = this.varianceRssiByRByT
           .get(rxer);
 
       if (cacheRxMap == null) {
-        cacheRxMap = new ConcurrentHashMap<String, NavigableSet<ChartItem<Float>>>();
+        cacheRxMap = new ConcurrentHashMap<String, CompactSeries>();
         this.varianceRssiByRByT.put(rxer, cacheRxMap);
       }
       // Number of transmitters
@@ -1387,8 +2286,9 @@ public class DataCache2 implements Cloneable {
         String txer = (String) in.readObject();
         NavigableSet<ChartItem<Float>> fileTxItems = (NavigableSet<ChartItem<Float>>) in
             .readObject();
-        this.numVarPoints += fileTxItems.size();
-        cacheRxMap.put(txer, fileTxItems);
+        CompactSeries series = this.newVarianceSeries();
+        this.numVarPoints.addAndGet(series.addAll(fileTxItems));
+        cacheRxMap.put(txer, series);
       }
     }
     System.out.println("Finished Variance queues.");
@@ -1398,20 +2298,23 @@ public class DataCache2 implements Cloneable {
       String rxer = (String) in.readObject();
       NavigableSet<SignalToDistanceItem> deque = (NavigableSet<SignalToDistanceItem>) in
           .readObject();
-      this.numSigToDistPoints += deque.size();
+      this.numSigToDistPoints.addAndGet(deque.size());
       this.sigToDistHistory.put(rxer, deque);
+      this.reindexSigToDist(rxer, deque);
     }
     System.out.println("Finished Sig-To-Dist queues.");
 
+    this.reaggregateRssi();
+
     this.updateStats();
-    for (DataCache2Listener listener : this.listeners) {
-      listener.receiverAdded(null);
-      listener.transmitterAdded(null, true);
-      // listener.transmitterAdded(null,false);
-    }
+    this.eventBus.reset();
 
   }
 
+  public String getRegionImageUrl() {
+    return regionImageUrl;
+  }
+
   public void setRegionImageUrl(String regionImageUrl) {
     this.regionImageUrl = regionImageUrl;
   }
@@ -1425,6 +2328,11 @@ public class DataCache2 implements Cloneable {
   }
 
   public void setClone(boolean isClone) {
+    boolean wasClone = this.isClone;
     this.isClone = isClone;
+    // Series created while a clone, such as from a loaded file, never expired
+    if (wasClone && !isClone) {
+      this.scheduleAllExpiry();
+    }
   }
 }
@@ -0,0 +1,39 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis;
+
+/**
+ * A cache listener that receives each batch of coalesced events in a single
+ * call, instead of one call per device.
+ * 
+ * @author Robert Moore
+ * 
+ */
+public interface DataCache2BatchListener extends DataCache2Listener {
+
+  /**
+   * Called on the Event Dispatch Thread with the events that arrived since the
+   * previous batch.
+   * 
+   * @param batch
+   *          the new devices and loaded files.
+   */
+  public void eventsDelivered(final CacheEventBus.Batch batch);
+}
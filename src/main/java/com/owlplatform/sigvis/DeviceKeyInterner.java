@@ -0,0 +1,122 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis;
+
+import java.util.Arrays;
+
+import com.owlplatform.common.util.HashableByteArray;
+
+/**
+ * Maps device identifiers to a single shared {@link HashableByteArray} per
+ * device, so that map keys are created once instead of once per sample.
+ * Lookups of known devices do not allocate or lock; adding a new device copies
+ * the table, which is cheap because devices are added rarely.
+ * 
+ * @author Robert Moore
+ * 
+ */
+public class DeviceKeyInterner {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  /**
+   * Open-addressed table of keys, with a power-of-two length. Replaced, never
+   * modified, once it has been published.
+   */
+  private volatile HashableByteArray[] keys = new HashableByteArray[INITIAL_CAPACITY];
+
+  private int size = 0;
+
+  /**
+   * Returns the shared key for {@code deviceId}, creating it if this is the
+   * first time the device has been seen.
+   * 
+   * @return the key, or {@code null} if {@code deviceId} is {@code null}.
+   */
+  public HashableByteArray intern(final byte[] deviceId) {
+    if (deviceId == null) {
+      return null;
+    }
+    int hash = Arrays.hashCode(deviceId);
+    HashableByteArray key = find(this.keys, deviceId, hash);
+    if (key != null) {
+      return key;
+    }
+    synchronized (this) {
+      HashableByteArray[] table = this.keys;
+      key = find(table, deviceId, hash);
+      if (key != null) {
+        return key;
+      }
+      key = new HashableByteArray(deviceId.clone());
+      int capacity = table.length;
+      if ((this.size + 1) * 2 > capacity) {
+        capacity *= 2;
+      }
+      HashableByteArray[] newTable = new HashableByteArray[capacity];
+      for (HashableByteArray existing : table) {
+        if (existing != null) {
+          insert(newTable, existing, Arrays.hashCode(existing.getData()));
+        }
+      }
+      insert(newTable, key, hash);
+      ++this.size;
+      this.keys = newTable;
+      return key;
+    }
+  }
+
+  public synchronized int size() {
+    return this.size;
+  }
+
+  public synchronized void clear() {
+    this.keys = new HashableByteArray[INITIAL_CAPACITY];
+    this.size = 0;
+  }
+
+  private static HashableByteArray find(final HashableByteArray[] table,
+      final byte[] deviceId, final int hash) {
+    int mask = table.length - 1;
+    for (int i = spread(hash) & mask;; i = (i + 1) & mask) {
+      HashableByteArray key = table[i];
+      if (key == null) {
+        return null;
+      }
+      if (Arrays.equals(key.getData(), deviceId)) {
+        return key;
+      }
+    }
+  }
+
+  private static void insert(final HashableByteArray[] table,
+      final HashableByteArray key, final int hash) {
+    int mask = table.length - 1;
+    int i = spread(hash) & mask;
+    while (table[i] != null) {
+      i = (i + 1) & mask;
+    }
+    table[i] = key;
+  }
+
+  private static int spread(final int hash) {
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -23,16 +23,20 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.mina.util.ConcurrentHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.owlplatform.sigvis.structs.ChartItem;
+import com.owlplatform.sigvis.structs.CompactSeries;
 import com.owlplatform.sigvis.structs.SignalToDistanceItem;
+import com.owlplatform.sigvis.structs.WindowAggregate;
 
 public class FilteringDataCache extends DataCache2 {
   private static final Logger log = LoggerFactory
@@ -49,11 +53,37 @@ public class FilteringDataCache extends DataCache2 {
   }
 
   public void addAllowedDevice(String deviceId) {
-    this.allowedDevices.add(deviceId);
+    if (this.allowedDevices.add(deviceId)) {
+      this.handler.allowedDevicesChanged();
+    }
   }
 
   public void removeAllowedDevice(String deviceId) {
-    this.allowedDevices.remove(deviceId);
+    if (this.allowedDevices.remove(deviceId)) {
+      this.handler.allowedDevicesChanged();
+    }
+  }
+
+  /**
+   * Returns the sensor identifiers of the allowed devices. Devices that were
+   * discovered from their link values are identified by their sensor, so they
+   * are included as-is.
+   */
+  public Set<String> getAllowedSensors() {
+    Set<String> sensors = new HashSet<String>();
+    Set<String> mappedUris = new HashSet<String>();
+    for (Map.Entry<String, String> entry : this.sensorToUri.entrySet()) {
+      mappedUris.add(entry.getValue());
+      if (this.allowedDevices.contains(entry.getValue())) {
+        sensors.add(entry.getKey());
+      }
+    }
+    for (String deviceId : this.allowedDevices) {
+      if (!mappedUris.contains(deviceId)) {
+        sensors.add(deviceId);
+      }
+    }
+    return sensors;
   }
 
   @Override
@@ -82,28 +112,47 @@ public class FilteringDataCache extends DataCache2 {
   }
 
   @Override
-  public List<ChartItem<Float>> getRssiList(final String receiverId,
-      final String transmitterId, long oldest, long youngest) {
+  public CompactSeries.Cursor getRssiCursor(final String receiverId,
+      final String transmitterId, final long oldest, final long youngest,
+      final CompactSeries.Cursor cursor) {
     if (this.allowedDevices.size() == 0) {
-      return super.getRssiList(receiverId, transmitterId, oldest, youngest);
+      return super.getRssiCursor(receiverId, transmitterId, oldest, youngest,
+          cursor);
     }
     if (this.allowedDevices.contains(receiverId)
         && this.allowedDevices.contains(transmitterId)) {
-      return super.getRssiList(receiverId, transmitterId, oldest, youngest);
+      return super.getRssiCursor(receiverId, transmitterId, oldest, youngest,
+          cursor);
     }
 
     return null;
   }
 
   @Override
-  public List<ChartItem<Float>> getVarianceList(final String receiverId,
-      final String transmitterId, final long oldest, final long youngest) {
+  public CompactSeries.Cursor getVarianceCursor(final String receiverId,
+      final String transmitterId, final long oldest, final long youngest,
+      final CompactSeries.Cursor cursor) {
     if (this.allowedDevices.size() == 0) {
-      return super.getVarianceList(receiverId, transmitterId, oldest, youngest);
+      return super.getVarianceCursor(receiverId, transmitterId, oldest,
+          youngest, cursor);
     }
     if (this.allowedDevices.contains(receiverId)
         && this.allowedDevices.contains(transmitterId)) {
-      return super.getVarianceList(receiverId, transmitterId, oldest, youngest);
+      return super.getVarianceCursor(receiverId, transmitterId, oldest,
+          youngest, cursor);
+    }
+    return null;
+  }
+
+  @Override
+  public WindowAggregate.Stats getWindowStats(final String transmitter,
+      final String receiver, final long window) {
+    if (this.allowedDevices.size() == 0) {
+      return super.getWindowStats(transmitter, receiver, window);
+    }
+    if (this.allowedDevices.contains(receiver)
+        && this.allowedDevices.contains(transmitter)) {
+      return super.getWindowStats(transmitter, receiver, window);
     }
     return null;
   }
@@ -120,6 +169,30 @@ public class FilteringDataCache extends DataCache2 {
     return null;
   }
 
+  @Override
+  public List<SignalToDistanceItem> getSignalToDistance(
+      final String receiverId, final float minSignal, final float maxSignal,
+      final long oldest, final long youngest) {
+    if (this.allowedDevices.size() == 0
+        || this.allowedDevices.contains(receiverId)) {
+      return super.getSignalToDistance(receiverId, minSignal, maxSignal,
+          oldest, youngest);
+    }
+    return null;
+  }
+
+  @Override
+  public SignalToDistanceItem getNearestSignalToDistance(
+      final String receiverId, final float signal, final boolean above,
+      final long oldest, final long youngest, final String excludedId) {
+    if (this.allowedDevices.size() == 0
+        || this.allowedDevices.contains(receiverId)) {
+      return super.getNearestSignalToDistance(receiverId, signal, above,
+          oldest, youngest, excludedId);
+    }
+    return null;
+  }
+
   @Override
   public Point2D getDeviceLocation(final String deviceId) {
     if (this.allowedDevices.size() == 0) {
@@ -163,9 +236,26 @@ public class FilteringDataCache extends DataCache2 {
     return transmitters;
   }
 
+  @Override
+  public List<String> getLinkedTransmitterIds(final String receiver) {
+    List<String> transmitters = super.getLinkedTransmitterIds(receiver);
+    if (this.allowedDevices.size() == 0) {
+      return transmitters;
+    }
+
+    for (Iterator<String> i = transmitters.iterator(); i.hasNext();) {
+      String s = i.next();
+      if (!this.allowedDevices.contains(s)) {
+        i.remove();
+      }
+    }
+    return transmitters;
+  }
+
   public void clearAllowedDevices() {
 
     this.allowedDevices.clear();
+    this.handler.allowedDevicesChanged();
   }
 
   @Override
@@ -207,9 +297,6 @@ public class FilteringDataCache extends DataCache2 {
 
     super.fromStream(filename, in);
     this.allowedDevices.addAll(allowed);
-    for (DataCache2Listener listener : this.listeners) {
-      listener.transmitterAdded(null, true);
-      listener.receiverAdded(null);
-    }
+    this.eventBus.reset();
   }
 }
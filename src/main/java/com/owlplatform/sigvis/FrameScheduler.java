@@ -0,0 +1,238 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.owlplatform.sigvis.panels.RenderedDisplayHost;
+
+/**
+ * Decides when a {@link RenderedDisplayHost} should render a new frame. A frame
+ * is requested only when the cache has received new data, the display has been
+ * marked dirty (settings, time offset or device changes, or the hosted panel
+ * asking to be redrawn), the host has been resized, or the idle refresh period
+ * has elapsed. Requests never exceed the
+ * desired frame rate, and the frame period is stretched automatically when
+ * rendering takes longer than the frame budget.
+ *
+ * @author Robert Moore
+ *
+ */
+public class FrameScheduler extends Thread {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(FrameScheduler.class);
+
+  /**
+   * Longest frame period that back-off is allowed to reach, in milliseconds.
+   */
+  public static final long MAX_FRAME_PERIOD = 2000l;
+
+  /**
+   * How much longer than the last render time the frame period becomes when
+   * rendering exceeds the frame budget.
+   */
+  private static final float BACKOFF_FACTOR = 1.5f;
+
+  protected final RenderedDisplayHost host;
+
+  protected volatile DataCache2 cache;
+
+  /**
+   * Frame budget based on the desired frame rate, in milliseconds.
+   */
+  protected volatile long framePeriod;
+
+  /**
+   * Current period between frames after back-off, in milliseconds.
+   */
+  protected long currentPeriod;
+
+  /**
+   * Maximum time between frames when nothing has changed, so that timestamps
+   * and scrolling charts keep moving.
+   */
+  protected volatile long idlePeriod = 1000l;
+
+  /**
+   * Set when something changed that the last requested frame may not show.
+   * Guarded by {@link #lock}.
+   */
+  protected boolean dirty = true;
+
+  protected volatile boolean keepRunning = true;
+
+  protected long lastFrameRequest = 0l;
+
+  protected int lastWidth = 0;
+
+  protected int lastHeight = 0;
+
+  protected final Object lock = new Object();
+
+  public FrameScheduler(final RenderedDisplayHost host, final DataCache2 cache,
+      final int desiredFps) {
+    super("Frame Scheduler");
+    this.setDaemon(true);
+    this.host = host;
+    this.cache = cache;
+    this.setDesiredFps(desiredFps);
+    host.setRedrawListener(new Runnable() {
+      @Override
+      public void run() {
+        FrameScheduler.this.markDirty();
+      }
+    });
+    this.currentPeriod = this.framePeriod;
+  }
+
+  @Override
+  public void run() {
+    while (this.keepRunning) {
+      long waitTime;
+      synchronized (this.lock) {
+        long now = System.currentTimeMillis();
+        long nextAllowed = this.lastFrameRequest + this.currentPeriod;
+        if (now < nextAllowed) {
+          waitTime = nextAllowed - now;
+        } else if (this.isFrameNeeded(now)) {
+          boolean wasDirty = this.dirty;
+          // Cleared first, so changes made while this frame renders get another
+          this.dirty = false;
+          if (this.host.requestFrame()) {
+            this.lastFrameRequest = now;
+            this.adjustPeriod();
+          } else {
+            this.dirty = wasDirty;
+          }
+          waitTime = this.currentPeriod;
+        } else {
+          // Nothing to draw, so only poll the cache at the frame rate
+          waitTime = this.framePeriod;
+        }
+
+        try {
+          this.lock.wait(waitTime < 1 ? 1 : waitTime);
+        } catch (InterruptedException ie) {
+          // Check keepRunning
+        }
+      }
+    }
+    log.debug("Frame scheduler exiting.");
+  }
+
+  /**
+   * Determines if anything has changed since the last frame was requested.
+   */
+  protected boolean isFrameNeeded(final long now) {
+    int width = this.host.getWidth();
+    int height = this.host.getHeight();
+    if (width != this.lastWidth || height != this.lastHeight) {
+      this.lastWidth = width;
+      this.lastHeight = height;
+      return true;
+    }
+    if (this.dirty) {
+      return true;
+    }
+    if (now - this.lastFrameRequest >= this.idlePeriod) {
+      return true;
+    }
+    DataCache2 currCache = this.cache;
+    if (currCache == null || currCache.isClone()) {
+      return false;
+    }
+    return currCache.getLastRssiUpdate() >= this.lastFrameRequest
+        || currCache.getLastVarianceUpdate() >= this.lastFrameRequest;
+  }
+
+  /**
+   * Stretches the frame period when the last frame took longer than the frame
+   * budget, and shrinks it back toward the budget when frames are fast again.
+   */
+  protected void adjustPeriod() {
+    long renderTime = this.host.getLastRenderNanos() / 1000000l;
+    if (renderTime > this.framePeriod) {
+      long slowPeriod = (long) (renderTime * BACKOFF_FACTOR);
+      if (slowPeriod > MAX_FRAME_PERIOD) {
+        slowPeriod = MAX_FRAME_PERIOD;
+      }
+      if (slowPeriod > this.currentPeriod) {
+        log.debug("Render took {} ms, backing off to {} ms/frame.",
+            Long.valueOf(renderTime), Long.valueOf(slowPeriod));
+        this.currentPeriod = slowPeriod;
+      }
+    } else if (this.currentPeriod > this.framePeriod) {
+      this.currentPeriod -= (this.currentPeriod - this.framePeriod) / 4 + 1;
+      if (this.currentPeriod < this.framePeriod) {
+        this.currentPeriod = this.framePeriod;
+      }
+    }
+  }
+
+  /**
+   * Requests a new frame as soon as the frame rate allows.
+   */
+  public void markDirty() {
+    synchronized (this.lock) {
+      this.dirty = true;
+      this.lock.notifyAll();
+    }
+  }
+
+  public void setDesiredFps(final int desiredFps) {
+    this.framePeriod = 1000l / (desiredFps < 1 ? 1 : desiredFps);
+    synchronized (this.lock) {
+      this.currentPeriod = this.framePeriod;
+      this.lock.notifyAll();
+    }
+  }
+
+  /**
+   * @return the current period between frames, including any back-off, in
+   *         milliseconds.
+   */
+  public long getCurrentPeriod() {
+    synchronized (this.lock) {
+      return this.currentPeriod;
+    }
+  }
+
+  public void setCache(final DataCache2 cache) {
+    this.cache = cache;
+    this.markDirty();
+  }
+
+  public long getIdlePeriod() {
+    return this.idlePeriod;
+  }
+
+  public void setIdlePeriod(long idlePeriod) {
+    this.idlePeriod = idlePeriod;
+  }
+
+  public void shutdown() {
+    this.keepRunning = false;
+    synchronized (this.lock) {
+      this.lock.notifyAll();
+    }
+  }
+}
@@ -0,0 +1,359 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.owlplatform.worldmodel.Attribute;
+import com.owlplatform.worldmodel.client.ClientWorldConnection;
+import com.owlplatform.worldmodel.client.StepResponse;
+import com.owlplatform.worldmodel.client.WorldState;
+import com.owlplatform.worldmodel.types.DoubleConverter;
+
+/**
+ * Fills the cache with the link averages and variances that the world model
+ * recorded before the live streams started, so the panels and time slider
+ * have history to show right after connecting. The history is split into
+ * chunks of time that are requested in parallel, newest first, and merged
+ * into the cache while the live streams keep adding values. Values at the
+ * boundary with the live streams are only stored once, since a series holds a
+ * single value for each timestamp.
+ * 
+ * @author Robert Moore
+ * 
+ */
+public class HistoryBackfill {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(HistoryBackfill.class);
+
+  /**
+   * Default length of each requested chunk of history, in milliseconds.
+   */
+  public static final long DEFAULT_CHUNK_LENGTH = 60000l;
+
+  /**
+   * Default number of chunks requested at once.
+   */
+  public static final int DEFAULT_PARALLELISM = 4;
+
+  private static final String ATTRIBUTE_AVERAGE = "link average";
+
+  private static final String ATTRIBUTE_VARIANCE = "link variance";
+
+  protected final DataCache2 cache;
+
+  private final ClientWorldConnection wmc;
+
+  private final String identifierRegex;
+
+  private final long start;
+
+  private final long end;
+
+  private long chunkLength = DEFAULT_CHUNK_LENGTH;
+
+  private int parallelism = DEFAULT_PARALLELISM;
+
+  private ExecutorService workers;
+
+  private volatile boolean cancelled = false;
+
+  private volatile long finishedAt = 0;
+
+  private volatile int totalChunks = 0;
+
+  private final AtomicInteger completedChunks = new AtomicInteger(0);
+
+  private final AtomicInteger failedChunks = new AtomicInteger(0);
+
+  private final AtomicLong valuesAdded = new AtomicLong(0);
+
+  /**
+   * Responses that are still being read, so they can be cancelled.
+   */
+  private final Set<StepResponse> activeResponses = Collections
+      .newSetFromMap(new ConcurrentHashMap<StepResponse, Boolean>());
+
+  /**
+   * @param cache
+   *          the cache to fill.
+   * @param wmc
+   *          the world model connection to request history from.
+   * @param identifierRegex
+   *          the links to request.
+   * @param start
+   *          the oldest time to request, inclusive.
+   * @param end
+   *          the newest time to request, exclusive. This should be the time
+   *          the live streams started.
+   */
+  public HistoryBackfill(final DataCache2 cache,
+      final ClientWorldConnection wmc, final String identifierRegex,
+      final long start, final long end) {
+    this.cache = cache;
+    this.wmc = wmc;
+    this.identifierRegex = identifierRegex;
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Sets the length of each requested chunk. Must be called before
+   * {@link #start()}.
+   */
+  public void setChunkLength(final long chunkLength) {
+    this.chunkLength = chunkLength;
+  }
+
+  /**
+   * Sets how many chunks are requested at once. Must be called before
+   * {@link #start()}.
+   */
+  public void setParallelism(final int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Starts requesting the history in the background.
+   */
+  public synchronized void start() {
+    if (this.workers != null || this.end <= this.start) {
+      return;
+    }
+    int numChunks = (int) ((this.end - this.start + this.chunkLength - 1) / this.chunkLength);
+    // Each chunk is requested once for averages and once for variances
+    this.totalChunks = numChunks * 2;
+    this.workers = Executors.newFixedThreadPool(
+        Math.max(1, this.parallelism), new ThreadFactory() {
+          private int count = 0;
+
+          @Override
+          public Thread newThread(final Runnable task) {
+            Thread thread = new Thread(task, "History Backfill "
+                + (++this.count));
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    log.info("Requesting {} s of history in {} chunks.",
+        Long.valueOf((this.end - this.start) / 1000),
+        Integer.valueOf(this.totalChunks));
+    // Newest first, so the most recent history is shown soonest
+    for (long chunkEnd = this.end; chunkEnd > this.start; chunkEnd -= this.chunkLength) {
+      final long chunkStart = Math.max(this.start, chunkEnd - this.chunkLength);
+      final long thisEnd = chunkEnd;
+      this.workers.submit(new Runnable() {
+        @Override
+        public void run() {
+          HistoryBackfill.this.requestChunk(ATTRIBUTE_AVERAGE, chunkStart,
+              thisEnd);
+        }
+      });
+      this.workers.submit(new Runnable() {
+        @Override
+        public void run() {
+          HistoryBackfill.this.requestChunk(ATTRIBUTE_VARIANCE, chunkStart,
+              thisEnd);
+        }
+      });
+    }
+    this.workers.shutdown();
+  }
+
+  /**
+   * Stops requesting history. Values already merged stay in the cache.
+   */
+  public synchronized void cancel() {
+    this.cancelled = true;
+    if (this.workers != null) {
+      this.workers.shutdownNow();
+    }
+    for (StepResponse response : this.activeResponses) {
+      response.cancel();
+    }
+  }
+
+  public int getTotalChunks() {
+    return this.totalChunks;
+  }
+
+  /**
+   * @return the number of chunks that have been requested and merged, or
+   *         have failed.
+   */
+  public int getCompletedChunks() {
+    return this.completedChunks.get();
+  }
+
+  public int getFailedChunks() {
+    return this.failedChunks.get();
+  }
+
+  /**
+   * @return the number of values received and merged into the cache,
+   *         including any that were already cached.
+   */
+  public long getValuesAdded() {
+    return this.valuesAdded.get();
+  }
+
+  /**
+   * @return {@code true} once every chunk has completed or the backfill was
+   *         cancelled.
+   */
+  public boolean isFinished() {
+    return this.finishedAt != 0 || this.cancelled;
+  }
+
+  public boolean isCancelled() {
+    return this.cancelled;
+  }
+
+  /**
+   * Returns the cache for the values of a receiver. Override to route values
+   * to more than one cache.
+   * 
+   * @return the cache, or {@code null} to drop the values.
+   */
+  protected DataCache2 getCache(final String receiverSensor) {
+    return this.cache;
+  }
+
+  /**
+   * Returns whether values from a link should be added. Override to apply a
+   * stream filter.
+   */
+  protected boolean acceptsLink(final String receiverSensor,
+      final String transmitterSensor) {
+    return true;
+  }
+
+  /**
+   * Called once after every chunk has completed, unless the backfill was
+   * cancelled. Rebuilds the RSSI aggregates of the cache, since history
+   * arrives out of order.
+   */
+  protected void finished() {
+    this.cache.reaggregateRssi();
+  }
+
+  /**
+   * Requests one attribute for [{@code chunkStart}, {@code chunkEnd}) and
+   * merges the values into the cache.
+   */
+  protected void requestChunk(final String attribute, final long chunkStart,
+      final long chunkEnd) {
+    boolean variance = ATTRIBUTE_VARIANCE.equals(attribute);
+    long added = 0;
+    StepResponse response = null;
+    try {
+      if (this.cancelled) {
+        return;
+      }
+      response = this.wmc.getRangeRequest(this.identifierRegex, chunkStart,
+          chunkEnd, attribute);
+      this.activeResponses.add(response);
+      while (!response.isComplete() && !response.isError()
+          && !this.cancelled) {
+        WorldState state = response.next();
+        if (state == null) {
+          break;
+        }
+        for (String uri : state.getIdentifiers()) {
+          int txSensStart = uri.indexOf('.');
+          int rxSensStart = uri.lastIndexOf('.');
+          if (txSensStart < 0 || rxSensStart <= txSensStart) {
+            continue;
+          }
+          String txerSensor = uri.substring(txSensStart + 1, rxSensStart);
+          String rxerSensor = uri.substring(rxSensStart + 1);
+          if (!this.acceptsLink(rxerSensor, txerSensor)) {
+            continue;
+          }
+          DataCache2 target = this.getCache(rxerSensor);
+          Collection<Attribute> attribs = state.getState(uri);
+          if (target == null || attribs == null) {
+            continue;
+          }
+          // A range can hold many values for each link
+          for (Attribute attrib : attribs) {
+            long timestamp = attrib.getCreationDate();
+            if (timestamp < chunkStart || timestamp >= chunkEnd) {
+              continue;
+            }
+            double value = DoubleConverter.get().decode(attrib.getData());
+            if (variance) {
+              target.addVariance(rxerSensor, txerSensor, (float) value,
+                  timestamp);
+            } else {
+              target.addRssi(rxerSensor, txerSensor, (float) value, timestamp);
+            }
+            ++added;
+          }
+        }
+      }
+      if (response.isError()) {
+        this.failedChunks.incrementAndGet();
+        log.warn("World model returned an error for {} history.", attribute);
+      }
+    } catch (Exception e) {
+      this.failedChunks.incrementAndGet();
+      if (!this.cancelled) {
+        log.error("Unable to retrieve " + attribute + " history.", e);
+      }
+    } finally {
+      if (response != null) {
+        this.activeResponses.remove(response);
+        response.cancel();
+      }
+      this.valuesAdded.addAndGet(added);
+      this.chunkCompleted();
+    }
+  }
+
+  private void chunkCompleted() {
+    int completed = this.completedChunks.incrementAndGet();
+    if (this.cancelled) {
+      return;
+    }
+    log.info("History: {} of {} chunks, {} values.", new Object[] {
+        Integer.valueOf(completed), Integer.valueOf(this.totalChunks),
+        Long.valueOf(this.valuesAdded.get()) });
+    if (completed == this.totalChunks) {
+      this.finished();
+      this.finishedAt = System.currentTimeMillis();
+      log.info("Finished retrieving history: {} values, {} failed chunks.",
+          Long.valueOf(this.valuesAdded.get()),
+          Integer.valueOf(this.failedChunks.get()));
+    }
+  }
+}
@@ -73,6 +73,10 @@ public class ImageResources {
    * 
    */
   public static BufferedImage toCompatibleImage(BufferedImage image) {
+    // No screen to be compatible with when rendering headless
+    if (GraphicsEnvironment.isHeadless()) {
+      return image;
+    }
     GraphicsConfiguration gfx_config = GraphicsEnvironment
         .getLocalGraphicsEnvironment().getDefaultScreenDevice()
         .getDefaultConfiguration();
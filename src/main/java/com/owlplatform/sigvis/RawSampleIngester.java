@@ -0,0 +1,371 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis;
+
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.owlplatform.common.SampleMessage;
+import com.owlplatform.common.util.HashableByteArray;
+import com.owlplatform.sigvis.structs.WindowAggregate;
+import com.owlplatform.solver.SolverAggregatorInterface;
+import com.owlplatform.solver.listeners.SampleListener;
+import com.owlplatform.solver.rules.SubscriptionRequestRule;
+
+/**
+ * Computes link averages and variances directly from the raw samples sent by
+ * an aggregator, instead of waiting for the world model to aggregate them.
+ * Each link keeps its samples from a sliding estimation window, and once every
+ * emission period the mean and variance of the window are added to the cache,
+ * for every link with new samples, as if they had arrived as "link average"
+ * and "link variance" values. Values are timestamped with the local time of
+ * the newest sample, since sensor clocks are not synchronized.
+ * 
+ * @author Robert Moore
+ * 
+ */
+public class RawSampleIngester implements SampleListener {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(RawSampleIngester.class);
+
+  /**
+   * Default time between emissions, in milliseconds.
+   */
+  public static final long DEFAULT_EMISSION_PERIOD = 250l;
+
+  /**
+   * Default length of the window each link's statistics are computed over, in
+   * milliseconds. Long enough to hold several samples from a transmitter that
+   * beacons once per second.
+   */
+  public static final long DEFAULT_ESTIMATION_WINDOW = 5000l;
+
+  /**
+   * Links without any samples for this long are forgotten, in milliseconds.
+   */
+  private static final long IDLE_LINK_TIMEOUT = 60000l;
+
+  /**
+   * Keeps the samples of a single link from the estimation window, and counts
+   * the samples added since the last emission.
+   */
+  protected static final class LinkEstimator {
+    private final WindowAggregate window;
+    private int newSamples = 0;
+    private long latestTime = 0;
+    private long lastSampleTime = System.currentTimeMillis();
+
+    private float emittedMean;
+    private float emittedVariance;
+    private long emittedTime;
+
+    LinkEstimator(final long estimationWindow) {
+      this.window = new WindowAggregate(estimationWindow);
+    }
+
+    synchronized void add(final float rssi, final long timestamp) {
+      this.window.add(rssi, timestamp);
+      ++this.newSamples;
+      if (timestamp > this.latestTime) {
+        this.latestTime = timestamp;
+      }
+      this.lastSampleTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Saves the mean and variance of the window for emission, if there have
+     * been new samples since the last emission. The variance is
+     * {@code Float.NaN} while the window holds a single sample.
+     * 
+     * @return the number of samples since the last emission.
+     */
+    synchronized int drain(final long now) {
+      int drained = this.newSamples;
+      this.newSamples = 0;
+      if (drained == 0) {
+        return 0;
+      }
+      WindowAggregate.Stats stats = this.window.getStats(now);
+      if (stats == null) {
+        return 0;
+      }
+      this.emittedMean = stats.getMean();
+      this.emittedVariance = stats.getCount() > 1 ? stats.getVariance()
+          : Float.NaN;
+      this.emittedTime = this.latestTime;
+      return drained;
+    }
+
+    synchronized long getLastSampleTime() {
+      return this.lastSampleTime;
+    }
+  }
+
+  protected final DataCache2 cache;
+
+  /**
+   * Estimators keyed by receiver sensor, then transmitter sensor.
+   */
+  protected final ConcurrentHashMap<String, ConcurrentHashMap<String, LinkEstimator>> estimatorsByRByT = new ConcurrentHashMap<String, ConcurrentHashMap<String, LinkEstimator>>();
+
+  protected final DeviceKeyInterner deviceKeys = new DeviceKeyInterner();
+
+  /**
+   * Sensor strings, as used by the world model, for each device identifier.
+   */
+  protected final Map<HashableByteArray, String> sensorNames = new ConcurrentHashMap<HashableByteArray, String>();
+
+  protected volatile long emissionPeriod = DEFAULT_EMISSION_PERIOD;
+
+  protected SolverAggregatorInterface aggregator = null;
+
+  protected Timer emissionTimer = null;
+
+  protected volatile long estimationWindow = DEFAULT_ESTIMATION_WINDOW;
+
+  protected final AtomicLong samplesReceived = new AtomicLong(0);
+
+  public RawSampleIngester(final DataCache2 cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Connects to an aggregator and starts emitting link statistics into the
+   * cache.
+   * 
+   * @param host
+   *          the hostname or IP address of the aggregator.
+   * @param port
+   *          the port on which the aggregator accepts solver connections.
+   * @param timeout
+   *          how long to wait for the connection, in milliseconds.
+   * @return {@code true} if the connection succeeded, else {@code false}.
+   */
+  public synchronized boolean start(final String host, final int port,
+      final long timeout) {
+    this.stop();
+
+    SolverAggregatorInterface agg = new SolverAggregatorInterface();
+    agg.setHost(host);
+    agg.setPort(port);
+    SubscriptionRequestRule rule = SubscriptionRequestRule
+        .generateGenericRule();
+    rule.setUpdateInterval(0l);
+    agg.setRules(new SubscriptionRequestRule[] { rule });
+    agg.addSampleListener(this);
+
+    log.info("Connecting to aggregator at {}:{}", host, Integer.valueOf(port));
+    if (!agg.connect(timeout)) {
+      log.error("Unable to connect to aggregator at {}:{}", host,
+          Integer.valueOf(port));
+      agg.removeSampleListener(this);
+      return false;
+    }
+    this.aggregator = agg;
+    this.scheduleEmission();
+    return true;
+  }
+
+  /**
+   * Disconnects from the aggregator and stops emitting into the cache.
+   */
+  public synchronized void stop() {
+    if (this.emissionTimer != null) {
+      this.emissionTimer.cancel();
+      this.emissionTimer = null;
+    }
+    if (this.aggregator != null) {
+      this.aggregator.removeSampleListener(this);
+      try {
+        this.aggregator.disconnect();
+      } catch (Exception e) {
+        log.error("Exception while disconnecting from aggregator.", e);
+      }
+      this.aggregator = null;
+    }
+    this.estimatorsByRByT.clear();
+  }
+
+  public synchronized boolean isRunning() {
+    return this.aggregator != null;
+  }
+
+  private void scheduleEmission() {
+    if (this.emissionTimer != null) {
+      this.emissionTimer.cancel();
+    }
+    this.emissionTimer = new Timer("Raw sample emission", true);
+    this.emissionTimer.scheduleAtFixedRate(new TimerTask() {
+
+      @Override
+      public void run() {
+        RawSampleIngester.this.emit();
+      }
+    }, this.emissionPeriod, this.emissionPeriod);
+  }
+
+  @Override
+  public void sampleReceived(final SolverAggregatorInterface agg,
+      final SampleMessage sample) {
+    String rxer = this.getSensorName(sample.getReceiverId());
+    String txer = this.getSensorName(sample.getDeviceId());
+    if (rxer == null || txer == null || !this.acceptsLink(rxer, txer)) {
+      return;
+    }
+    this.samplesReceived.incrementAndGet();
+
+    ConcurrentHashMap<String, LinkEstimator> receiverEstimators = this.estimatorsByRByT
+        .get(rxer);
+    if (receiverEstimators == null) {
+      receiverEstimators = new ConcurrentHashMap<String, LinkEstimator>();
+      ConcurrentHashMap<String, LinkEstimator> existing = this.estimatorsByRByT
+          .putIfAbsent(rxer, receiverEstimators);
+      if (existing != null) {
+        receiverEstimators = existing;
+      }
+    }
+    LinkEstimator estimator = receiverEstimators.get(txer);
+    if (estimator == null) {
+      estimator = new LinkEstimator(this.estimationWindow);
+      LinkEstimator existing = receiverEstimators.putIfAbsent(txer, estimator);
+      if (existing != null) {
+        estimator = existing;
+      }
+    }
+    estimator.add(sample.getRssi(), System.currentTimeMillis());
+  }
+
+  /**
+   * Adds the mean and variance of every link with new samples to the cache.
+   */
+  protected void emit() {
+    long now = System.currentTimeMillis();
+    long idleTs = now - IDLE_LINK_TIMEOUT;
+    for (Map.Entry<String, ConcurrentHashMap<String, LinkEstimator>> rxEntry : this.estimatorsByRByT
+        .entrySet()) {
+      String rxer = rxEntry.getKey();
+      for (Iterator<Map.Entry<String, LinkEstimator>> iter = rxEntry
+          .getValue().entrySet().iterator(); iter.hasNext();) {
+        Map.Entry<String, LinkEstimator> txEntry = iter.next();
+        LinkEstimator estimator = txEntry.getValue();
+        if (estimator.drain(now) == 0) {
+          if (estimator.getLastSampleTime() < idleTs) {
+            iter.remove();
+          }
+          continue;
+        }
+        DataCache2 target = this.getCache(rxer);
+        if (target == null) {
+          continue;
+        }
+        target.addRssi(rxer, txEntry.getKey(), estimator.emittedMean,
+            estimator.emittedTime);
+        if (!Float.isNaN(estimator.emittedVariance)) {
+          target.addVariance(rxer, txEntry.getKey(),
+              estimator.emittedVariance, estimator.emittedTime);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the cache for link values observed by {@code receiverSensor}, or
+   *         {@code null} to discard them.
+   */
+  protected DataCache2 getCache(final String receiverSensor) {
+    return this.cache;
+  }
+
+  /**
+   * @return {@code true} if samples for the link should be kept.
+   */
+  protected boolean acceptsLink(final String receiverSensor,
+      final String transmitterSensor) {
+    return true;
+  }
+
+  /**
+   * @return the sensor string for {@code deviceId}, in the same form as the
+   *         sensor names in world model link identifiers.
+   */
+  protected String getSensorName(final byte[] deviceId) {
+    HashableByteArray key = this.deviceKeys.intern(deviceId);
+    if (key == null) {
+      return null;
+    }
+    String name = this.sensorNames.get(key);
+    if (name == null) {
+      name = new BigInteger(1, deviceId).toString(10);
+      this.sensorNames.put(key, name);
+    }
+    return name;
+  }
+
+  public long getEmissionPeriod() {
+    return this.emissionPeriod;
+  }
+
+  /**
+   * Sets how often link statistics are added to the cache.
+   * 
+   * @param emissionPeriod
+   *          the time between emissions, in milliseconds.
+   */
+  public synchronized void setEmissionPeriod(final long emissionPeriod) {
+    if (emissionPeriod <= 0) {
+      throw new IllegalArgumentException("Emission period must be positive.");
+    }
+    this.emissionPeriod = emissionPeriod;
+    if (this.emissionTimer != null) {
+      this.scheduleEmission();
+    }
+  }
+
+  public long getSamplesReceived() {
+    return this.samplesReceived.get();
+  }
+
+  public long getEstimationWindow() {
+    return this.estimationWindow;
+  }
+
+  /**
+   * Sets the length of the window each link's statistics are computed over.
+   * Links that already have samples keep their current window.
+   * 
+   * @param estimationWindow
+   *          the window length, in milliseconds.
+   */
+  public void setEstimationWindow(final long estimationWindow) {
+    if (estimationWindow <= 0) {
+      throw new IllegalArgumentException("Estimation window must be positive.");
+    }
+    this.estimationWindow = estimationWindow;
+  }
+}
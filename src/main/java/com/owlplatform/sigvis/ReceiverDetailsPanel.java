@@ -22,8 +22,11 @@ package com.owlplatform.sigvis;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.GridLayout;
+import java.awt.Window;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
@@ -32,11 +35,11 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.DecimalFormat;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
 import javax.swing.BorderFactory;
@@ -46,6 +49,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JTabbedPane;
 import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 
@@ -116,7 +120,7 @@ public class ReceiverDetailsPanel extends JPanel implements SampleListener,
 	/**
 	 * Number of samples received since the statistics were last generated.
 	 */
-	private int samplesReceived = 0;
+	private final AtomicInteger samplesReceived = new AtomicInteger(0);
 
 	/**
 	 * Mean latency of samples received from the aggregator. This value assumes
@@ -145,6 +149,19 @@ public class ReceiverDetailsPanel extends JPanel implements SampleListener,
 
 	private TimerTask updateTask = null;
 
+	/**
+	 * The window showing this panel, which shuts the panel down when it is
+	 * closed.
+	 */
+	private Window owner = null;
+
+	private final WindowAdapter ownerListener = new WindowAdapter() {
+		@Override
+		public void windowClosed(WindowEvent e) {
+			ReceiverDetailsPanel.this.shutdown();
+		}
+	};
+
 	protected MutableListModel receiverListModel = new MutableListModel();
 
 	protected JList receiverList = new JList(this.receiverListModel);
@@ -159,8 +176,24 @@ public class ReceiverDetailsPanel extends JPanel implements SampleListener,
 
 	protected int minFps = 20;
 
-	protected final ExecutorService workers = Executors
-			.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+	/**
+	 * Shared keys for device identifiers, so that lookups don't allocate.
+	 */
+	protected final DeviceKeyInterner deviceKeys = new DeviceKeyInterner();
+
+	/**
+	 * Processes samples in batches, with all samples for a transmitter handled
+	 * in order by the same thread.
+	 */
+	protected final SampleDispatcher dispatcher = new SampleDispatcher(
+			"ReceiverDetailsPanel", Runtime.getRuntime().availableProcessors(), 256,
+			new SampleDispatcher.BatchHandler() {
+
+				@Override
+				public void handleBatch(List<SampleMessage> samples) {
+					ReceiverDetailsPanel.this.processSamples(samples);
+				}
+			});
 
 	public ReceiverDetailsPanel(final SolverAggregatorInterface solver,
 			final ClientWorldModelInterface worldServer) {
@@ -216,6 +249,40 @@ public class ReceiverDetailsPanel extends JPanel implements SampleListener,
 		this.setPreferredSize(new Dimension(800, 600));
 	}
 
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		Window window = SwingUtilities.getWindowAncestor(this);
+		if (window != this.owner) {
+			if (this.owner != null) {
+				this.owner.removeWindowListener(this.ownerListener);
+			}
+			this.owner = window;
+			if (window != null) {
+				window.addWindowListener(this.ownerListener);
+			}
+		}
+	}
+
+	/**
+	 * Stops listening for samples, and stops the update timer and sample
+	 * lanes. Called when the window showing this panel is closed, after which
+	 * the panel can't be reused.
+	 */
+	public void shutdown() {
+		this.solver.removeSampleListener(this);
+		if (this.updateTask != null) {
+			this.updateTask.cancel();
+			this.updateTask = null;
+		}
+		this.updateTimer.cancel();
+		this.dispatcher.shutdown();
+		if (this.owner != null) {
+			this.owner.removeWindowListener(this.ownerListener);
+			this.owner = null;
+		}
+	}
+
 	protected JPanel createTitledPanel(String title) {
 		JPanel panel = new JPanel();
 		panel.setBorder(BorderFactory.createTitledBorder(title));
@@ -242,27 +309,25 @@ public class ReceiverDetailsPanel extends JPanel implements SampleListener,
 	@Override
 	public void sampleReceived(SolverAggregatorInterface aggregator,
 			final SampleMessage sample) {
-		this.workers.execute(new Runnable() {
+		this.dispatcher.dispatch(sample, sample.getDeviceId());
+	}
 
-			@Override
-			public void run() {
-				ReceiverDetailsPanel.this.processSample(sample);
-			}
-		});
+	protected void processSamples(final List<SampleMessage> samples) {
+		this.samplesReceived.addAndGet(samples.size());
+		for (SampleMessage sample : samples) {
+			this.processSample(sample);
+		}
 	}
 
 	protected void processSample(final SampleMessage sample) {
-		++this.samplesReceived;
-
 		if (Arrays.equals(this.currentReceiver, sample.getReceiverId())) {
 			this.updateSignalScatter(sample);
 			this.updateVariances(sample);
-			HashableByteArray hash = new HashableByteArray(sample.getDeviceId());
 		}
 	}
 
 	protected void updateVariances(final SampleMessage sample) {
-		HashableByteArray hash = new HashableByteArray(sample.getDeviceId());
+		HashableByteArray hash = this.deviceKeys.intern(sample.getDeviceId());
 		OnlineVariance variance = this.currentReceiverVariance.get(hash);
 		if (variance == null) {
 			variance = new OnlineVariance();
@@ -277,9 +342,9 @@ public class ReceiverDetailsPanel extends JPanel implements SampleListener,
 	protected void updateSignalScatter(SampleMessage sample) {
 		if (sample == null)
 			return;
-		HashableByteArray receiverHash = new HashableByteArray(sample
+		HashableByteArray receiverHash = this.deviceKeys.intern(sample
 				.getReceiverId());
-		HashableByteArray transmitterHash = new HashableByteArray(sample
+		HashableByteArray transmitterHash = this.deviceKeys.intern(sample
 				.getDeviceId());
 
 		Point2D receiverPoint = this.receiverLocations.get(receiverHash);
@@ -301,7 +366,7 @@ public class ReceiverDetailsPanel extends JPanel implements SampleListener,
 
 	public void updateInfo() {
 		long now = System.currentTimeMillis();
-		float sps = this.samplesReceived
+		float sps = this.samplesReceived.getAndSet(0)
 				/ ((now - this.lastReportTime) / 1000f);
 
 		this.smoothedSPS = sps * (1 - this.smoothingWeight) + this.smoothedSPS
@@ -317,7 +382,6 @@ public class ReceiverDetailsPanel extends JPanel implements SampleListener,
 			this.bytesWritten = newBytesWritten;
 		}
 
-		this.samplesReceived = 0;
 		this.meanReceiveLatency = 0;
 		this.lastReportTime = now;
 
@@ -533,7 +597,7 @@ public class ReceiverDetailsPanel extends JPanel implements SampleListener,
 				}
 			}
 			if (x > 0 && y > 0) {
-				HashableByteArray receiverHash = new HashableByteArray(pipId);
+				HashableByteArray receiverHash = this.deviceKeys.intern(pipId);
 				this.receiverLocations.put(receiverHash, new Point2D.Float(
 						(float) x, (float) y));
 				this.receiverListModel.addElement(receiverHash);
@@ -561,7 +625,7 @@ public class ReceiverDetailsPanel extends JPanel implements SampleListener,
 				}
 			}
 			if (x > 0 && y > 0) {
-				HashableByteArray transmitterHash = new HashableByteArray(pipId);
+				HashableByteArray transmitterHash = this.deviceKeys.intern(pipId);
 				this.transmitterLocations.put(transmitterHash,
 						new Point2D.Float((float) x, (float) y));
 			}
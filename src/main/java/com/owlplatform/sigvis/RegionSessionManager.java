@@ -0,0 +1,119 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs several regions at once over a single world model connection. Each
+ * region gets its own cache, so a {@code SimpleFrame} can be attached to each
+ * one, while link values are streamed once and routed to the region that
+ * contains their receiver.
+ * 
+ * @author Robert Moore
+ * 
+ */
+public class RegionSessionManager {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(RegionSessionManager.class);
+
+  private final ConnectionHandler handler = new ConnectionHandler();
+
+  private final ConcurrentHashMap<String, FilteringDataCache> caches = new ConcurrentHashMap<String, FilteringDataCache>();
+
+  /**
+   * @param wmHost
+   *          the world model host.
+   * @param wmPort
+   *          the world model client port.
+   */
+  public RegionSessionManager(final String wmHost, final int wmPort) {
+    super();
+    this.handler.setClientConnection(wmHost, wmPort);
+  }
+
+  /**
+   * Adds a region to the session. If the session is already connected, the
+   * region's anchors are retrieved in the background.
+   * 
+   * @return the cache for the region.
+   */
+  public FilteringDataCache addRegion(final String regionName) {
+    FilteringDataCache cache = this.caches.get(regionName);
+    if (cache != null) {
+      return cache;
+    }
+    cache = new FilteringDataCache(this.handler);
+    this.caches.put(regionName, cache);
+    this.handler.addRegion(regionName, cache);
+    log.info("Added region {}.", regionName);
+    return cache;
+  }
+
+  /**
+   * Removes a region from the session. Its cache is left intact but no longer
+   * receives new values.
+   */
+  public void removeRegion(final String regionName) {
+    if (this.caches.remove(regionName) != null) {
+      this.handler.removeRegion(regionName);
+      log.info("Removed region {}.", regionName);
+    }
+  }
+
+  /**
+   * @return the cache for the region, or {@code null} if it hasn't been added.
+   */
+  public FilteringDataCache getCache(final String regionName) {
+    return this.caches.get(regionName);
+  }
+
+  public Collection<String> getRegions() {
+    return Collections.unmodifiableCollection(this.caches.keySet());
+  }
+
+  public ConnectionHandler getHandler() {
+    return this.handler;
+  }
+
+  /**
+   * Connects to the world model and starts streaming for every region.
+   * 
+   * @return {@code true} if the connection succeeded.
+   */
+  public boolean connect() {
+    if (!this.handler.connectAsClient()) {
+      log.error("Connection failed.");
+      return false;
+    }
+    this.handler.startup();
+    return true;
+  }
+
+  public void shutdown() {
+    this.handler.disconnectAsClient();
+  }
+}
@@ -0,0 +1,447 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.owlplatform.sigvis.structs.CompactSeries;
+
+/**
+ * Keeps the estimated size of a {@link DataCache2} within a memory budget.
+ * When the cache grows past the budget, older values of the least recently
+ * viewed links are thinned out first, and each value is thinned at most once.
+ * If that isn't enough, the retention age of the whole cache is shortened,
+ * and it is restored gradually once the cache is well under budget again.
+ * Every series is only measured once per {@link #MEASURE_PERIOD}; in between,
+ * the size is estimated from the number of values in the cache.
+ * 
+ * @author Robert Moore
+ * 
+ */
+public class RetentionManager {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(RetentionManager.class);
+
+  /**
+   * Estimated heap used by one signal-to-distance value, including its entries
+   * in both the history and the signal index.
+   */
+  public static final int SIG_TO_DIST_ITEM_BYTES = 168;
+
+  /**
+   * Fraction of the budget to get down to once the budget is exceeded.
+   */
+  public static final float LOW_WATER = 0.9f;
+
+  /**
+   * Fraction of the budget below which a shortened retention age is allowed
+   * to grow again.
+   */
+  public static final float RESTORE_WATER = 0.6f;
+
+  /**
+   * The retention age is never shortened below this, in milliseconds.
+   */
+  public static final long MIN_RETENTION_AGE = 60000;
+
+  /**
+   * Values newer than this, in milliseconds, are never thinned out.
+   */
+  public static final long FULL_RESOLUTION_AGE = 60000;
+
+  /**
+   * How often the size of every series is measured, in milliseconds.
+   */
+  public static final long MEASURE_PERIOD = 60000;
+
+  private final DataCache2 cache;
+
+  private volatile long budget;
+
+  /**
+   * When each link was last viewed and how much of it was thinned, mapped by
+   * receiver and then transmitter.
+   */
+  private final ConcurrentHashMap<String, ConcurrentHashMap<String, LinkState>> linkStateByRByT = new ConcurrentHashMap<String, ConcurrentHashMap<String, LinkState>>();
+
+  /**
+   * The shortened retention age, or 0 if retention isn't shortened.
+   */
+  private volatile long reducedAge = 0;
+
+  private volatile long estimatedBytes = 0;
+
+  /**
+   * Average size of one RSSI or variance value as of the last measurement,
+   * including the series and blocks that hold it.
+   */
+  private volatile double bytesPerValue = 0;
+
+  private volatile long lastMeasured = 0;
+
+  private final AtomicLong downsampledValues = new AtomicLong();
+
+  private final AtomicLong retentionReductions = new AtomicLong();
+
+  /**
+   * @param cache
+   *          the cache to manage.
+   * @param budget
+   *          the memory budget in bytes, or 0 for no budget.
+   */
+  public RetentionManager(final DataCache2 cache, final long budget) {
+    this.cache = cache;
+    this.budget = budget;
+  }
+
+  /**
+   * @return half of the maximum heap size, or the number of MiB in the
+   *         "sigvis.cache.budget" system property if it is set.
+   */
+  public static long getDefaultBudget() {
+    Long configured = Long.getLong("sigvis.cache.budget");
+    if (configured != null) {
+      return configured.longValue() * 1024 * 1024;
+    }
+    long maxHeap = Runtime.getRuntime().maxMemory();
+    return maxHeap == Long.MAX_VALUE ? 0 : maxHeap / 2;
+  }
+
+  public long getBudget() {
+    return this.budget;
+  }
+
+  /**
+   * Sets the memory budget.
+   * 
+   * @param budget
+   *          the budget in bytes, or 0 for no budget.
+   */
+  public void setBudget(final long budget) {
+    this.budget = budget;
+  }
+
+  /**
+   * Records that a link's history was just viewed.
+   */
+  public void linkViewed(final String receiver, final String transmitter) {
+    this.getLinkState(receiver, transmitter).lastViewed = System
+        .currentTimeMillis();
+  }
+
+  /**
+   * @return when the link was last viewed, or 0 if it never was.
+   */
+  public long getLastViewed(final String receiver, final String transmitter) {
+    ConcurrentHashMap<String, LinkState> rxerMap = this.linkStateByRByT
+        .get(receiver);
+    if (rxerMap == null) {
+      return 0;
+    }
+    LinkState state = rxerMap.get(transmitter);
+    return state == null ? 0 : state.lastViewed;
+  }
+
+  /**
+   * @return the state of a link, which is created if needed.
+   */
+  private LinkState getLinkState(final String receiver,
+      final String transmitter) {
+    ConcurrentHashMap<String, LinkState> rxerMap = this.linkStateByRByT
+        .get(receiver);
+    if (rxerMap == null) {
+      rxerMap = new ConcurrentHashMap<String, LinkState>();
+      ConcurrentHashMap<String, LinkState> existing = this.linkStateByRByT
+          .putIfAbsent(receiver, rxerMap);
+      if (existing != null) {
+        rxerMap = existing;
+      }
+    }
+    LinkState state = rxerMap.get(transmitter);
+    if (state == null) {
+      state = new LinkState();
+      LinkState existing = rxerMap.putIfAbsent(transmitter, state);
+      if (existing != null) {
+        state = existing;
+      }
+    }
+    return state;
+  }
+
+  /**
+   * Forgets the state of links that are no longer in the cache.
+   */
+  private void pruneLinkStates() {
+    for (Iterator<Map.Entry<String, ConcurrentHashMap<String, LinkState>>> rxIter = this.linkStateByRByT
+        .entrySet().iterator(); rxIter.hasNext();) {
+      Map.Entry<String, ConcurrentHashMap<String, LinkState>> entry = rxIter
+          .next();
+      Map<String, CompactSeries> rssiMap = this.cache.averageRssiByRByT
+          .get(entry.getKey());
+      Map<String, CompactSeries> varMap = this.cache.varianceRssiByRByT
+          .get(entry.getKey());
+      for (Iterator<String> txIter = entry.getValue().keySet().iterator(); txIter
+          .hasNext();) {
+        String transmitter = txIter.next();
+        if ((rssiMap == null || !rssiMap.containsKey(transmitter))
+            && (varMap == null || !varMap.containsKey(transmitter))) {
+          txIter.remove();
+        }
+      }
+      if (entry.getValue().isEmpty()) {
+        rxIter.remove();
+      }
+    }
+  }
+
+  /**
+   * @return the shortened retention age, or 0 if retention isn't shortened.
+   */
+  public long getReducedAge() {
+    return this.reducedAge;
+  }
+
+  public long getDownsampledValues() {
+    return this.downsampledValues.get();
+  }
+
+  public long getRetentionReductions() {
+    return this.retentionReductions.get();
+  }
+
+  /**
+   * @return the estimated size of the cache as of the last check, in bytes.
+   */
+  public long getEstimatedBytes() {
+    return this.estimatedBytes;
+  }
+
+  public long getRssiBytes() {
+    return sizeOf(this.cache.averageRssiByRByT);
+  }
+
+  public long getVarianceBytes() {
+    return sizeOf(this.cache.varianceRssiByRByT);
+  }
+
+  public long getSigToDistBytes() {
+    return (long) Math.max(0, this.cache.numSigToDistPoints.get())
+        * SIG_TO_DIST_ITEM_BYTES;
+  }
+
+  /**
+   * @return the estimated size of a single link's RSSI and variance values.
+   */
+  public long getLinkBytes(final String receiver, final String transmitter) {
+    return sizeOf(this.cache.averageRssiByRByT, receiver, transmitter)
+        + sizeOf(this.cache.varianceRssiByRByT, receiver, transmitter);
+  }
+
+  private static long sizeOf(
+      final Map<String, ? extends Map<String, CompactSeries>> values) {
+    long bytes = 0;
+    for (Map<String, CompactSeries> rxerMap : values.values()) {
+      for (CompactSeries series : rxerMap.values()) {
+        bytes += series.getMemoryBytes() + series.getOffHeapBytes();
+      }
+    }
+    return bytes;
+  }
+
+  private static long sizeOf(
+      final Map<String, ? extends Map<String, CompactSeries>> values,
+      final String receiver, final String transmitter) {
+    Map<String, CompactSeries> rxerMap = values.get(receiver);
+    if (rxerMap == null) {
+      return 0;
+    }
+    CompactSeries series = rxerMap.get(transmitter);
+    return series == null ? 0 : series.getMemoryBytes()
+        + series.getOffHeapBytes();
+  }
+
+  /**
+   * Estimates the size of the cache from its number of values, measuring
+   * every series first if the last measurement is too old.
+   */
+  private long estimate() {
+    long values = (long) Math.max(0, this.cache.numRssiPoints.get())
+        + Math.max(0, this.cache.numVarPoints.get());
+    long now = System.currentTimeMillis();
+    long seriesBytes;
+    if (this.bytesPerValue <= 0 || now - this.lastMeasured >= MEASURE_PERIOD) {
+      seriesBytes = this.getRssiBytes() + this.getVarianceBytes();
+      this.bytesPerValue = values == 0 ? 0 : (double) seriesBytes / values;
+      this.lastMeasured = now;
+    } else {
+      seriesBytes = (long) (values * this.bytesPerValue);
+    }
+    this.estimatedBytes = seriesBytes + this.getSigToDistBytes();
+    return this.estimatedBytes;
+  }
+
+  /**
+   * Checks the cache against the budget, and thins links or shortens
+   * retention if it is over.
+   */
+  public void enforce() {
+    this.pruneLinkStates();
+    long used = this.estimate();
+    long limit = this.budget;
+    if (limit <= 0) {
+      if (this.reducedAge != 0) {
+        this.reducedAge = 0;
+      }
+      return;
+    }
+
+    if (used <= limit) {
+      this.restore(used, limit);
+      return;
+    }
+
+    long target = (long) (limit * LOW_WATER);
+    long now = System.currentTimeMillis();
+    long before = now - FULL_RESOLUTION_AGE;
+    long thinned = 0;
+    for (Link link : this.getLinksByLastViewed()) {
+      if (used <= target) {
+        break;
+      }
+      LinkState state = link.state;
+      if (state.thinnedBefore >= before) {
+        continue;
+      }
+      // Only thin values that are new since the last time
+      int removed = this.cache.downsampleLink(link.receiver, link.transmitter,
+          state.thinnedBefore, before);
+      state.thinnedBefore = before;
+      thinned += removed;
+      used -= (long) (removed * Math.max(CompactSeries.VALUE_BYTES,
+          this.bytesPerValue));
+    }
+    if (thinned > 0) {
+      this.downsampledValues.addAndGet(thinned);
+      log.info("Thinned {} values to stay within the cache budget.",
+          Long.valueOf(thinned));
+      used = this.estimate();
+    }
+
+    if (used > target) {
+      long age = this.cache.getRetentionAge();
+      long newAge = Math.max(MIN_RETENTION_AGE, age * 3 / 4);
+      if (newAge < age) {
+        this.reducedAge = newAge;
+        this.retentionReductions.incrementAndGet();
+        log.warn("Cache is over budget, reducing retention to {} seconds.",
+            Long.valueOf(newAge / 1000));
+        this.cache.sweepCache();
+      }
+    }
+    this.estimate();
+  }
+
+  /**
+   * Lets a shortened retention age grow again once the cache is well within
+   * its budget.
+   */
+  private void restore(final long used, final long limit) {
+    long age = this.reducedAge;
+    if (age == 0 || used > limit * RESTORE_WATER) {
+      return;
+    }
+    long newAge = age * 5 / 4;
+    if (newAge >= this.cache.getMaxCacheAge()) {
+      newAge = 0;
+    }
+    this.reducedAge = newAge;
+    log.info("Cache is within budget, retention is now {} seconds.",
+        Long.valueOf(this.cache.getRetentionAge() / 1000));
+  }
+
+  /**
+   * @return every link in the cache, from least to most recently viewed.
+   */
+  private List<Link> getLinksByLastViewed() {
+    List<Link> links = new ArrayList<Link>();
+    for (Map.Entry<String, ConcurrentMap<String, CompactSeries>> entry : this.cache.averageRssiByRByT
+        .entrySet()) {
+      for (String transmitter : entry.getValue().keySet()) {
+        links.add(new Link(entry.getKey(), transmitter, this.getLinkState(
+            entry.getKey(), transmitter)));
+      }
+    }
+    // Variance-only links, such as those loaded from a file
+    for (Map.Entry<String, ConcurrentMap<String, CompactSeries>> entry : this.cache.varianceRssiByRByT
+        .entrySet()) {
+      Map<String, CompactSeries> rssiMap = this.cache.averageRssiByRByT
+          .get(entry.getKey());
+      for (String transmitter : entry.getValue().keySet()) {
+        if (rssiMap == null || !rssiMap.containsKey(transmitter)) {
+          links.add(new Link(entry.getKey(), transmitter, this.getLinkState(
+              entry.getKey(), transmitter)));
+        }
+      }
+    }
+    Collections.sort(links, new Comparator<Link>() {
+      @Override
+      public int compare(Link o1, Link o2) {
+        return o1.lastViewed < o2.lastViewed ? -1
+            : (o1.lastViewed == o2.lastViewed ? 0 : 1);
+      }
+    });
+    return links;
+  }
+
+  private static final class LinkState {
+    volatile long lastViewed = 0;
+
+    /**
+     * Values older than this have already been thinned.
+     */
+    volatile long thinnedBefore = Long.MIN_VALUE;
+  }
+
+  private static final class Link {
+    final String receiver;
+    final String transmitter;
+    final long lastViewed;
+    final LinkState state;
+
+    Link(final String receiver, final String transmitter, final LinkState state) {
+      this.receiver = receiver;
+      this.transmitter = transmitter;
+      this.lastViewed = state.lastViewed;
+      this.state = state;
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.owlplatform.common.SampleMessage;
+
+/**
+ * Distributes samples across a fixed number of single-threaded lanes. Each
+ * sample is assigned to a lane by hashing a device identifier, so all samples
+ * for a device are handled in order by the same thread and per-device state
+ * needs no locking. Each lane drains its queue in batches. Lane queues are
+ * bounded, and when a lane falls behind its oldest samples are dropped so
+ * that the newest ones are always handled.
+ * 
+ * @author Robert Moore
+ * 
+ */
+public class SampleDispatcher {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(SampleDispatcher.class);
+
+  /**
+   * Receives the batches of samples drained by a lane.
+   */
+  public static interface BatchHandler {
+    /**
+     * Called from a lane's thread with the samples that were waiting in its
+     * queue, in the order they were dispatched. The list is reused after this
+     * method returns.
+     */
+    public void handleBatch(List<SampleMessage> samples);
+  }
+
+  protected final Lane[] lanes;
+
+  protected final BatchHandler handler;
+
+  /**
+   * Default number of samples each lane can hold.
+   */
+  public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+  protected final int maxBatchSize;
+
+  protected final AtomicLong droppedSamples = new AtomicLong();
+
+  protected volatile boolean keepRunning = true;
+
+  /**
+   * Creates and starts the lanes, each holding up to
+   * {@link #DEFAULT_QUEUE_CAPACITY} samples.
+   * 
+   * @param name
+   *          prefix of the lane thread names.
+   * @param numLanes
+   *          the number of lanes (threads).
+   * @param maxBatchSize
+   *          the most samples passed to the handler at once.
+   * @param handler
+   *          the handler for each batch.
+   */
+  public SampleDispatcher(final String name, final int numLanes,
+      final int maxBatchSize, final BatchHandler handler) {
+    this(name, numLanes, maxBatchSize, DEFAULT_QUEUE_CAPACITY, handler);
+  }
+
+  /**
+   * Creates and starts the lanes.
+   * 
+   * @param name
+   *          prefix of the lane thread names.
+   * @param numLanes
+   *          the number of lanes (threads).
+   * @param maxBatchSize
+   *          the most samples passed to the handler at once.
+   * @param queueCapacity
+   *          the most samples waiting in each lane.
+   * @param handler
+   *          the handler for each batch.
+   */
+  public SampleDispatcher(final String name, final int numLanes,
+      final int maxBatchSize, final int queueCapacity,
+      final BatchHandler handler) {
+    this.handler = handler;
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+    this.lanes = new Lane[Math.max(1, numLanes)];
+    for (int i = 0; i < this.lanes.length; ++i) {
+      this.lanes[i] = new Lane(name + "-" + i, Math.max(1, queueCapacity));
+      this.lanes[i].start();
+    }
+  }
+
+  /**
+   * Queues {@code sample} on the lane for {@code deviceId}. If the lane is
+   * full, its oldest samples are dropped to make room. Samples dispatched
+   * after {@link #shutdown()} are ignored.
+   */
+  public void dispatch(final SampleMessage sample, final byte[] deviceId) {
+    if (!this.keepRunning) {
+      return;
+    }
+    int hash = Arrays.hashCode(deviceId);
+    hash ^= (hash >>> 16);
+    BlockingQueue<SampleMessage> queue = this.lanes[(hash & 0x7FFFFFFF)
+        % this.lanes.length].queue;
+    while (!queue.offer(sample)) {
+      if (queue.poll() != null) {
+        this.droppedSamples.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * @return the number of samples dropped because a lane was full.
+   */
+  public long getDroppedSamples() {
+    return this.droppedSamples.get();
+  }
+
+  public int getNumLanes() {
+    return this.lanes.length;
+  }
+
+  /**
+   * @return the number of samples waiting in all lanes.
+   */
+  public int getQueuedSamples() {
+    int total = 0;
+    for (Lane lane : this.lanes) {
+      total += lane.queue.size();
+    }
+    return total;
+  }
+
+  /**
+   * Stops the lanes. Samples that are still queued are discarded.
+   */
+  public void shutdown() {
+    this.keepRunning = false;
+    for (Lane lane : this.lanes) {
+      lane.interrupt();
+      lane.queue.clear();
+    }
+  }
+
+  protected class Lane extends Thread {
+    final BlockingQueue<SampleMessage> queue;
+
+    private final List<SampleMessage> batch = new ArrayList<SampleMessage>();
+
+    Lane(final String name, final int capacity) {
+      super(name);
+      this.queue = new ArrayBlockingQueue<SampleMessage>(capacity);
+      this.setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      while (SampleDispatcher.this.keepRunning) {
+        try {
+          this.batch.add(this.queue.take());
+        } catch (InterruptedException ie) {
+          continue;
+        }
+        this.queue.drainTo(this.batch, SampleDispatcher.this.maxBatchSize - 1);
+        try {
+          SampleDispatcher.this.handler.handleBatch(this.batch);
+        } catch (Exception e) {
+          log.error("Unable to process samples in " + this.getName() + ".", e);
+        }
+        this.batch.clear();
+      }
+    }
+  }
+}
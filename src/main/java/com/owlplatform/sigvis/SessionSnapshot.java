@@ -0,0 +1,526 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.imageio.ImageIO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.owlplatform.sigvis.structs.CompactSeries;
+
+/**
+ * Saves a region's metadata, anchors, sensor mappings, background image and
+ * the most recent link values when the application exits, and restores them
+ * when it starts, so the panels can draw the region before the world model
+ * connection is ready. Once connected, the region is loaded from the world
+ * model as usual and replaces whatever the snapshot restored.
+ * 
+ * Snapshots are kept in the directory named by the "sigvis.snapshot.dir"
+ * property, or "~/.sigvis" by default, and are not used at all if the
+ * "sigvis.snapshot" property is "false".
+ * 
+ * @author Robert Moore
+ * 
+ */
+public class SessionSnapshot {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(SessionSnapshot.class);
+
+  /**
+   * Default length of the link history that is saved, in milliseconds.
+   */
+  public static final long DEFAULT_TAIL_LENGTH = 300000l;
+
+  /**
+   * Largest width or height of the saved region image. Larger images are
+   * scaled down to fit.
+   */
+  public static final int MAX_IMAGE_SIZE = 2048;
+
+  private static final int MAGIC = 0x53565353;
+
+  private static final int VERSION = 1;
+
+  private final DataCache2 cache;
+
+  private final String regionName;
+
+  private final File file;
+
+  private long tailLength = DEFAULT_TAIL_LENGTH;
+
+  private final AtomicBoolean exitSaved = new AtomicBoolean(false);
+
+  /**
+   * @param cache
+   *          the cache to save and restore.
+   * @param regionName
+   *          the region the cache shows.
+   * @param file
+   *          where the snapshot is kept.
+   */
+  public SessionSnapshot(final DataCache2 cache, final String regionName,
+      final File file) {
+    this.cache = cache;
+    this.regionName = regionName;
+    this.file = file;
+  }
+
+  /**
+   * Creates a snapshot for a region in the configured snapshot directory.
+   * 
+   * @return the snapshot, or {@code null} if the "sigvis.snapshot" property
+   *         is "false".
+   */
+  public static SessionSnapshot forRegion(final DataCache2 cache,
+      final String regionName) {
+    if (!Boolean.parseBoolean(System.getProperty("sigvis.snapshot", "true"))) {
+      return null;
+    }
+    String dirName = System.getProperty("sigvis.snapshot.dir");
+    File dir = dirName != null ? new File(dirName) : new File(
+        System.getProperty("user.home"), ".sigvis");
+    String safeName = regionName.replaceAll("[^A-Za-z0-9._-]", "_");
+    SessionSnapshot snapshot = new SessionSnapshot(cache, regionName,
+        new File(dir, "session-" + safeName + ".snapshot"));
+    String tail = System.getProperty("sigvis.snapshot.tail");
+    if (tail != null) {
+      try {
+        snapshot.setTailLength(Long.parseLong(tail));
+      } catch (NumberFormatException nfe) {
+        log.warn("Invalid snapshot tail length \"{}\".", tail);
+      }
+    }
+    return snapshot;
+  }
+
+  /**
+   * Sets how much of the most recent link history is saved, in milliseconds.
+   */
+  public void setTailLength(final long tailLength) {
+    // Times are saved as int differences
+    this.tailLength = Math.min(tailLength, Integer.MAX_VALUE);
+  }
+
+  public File getFile() {
+    return this.file;
+  }
+
+  /**
+   * Saves the snapshot when the cache is shut down, or when the virtual
+   * machine shuts down if the cache never was.
+   */
+  public void saveOnExit() {
+    this.cache.setSessionSnapshot(this);
+    Thread hook = new Thread("Session Snapshot " + this.regionName) {
+      @Override
+      public void run() {
+        SessionSnapshot.this.saveForExit();
+      }
+    };
+    Runtime.getRuntime().addShutdownHook(hook);
+  }
+
+  /**
+   * Saves the snapshot as the application exits. Only the first call writes
+   * it, since closing the last window clears the cache before the shutdown
+   * hook runs.
+   * 
+   * @return {@code true} if the snapshot was written by this call.
+   */
+  public boolean saveForExit() {
+    if (!this.exitSaved.compareAndSet(false, true)) {
+      return false;
+    }
+    return this.save();
+  }
+
+  /**
+   * Writes the snapshot, replacing any earlier one. Nothing is written if the
+   * cache doesn't currently show the region, for instance because a saved
+   * cache file was opened into it.
+   * 
+   * @return {@code true} if the snapshot was written.
+   */
+  public boolean save() {
+    if (!this.regionName.equals(this.cache.getRegionUri())) {
+      log.info("Cache does not show {}, not saving a snapshot.",
+          this.regionName);
+      return false;
+    }
+    File dir = this.file.getAbsoluteFile().getParentFile();
+    if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+      log.error("Unable to create snapshot directory {}.", dir);
+      return false;
+    }
+    File temp = new File(this.file.getPath() + ".tmp");
+    long start = System.currentTimeMillis();
+    try {
+      DataOutputStream out = new DataOutputStream(new GZIPOutputStream(
+          new BufferedOutputStream(new FileOutputStream(temp))));
+      try {
+        this.write(out);
+      } finally {
+        out.close();
+      }
+    } catch (IOException ioe) {
+      log.error("Unable to save session snapshot to " + temp + ".", ioe);
+      temp.delete();
+      return false;
+    }
+    // Only replace the old snapshot once the new one is complete
+    if (!temp.renameTo(this.file)) {
+      this.file.delete();
+      if (!temp.renameTo(this.file)) {
+        log.error("Unable to replace session snapshot {}.", this.file);
+        temp.delete();
+        return false;
+      }
+    }
+    log.info("Saved session snapshot of {} in {} ms.", this.regionName,
+        Long.valueOf(System.currentTimeMillis() - start));
+    return true;
+  }
+
+  /**
+   * Restores the snapshot into the cache, if there is one. The region
+   * metadata is restored even if the snapshot is old, but link values older
+   * than the cache's retention age are skipped.
+   * 
+   * @return {@code true} if a snapshot was restored.
+   */
+  public boolean load() {
+    if (!this.file.isFile()) {
+      return false;
+    }
+    long start = System.currentTimeMillis();
+    try {
+      DataInputStream in = new DataInputStream(new GZIPInputStream(
+          new BufferedInputStream(new FileInputStream(this.file))));
+      try {
+        if (!this.read(in)) {
+          return false;
+        }
+      } finally {
+        in.close();
+      }
+    } catch (IOException ioe) {
+      log.error("Unable to load session snapshot from " + this.file + ".",
+          ioe);
+      return false;
+    }
+    log.info("Restored session snapshot of {} in {} ms.", this.regionName,
+        Long.valueOf(System.currentTimeMillis() - start));
+    return true;
+  }
+
+  private void write(final DataOutputStream out) throws IOException {
+    DataCache2 cache = this.cache;
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeLong(System.currentTimeMillis());
+    out.writeUTF(this.regionName);
+    writeString(out, cache.getRegionImageUrl());
+
+    Rectangle2D bounds = cache.getRegionBounds();
+    out.writeBoolean(bounds != null);
+    if (bounds != null) {
+      out.writeDouble(bounds.getX());
+      out.writeDouble(bounds.getY());
+      out.writeDouble(bounds.getWidth());
+      out.writeDouble(bounds.getHeight());
+    }
+
+    byte[] image = encodeImage(cache.getRegionImage());
+    out.writeInt(image == null ? 0 : image.length);
+    if (image != null) {
+      out.write(image);
+    }
+
+    writeStrings(out, cache.getReceiverIds());
+    writeStrings(out, cache.getFiduciaryTransmitterIds());
+
+    Map<String, Point2D> locations = new HashMap<String, Point2D>(
+        cache.deviceLocations);
+    out.writeInt(locations.size());
+    for (Map.Entry<String, Point2D> entry : locations.entrySet()) {
+      out.writeUTF(entry.getKey());
+      out.writeDouble(entry.getValue().getX());
+      out.writeDouble(entry.getValue().getY());
+    }
+
+    Map<String, String> sensors = new HashMap<String, String>(
+        cache.sensorToUri);
+    out.writeInt(sensors.size());
+    Map<String, String> uriToSensor = new HashMap<String, String>();
+    for (Map.Entry<String, String> entry : sensors.entrySet()) {
+      out.writeUTF(entry.getKey());
+      out.writeUTF(entry.getValue());
+      uriToSensor.put(entry.getValue(), entry.getKey());
+    }
+
+    long oldest = System.currentTimeMillis() - this.tailLength;
+    CompactSeries.Cursor cursor = new CompactSeries.Cursor();
+    this.writeTail(out, cache.averageRssiByRByT, uriToSensor, oldest, cursor);
+    this.writeTail(out, cache.varianceRssiByRByT, uriToSensor, oldest, cursor);
+  }
+
+  /**
+   * Writes the values newer than {@code oldest} for each link, keyed by
+   * sensor so they can be added back like streamed values. Times are stored
+   * as differences from the previous value.
+   */
+  private void writeTail(final DataOutputStream out,
+      final Map<String, ? extends Map<String, CompactSeries>> linkMap,
+      final Map<String, String> uriToSensor, final long oldest,
+      final CompactSeries.Cursor cursor) throws IOException {
+    for (Map.Entry<String, ? extends Map<String, CompactSeries>> rxerEntry : linkMap
+        .entrySet()) {
+      String rxerSensor = uriToSensor.get(rxerEntry.getKey());
+      if (rxerSensor == null) {
+        continue;
+      }
+      for (Map.Entry<String, CompactSeries> txerEntry : rxerEntry.getValue()
+          .entrySet()) {
+        // Dynamic transmitters are stored by their sensor
+        String txerSensor = uriToSensor.get(txerEntry.getKey());
+        if (txerSensor == null) {
+          txerSensor = txerEntry.getKey();
+        }
+        txerEntry.getValue().getCursor(oldest, Long.MAX_VALUE, cursor);
+        if (!cursor.hasNext()) {
+          continue;
+        }
+        out.writeBoolean(true);
+        out.writeUTF(rxerSensor);
+        out.writeUTF(txerSensor);
+        long previous = oldest;
+        out.writeLong(previous);
+        while (cursor.next()) {
+          out.writeBoolean(true);
+          out.writeInt((int) (cursor.getTime() - previous));
+          out.writeFloat(cursor.getValue());
+          previous = cursor.getTime();
+        }
+        out.writeBoolean(false);
+      }
+    }
+    out.writeBoolean(false);
+  }
+
+  /**
+   * Reads the whole snapshot, then restores the region, anchors and sensor
+   * mappings before adding the link values.
+   */
+  private boolean read(final DataInputStream in) throws IOException {
+    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+      log.warn("{} is not a session snapshot, ignoring it.", this.file);
+      return false;
+    }
+    long savedAt = in.readLong();
+    String savedRegion = in.readUTF();
+    if (!this.regionName.equals(savedRegion)) {
+      log.warn("Snapshot {} is for {}, not {}.", new Object[] { this.file,
+          savedRegion, this.regionName });
+      return false;
+    }
+    String imageUrl = readString(in);
+
+    Rectangle2D bounds = null;
+    if (in.readBoolean()) {
+      bounds = new Rectangle2D.Double(in.readDouble(), in.readDouble(),
+          in.readDouble(), in.readDouble());
+    }
+
+    BufferedImage image = null;
+    int imageLength = in.readInt();
+    if (imageLength > 0) {
+      byte[] imageBytes = new byte[imageLength];
+      in.readFully(imageBytes);
+      image = ImageIO.read(new ByteArrayInputStream(imageBytes));
+    }
+
+    List<String> receivers = readStrings(in);
+    List<String> fiduciaries = readStrings(in);
+
+    Map<String, Point2D> locations = new HashMap<String, Point2D>();
+    int numLocations = in.readInt();
+    for (int i = 0; i < numLocations; ++i) {
+      String uri = in.readUTF();
+      locations.put(uri, new Point2D.Double(in.readDouble(), in.readDouble()));
+    }
+
+    Map<String, String> sensors = new HashMap<String, String>();
+    int numSensors = in.readInt();
+    for (int i = 0; i < numSensors; ++i) {
+      String sensor = in.readUTF();
+      sensors.put(sensor, in.readUTF());
+    }
+
+    DataCache2 cache = this.cache;
+    cache.setRegionUri(this.regionName);
+    cache.setRegionImageUrl(imageUrl);
+    if (bounds != null) {
+      cache.setRegionBounds(bounds);
+    }
+    if (image != null) {
+      cache.setRegionImage(image);
+    }
+    for (Map.Entry<String, String> entry : sensors.entrySet()) {
+      cache.mapSensorToUri(entry.getKey(), entry.getValue());
+    }
+    for (String rxer : receivers) {
+      cache.addReceiver(rxer);
+    }
+    for (String txer : fiduciaries) {
+      cache.addFiduciaryTransmitter(txer);
+    }
+    for (Map.Entry<String, Point2D> entry : locations.entrySet()) {
+      cache.setDeviceLocation(entry.getKey(), entry.getValue());
+    }
+
+    long oldest = System.currentTimeMillis() - cache.getRetentionAge();
+    int rssiValues = this.readTail(in, true, oldest);
+    int varianceValues = this.readTail(in, false, oldest);
+    cache.reaggregateRssi();
+    cache.updateStats();
+    cache.eventBus.reset();
+    log.info("Snapshot from {} s ago had {} anchors, {} averages and {} variances.",
+        new Object[] {
+            Long.valueOf((System.currentTimeMillis() - savedAt) / 1000),
+            Integer.valueOf(receivers.size() + fiduciaries.size()),
+            Integer.valueOf(rssiValues), Integer.valueOf(varianceValues) });
+    return true;
+  }
+
+  private int readTail(final DataInputStream in, final boolean isRssi,
+      final long oldest) throws IOException {
+    int added = 0;
+    while (in.readBoolean()) {
+      String rxerSensor = in.readUTF();
+      String txerSensor = in.readUTF();
+      long time = in.readLong();
+      while (in.readBoolean()) {
+        time += in.readInt();
+        float value = in.readFloat();
+        if (time < oldest) {
+          continue;
+        }
+        if (isRssi) {
+          this.cache.addRssi(rxerSensor, txerSensor, value, time);
+        } else {
+          this.cache.addVariance(rxerSensor, txerSensor, value, time);
+        }
+        ++added;
+      }
+    }
+    return added;
+  }
+
+  /**
+   * Scales the image down to {@link #MAX_IMAGE_SIZE} and encodes it as a PNG.
+   * 
+   * @return the encoded image, or {@code null} if there is none or it can't
+   *         be encoded.
+   */
+  static byte[] encodeImage(final BufferedImage image) {
+    if (image == null) {
+      return null;
+    }
+    double scale = Math.min(1,
+        (double) MAX_IMAGE_SIZE / Math.max(image.getWidth(), image.getHeight()));
+    int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+    int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+    // Screen-compatible images may not have a type the encoder understands
+    BufferedImage scaled = new BufferedImage(width, height,
+        BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g2 = scaled.createGraphics();
+    g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    g2.drawImage(image, 0, 0, width, height, null);
+    g2.dispose();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      if (!ImageIO.write(scaled, "png", bytes)) {
+        return null;
+      }
+    } catch (IOException ioe) {
+      log.warn("Unable to encode the region image.", ioe);
+      return null;
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void writeString(final DataOutputStream out,
+      final String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readString(final DataInputStream in)
+      throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeStrings(final DataOutputStream out,
+      final List<String> values) throws IOException {
+    out.writeInt(values.size());
+    for (String value : values) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static List<String> readStrings(final DataInputStream in)
+      throws IOException {
+    int count = in.readInt();
+    List<String> values = new LinkedList<String>();
+    for (int i = 0; i < count; ++i) {
+      values.add(in.readUTF());
+    }
+    return values;
+  }
+}
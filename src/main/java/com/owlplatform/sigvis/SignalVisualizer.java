@@ -22,6 +22,8 @@ package com.owlplatform.sigvis;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.owlplatform.sigvis.server.CacheServer;
+
 public class SignalVisualizer {
 
   public static final String TITLE = "SigVis";
@@ -68,6 +70,12 @@ public class SignalVisualizer {
     if (args.length == 3) {
 
       new SignalVisualizer(args[0], Integer.parseInt(args[1]), args[2]);
+    } else if (args.length == 5 || args.length == 6) {
+      // Raw samples from an aggregator, optionally with the emission period
+      new SignalVisualizer(args[0], Integer.parseInt(args[1]), args[2],
+          args[3], Integer.parseInt(args[4]),
+          args.length == 6 ? Long.parseLong(args[5])
+              : RawSampleIngester.DEFAULT_EMISSION_PERIOD);
     } else {
       new SignalVisualizer();
     }
@@ -80,23 +88,80 @@ public class SignalVisualizer {
 
   public SignalVisualizer(final String wmHost, final int wmPort,
       final String regionName) {
+    this(wmHost, wmPort, regionName, null, -1,
+        RawSampleIngester.DEFAULT_EMISSION_PERIOD);
+  }
+
+  public SignalVisualizer(final String wmHost, final int wmPort,
+      final String regionName, final String aggHost, final int aggPort,
+      final long rawEmissionPeriod) {
     super();
 
+    GraphicsSettings gfx = new GraphicsSettings();
+    if ("true".equalsIgnoreCase(System.getProperty("sun.java2d.opengl"))) {
+      gfx.setUseTransparency(true);
+    }
+
+    // Several regions, separated by commas, share one connection
+    if (wmHost != null && regionName.indexOf(',') != -1) {
+      RegionSessionManager manager = new RegionSessionManager(wmHost, wmPort);
+      if (aggHost != null) {
+        manager.getHandler().setAggregatorConnection(aggHost, aggPort);
+        manager.getHandler().setRawEmissionPeriod(rawEmissionPeriod);
+      }
+      manager.getHandler().setFilteredStreams(
+          Boolean.getBoolean("sigvis.filteredStreams"));
+      for (String region : regionName.split(",")) {
+        region = region.trim();
+        if (region.length() == 0) {
+          continue;
+        }
+        FilteringDataCache regionCache = manager.addRegion(region);
+        SimpleFrame frame = new SimpleFrame("SigVis v1.0.0-BETA - " + region,
+            regionCache, gfx);
+        frame.configureDisplay();
+        restoreSession(regionCache, region);
+      }
+      manager.connect();
+      return;
+    }
+
     ConnectionHandler handler = new ConnectionHandler();
     FilteringDataCache cache = new FilteringDataCache(handler);
     if (wmHost != null) {
       handler.setClientConnection(wmHost, wmPort);
       handler.setRegion(regionName);
+      handler.setFilteredStreams(Boolean.getBoolean("sigvis.filteredStreams"));
 
     }
+    if (aggHost != null) {
+      handler.setAggregatorConnection(aggHost, aggPort);
+      handler.setRawEmissionPeriod(rawEmissionPeriod);
+    }
 
-    GraphicsSettings gfx = new GraphicsSettings();
-    if ("true".equalsIgnoreCase(System.getProperty("sun.java2d.opengl"))) {
-      gfx.setUseTransparency(true);
+    // Optionally serve the cache to remote viewers
+    String serverPort = System.getProperty("sigvis.server.port");
+    if (serverPort != null) {
+      try {
+        CacheServer server = new CacheServer(cache,
+            System.getProperty("sigvis.server.bind"),
+            Integer.parseInt(serverPort));
+        server.setAllowedOrigin(System.getProperty("sigvis.server.allowOrigin"));
+        String pushPeriod = System.getProperty("sigvis.server.pushPeriod");
+        if (pushPeriod != null) {
+          server.setPushPeriod(Long.parseLong(pushPeriod));
+        }
+        server.start();
+      } catch (Exception e) {
+        log.error("Unable to start cache server on port " + serverPort + ".",
+            e);
+      }
     }
+
     SimpleFrame initialFrame = new SimpleFrame("SigVis v1.0.0-BETA", cache, gfx);
     initialFrame.configureDisplay();
     if (wmHost != null) {
+      restoreSession(cache, regionName);
       if (handler.connectAsClient()) {
         handler.startup();
       } else {
@@ -105,4 +170,18 @@ public class SignalVisualizer {
     }
 
   }
+
+  /**
+   * Shows the region's last session until the world model connection is
+   * ready, and saves this session when the application exits.
+   */
+  private static void restoreSession(final DataCache2 cache,
+      final String regionName) {
+    SessionSnapshot snapshot = SessionSnapshot.forRegion(cache, regionName);
+    if (snapshot == null) {
+      return;
+    }
+    snapshot.load();
+    snapshot.saveOnExit();
+  }
 }
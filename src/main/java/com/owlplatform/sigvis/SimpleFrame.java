@@ -29,16 +29,20 @@ import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Dictionary;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.ButtonGroup;
@@ -60,6 +64,8 @@ import javax.swing.SwingWorker;
 import javax.swing.border.TitledBorder;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
 import javax.swing.filechooser.FileFilter;
 
 import org.apache.mina.util.ConcurrentHashSet;
@@ -71,16 +77,19 @@ import com.owlplatform.sigvis.panels.AmbientCloud;
 import com.owlplatform.sigvis.panels.BarChart;
 import com.owlplatform.sigvis.panels.DisplayPanel;
 import com.owlplatform.sigvis.panels.HeatStripes;
+import com.owlplatform.sigvis.panels.InterpolatedHeatMap;
 import com.owlplatform.sigvis.panels.IntersectionLineMap;
 import com.owlplatform.sigvis.panels.LineChart;
+import com.owlplatform.sigvis.panels.RenderedDisplayHost;
 import com.owlplatform.sigvis.panels.RssiStDvLineChart;
 import com.owlplatform.sigvis.panels.SignalLineMap;
 import com.owlplatform.sigvis.panels.SignalToDistanceMap;
 import com.owlplatform.sigvis.panels.VoronoiHeatMap;
 import com.owlplatform.sigvis.panels.VoronoiRSSIQualityMap;
+import com.owlplatform.sigvis.structs.DeviceRegistry;
 
 public class SimpleFrame extends JFrame implements ActionListener,
-    ChangeListener, DataCache2Listener, WindowListener {
+    ChangeListener, DataCache2BatchListener, WindowListener {
   private static final Logger log = LoggerFactory.getLogger(SimpleFrame.class);
 
   // protected int desiredFps = 10;
@@ -211,7 +220,14 @@ public class SimpleFrame extends JFrame implements ActionListener,
     this.panelTitle = (this.cache.getRegionUri() == null ? "" : this.cache
         .getRegionUri()) + this.titleChartType;
     this.setTitle();
-    this.add(newChart, BorderLayout.CENTER);
+    this.displayHost.setQualityListener(new Runnable() {
+      @Override
+      public void run() {
+        SimpleFrame.this.updateQualityItems();
+      }
+    });
+    this.displayHost.setPanel(newChart);
+    this.add(this.displayHost, BorderLayout.CENTER);
     this.validate();
 
     this.pack();
@@ -221,9 +237,10 @@ public class SimpleFrame extends JFrame implements ActionListener,
     this.startUpdates();
   }
 
-  protected Timer updateTimer = new Timer();
-
-  protected TimerTask updateTask = null;
+  /**
+   * Requests new frames from displayHost when the displayed data changes.
+   */
+  protected FrameScheduler frameScheduler = null;
 
   protected String currentDeviceId = null;
 
@@ -241,6 +258,12 @@ public class SimpleFrame extends JFrame implements ActionListener,
 
   protected DisplayPanel displayPanel = null;
 
+  /**
+   * Renders mainPanel off of the Event Dispatch Thread and shows the latest
+   * completed frame.
+   */
+  protected final RenderedDisplayHost displayHost = new RenderedDisplayHost();
+
   protected JMenuBar menu = new JMenuBar();
 
   protected JMenu fileMenu = new JMenu("File");
@@ -323,9 +346,18 @@ public class SimpleFrame extends JFrame implements ActionListener,
   protected JRadioButtonMenuItem visualizeAmbient = new JRadioButtonMenuItem(
       "Ambient Variance");
 
+  protected JRadioButtonMenuItem visualizeRssiInterpolated = new JRadioButtonMenuItem(
+      "RSSI Interp. Map");
+  protected JRadioButtonMenuItem visualizeRssiKriging = new JRadioButtonMenuItem(
+      "RSSI Kriging Map");
+
   protected JMenuItem gfxAntiAlias = new JCheckBoxMenuItem("Anti-Alias");
   protected JMenuItem gfxTransparent = new JCheckBoxMenuItem("Transparency");
 
+  protected JMenuItem gfxShowTiming = new JCheckBoxMenuItem("Show Frame Timing");
+  protected JMenuItem gfxSaveTiming = new JMenuItem("Save Frame Timing...");
+  protected JMenuItem gfxResetTiming = new JMenuItem("Reset Frame Timing");
+
   protected JMenuItem refresh1hz = new JRadioButtonMenuItem("1 Hz");
   protected JMenuItem refresh5hz = new JRadioButtonMenuItem("5 Hz");
   protected JMenuItem refresh10hz = new JRadioButtonMenuItem("10 Hz", true);
@@ -358,6 +390,22 @@ public class SimpleFrame extends JFrame implements ActionListener,
    */
   protected ConcurrentHashMap<JRadioButtonMenuItem, String> transmitterDynamicItems = new ConcurrentHashMap<JRadioButtonMenuItem, String>();
 
+  /**
+   * Number of dynamic transmitters listed in the "Most Active" menu.
+   */
+  public static final int MOST_ACTIVE_SIZE = 20;
+
+  /**
+   * Menu of the dynamic transmitters with the highest sample rates, rebuilt
+   * each time it is opened.
+   */
+  protected JMenu transmittersActiveMenu = new JMenu("Most Active");
+
+  /**
+   * Map of menu items to object names for the "Most Active" menu.
+   */
+  protected ConcurrentHashMap<JMenuItem, String> transmitterActiveItems = new ConcurrentHashMap<JMenuItem, String>();
+
   protected JMenu deviceMenu = new JMenu("Device");
 
   protected JMenu sourceReceiversMenu = new JMenu("Receivers");
@@ -368,6 +416,16 @@ public class SimpleFrame extends JFrame implements ActionListener,
 
   protected ConcurrentHashMap<JCheckBoxMenuItem, String> sourceTransmitterMenuItems = new ConcurrentHashMap<JCheckBoxMenuItem, String>();
 
+  /**
+   * Devices that already have menu items, so new devices can be added without
+   * rebuilding the menus.
+   */
+  protected final Set<String> receiverMenuIds = new HashSet<String>();
+
+  protected final Set<String> fiduciaryMenuIds = new HashSet<String>();
+
+  protected final Set<String> dynamicMenuIds = new HashSet<String>();
+
   protected JMenuItem sourceReceiverSelectAll = new JMenuItem("Select All");
 
   protected JMenuItem sourceReceiverClearAll = new JMenuItem("Clear All");
@@ -427,6 +485,23 @@ public class SimpleFrame extends JFrame implements ActionListener,
 
     this.transmittersMenu.add(this.transmittersFiduciaryMenu);
     this.transmittersMenu.add(this.transmittersDynamicMenu);
+    this.transmittersMenu.add(this.transmittersActiveMenu);
+    this.transmittersActiveMenu.addMenuListener(new MenuListener() {
+      @Override
+      public void menuSelected(MenuEvent e) {
+        SimpleFrame.this.buildMenuActiveTransmitters();
+      }
+
+      @Override
+      public void menuDeselected(MenuEvent e) {
+        // Nothing to do
+      }
+
+      @Override
+      public void menuCanceled(MenuEvent e) {
+        // Nothing to do
+      }
+    });
 
     this.menu.add(this.sourcesMenu);
     this.sourcesMenu.add(this.sourceTransmittersMenu);
@@ -467,9 +542,17 @@ public class SimpleFrame extends JFrame implements ActionListener,
     this.graphicsMenu.add(this.refresh15hz);
     this.graphicsMenu.add(this.refresh20hz);
     this.graphicsMenu.add(this.refresh30hz);
+    this.graphicsMenu.add(new JSeparator(JSeparator.HORIZONTAL));
+
+    this.graphicsMenu.add(this.gfxShowTiming);
+    this.graphicsMenu.add(this.gfxSaveTiming);
+    this.graphicsMenu.add(this.gfxResetTiming);
 
     this.gfxAntiAlias.addActionListener(this);
     this.gfxTransparent.addActionListener(this);
+    this.gfxShowTiming.addActionListener(this);
+    this.gfxSaveTiming.addActionListener(this);
+    this.gfxResetTiming.addActionListener(this);
 
     this.refresh1hz.addActionListener(this);
     this.refresh5hz.addActionListener(this);
@@ -500,6 +583,8 @@ public class SimpleFrame extends JFrame implements ActionListener,
     this.visualizationMenu.add(this.visualizeMaxVarianceMap);
     this.visualizationMenu.add(this.visualizeRssiStDvLines);
     this.visualizationMenu.add(this.visualizeAmbient);
+    this.visualizationMenu.add(this.visualizeRssiInterpolated);
+    this.visualizationMenu.add(this.visualizeRssiKriging);
 
     this.visualizeRssiBars.addActionListener(this);
     this.visualizeVarianceBars.addActionListener(this);
@@ -518,6 +603,8 @@ public class SimpleFrame extends JFrame implements ActionListener,
     this.visualizeMaxVarianceMap.addActionListener(this);
     this.visualizeRssiStDvLines.addActionListener(this);
     this.visualizeAmbient.addActionListener(this);
+    this.visualizeRssiInterpolated.addActionListener(this);
+    this.visualizeRssiKriging.addActionListener(this);
 
     this.visualizeRssiBars.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_1,
         acceleratorMask));
@@ -571,6 +658,8 @@ public class SimpleFrame extends JFrame implements ActionListener,
     this.visualizationGroup.add(this.visualizeMaxVarianceMap);
     this.visualizationGroup.add(this.visualizeRssiStDvLines);
     this.visualizationGroup.add(this.visualizeAmbient);
+    this.visualizationGroup.add(this.visualizeRssiInterpolated);
+    this.visualizationGroup.add(this.visualizeRssiKriging);
 
     this.visualizeAmbient.setSelected(true);
 
@@ -602,6 +691,7 @@ public class SimpleFrame extends JFrame implements ActionListener,
     }
 
     this.receiverMenuItems.clear();
+    this.receiverMenuIds.clear();
     this.receiversMenu.removeAll();
 
     // this.receiversMenu.removeAll();
@@ -613,6 +703,7 @@ public class SimpleFrame extends JFrame implements ActionListener,
     List<String> receivers = this.cache.getReceiverIds();
     Collections.sort(receivers);
     for (String receiver : receivers) {
+      this.receiverMenuIds.add(receiver);
       JRadioButtonMenuItem newSelectedItem = new JRadioButtonMenuItem(
           receiver.toString());
       JCheckBoxMenuItem newCheckedItem = new JCheckBoxMenuItem(
@@ -644,6 +735,7 @@ public class SimpleFrame extends JFrame implements ActionListener,
     }
     // Clear our all sets related to fiduciary transmitters
     this.transmitterFiduciaryItems.clear();
+    this.fiduciaryMenuIds.clear();
     this.transmittersFiduciaryMenu.removeAll();
     this.sourceTransmitterMenuItems.clear();
     this.sourceTransmittersMenu.removeAll();
@@ -656,6 +748,7 @@ public class SimpleFrame extends JFrame implements ActionListener,
     List<String> transmitters = this.cache.getFiduciaryTransmitterIds();
     Collections.sort(transmitters);
     for (String transmitter : transmitters) {
+      this.fiduciaryMenuIds.add(transmitter);
       // Radio button for "selected device" group
       JRadioButtonMenuItem newSelectedItem = new JRadioButtonMenuItem(
           transmitter.toString());
@@ -684,6 +777,7 @@ public class SimpleFrame extends JFrame implements ActionListener,
       this.selectedDeviceGroup.remove(item);
     }
     this.transmitterDynamicItems.clear();
+    this.dynamicMenuIds.clear();
     this.transmittersDynamicMenu.removeAll();
 
     // Get the list of transmitters
@@ -691,6 +785,7 @@ public class SimpleFrame extends JFrame implements ActionListener,
     
     // For each, add it to the appropriate menus/gruops
     for (String transmitter : transmitters) {
+      this.dynamicMenuIds.add(transmitter);
       // "Source device" radio button
       JRadioButtonMenuItem newSelectedItem = new JRadioButtonMenuItem(
           transmitter.toString());
@@ -712,18 +807,83 @@ public class SimpleFrame extends JFrame implements ActionListener,
     }
   }
 
+  /**
+   * Fills the "Most Active" menu with the dynamic transmitters that have the
+   * highest recent sample rates.
+   */
+  protected void buildMenuActiveTransmitters() {
+    this.transmittersActiveMenu.removeAll();
+    this.transmitterActiveItems.clear();
+
+    List<DeviceRegistry.Device> page = this.cache.getDynamicDevices().getPage(
+        DeviceRegistry.SortKey.RATE, true, 0, MOST_ACTIVE_SIZE);
+    if (page.isEmpty()) {
+      JMenuItem emptyItem = new JMenuItem("None");
+      emptyItem.setEnabled(false);
+      this.transmittersActiveMenu.add(emptyItem);
+      return;
+    }
+    for (DeviceRegistry.Device device : page) {
+      JMenuItem newActiveItem = new JMenuItem(String.format("%s (%.1f/s)",
+          device.getId(), Double.valueOf(device.getRate())));
+      newActiveItem.addActionListener(this);
+      this.transmitterActiveItems.put(newActiveItem, device.getId());
+      this.transmittersActiveMenu.add(newActiveItem);
+    }
+  }
+
+  /**
+   * Selects a transmitter chosen from the "Most Active" menu through its radio
+   * button in the "Dynamic" menu, so the selection group stays consistent.
+   */
+  protected void selectActiveTransmitter(final String transmitterId) {
+    for (Map.Entry<JRadioButtonMenuItem, String> entry : this.transmitterDynamicItems
+        .entrySet()) {
+      if (entry.getValue().equals(transmitterId)) {
+        entry.getKey().doClick();
+        return;
+      }
+    }
+    log.warn("No menu item for active transmitter {}", transmitterId);
+  }
+
   public void actionPerformed(ActionEvent e) {
     if (e.getSource() == this.gfxAntiAlias) {
       this.gfxSettings.setUseAA(this.gfxAntiAlias.isSelected());
-      if (this.displayPanel != null) {
-        this.displayPanel.setAntiAlias(this.gfxSettings.isUseAA());
+      final DisplayPanel panel = this.displayPanel;
+      if (panel != null) {
+        final boolean useAA = this.gfxSettings.isUseAA();
+        this.displayHost.invokeOnPanel(new Runnable() {
+          @Override
+          public void run() {
+            panel.setAntiAlias(useAA);
+            // The user's choice wins over the frame rate governor
+            SimpleFrame.this.displayHost.resetQuality();
+          }
+        });
       }
     } else if (e.getSource() == this.gfxTransparent) {
       this.gfxSettings.setUseTransparency(this.gfxTransparent.isSelected());
-      if (this.displayPanel != null) {
-
-        this.displayPanel.setTransparency(this.gfxSettings.isUseTransparency());
+      final DisplayPanel panel = this.displayPanel;
+      if (panel != null) {
+        final boolean useTransparency = this.gfxSettings.isUseTransparency();
+        this.displayHost.invokeOnPanel(new Runnable() {
+          @Override
+          public void run() {
+            panel.setTransparency(useTransparency);
+            SimpleFrame.this.displayHost.resetQuality();
+          }
+        });
       }
+    } else if (e.getSource() == this.gfxShowTiming) {
+      this.displayHost.setShowMetrics(this.gfxShowTiming.isSelected());
+    } else if (e.getSource() == this.gfxSaveTiming) {
+      this.saveRenderMetrics();
+    } else if (e.getSource() == this.gfxResetTiming) {
+      this.displayHost.getMetrics().reset();
+    } else if (this.transmitterActiveItems.containsKey(e.getSource())) {
+      this.selectActiveTransmitter(this.transmitterActiveItems.get(e
+          .getSource()));
     }
 
     else if (e.getSource() == this.refresh1hz) {
@@ -741,9 +901,6 @@ public class SimpleFrame extends JFrame implements ActionListener,
     } else if (e.getSource() == this.windowNew) {
       this.openNewWindow();
     } else if (e.getSource() == this.visualizeRssiBars) {
-      if (this.mainPanel != null) {
-        this.remove(this.mainPanel);
-      }
       BarChart newChart = new BarChart(DataCache2.ValueType.RSSI, this.cache);
       this.configureGfx(newChart);
       this.mainPanel = newChart;
@@ -759,12 +916,9 @@ public class SimpleFrame extends JFrame implements ActionListener,
       this.panelTitle = (this.isTransmitter ? "Transmitter " : "Receiver ")
           + this.titleDeviceName + " - " + this.titleChartType;
       this.setTitle();
-      this.add(newChart, BorderLayout.CENTER);
+      this.displayHost.setPanel(newChart);
       this.validate();
     } else if (e.getSource() == this.visualizeVarianceBars) {
-      if (this.mainPanel != null) {
-        this.remove(this.mainPanel);
-      }
       BarChart newChart = new BarChart(DataCache2.ValueType.VARIANCE,
           this.cache);
       this.configureGfx(newChart);
@@ -780,12 +934,9 @@ public class SimpleFrame extends JFrame implements ActionListener,
       this.panelTitle = (this.isTransmitter ? "Transmitter " : "Receiver ")
           + this.titleDeviceName + " - " + this.titleChartType;
       this.setTitle();
-      this.add(newChart, BorderLayout.CENTER);
+      this.displayHost.setPanel(newChart);
       this.validate();
     } else if (e.getSource() == this.visualizeRssiVoronoi) {
-      if (this.mainPanel != null) {
-        this.remove(this.mainPanel);
-      }
       VoronoiHeatMap heatMap = new VoronoiHeatMap(ValueType.RSSI, this.cache);
       this.configureGfx(heatMap);
       this.mainPanel = heatMap;
@@ -802,13 +953,10 @@ public class SimpleFrame extends JFrame implements ActionListener,
       this.panelTitle = (this.isTransmitter ? "Transmitter " : "Receiver ")
           + this.titleDeviceName + " - " + this.titleChartType;
       this.setTitle();
-      this.add(heatMap, BorderLayout.CENTER);
+      this.displayHost.setPanel(heatMap);
       this.validate();
 
     } else if (e.getSource() == this.visualizeVarianceVoronoi) {
-      if (this.mainPanel != null) {
-        this.remove(this.mainPanel);
-      }
       VoronoiHeatMap heatMap = new VoronoiHeatMap(ValueType.VARIANCE,
           this.cache);
       this.configureGfx(heatMap);
@@ -826,12 +974,9 @@ public class SimpleFrame extends JFrame implements ActionListener,
       this.panelTitle = (this.isTransmitter ? "Transmitter " : "Receiver ")
           + this.titleDeviceName + " - " + this.titleChartType;
       this.setTitle();
-      this.add(heatMap, BorderLayout.CENTER);
+      this.displayHost.setPanel(heatMap);
       this.validate();
     } else if (e.getSource() == this.visualizeRssiLines) {
-      if (this.mainPanel != null) {
-        this.remove(this.mainPanel);
-      }
       LineChart newChart = new LineChart(ValueType.RSSI, this.cache);
       this.configureGfx(newChart);
       this.mainPanel = newChart;
@@ -850,12 +995,9 @@ public class SimpleFrame extends JFrame implements ActionListener,
       this.panelTitle = (this.isTransmitter ? "Transmitter " : "Receiver ")
           + this.titleDeviceName + " - " + this.titleChartType;
       this.setTitle();
-      this.add(newChart, BorderLayout.CENTER);
+      this.displayHost.setPanel(newChart);
       this.validate();
     } else if (e.getSource() == this.visualizeVarianceLines) {
-      if (this.mainPanel != null) {
-        this.remove(this.mainPanel);
-      }
       LineChart newChart = new LineChart(ValueType.VARIANCE, this.cache);
       this.configureGfx(newChart);
       this.mainPanel = newChart;
@@ -873,13 +1015,10 @@ public class SimpleFrame extends JFrame implements ActionListener,
       this.panelTitle = (this.isTransmitter ? "Transmitter " : "Receiver ")
           + this.titleDeviceName + " - " + this.titleChartType;
       this.setTitle();
-      this.add(newChart, BorderLayout.CENTER);
+      this.displayHost.setPanel(newChart);
       this.validate();
 
     } else if (e.getSource() == this.visualizeSignalRings) {
-      if (this.mainPanel != null) {
-        this.remove(this.mainPanel);
-      }
       SignalToDistanceMap newMap = new SignalToDistanceMap(this.cache);
       this.configureGfx(newMap);
       this.mainPanel = newMap;
@@ -897,13 +1036,10 @@ public class SimpleFrame extends JFrame implements ActionListener,
       this.panelTitle = (this.isTransmitter ? "Transmitter " : "Receiver ")
           + this.titleDeviceName + " - " + this.titleChartType;
       this.setTitle();
-      this.add(newMap, BorderLayout.CENTER);
+      this.displayHost.setPanel(newMap);
       this.validate();
 
     } else if (e.getSource() == this.visualizeRssiStripes) {
-      if (this.mainPanel != null) {
-        this.remove(this.mainPanel);
-      }
       HeatStripes newMap = new HeatStripes(ValueType.RSSI, this.cache);
       newMap.setThresholdValue(-100f);
       this.configureGfx(newMap);
@@ -922,13 +1058,10 @@ public class SimpleFrame extends JFrame implements ActionListener,
       this.panelTitle = (this.cache.getRegionUri() == null ? "" : this.cache
           .getRegionUri()) + this.titleChartType;
       this.setTitle();
-      this.add(newMap, BorderLayout.CENTER);
+      this.displayHost.setPanel(newMap);
       this.validate();
 
     } else if (e.getSource() == this.visualizeVarianceStripes) {
-      if (this.mainPanel != null) {
-        this.remove(this.mainPanel);
-      }
       HeatStripes newMap = new HeatStripes(ValueType.VARIANCE, this.cache);
       newMap.setThresholdValue(1f);
       this.configureGfx(newMap);
@@ -947,13 +1080,10 @@ public class SimpleFrame extends JFrame implements ActionListener,
       this.panelTitle = (this.cache.getRegionUri() == null ? "" : this.cache
           .getRegionUri()) + this.titleChartType;
       this.setTitle();
-      this.add(newMap, BorderLayout.CENTER);
+      this.displayHost.setPanel(newMap);
       this.validate();
 
     } else if (e.getSource() == this.visualizeRssiLineMap) {
-      if (this.mainPanel != null) {
-        this.remove(this.mainPanel);
-      }
       SignalLineMap newMap = new SignalLineMap(ValueType.RSSI, this.cache);
 
       this.configureGfx(newMap);
@@ -972,13 +1102,10 @@ public class SimpleFrame extends JFrame implements ActionListener,
       this.panelTitle = (this.cache.getRegionUri() == null ? "" : this.cache
           .getRegionUri()) + this.titleChartType;
       this.setTitle();
-      this.add(newMap, BorderLayout.CENTER);
+      this.displayHost.setPanel(newMap);
       this.validate();
 
     } else if (e.getSource() == this.visualizeVarLineMap) {
-      if (this.mainPanel != null) {
-        this.remove(this.mainPanel);
-      }
       SignalLineMap newMap = new SignalLineMap(ValueType.VARIANCE, this.cache);
 
       this.configureGfx(newMap);
@@ -997,13 +1124,10 @@ public class SimpleFrame extends JFrame implements ActionListener,
       this.panelTitle = (this.cache.getRegionUri() == null ? "" : this.cache
           .getRegionUri()) + this.titleChartType;
       this.setTitle();
-      this.add(newMap, BorderLayout.CENTER);
+      this.displayHost.setPanel(newMap);
       this.validate();
 
     } else if (e.getSource() == this.visualizeRssiIntersect) {
-      if (this.mainPanel != null) {
-        this.remove(this.mainPanel);
-      }
       IntersectionLineMap newMap = new IntersectionLineMap(ValueType.RSSI,
           this.cache);
 
@@ -1023,13 +1147,10 @@ public class SimpleFrame extends JFrame implements ActionListener,
       this.panelTitle = (this.cache.getRegionUri() == null ? "" : this.cache
           .getRegionUri()) + this.titleChartType;
       this.setTitle();
-      this.add(newMap, BorderLayout.CENTER);
+      this.displayHost.setPanel(newMap);
       this.validate();
 
     } else if (e.getSource() == this.visualizeVarIntersect) {
-      if (this.mainPanel != null) {
-        this.remove(this.mainPanel);
-      }
       IntersectionLineMap newMap = new IntersectionLineMap(ValueType.VARIANCE,
           this.cache);
 
@@ -1049,13 +1170,10 @@ public class SimpleFrame extends JFrame implements ActionListener,
       this.panelTitle = (this.cache.getRegionUri() == null ? "" : this.cache
           .getRegionUri()) + this.titleChartType;
       this.setTitle();
-      this.add(newMap, BorderLayout.CENTER);
+      this.displayHost.setPanel(newMap);
       this.validate();
 
     } else if (e.getSource() == this.visualizeMaxRssiMap) {
-      if (this.mainPanel != null) {
-        this.remove(this.mainPanel);
-      }
       VoronoiRSSIQualityMap heatMap = new VoronoiRSSIQualityMap(ValueType.RSSI,
           this.cache);
       this.configureGfx(heatMap);
@@ -1073,13 +1191,10 @@ public class SimpleFrame extends JFrame implements ActionListener,
       this.panelTitle = (this.cache.getRegionUri() == null ? "" : this.cache
           .getRegionUri()) + this.titleChartType;
       this.setTitle();
-      this.add(heatMap, BorderLayout.CENTER);
+      this.displayHost.setPanel(heatMap);
       this.validate();
 
     } else if (e.getSource() == this.visualizeMaxVarianceMap) {
-      if (this.mainPanel != null) {
-        this.remove(this.mainPanel);
-      }
       VoronoiRSSIQualityMap heatMap = new VoronoiRSSIQualityMap(
           ValueType.VARIANCE, this.cache);
       this.configureGfx(heatMap);
@@ -1097,12 +1212,33 @@ public class SimpleFrame extends JFrame implements ActionListener,
       this.panelTitle = (this.cache.getRegionUri() == null ? "" : this.cache
           .getRegionUri()) + this.titleChartType;
       this.setTitle();
-      this.add(heatMap, BorderLayout.CENTER);
+      this.displayHost.setPanel(heatMap);
+      this.validate();
+    } else if (e.getSource() == this.visualizeRssiInterpolated
+        || e.getSource() == this.visualizeRssiKriging) {
+      boolean kriging = e.getSource() == this.visualizeRssiKriging;
+      InterpolatedHeatMap heatMap = new InterpolatedHeatMap(ValueType.RSSI,
+          this.cache, kriging ? InterpolatedHeatMap.Interpolation.KRIGING
+              : InterpolatedHeatMap.Interpolation.IDW);
+      this.configureGfx(heatMap);
+      this.mainPanel = heatMap;
+      this.displayPanel = heatMap;
+      this.displayPanel.setMinValue(-100f);
+      this.displayPanel.setMaxValue(-20f);
+      this.displayPanel.setMaxAge(this.staleDataAge);
+      this.displayPanel.setTimeOffset(this.currentTimeOffset);
+      heatMap.setDisplayedId(this.currentDeviceId);
+      heatMap.setDeviceIsTransmitter(this.isTransmitter);
+      this.displayPanel.setDeviceIcon(this.isTransmitter ? this.transmitterIcon
+          : this.receiverIcon);
+      this.titleChartType = kriging ? "RSSI Kriging Map" : "RSSI Interp. Map";
+      this.panelTitle = (this.isTransmitter ? "Transmitter " : "Receiver ")
+          + this.titleDeviceName + " - " + this.titleChartType;
+      this.setTitle();
+      this.displayHost.setPanel(heatMap);
       this.validate();
+
     } else if (e.getSource() == this.visualizeRssiStDvLines) {
-      if (this.mainPanel != null) {
-        this.remove(this.mainPanel);
-      }
       RssiStDvLineChart newChart = new RssiStDvLineChart(this.cache);
       this.configureGfx(newChart);
       this.mainPanel = newChart;
@@ -1118,13 +1254,10 @@ public class SimpleFrame extends JFrame implements ActionListener,
       this.panelTitle = (this.isTransmitter ? "Transmitter " : "Receiver ")
           + this.titleDeviceName + " - " + this.titleChartType;
       this.setTitle();
-      this.add(newChart, BorderLayout.CENTER);
+      this.displayHost.setPanel(newChart);
       this.validate();
 
     } else if (e.getSource() == this.visualizeAmbient) {
-      if (this.mainPanel != null) {
-        this.remove(this.mainPanel);
-      }
       AmbientCloud newChart = new AmbientCloud(this.cache);
       this.configureGfx(newChart);
       this.mainPanel = newChart;
@@ -1140,7 +1273,7 @@ public class SimpleFrame extends JFrame implements ActionListener,
       this.panelTitle = (this.cache.getRegionUri() == null ? "" : this.cache
           .getRegionUri()) + this.titleChartType;
       this.setTitle();
-      this.add(newChart, BorderLayout.CENTER);
+      this.displayHost.setPanel(newChart);
       this.validate();
 
     }
@@ -1153,11 +1286,7 @@ public class SimpleFrame extends JFrame implements ActionListener,
           this.currentDeviceId = receiverId;
           this.titleDeviceName = receiverId.toString();
           this.isTransmitter = false;
-          if (this.displayPanel != null) {
-            this.displayPanel.setDisplayedId(receiverId);
-            this.displayPanel.setDeviceIsTransmitter(this.isTransmitter);
-            this.displayPanel.setDeviceIcon(this.receiverIcon);
-          }
+          this.showDevice(receiverId, false, this.receiverIcon);
           found = true;
           break;
         }
@@ -1171,11 +1300,7 @@ public class SimpleFrame extends JFrame implements ActionListener,
             this.currentDeviceId = transmitterId;
             this.titleDeviceName = transmitterId.toString();
             this.isTransmitter = true;
-            if (this.displayPanel != null) {
-              this.displayPanel.setDisplayedId(transmitterId);
-              this.displayPanel.setDeviceIsTransmitter(this.isTransmitter);
-              this.displayPanel.setDeviceIcon(this.transmitterIcon);
-            }
+            this.showDevice(transmitterId, true, this.transmitterIcon);
             found = true;
             break;
           }
@@ -1190,11 +1315,7 @@ public class SimpleFrame extends JFrame implements ActionListener,
             this.currentDeviceId = transmitterId;
             this.titleDeviceName = transmitterId.toString();
             this.isTransmitter = true;
-            if (this.displayPanel != null) {
-              this.displayPanel.setDisplayedId(transmitterId);
-              this.displayPanel.setDeviceIsTransmitter(this.isTransmitter);
-              this.displayPanel.setDeviceIcon(this.transmitterIcon);
-            }
+            this.showDevice(transmitterId, true, this.transmitterIcon);
             found = true;
             break;
           }
@@ -1304,6 +1425,7 @@ public class SimpleFrame extends JFrame implements ActionListener,
     } else if (e.getSource() == this.quitApp) {
       this.quit();
     }
+    this.markDirty();
   }
 
   private void close() {
@@ -1441,6 +1563,41 @@ public class SimpleFrame extends JFrame implements ActionListener,
     }
   }
 
+  /**
+   * Saves the frame timings of the current display as CSV, or as JSON if the
+   * chosen file name ends with ".json".
+   */
+  protected void saveRenderMetrics() {
+    JFileChooser chooser = new JFileChooser();
+    chooser.setSelectedFile(new File("frame-timing.csv"));
+    if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+      return;
+    }
+    File saveFile = chooser.getSelectedFile();
+    FileWriter writer = null;
+    try {
+      writer = new FileWriter(saveFile);
+      if (saveFile.getName().toLowerCase().endsWith(".json")) {
+        writer.write(this.displayHost.getMetrics().toJson());
+      } else {
+        this.displayHost.getMetrics().writeCsv(writer);
+      }
+    } catch (IOException ioe) {
+      log.error("Unable to save frame timing to " + saveFile.getPath(), ioe);
+      JOptionPane.showMessageDialog(this, "Unable to save \""
+          + saveFile.getName() + "\".", "Unable to save frame timing.",
+          JOptionPane.ERROR_MESSAGE);
+    } finally {
+      if (writer != null) {
+        try {
+          writer.close();
+        } catch (IOException ioe) {
+          log.warn("Unable to close " + saveFile.getPath(), ioe);
+        }
+      }
+    }
+  }
+
   protected void loadCache() {
 
     this.fileChooser.setSelectedFile(FILE_NONE);
@@ -1462,8 +1619,18 @@ public class SimpleFrame extends JFrame implements ActionListener,
 
       if (!this.cache.isClone() && this.cache.getNumListeners() > 0) {
         this.cache = this.cache.clone();
-        if (this.displayPanel != null) {
-          this.displayPanel.setCache(this.cache);
+        final DisplayPanel panel = this.displayPanel;
+        if (panel != null) {
+          final DataCache2 newCache = this.cache;
+          this.displayHost.invokeOnPanel(new Runnable() {
+            @Override
+            public void run() {
+              panel.setCache(newCache);
+            }
+          });
+        }
+        if (this.frameScheduler != null) {
+          this.frameScheduler.setCache(this.cache);
         }
       }
 
@@ -1477,24 +1644,68 @@ public class SimpleFrame extends JFrame implements ActionListener,
   public void fileLoaded(final String filename) {
     this.configureTitlePrefix(filename);
     this.setTitle();
+    this.markDirty();
   }
 
   protected void configureGfx(final DisplayPanel panel) {
+    // New panels start with the chosen quality, even if the last was reduced
     if (panel.supportsAntiAlias()) {
       this.gfxAntiAlias.setEnabled(true);
-      panel.setAntiAlias(this.gfxAntiAlias.isSelected());
+      this.gfxAntiAlias.setSelected(this.gfxSettings.isUseAA());
+      panel.setAntiAlias(this.gfxSettings.isUseAA());
     } else {
 
       this.gfxAntiAlias.setEnabled(false);
     }
     if (panel.supportsTransparency()) {
       this.gfxTransparent.setEnabled(true);
-      panel.setTransparency(this.gfxTransparent.isSelected());
+      this.gfxTransparent.setSelected(this.gfxSettings.isUseTransparency());
+      panel.setTransparency(this.gfxSettings.isUseTransparency());
     } else {
       this.gfxTransparent.setEnabled(false);
     }
   }
 
+  /**
+   * Shows the current anti-aliasing and transparency of the displayed panel
+   * in the Graphics menu, after the display host reduced or restored them to
+   * keep up the frame rate.
+   */
+  protected void updateQualityItems() {
+    DisplayPanel panel = this.displayPanel;
+    if (panel == null) {
+      return;
+    }
+    if (panel.supportsAntiAlias()) {
+      this.gfxAntiAlias.setSelected(this.gfxSettings.isUseAA()
+          && !this.displayHost.isAntiAliasReduced());
+    }
+    if (panel.supportsTransparency()) {
+      this.gfxTransparent.setSelected(this.gfxSettings.isUseTransparency()
+          && !this.displayHost.isTransparencyReduced());
+    }
+  }
+
+  /**
+   * Shows {@code deviceId} on the displayed panel. The panel is changed on the
+   * render thread before its next frame.
+   */
+  protected void showDevice(final String deviceId,
+      final boolean deviceIsTransmitter, final BufferedImage deviceIcon) {
+    final DisplayPanel panel = this.displayPanel;
+    if (panel == null) {
+      return;
+    }
+    this.displayHost.invokeOnPanel(new Runnable() {
+      @Override
+      public void run() {
+        panel.setDisplayedId(deviceId);
+        panel.setDeviceIsTransmitter(deviceIsTransmitter);
+        panel.setDeviceIcon(deviceIcon);
+      }
+    });
+  }
+
   protected void openNewWindow() {
     SimpleFrame newFrame = new SimpleFrame(this.initialTitle, this.cache,
         this.gfxSettings);
@@ -1517,6 +1728,10 @@ public class SimpleFrame extends JFrame implements ActionListener,
   public void windowClosed(WindowEvent e) {
     --SimpleFrame.numWindows;
     this.allFrames.remove(this);
+    if (this.frameScheduler != null) {
+      this.frameScheduler.shutdown();
+    }
+    this.displayHost.shutdown();
     this.cache.removeListener(this);
     if (this.cache.getNumListeners() == 0) {
       this.cache.shutdown();
@@ -1558,21 +1773,20 @@ public class SimpleFrame extends JFrame implements ActionListener,
 
   public void setDesiredFps(int desiredFps) {
     this.gfxSettings.setDesiredFps(desiredFps);
+    this.displayHost.setDesiredFps(this.gfxSettings.getDesiredFps());
 
-    if (this.updateTask != null) {
-      this.updateTask.cancel();
-      this.updateTask = new TimerTask() {
+    if (this.frameScheduler != null) {
+      this.frameScheduler.setDesiredFps(this.gfxSettings.getDesiredFps());
+    }
+  }
 
-        @Override
-        public void run() {
-          if (SimpleFrame.this.mainPanel != null) {
-            SimpleFrame.this.mainPanel.repaint(20);
-          }
-        }
-      };
-      this.updateTimer.schedule(this.updateTask,
-          1000 / this.gfxSettings.getDesiredFps(),
-          1000 / this.gfxSettings.getDesiredFps());
+  /**
+   * Requests a new frame because something other than the cached data has
+   * changed the display.
+   */
+  protected void markDirty() {
+    if (this.frameScheduler != null) {
+      this.frameScheduler.markDirty();
     }
   }
 
@@ -1580,77 +1794,134 @@ public class SimpleFrame extends JFrame implements ActionListener,
   public void receiverAdded(String receiverId) {
     if (receiverId == null) {
       this.buildMenuReceivers();
-      return;
+    } else {
+      this.addReceiverItems(Collections.singleton(receiverId));
+    }
+    this.markDirty();
+  }
+
+  @Override
+  public void transmitterAdded(String transmitterId, final boolean isFiduciary) {
+    if (transmitterId == null) {
+      this.buildMenuTransmitters();
+    } else {
+      this.addTransmitterItems(Collections.singleton(transmitterId),
+          isFiduciary);
     }
-    JRadioButtonMenuItem newReceiverItem = new JRadioButtonMenuItem(
-        receiverId.toString());
-    JCheckBoxMenuItem newCheckedItem = new JCheckBoxMenuItem(
-        receiverId.toString());
-    newCheckedItem.setSelected(true);
-    this.cache.addAllowedDevice(receiverId);
-    if (this.receiverMenuItems.put(newReceiverItem, receiverId) == null) {
+    this.markDirty();
+  }
+
+  @Override
+  public void eventsDelivered(final CacheEventBus.Batch batch) {
+    if (batch.isReset()) {
+      this.buildMenuReceivers();
+      this.buildMenuTransmitters();
+    }
+    this.removeDynamicItems(batch.getExpiredTransmitters());
+    this.addReceiverItems(batch.getReceivers());
+    this.addTransmitterItems(batch.getFiduciaryTransmitters(), true);
+    this.addTransmitterItems(batch.getDynamicTransmitters(), false);
+    for (String filename : batch.getLoadedFiles()) {
+      this.fileLoaded(filename);
+    }
+    this.markDirty();
+  }
+
+  /**
+   * Adds menu items for any receivers that don't already have them, without
+   * rebuilding the menus.
+   */
+  protected void addReceiverItems(final Collection<String> receiverIds) {
+    List<String> added = new ArrayList<String>(receiverIds.size());
+    for (String receiverId : receiverIds) {
+      if (this.receiverMenuIds.add(receiverId)) {
+        added.add(receiverId);
+      }
+    }
+    Collections.sort(added);
+    for (String receiverId : added) {
+      this.cache.addAllowedDevice(receiverId);
+      JRadioButtonMenuItem newReceiverItem = new JRadioButtonMenuItem(
+          receiverId);
       newReceiverItem.addActionListener(this);
+      this.receiverMenuItems.put(newReceiverItem, receiverId);
       this.selectedDeviceGroup.add(newReceiverItem);
       this.receiversMenu.add(newReceiverItem);
-    }
-    if (this.sourceReceiverMenuItems.put(newCheckedItem, receiverId) == null) {
+
+      JCheckBoxMenuItem newCheckedItem = new JCheckBoxMenuItem(receiverId);
+      newCheckedItem.setSelected(true);
       newCheckedItem.addActionListener(this);
+      this.sourceReceiverMenuItems.put(newCheckedItem, receiverId);
       this.sourceReceiversMenu.add(newCheckedItem);
     }
-
   }
 
-  @Override
-  public void transmitterAdded(String transmitterId, final boolean isFiduciary) {
-    if (transmitterId == null) {
-
-      this.buildMenuTransmitters();
+  /**
+   * Removes the menu items of dynamic transmitters that have expired.
+   */
+  protected void removeDynamicItems(final Collection<String> transmitterIds) {
+    if (transmitterIds.isEmpty()) {
       return;
     }
-    JRadioButtonMenuItem newTransmitterItem = new JRadioButtonMenuItem(
-        transmitterId.toString());
-    JCheckBoxMenuItem newCheckedItem = new JCheckBoxMenuItem(
-        transmitterId.toString());
-    this.cache.addAllowedDevice(transmitterId);
-    newCheckedItem.setSelected(true);
-    if (isFiduciary) {
-      if (this.transmitterFiduciaryItems.put(newTransmitterItem, transmitterId) == null) {
-        this.selectedDeviceGroup.add(newTransmitterItem);
-        this.transmittersFiduciaryMenu.add(newTransmitterItem);
-        newTransmitterItem.addActionListener(this);
-      }
-    } else {
-      if (this.transmitterDynamicItems.put(newTransmitterItem, transmitterId) == null) {
-        this.selectedDeviceGroup.add(newTransmitterItem);
-        this.transmittersDynamicMenu.add(newTransmitterItem);
-        newTransmitterItem.addActionListener(this);
+    Set<String> expired = new HashSet<String>(transmitterIds);
+    for (Iterator<Map.Entry<JRadioButtonMenuItem, String>> iter = this.transmitterDynamicItems
+        .entrySet().iterator(); iter.hasNext();) {
+      Map.Entry<JRadioButtonMenuItem, String> entry = iter.next();
+      if (expired.contains(entry.getValue())) {
+        this.selectedDeviceGroup.remove(entry.getKey());
+        this.transmittersDynamicMenu.remove(entry.getKey());
+        iter.remove();
       }
+    }
+    this.dynamicMenuIds.removeAll(expired);
+  }
 
+  /**
+   * Adds menu items for any transmitters that don't already have them,
+   * without rebuilding the menus. Only fiduciary transmitters are added to the
+   * source transmitters menu.
+   */
+  protected void addTransmitterItems(final Collection<String> transmitterIds,
+      final boolean isFiduciary) {
+    Set<String> menuIds = isFiduciary ? this.fiduciaryMenuIds
+        : this.dynamicMenuIds;
+    List<String> added = new ArrayList<String>(transmitterIds.size());
+    for (String transmitterId : transmitterIds) {
+      if (menuIds.add(transmitterId)) {
+        added.add(transmitterId);
+      }
     }
+    Collections.sort(added);
+    for (String transmitterId : added) {
+      this.cache.addAllowedDevice(transmitterId);
+      JRadioButtonMenuItem newTransmitterItem = new JRadioButtonMenuItem(
+          transmitterId);
+      newTransmitterItem.addActionListener(this);
+      this.selectedDeviceGroup.add(newTransmitterItem);
+      if (!isFiduciary) {
+        this.transmitterDynamicItems.put(newTransmitterItem, transmitterId);
+        this.transmittersDynamicMenu.add(newTransmitterItem);
+        continue;
+      }
+      this.transmitterFiduciaryItems.put(newTransmitterItem, transmitterId);
+      this.transmittersFiduciaryMenu.add(newTransmitterItem);
 
-    if (this.sourceTransmitterMenuItems.put(newCheckedItem, transmitterId) == null) {
+      JCheckBoxMenuItem newCheckedItem = new JCheckBoxMenuItem(transmitterId);
+      newCheckedItem.setSelected(true);
       newCheckedItem.addActionListener(this);
+      this.sourceTransmitterMenuItems.put(newCheckedItem, transmitterId);
       this.sourceTransmittersMenu.add(newCheckedItem);
     }
-    this.buildMenuTransmitters();
   }
 
   public void startUpdates() {
 
     // TODO: Somewhere! Listener that detects if 5 seconds since last cache
     // update. Display JProgress bar .
-    this.updateTask = new TimerTask() {
-
-      @Override
-      public void run() {
-        if (SimpleFrame.this.mainPanel != null) {
-          SimpleFrame.this.mainPanel.repaint(20);
-        }
-      }
-    };
-    this.updateTimer.schedule(this.updateTask,
-        1000 / this.gfxSettings.getDesiredFps(),
-        1000 / this.gfxSettings.getDesiredFps());
+    this.displayHost.setDesiredFps(this.gfxSettings.getDesiredFps());
+    this.frameScheduler = new FrameScheduler(this.displayHost, this.cache,
+        this.gfxSettings.getDesiredFps());
+    this.frameScheduler.start();
   }
 
   @Override
@@ -1658,9 +1929,17 @@ public class SimpleFrame extends JFrame implements ActionListener,
 
     this.currentTimeOffset = (this.timeOffsetSlider.getMaximum() - this.timeOffsetSlider
         .getValue()) * 1000;
-    if (this.displayPanel != null) {
-      this.displayPanel.setTimeOffset(currentTimeOffset);
+    final DisplayPanel panel = this.displayPanel;
+    if (panel != null) {
+      final long timeOffset = this.currentTimeOffset;
+      this.displayHost.invokeOnPanel(new Runnable() {
+        @Override
+        public void run() {
+          panel.setTimeOffset(timeOffset);
+        }
+      });
     }
+    this.markDirty();
   }
 
 }
@@ -0,0 +1,164 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TreeSet;
+
+/**
+ * An immutable set of sensor identifiers used to narrow the link values that
+ * are requested from the world model and stored in the cache. Links are
+ * accepted only when both the transmitter and receiver sensors are in the set.
+ * 
+ * Checking a link identifier does not allocate, so values can be dropped as
+ * soon as they arrive.
+ * 
+ * @author Robert Moore
+ * 
+ */
+public class StreamFilter {
+
+  /**
+   * A filter that accepts every link.
+   */
+  public static final StreamFilter ALL = new StreamFilter(null);
+
+  /**
+   * The sorted sensor identifiers, or {@code null} to accept everything.
+   */
+  private final String[] sensors;
+
+  private StreamFilter(final String[] sensors) {
+    this.sensors = sensors;
+  }
+
+  /**
+   * Creates a filter that accepts only links between the sensors in
+   * {@code sensors}.
+   */
+  public static StreamFilter forSensors(final Collection<String> sensors) {
+    TreeSet<String> sorted = new TreeSet<String>(sensors);
+    return new StreamFilter(sorted.toArray(new String[sorted.size()]));
+  }
+
+  /**
+   * @return a filter that accepts every link accepted by this filter or
+   *         {@code other}.
+   */
+  public StreamFilter union(final StreamFilter other) {
+    if (this.sensors == null || other.sensors == null) {
+      return ALL;
+    }
+    TreeSet<String> sorted = new TreeSet<String>(Arrays.asList(this.sensors));
+    sorted.addAll(Arrays.asList(other.sensors));
+    return new StreamFilter(sorted.toArray(new String[sorted.size()]));
+  }
+
+  public boolean isAll() {
+    return this.sensors == null;
+  }
+
+  public boolean accepts(final String sensor) {
+    return this.sensors == null || this.contains(sensor, 0, sensor.length());
+  }
+
+  public boolean acceptsLink(final String receiverSensor,
+      final String transmitterSensor) {
+    return this.accepts(receiverSensor) && this.accepts(transmitterSensor);
+  }
+
+  /**
+   * Checks a world model link identifier of the form
+   * {@code <prefix>.<transmitter>.<receiver>}.
+   */
+  public boolean acceptsLink(final String linkUri) {
+    if (this.sensors == null) {
+      return true;
+    }
+    int txStart = linkUri.indexOf('.');
+    int rxStart = linkUri.lastIndexOf('.');
+    if (txStart < 0 || rxStart <= txStart) {
+      return false;
+    }
+    return this.contains(linkUri, rxStart + 1, linkUri.length())
+        && this.contains(linkUri, txStart + 1, rxStart);
+  }
+
+  private boolean contains(final String source, final int start,
+      final int end) {
+    int length = end - start;
+    for (String sensor : this.sensors) {
+      if (sensor.length() == length
+          && source.regionMatches(start, sensor, 0, length)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return a world model identifier regular expression that matches exactly
+   *         the links accepted by this filter.
+   */
+  public String getIdentifierRegex() {
+    if (this.sensors == null) {
+      return ".*";
+    }
+    StringBuilder alternatives = new StringBuilder();
+    for (int i = 0; i < this.sensors.length; ++i) {
+      if (i > 0) {
+        alternatives.append('|');
+      }
+      appendEscaped(alternatives, this.sensors[i]);
+    }
+    return "[^.]*\\.(" + alternatives + ")\\.(" + alternatives + ")";
+  }
+
+  private static void appendEscaped(final StringBuilder builder,
+      final String literal) {
+    for (int i = 0; i < literal.length(); ++i) {
+      char c = literal.charAt(i);
+      if (!Character.isLetterOrDigit(c)) {
+        builder.append('\\');
+      }
+      builder.append(c);
+    }
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (!(o instanceof StreamFilter)) {
+      return false;
+    }
+    return Arrays.equals(this.sensors, ((StreamFilter) o).sensors);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(this.sensors);
+  }
+
+  @Override
+  public String toString() {
+    return this.sensors == null ? "all links" : this.sensors.length
+        + " sensors";
+  }
+}
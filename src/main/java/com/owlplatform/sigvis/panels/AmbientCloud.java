@@ -46,7 +46,8 @@ import org.slf4j.LoggerFactory;
 import com.owlplatform.common.util.Pair;
 import com.owlplatform.sigvis.DataCache2;
 import com.owlplatform.sigvis.ImageResources;
-import com.owlplatform.sigvis.structs.ChartItem;
+import com.owlplatform.sigvis.panels.RenderMetrics.Phase;
+import com.owlplatform.sigvis.structs.CompactSeries;
 
 public class AmbientCloud extends RssiStDvLineChart {
   private static final Logger log = LoggerFactory.getLogger(AmbientCloud.class);
@@ -92,10 +93,12 @@ public class AmbientCloud extends RssiStDvLineChart {
       for (String txId : this.cache.getFiduciaryTransmitterIds()) {
 
         // TODO: Grab variance list instead
-        Collection<ChartItem<Float>> sampleList = this.generateDisplayedData(
+        RenderMetrics.mark(Phase.DRAW);
+        CompactSeries.Cursor sampleList = this.generateDisplayedData(
             txId, rxId);
+        RenderMetrics.mark(Phase.DATA);
 
-        if (sampleList == null || sampleList.isEmpty()) {
+        if (sampleList == null || !sampleList.hasNext()) {
 
           continue;
         }
@@ -113,7 +116,7 @@ public class AmbientCloud extends RssiStDvLineChart {
   }
 
   @Override
-  protected Collection<ChartItem<Float>> generateDisplayedData(String txer,
+  protected CompactSeries.Cursor generateDisplayedData(String txer,
       String rxer) {
     long currentTime = System.currentTimeMillis();
 
@@ -127,7 +130,8 @@ public class AmbientCloud extends RssiStDvLineChart {
     // Bump 5 seconds to left side
     long oldestItem = youngestItem - this.maxAge - 5000l;
     
-    return this.cache.getRssiList(rxer, txer,oldestItem, youngestItem);
+    return this.cache.getRssiCursor(rxer, txer, oldestItem, youngestItem,
+        this.cursor);
   }
 
   @Override
@@ -187,7 +191,7 @@ public class AmbientCloud extends RssiStDvLineChart {
 
   @Override
   protected float drawStream(final Graphics g, final String rxer,
-      final String txer, final Collection<ChartItem<Float>> streamValues,
+      final String txer, final CompactSeries.Cursor streamValues,
       final int screenWidth, final int screenHeight) {
 
     if (streamValues == null) {
@@ -197,7 +201,7 @@ public class AmbientCloud extends RssiStDvLineChart {
     boolean containsMax = false;
 
     // ChartItem<Float>[] items = streamValues.toArray(new ChartItem[] {});
-    if (streamValues.size() == 0) {
+    if (!streamValues.hasNext()) {
 
       return this.minValue;
     }
@@ -253,21 +257,22 @@ public class AmbientCloud extends RssiStDvLineChart {
 
     long lastItemTime = 0l;
 
-    for (ChartItem<Float> item : streamValues) {
+    while (streamValues.next()) {
+      long itemTime = streamValues.getTime();
 
-      if (item.getCreationTime() < oldestItem) {
+      if (itemTime < oldestItem) {
         continue;
       }
-      if (item.getCreationTime() > (youngestItem + 5000l)) {
+      if (itemTime > (youngestItem + 5000l)) {
         break;
       }
-      float value = item.getValue().floatValue();
+      float value = streamValues.getValue();
       if (value > maxValue) {
         maxValue = value;
       }
 
       float variance = this.cache.getVarianceAt(txer, rxer,
-          currentTime - item.getCreationTime(), 1000l);
+          currentTime - itemTime, 1000l);
 
       if (!(variance >= 15f)) {
         variance = 0f;
@@ -276,7 +281,7 @@ public class AmbientCloud extends RssiStDvLineChart {
       }
 
       itemXLocation = screenWidth - this.margins[MARGIN_RIGHT]
-          - (youngestItem - item.getCreationTime()) * timeScale;
+          - (youngestItem - itemTime) * timeScale;
 
       float itemYLocation = (value - this.minValue) * valueScale;
       if (itemYLocation > baseYLevel) {
@@ -286,7 +291,7 @@ public class AmbientCloud extends RssiStDvLineChart {
       // First check to see if we should "close" an existing polygon
       // 1. A gap in the data means shut-down the polygon back at the previous
       // location
-      long gap = item.getCreationTime() - lastItemTime;
+      long gap = itemTime - lastItemTime;
       if (gap > MAX_TIME_GAP) {
 
         // POLY: If we have a previous polygon, finish it off... (end "]")
@@ -359,7 +364,7 @@ public class AmbientCloud extends RssiStDvLineChart {
       // Prepare for next iteration
       previousXLocation = itemXLocation;
       previousYLocation = itemYLocation;
-      lastItemTime = item.getCreationTime();
+      lastItemTime = itemTime;
 
     }
 
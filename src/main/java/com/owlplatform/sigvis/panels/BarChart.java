@@ -43,6 +43,7 @@ import org.slf4j.LoggerFactory;
 
 import com.owlplatform.sigvis.DataCache2;
 import com.owlplatform.sigvis.DataCache2.ValueType;
+import com.owlplatform.sigvis.structs.WindowAggregate;
 
 public class BarChart extends JComponent implements DisplayPanel {
 
@@ -110,6 +111,13 @@ public class BarChart extends JComponent implements DisplayPanel {
   
   protected long timeOffset = 0l;
 
+  /**
+   * Window of the minimum-to-maximum range drawn over each live RSSI bar, in
+   * milliseconds. It must be one of the cache's aggregate windows, or 0 for
+   * no range.
+   */
+  protected long rangeWindow = 10000l;
+
   public BarChart(final ValueType type, final DataCache2 cache) {
     this.type = type;
     this.cache = cache;
@@ -119,6 +127,14 @@ public class BarChart extends JComponent implements DisplayPanel {
     return maxAge;
   }
 
+  public long getRangeWindow() {
+    return this.rangeWindow;
+  }
+
+  public void setRangeWindow(long rangeWindow) {
+    this.rangeWindow = rangeWindow;
+  }
+
   public void setMaxAge(long maxAge) {
     this.maxAge = maxAge;
   }
@@ -224,6 +240,8 @@ public class BarChart extends JComponent implements DisplayPanel {
       g2.setColor(Color.WHITE);
       g2.draw(valueBar);
 
+      this.drawRange(g2, key, barLeft + barWidth / 2, screenHeight, valueScale);
+
       ++barNumber;
 
       String keyAsString = key.toString();
@@ -261,15 +279,6 @@ public class BarChart extends JComponent implements DisplayPanel {
 //    log.debug("Rendered in {}ms", renderTime);
     this.currFps = this.currFps * 0.875f + (1000f / renderTime) * 0.125f;
     
-    // if (this.enableAntiAliasing && (this.currFps < this.minFps * 0.9f)) {
-    // ++this.slowFrames;
-    // if (this.slowFrames > 3) {
-    // this.enableAntiAliasing = false;
-    // log.warn("FPS: {} Disabling Anti-Aliasing.", this.currFps);
-    // }
-    // } else if (this.enableAntiAliasing) {
-    // this.slowFrames = 0;
-    // }
   }
   
   protected void drawTimestamp(final Graphics2D g2, int screenWidth, int screenHeight){
@@ -407,6 +416,35 @@ public class BarChart extends JComponent implements DisplayPanel {
     this.verticalAxisLabel = verticalAxisLabel;
   }
 
+  /**
+   * Draws the minimum-to-maximum range of a device's RSSI values within the
+   * range window as a line through the bar. Only drawn for live RSSI values.
+   */
+  protected void drawRange(final Graphics2D g2, final String device,
+      final float centerX, final int screenHeight, final float valueScale) {
+    if (this.type != ValueType.RSSI || this.timeOffset != 0
+        || this.rangeWindow <= 0) {
+      return;
+    }
+    WindowAggregate.Stats stats = this.deviceIsTransmitter ? this.cache
+        .getWindowStats(this.displayedId, device, this.rangeWindow)
+        : this.cache.getWindowStats(device, this.displayedId,
+            this.rangeWindow);
+    if (stats == null || stats.getCount() < 2) {
+      return;
+    }
+    float bottom = screenHeight - this.margins[MARGIN_BOTTOM];
+    float top = this.margins[MARGIN_TOP];
+    float maxY = Math.max(top,
+        Math.min(bottom, bottom - (stats.getMax() - this.minValue) * valueScale));
+    float minY = Math.max(top,
+        Math.min(bottom, bottom - (stats.getMin() - this.minValue) * valueScale));
+    g2.setColor(this.labelColor);
+    g2.draw(new Line2D.Float(centerX, maxY, centerX, minY));
+    g2.draw(new Line2D.Float(centerX - 3, maxY, centerX + 3, maxY));
+    g2.draw(new Line2D.Float(centerX - 3, minY, centerX + 3, minY));
+  }
+
   public int getInterBarMargin() {
     return interBarMargin;
   }
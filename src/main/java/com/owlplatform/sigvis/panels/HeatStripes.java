@@ -40,7 +40,6 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
 
 import javax.swing.JComponent;
@@ -51,7 +50,9 @@ import org.slf4j.LoggerFactory;
 import com.owlplatform.sigvis.DataCache2;
 import com.owlplatform.sigvis.DataCache2.ValueType;
 import com.owlplatform.sigvis.ImageResources;
+import com.owlplatform.sigvis.panels.RenderMetrics.Phase;
 import com.owlplatform.sigvis.structs.ChartItem;
+import com.owlplatform.sigvis.structs.CompactSeries;
 
 public class HeatStripes extends JComponent implements DisplayPanel,
     MouseListener, MouseWheelListener {
@@ -134,6 +135,11 @@ public class HeatStripes extends JComponent implements DisplayPanel,
 
   protected DataCache2 cache;
 
+  /**
+   * Reused to read each stream while painting.
+   */
+  protected final CompactSeries.Cursor cursor = new CompactSeries.Cursor();
+
   protected boolean scrolling = true;
 
   protected BufferedImage playImg = null;
@@ -250,9 +256,12 @@ public class HeatStripes extends JComponent implements DisplayPanel,
       for (String devHash : devices) {
         ++itemIndex;
         // Get the history of data points
-        List<ChartItem<Float>> devItems = (this.type == ValueType.RSSI ? this.cache
-            .getRssiList(recHash, devHash,oldestItem, youngestItem) : this.cache.getVarianceList(
-            recHash, devHash, oldestItem, youngestItem));
+        RenderMetrics.mark(Phase.DRAW);
+        CompactSeries.Cursor devItems = (this.type == ValueType.RSSI ? this.cache
+            .getRssiCursor(recHash, devHash, oldestItem, youngestItem,
+                this.cursor) : this.cache.getVarianceCursor(recHash, devHash,
+            oldestItem, youngestItem, this.cursor));
+        RenderMetrics.mark(Phase.DATA);
 
         // No data, then skip this pairing
         if (devItems == null) {
@@ -265,28 +274,28 @@ public class HeatStripes extends JComponent implements DisplayPanel,
         float xOnScreen = this.margins[MARGIN_LEFT] + itemIndex * itemWidth;
         float prevYOnScreen = 0f;
         float previousValue = 0f;
-        for (Iterator<ChartItem<Float>> iter = devItems.iterator(); iter
-            .hasNext();) {
+        while (devItems.next()) {
 
-          ChartItem<Float> item = iter.next();
-          long timeOffset = item.getCreationTime() - oldestItem;
+          long itemTime = devItems.getTime();
+          float itemValue = devItems.getValue();
+          long timeOffset = itemTime - oldestItem;
           float yOnScreen = this.margins[MARGIN_TOP] + this.legendHeight
               + millisHeight * timeOffset;
 
-          if (item.getCreationTime() < oldestItem) {
+          if (itemTime < oldestItem) {
             skippedPrevious = true;
             continue;
-          } else if (item.getCreationTime() > youngestItem) {
+          } else if (itemTime > youngestItem) {
 
             break;
           }
           // FIXME: Use a variable/constant for time diff
 
-          if ((item.getCreationTime() - lastItemAge > MAX_GAP_FILL)) {
+          if ((itemTime - lastItemAge > MAX_GAP_FILL)) {
             skippedPrevious = true;
           }
-          lastItemAge = item.getCreationTime();
-          float normalValue = item.getValue().floatValue() / valueRange;
+          lastItemAge = itemTime;
+          float normalValue = itemValue / valueRange;
           if (normalValue > 1.0f) {
             normalValue = 1.0f;
           }
@@ -299,7 +308,7 @@ public class HeatStripes extends JComponent implements DisplayPanel,
           previousValue = normalValue;
           prevYOnScreen = yOnScreen;
 
-          if (item.getValue().floatValue() < this.thresholdValue) {
+          if (itemValue < this.thresholdValue) {
             if (!skippedPrevious) {
               g2.setColor(Color.getHSBColor(previousValue * .9f, 0.9f, 0.9f));
 
@@ -328,15 +337,6 @@ public class HeatStripes extends JComponent implements DisplayPanel,
     long renderTime = System.currentTimeMillis() - this.lastRepaint;
     this.currFps = this.currFps * 0.875f + (1000f / renderTime) * 0.125f;
 
-    // if (this.enableAntiAliasing && (this.currFps < this.minFps * 0.9f)) {
-    // ++this.slowFrames;
-    // if (this.slowFrames > 3) {
-    // this.enableAntiAliasing = false;
-    // log.warn("FPS: {} Disabling Anti-Aliasing.", this.currFps);
-    // }
-    // } else if (this.enableAntiAliasing) {
-    // this.slowFrames = 0;
-    // }
   }
 
   protected void drawLegend(final Graphics g, final int screenWidth,
@@ -0,0 +1,924 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis.panels;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.MouseEvent;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JComponent;
+import javax.swing.ToolTipManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.owlplatform.sigvis.DataCache2;
+import com.owlplatform.sigvis.DataCache2.ValueType;
+import com.owlplatform.sigvis.panels.RenderMetrics.Phase;
+
+/**
+ * A heat map that interpolates a smooth value surface over the region from the
+ * values of the devices linked to the displayed device. The surface is
+ * computed by inverse-distance weighting or ordinary kriging into an
+ * {@code int[]}-backed raster on a pool of worker threads, and is only
+ * recomputed when the input values, device locations or panel size change.
+ *
+ * @author Robert Moore
+ *
+ */
+public class InterpolatedHeatMap extends JComponent implements DisplayPanel {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(InterpolatedHeatMap.class);
+
+  /**
+   * Interpolation method used to compute the raster.
+   */
+  public static enum Interpolation {
+    /**
+     * Inverse-distance weighting.
+     */
+    IDW,
+    /**
+     * Ordinary kriging with an exponential covariance model.
+     */
+    KRIGING
+  }
+
+  /**
+   * Number of entries in the color lookup table.
+   */
+  private static final int NUM_COLORS = 256;
+
+  /**
+   * Alpha value used for the raster when transparency is enabled.
+   */
+  private static final int TRANSPARENT_ALPHA = 0xB3;
+
+  /**
+   * Threads that compute rows of the raster.
+   */
+  private static final ExecutorService rowWorkers = Executors.newFixedThreadPool(
+      Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory(
+          "Interp. Rows"));
+
+  /**
+   * Thread that splits a raster into row bands and waits for the row workers,
+   * keeping that work off of the Event Dispatch Thread.
+   */
+  private static final ExecutorService rasterCoordinator = Executors
+      .newSingleThreadExecutor(new DaemonThreadFactory("Interp. Raster"));
+
+  protected long maxAge = 3000;
+
+  protected String displayedId = null;
+
+  protected boolean deviceIsTransmitter = false;
+
+  protected final ValueType type;
+
+  protected float minValue = -100f;
+
+  protected float maxValue = -30f;
+
+  protected BufferedImage deviceImage;
+
+  protected boolean transparency = true;
+
+  protected boolean antiAlias = true;
+
+  protected DataCache2 cache;
+
+  protected long timeOffset;
+
+  /**
+   * Number of screen pixels covered by each side of a raster cell.
+   */
+  protected int gridResolution = 4;
+
+  /**
+   * Power parameter for inverse-distance weighting.
+   */
+  protected float idwPower = 2f;
+
+  protected Interpolation interpolation = Interpolation.IDW;
+
+  /**
+   * The most recently completed raster, or {@code null} if none is available.
+   */
+  protected volatile BufferedImage raster = null;
+
+  /**
+   * The inputs used to generate {@link #raster}.
+   */
+  protected volatile FieldInputs rasterInputs = null;
+
+  /**
+   * Set while a raster is being computed so that at most one computation is
+   * outstanding for this panel.
+   */
+  protected final AtomicBoolean computing = new AtomicBoolean(false);
+
+  /**
+   * Whether the raster is computed while painting instead of in the
+   * background, so that each painted frame shows its own inputs.
+   */
+  protected volatile boolean synchronousRaster = false;
+
+  public InterpolatedHeatMap(final ValueType type, final DataCache2 cache) {
+    super();
+    this.cache = cache;
+    this.type = type;
+    ToolTipManager.sharedInstance().registerComponent(this);
+    this.setToolTipText("plot");
+  }
+
+  public InterpolatedHeatMap(final ValueType type, final DataCache2 cache,
+      final Interpolation interpolation) {
+    this(type, cache);
+    this.interpolation = interpolation;
+  }
+
+  @Override
+  public void paintComponent(Graphics g) {
+    if (this.cache.getRegionBounds() == null) {
+      return;
+    }
+
+    super.paintComponent(g);
+
+    Graphics2D g2 = (Graphics2D) g;
+
+    int screenWidth = this.getWidth();
+    int screenHeight = this.getHeight();
+
+    Color origColor = g2.getColor();
+    g2.setColor(Color.BLACK);
+    BufferedImage regionImage = this.cache.getRegionImage();
+    if (regionImage == null) {
+      g2.fillRect(0, 0, screenWidth, screenHeight);
+    } else {
+      g2.drawImage(regionImage, 0, 0, screenWidth, screenHeight, 0, 0,
+          regionImage.getWidth(), regionImage.getHeight(), null);
+    }
+
+    if (this.displayedId == null) {
+      g2.setColor(origColor);
+      return;
+    }
+
+    RenderMetrics.mark(Phase.DRAW);
+    FieldInputs inputs = this.generateInputs(screenWidth, screenHeight);
+    RenderMetrics.mark(Phase.DATA);
+    if (inputs != null && !inputs.equals(this.rasterInputs)) {
+      if (this.synchronousRaster) {
+        this.computeRasterNow(inputs);
+      } else {
+        this.requestRaster(inputs);
+      }
+    }
+
+    BufferedImage currRaster = this.raster;
+    FieldInputs currInputs = this.rasterInputs;
+    if (currRaster != null && currInputs != null
+        && currInputs.numSamples > 0) {
+      Object origInterp = g2
+          .getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+      if (this.antiAlias) {
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+            RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      }
+      g2.drawImage(currRaster, 0, 0, screenWidth, screenHeight, 0, 0,
+          currRaster.getWidth(), currRaster.getHeight(), null);
+      if (origInterp != null) {
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, origInterp);
+      }
+
+      // Mark the sample locations
+      g2.setColor(Color.BLACK);
+      for (int i = 0; i < currInputs.numSamples; ++i) {
+        int x = (int) (currInputs.xs[i] * screenWidth);
+        int y = (int) (currInputs.ys[i] * screenHeight);
+        g2.fillOval(x - 1, y - 1, 2, 2);
+      }
+    }
+
+    this.drawDeviceIcon(g2, screenWidth, screenHeight);
+    g2.setColor(origColor);
+    this.drawTimestamp(g2, screenWidth, screenHeight);
+  }
+
+  /**
+   * Collects the current values and normalized screen positions of all devices
+   * linked to the displayed device.
+   *
+   * @param screenWidth
+   *          the width of the panel in pixels.
+   * @param screenHeight
+   *          the height of the panel in pixels.
+   * @return the inputs for the interpolated field, or {@code null} if the
+   *         panel is too small to draw.
+   */
+  protected FieldInputs generateInputs(final int screenWidth,
+      final int screenHeight) {
+    Rectangle2D bounds = this.cache.getRegionBounds();
+    int resolution = this.gridResolution < 1 ? 1 : this.gridResolution;
+    int rasterWidth = screenWidth / resolution;
+    int rasterHeight = screenHeight / resolution;
+    if (bounds == null || rasterWidth < 1 || rasterHeight < 1) {
+      return null;
+    }
+
+    List<String> deviceList = this.deviceIsTransmitter ? this.cache
+        .getReceiverIds() : this.cache.getFiduciaryTransmitterIds();
+
+    float[] xs = new float[deviceList.size()];
+    float[] ys = new float[deviceList.size()];
+    float[] values = new float[deviceList.size()];
+    int numSamples = 0;
+
+    float regionWidth = (float) bounds.getWidth();
+    float regionHeight = (float) bounds.getHeight();
+
+    for (String device : deviceList) {
+      String txer = this.deviceIsTransmitter ? this.displayedId : device;
+      String rxer = this.deviceIsTransmitter ? device : this.displayedId;
+      float value = this.type == ValueType.RSSI ? this.cache.getRssiAt(txer,
+          rxer, this.timeOffset, this.maxAge) : this.cache.getVarianceAt(txer,
+          rxer, this.timeOffset, this.maxAge);
+      // Includes NaN
+      if (!(value >= this.minValue)) {
+        continue;
+      }
+      Point2D location = this.cache.getDeviceLocation(device);
+      if (location == null) {
+        continue;
+      }
+      xs[numSamples] = (float) location.getX() / regionWidth;
+      ys[numSamples] = 1f - ((float) location.getY() / regionHeight);
+      values[numSamples] = value;
+      ++numSamples;
+    }
+
+    return new FieldInputs(rasterWidth, rasterHeight, numSamples,
+        Arrays.copyOf(xs, numSamples), Arrays.copyOf(ys, numSamples),
+        Arrays.copyOf(values, numSamples), this.minValue, this.maxValue,
+        this.idwPower, this.interpolation, this.transparency);
+  }
+
+  /**
+   * Schedules computation of a new raster for {@code inputs} unless one is
+   * already being computed. Once the raster is ready the panel asks its host
+   * for a new frame, at which point any newer inputs will be scheduled.
+   *
+   * @param inputs
+   *          the inputs for the raster.
+   */
+  protected void requestRaster(final FieldInputs inputs) {
+    if (!this.computing.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      rasterCoordinator.execute(new Runnable() {
+
+        @Override
+        public void run() {
+          try {
+            BufferedImage newRaster = computeRaster(inputs);
+            InterpolatedHeatMap.this.raster = newRaster;
+            InterpolatedHeatMap.this.rasterInputs = inputs;
+          } catch (Exception e) {
+            log.error("Unable to compute interpolated raster.", e);
+          } finally {
+            InterpolatedHeatMap.this.computing.set(false);
+          }
+          // Not in a component hierarchy, so repaint() would do nothing
+          InterpolatedHeatMap.this.firePropertyChange(
+              RenderedDisplayHost.REDRAW_PROPERTY, false, true);
+        }
+      });
+    } catch (RuntimeException re) {
+      this.computing.set(false);
+      log.error("Unable to schedule interpolated raster.", re);
+    }
+  }
+
+  /**
+   * Computes the raster for {@code inputs} on the calling thread.
+   *
+   * @param inputs
+   *          the inputs for the raster.
+   */
+  protected void computeRasterNow(final FieldInputs inputs) {
+    try {
+      this.raster = computeRaster(inputs);
+      this.rasterInputs = inputs;
+    } catch (InterruptedException ie) {
+      log.warn("Interrupted while computing interpolated raster.");
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      log.error("Unable to compute interpolated raster.", e);
+    }
+  }
+
+  /**
+   * Computes the raster for a set of inputs, splitting the rows into bands
+   * that are computed in parallel by the row workers.
+   *
+   * @param inputs
+   *          the inputs for the raster.
+   * @return the computed raster.
+   * @throws InterruptedException
+   *           if interrupted while waiting for the row workers.
+   * @throws ExecutionException
+   *           if a row band could not be computed.
+   */
+  protected static BufferedImage computeRaster(final FieldInputs inputs)
+      throws InterruptedException, ExecutionException {
+    final BufferedImage image = new BufferedImage(inputs.width, inputs.height,
+        BufferedImage.TYPE_INT_ARGB);
+    if (inputs.numSamples == 0) {
+      return image;
+    }
+    final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer())
+        .getData();
+
+    final int[] colors = buildColorTable(inputs.transparency ? TRANSPARENT_ALPHA
+        : 0xFF);
+    final float[] krigingWeights = inputs.interpolation == Interpolation.KRIGING ? solveKriging(inputs)
+        : null;
+
+    int numBands = Runtime.getRuntime().availableProcessors() * 2;
+    if (numBands > inputs.height) {
+      numBands = inputs.height;
+    }
+    int rowsPerBand = (inputs.height + numBands - 1) / numBands;
+
+    List<Callable<Object>> bands = new ArrayList<Callable<Object>>(numBands);
+    for (int startRow = 0; startRow < inputs.height; startRow += rowsPerBand) {
+      final int firstRow = startRow;
+      final int lastRow = Math.min(startRow + rowsPerBand, inputs.height);
+      bands.add(new Callable<Object>() {
+
+        @Override
+        public Object call() throws Exception {
+          computeRows(inputs, krigingWeights, colors, pixels, firstRow, lastRow);
+          return null;
+        }
+      });
+    }
+
+    for (Future<Object> band : rowWorkers.invokeAll(bands)) {
+      band.get();
+    }
+    return image;
+  }
+
+  /**
+   * Fills rows {@code [firstRow, lastRow)} of {@code pixels}.
+   */
+  protected static void computeRows(final FieldInputs inputs,
+      final float[] krigingWeights, final int[] colors, final int[] pixels,
+      final int firstRow, final int lastRow) {
+    final float valueRange = inputs.maxValue - inputs.minValue;
+    final float halfPower = inputs.power / 2f;
+    final boolean squarePower = inputs.power == 2f;
+
+    for (int row = firstRow; row < lastRow; ++row) {
+      float py = (row + 0.5f) / inputs.height;
+      int offset = row * inputs.width;
+      for (int col = 0; col < inputs.width; ++col) {
+        float px = (col + 0.5f) / inputs.width;
+        float value;
+        if (krigingWeights != null) {
+          value = krigingEstimate(inputs, krigingWeights, px, py);
+        } else {
+          value = Float.NaN;
+          double weightSum = 0;
+          double valueSum = 0;
+          for (int i = 0; i < inputs.numSamples; ++i) {
+            float dx = px - inputs.xs[i];
+            float dy = py - inputs.ys[i];
+            float distSq = dx * dx + dy * dy;
+            if (distSq < 1e-10f) {
+              value = inputs.values[i];
+              break;
+            }
+            double weight = squarePower ? 1.0 / distSq : 1.0 / Math.pow(
+                distSq, halfPower);
+            weightSum += weight;
+            valueSum += weight * inputs.values[i];
+          }
+          if (value != value) {
+            value = (float) (valueSum / weightSum);
+          }
+        }
+
+        float normal = valueRange < 0.01f ? 0f : (value - inputs.minValue)
+            / valueRange;
+        if (!(normal > 0f)) {
+          normal = 0f;
+        } else if (normal > 1f) {
+          normal = 1f;
+        }
+        pixels[offset + col] = colors[(int) (normal * (NUM_COLORS - 1))];
+      }
+    }
+  }
+
+  /**
+   * Covariance model used for kriging. Distances are normalized to the panel,
+   * so the practical range is a fixed fraction of the region.
+   */
+  private static double covariance(final double sill, final double dist) {
+    return sill * Math.exp(-3.0 * dist / 0.5);
+  }
+
+  /**
+   * Solves the ordinary kriging system once for a set of inputs. The returned
+   * weights {@code w} satisfy {@code estimate(p) = sum(c_i(p) * w_i) + w_n},
+   * where {@code c_i(p)} is the covariance between {@code p} and sample
+   * {@code i}, so each pixel costs O(n).
+   *
+   * @param inputs
+   *          the sample values and locations.
+   * @return the kriging weights, or {@code null} if the system is singular.
+   */
+  protected static float[] solveKriging(final FieldInputs inputs) {
+    int n = inputs.numSamples;
+    double mean = 0;
+    for (int i = 0; i < n; ++i) {
+      mean += inputs.values[i];
+    }
+    mean /= n;
+    double sill = 0;
+    for (int i = 0; i < n; ++i) {
+      double diff = inputs.values[i] - mean;
+      sill += diff * diff;
+    }
+    sill = n > 1 ? sill / (n - 1) : 0;
+    if (sill < 1e-6) {
+      sill = 1;
+    }
+    // Small nugget on the diagonal keeps co-located devices from making the
+    // system singular
+    double nugget = sill * 1e-3;
+
+    int size = n + 1;
+    double[][] a = new double[size][size + 1];
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j < n; ++j) {
+        double dx = inputs.xs[i] - inputs.xs[j];
+        double dy = inputs.ys[i] - inputs.ys[j];
+        a[i][j] = covariance(sill, Math.sqrt(dx * dx + dy * dy));
+      }
+      a[i][i] += nugget;
+      a[i][n] = 1;
+      a[n][i] = 1;
+      a[i][size] = inputs.values[i];
+    }
+    a[n][n] = 0;
+    a[n][size] = 0;
+
+    // Gaussian elimination with partial pivoting
+    for (int col = 0; col < size; ++col) {
+      int pivot = col;
+      for (int row = col + 1; row < size; ++row) {
+        if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) {
+          pivot = row;
+        }
+      }
+      if (Math.abs(a[pivot][col]) < 1e-12) {
+        log.warn("Singular kriging system for {} samples.", Integer.valueOf(n));
+        return null;
+      }
+      double[] temp = a[col];
+      a[col] = a[pivot];
+      a[pivot] = temp;
+      for (int row = col + 1; row < size; ++row) {
+        double factor = a[row][col] / a[col][col];
+        for (int k = col; k <= size; ++k) {
+          a[row][k] -= factor * a[col][k];
+        }
+      }
+    }
+    float[] weights = new float[size + 1];
+    double[] solved = new double[size];
+    for (int row = size - 1; row >= 0; --row) {
+      double sum = a[row][size];
+      for (int k = row + 1; k < size; ++k) {
+        sum -= a[row][k] * solved[k];
+      }
+      solved[row] = sum / a[row][row];
+      weights[row] = (float) solved[row];
+    }
+    // Stash the sill after the weights so the estimator can rebuild c_i(p)
+    weights[size] = (float) sill;
+    return weights;
+  }
+
+  private static float krigingEstimate(final FieldInputs inputs,
+      final float[] weights, final float px, final float py) {
+    int n = inputs.numSamples;
+    double sill = weights[n + 1];
+    double sum = weights[n];
+    for (int i = 0; i < n; ++i) {
+      double dx = px - inputs.xs[i];
+      double dy = py - inputs.ys[i];
+      sum += covariance(sill, Math.sqrt(dx * dx + dy * dy)) * weights[i];
+    }
+    return (float) sum;
+  }
+
+  /**
+   * Builds an ARGB lookup table using the same hue scale as
+   * {@link VoronoiHeatMap}.
+   */
+  private static int[] buildColorTable(final int alpha) {
+    int[] table = new int[NUM_COLORS];
+    for (int i = 0; i < NUM_COLORS; ++i) {
+      float normal = i / (float) (NUM_COLORS - 1);
+      int rgb = Color.HSBtoRGB(normal * .66f, 0.9f, 0.8f);
+      table[i] = (alpha << 24) | (rgb & 0x00FFFFFF);
+    }
+    return table;
+  }
+
+  protected void drawTimestamp(final Graphics2D g2, int screenWidth,
+      int screenHeight) {
+    FontRenderContext frc = g2.getFontRenderContext();
+    Font currentFont = g2.getFont();
+    // Draw current timestamp
+    long timestamp = this.cache.isClone() ? this.cache.getCreationTs() : System
+        .currentTimeMillis();
+    timestamp -= this.timeOffset;
+
+    String dateString = SimpleDateFormat.getDateTimeInstance(
+        SimpleDateFormat.MEDIUM, SimpleDateFormat.MEDIUM).format(
+        new Date(timestamp));
+    Rectangle2D bounds = currentFont.getStringBounds(dateString, frc);
+    Color origColor = g2.getColor();
+    g2.setColor(Color.BLACK);
+    Rectangle2D background = new Rectangle2D.Float(screenWidth
+        - (float) bounds.getWidth() - 9, 5, screenWidth - 5,
+        9 + (float) bounds.getHeight());
+    g2.fill(background);
+    g2.setColor(Color.WHITE);
+    g2.drawString(dateString, screenWidth - (float) bounds.getWidth() - 2,
+        (float) bounds.getHeight() + 7);
+    g2.setColor(origColor);
+  }
+
+  protected void drawDeviceIcon(final Graphics g, final int screenWidth,
+      final int screenHeight) {
+    if (this.deviceImage == null || this.displayedId == null)
+      return;
+
+    Point2D deviceLocation = this.cache.getDeviceLocation(this.displayedId);
+    if (deviceLocation == null) {
+      return;
+    }
+
+    Graphics2D g2 = (Graphics2D) g;
+    int imageWidth = this.deviceImage.getWidth();
+    int imageHeight = this.deviceImage.getHeight();
+
+    float xScale = screenWidth
+        / (float) this.cache.getRegionBounds().getWidth();
+    float yScale = screenHeight
+        / (float) this.cache.getRegionBounds().getHeight();
+
+    g2.drawImage(
+        this.deviceImage,
+        (int) (deviceLocation.getX() * xScale - (imageWidth / 2f)),
+        (int) (screenHeight - (deviceLocation.getY() * yScale) - (imageHeight / 2f)),
+        (int) (deviceLocation.getX() * xScale + (imageWidth / 2f)),
+        (int) (screenHeight - (deviceLocation.getY() * yScale) + (imageHeight / 2f)),
+        0, 0, imageWidth, imageHeight, null);
+  }
+
+  @Override
+  public String getToolTipText(MouseEvent me) {
+    if (this.cache.getRegionBounds() == null) {
+      return null;
+    }
+
+    Dimension panelDims = this.getSize();
+
+    double mX = me.getPoint().getX();
+    double mY = panelDims.getHeight() - me.getPoint().getY();
+
+    // X scale for Screen->Region conversion
+    double xS2R = this.cache.getRegionBounds().getMaxX() / panelDims.getWidth();
+    double yS2R = this.cache.getRegionBounds().getMaxY()
+        / panelDims.getHeight();
+
+    double rX = mX * xS2R;
+    double rY = mY * yS2R;
+
+    float minCombined = Float.MAX_VALUE;
+    String minDevice = null;
+
+    for (String rxer : this.cache.getReceiverIds()) {
+      Point2D location = this.cache.getDeviceLocation(rxer);
+      if (location == null) {
+        continue;
+      }
+      float dist = (float) (Math.abs(location.getX() - rX) + Math.abs(location
+          .getY() - rY));
+      if (dist < 10 && dist < minCombined) {
+        minCombined = dist;
+        minDevice = rxer;
+      }
+    }
+
+    for (String txer : this.cache.getFiduciaryTransmitterIds()) {
+      Point2D location = this.cache.getDeviceLocation(txer);
+      if (location == null) {
+        continue;
+      }
+      float dist = (float) (Math.abs(location.getX() - rX) + Math.abs(location
+          .getY() - rY));
+      if (dist < 10 && dist < minCombined) {
+        minCombined = dist;
+        minDevice = txer;
+      }
+    }
+    if (minDevice != null) {
+      return minDevice;
+    }
+
+    return this.cache.getRegionUri() + String.format(" (%.1f, %.1f)", rX, rY);
+  }
+
+  /**
+   * Immutable snapshot of the values that determine the contents of a raster.
+   * Two equal snapshots produce identical rasters.
+   */
+  protected static final class FieldInputs {
+    final int width;
+    final int height;
+    final int numSamples;
+    /**
+     * Sample x-coordinates, normalized to [0,1] across the panel.
+     */
+    final float[] xs;
+    /**
+     * Sample y-coordinates, normalized to [0,1] down the panel.
+     */
+    final float[] ys;
+    final float[] values;
+    final float minValue;
+    final float maxValue;
+    final float power;
+    final Interpolation interpolation;
+    final boolean transparency;
+
+    FieldInputs(final int width, final int height, final int numSamples,
+        final float[] xs, final float[] ys, final float[] values,
+        final float minValue, final float maxValue, final float power,
+        final Interpolation interpolation, final boolean transparency) {
+      this.width = width;
+      this.height = height;
+      this.numSamples = numSamples;
+      this.xs = xs;
+      this.ys = ys;
+      this.values = values;
+      this.minValue = minValue;
+      this.maxValue = maxValue;
+      this.power = power;
+      this.interpolation = interpolation;
+      this.transparency = transparency;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof FieldInputs)) {
+        return false;
+      }
+      FieldInputs other = (FieldInputs) o;
+      return this.width == other.width && this.height == other.height
+          && this.numSamples == other.numSamples
+          && this.minValue == other.minValue
+          && this.maxValue == other.maxValue && this.power == other.power
+          && this.interpolation == other.interpolation
+          && this.transparency == other.transparency
+          && Arrays.equals(this.values, other.values)
+          && Arrays.equals(this.xs, other.xs)
+          && Arrays.equals(this.ys, other.ys);
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(this.values) ^ (this.width * 31 + this.height);
+    }
+  }
+
+  /**
+   * Creates named daemon threads so that the raster pools never keep the JVM
+   * alive.
+   */
+  private static final class DaemonThreadFactory implements ThreadFactory {
+    private final String name;
+    private int count = 0;
+
+    DaemonThreadFactory(final String name) {
+      this.name = name;
+    }
+
+    @Override
+    public synchronized Thread newThread(Runnable r) {
+      Thread t = new Thread(r, this.name + " " + (++this.count));
+      t.setDaemon(true);
+      return t;
+    }
+  }
+
+  public boolean isSynchronousRaster() {
+    return this.synchronousRaster;
+  }
+
+  /**
+   * Sets whether the raster is computed while painting. Batch rendering needs
+   * this, since it paints each frame only once.
+   */
+  public void setSynchronousRaster(final boolean synchronousRaster) {
+    this.synchronousRaster = synchronousRaster;
+  }
+
+  public int getGridResolution() {
+    return this.gridResolution;
+  }
+
+  /**
+   * Sets the number of screen pixels along each side of a raster cell. Smaller
+   * values produce a finer surface at a higher computational cost.
+   *
+   * @param gridResolution
+   *          the cell size in pixels, at least 1.
+   */
+  public void setGridResolution(int gridResolution) {
+    this.gridResolution = gridResolution < 1 ? 1 : gridResolution;
+  }
+
+  public float getIdwPower() {
+    return this.idwPower;
+  }
+
+  public void setIdwPower(float idwPower) {
+    this.idwPower = idwPower;
+  }
+
+  public Interpolation getInterpolation() {
+    return this.interpolation;
+  }
+
+  public void setInterpolation(Interpolation interpolation) {
+    this.interpolation = interpolation;
+  }
+
+  public float getMinValue() {
+    return this.minValue;
+  }
+
+  @Override
+  public void setMinValue(float minValue) {
+    this.minValue = minValue;
+  }
+
+  public float getMaxValue() {
+    return this.maxValue;
+  }
+
+  @Override
+  public void setMaxValue(float maxValue) {
+    this.maxValue = maxValue;
+  }
+
+  @Override
+  public String getDisplayedId() {
+    return this.displayedId;
+  }
+
+  @Override
+  public void setDisplayedId(String displayedId) {
+    this.displayedId = displayedId;
+  }
+
+  @Override
+  public void setDeviceIsTransmitter(boolean deviceIsTransmitter) {
+    this.deviceIsTransmitter = deviceIsTransmitter;
+  }
+
+  @Override
+  public void setSelfAdjustMax(boolean selfAdjustMax) {
+    // Not supported
+  }
+
+  @Override
+  public void setSelfAdjustMin(boolean selfAdjustMin) {
+    // Not supported
+  }
+
+  public long getMaxAge() {
+    return this.maxAge;
+  }
+
+  @Override
+  public void setMaxAge(long maxAge) {
+    this.maxAge = maxAge;
+  }
+
+  @Override
+  public void setDisplayLegend(boolean displayLegend) {
+    // Not supported
+  }
+
+  @Override
+  public void setDeviceIcon(BufferedImage icon) {
+    this.deviceImage = icon;
+  }
+
+  @Override
+  public void setAntiAlias(boolean antiAlias) {
+    this.antiAlias = antiAlias;
+  }
+
+  @Override
+  public boolean isAntiAlias() {
+    return this.antiAlias;
+  }
+
+  @Override
+  public boolean supportsAntiAlias() {
+    return true;
+  }
+
+  @Override
+  public void setTransparency(boolean transparency) {
+    this.transparency = transparency;
+  }
+
+  @Override
+  public boolean isTransparency() {
+    return this.transparency;
+  }
+
+  @Override
+  public boolean supportsTransparency() {
+    return true;
+  }
+
+  @Override
+  public long getTimeOffset() {
+    return this.timeOffset;
+  }
+
+  @Override
+  public void setTimeOffset(long timeOffset) {
+    this.timeOffset = timeOffset;
+  }
+
+  @Override
+  public void setCache(DataCache2 cache) {
+    this.cache = cache;
+  }
+}
@@ -25,21 +25,18 @@ import java.awt.geom.Ellipse2D;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Set;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.owlplatform.sigvis.DataCache2;
 import com.owlplatform.sigvis.DataCache2.ValueType;
+import com.owlplatform.sigvis.panels.RenderMetrics.Phase;
 import com.owlplatform.sigvis.structs.RSSILine;
-import compgeom.RLineSegment2D;
-import compgeom.RPoint2D;
-import compgeom.Rational;
-import compgeom.algorithms.BentleyOttmann;
 
 public class IntersectionLineMap extends SignalLineMap {
 
@@ -50,6 +47,21 @@ public class IntersectionLineMap extends SignalLineMap {
 
   protected boolean dirty = true;
 
+  /**
+   * Whether to use exact rational arithmetic for the intersections instead of
+   * the fast floating-point search.
+   */
+  protected volatile boolean exactIntersections = false;
+
+  /**
+   * Segment endpoints used for {@link #cachedIntersections}.
+   */
+  protected float[] cachedSegments = null;
+
+  protected boolean cachedExact = false;
+
+  protected Collection<Point2D> cachedIntersections = null;
+
   public IntersectionLineMap(final ValueType type, final DataCache2 cache) {
     super(type, cache);
   }
@@ -77,7 +89,7 @@ public class IntersectionLineMap extends SignalLineMap {
     float valueRange = this.maxValue - this.minValue;
 
     
-    Set<RSSILine> validLines = new HashSet<RSSILine>();
+    List<RSSILine> validLines = new ArrayList<RSSILine>();
     for (String receiverId : this.cache.getReceiverIds()) {
       for (String transmitterId : this.cache.getFiduciaryTransmitterIds()) {
         float value = this.type == ValueType.RSSI ? this.cache
@@ -99,7 +111,9 @@ public class IntersectionLineMap extends SignalLineMap {
       }
     }
 
+    RenderMetrics.mark(Phase.DATA);
     this.intersections = this.generateIntersections(validLines);
+    RenderMetrics.mark(Phase.GEOMETRY);
     log.debug("Generated {} intersections.", this.intersections.size());
 
     Color origColor = g2.getColor();
@@ -118,13 +132,14 @@ public class IntersectionLineMap extends SignalLineMap {
     g2.setColor(origColor);
   }
 
+  /**
+   * Computes the intersections of the lines, reusing the previous result if
+   * none of the line endpoints have changed.
+   */
   protected Collection<Point2D> generateIntersections(
       final Collection<RSSILine> rssiLines) {
-    Set<RLineSegment2D> compLines = new HashSet<RLineSegment2D>();
-    RLineSegment2D newLine = null;
-    RPoint2D newPoint1 = null;
-    Rational x1, x2, y1, y2;
-    RPoint2D newPoint2 = null;
+    float[] segments = new float[rssiLines.size() * 4];
+    int numSegments = 0;
     for (RSSILine line : rssiLines) {
       if (line.getLine() == null) {
         Point2D recLoc = this.cache.getDeviceLocation(line.getReceiver());
@@ -135,39 +150,51 @@ public class IntersectionLineMap extends SignalLineMap {
 
         line.setLine(new Line2D.Float(recLoc, devLoc));
       }
-      x1 = new Rational(Float.toString(line.getLine().x1));
-      x2 = new Rational(Float.toString(line.getLine().x2));
-
-      y1 = new Rational(Float.toString(line.getLine().y1));
-      y2 = new Rational(Float.toString(line.getLine().y2));
-
-      newPoint1 = new RPoint2D(x1, y1);
-      newPoint2 = new RPoint2D(x2, y2);
-      newLine = new RLineSegment2D(newPoint1, newPoint2);
-      compLines.add(newLine);
+      Line2D.Float segment = line.getLine();
+      segments[numSegments * 4] = segment.x1;
+      segments[numSegments * 4 + 1] = segment.y1;
+      segments[numSegments * 4 + 2] = segment.x2;
+      segments[numSegments * 4 + 3] = segment.y2;
+      ++numSegments;
     }
-
-    for (RLineSegment2D compLine : compLines) {
-      log.debug("Created line: {}", compLine);
+    if (numSegments * 4 < segments.length) {
+      segments = Arrays.copyOf(segments, numSegments * 4);
     }
 
-    // Set<RPoint2D> interCompPoints = BentleyOttmann.intersections(compLines);
-    Set<RPoint2D> interCompPoints = BentleyOttmann.intersections(compLines);
-
-    LinkedList<Point2D> returnPoints = new LinkedList<Point2D>();
-
-    Point2D point = null;
-
-    for (RPoint2D compPoint : interCompPoints) {
-      point = new Point2D.Float(compPoint.x.floatValue(),
-          compPoint.y.floatValue());
-      returnPoints.add(point);
+    if (this.cachedIntersections != null
+        && this.cachedExact == this.exactIntersections
+        && Arrays.equals(segments, this.cachedSegments)) {
+      return this.cachedIntersections;
     }
 
-    for (Point2D aPoint : returnPoints) {
-      log.debug("Generating intersection @ {}", aPoint);
+    Collection<Point2D> returnPoints = this.exactIntersections ? SegmentIntersections
+        .exact(segments, numSegments) : SegmentIntersections.fast(segments,
+        numSegments);
+
+    if (log.isDebugEnabled()) {
+      for (Point2D aPoint : returnPoints) {
+        log.debug("Generating intersection @ {}", aPoint);
+      }
     }
 
+    this.cachedSegments = segments;
+    this.cachedExact = this.exactIntersections;
+    this.cachedIntersections = returnPoints;
     return returnPoints;
   }
+
+  public boolean isExactIntersections() {
+    return this.exactIntersections;
+  }
+
+  /**
+   * Selects between the fast floating-point intersection search and the exact
+   * (rational arithmetic) one.
+   *
+   * @param exactIntersections
+   *          {@code true} to use exact arithmetic.
+   */
+  public void setExactIntersections(boolean exactIntersections) {
+    this.exactIntersections = exactIntersections;
+  }
 }
@@ -40,7 +40,6 @@ import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -53,7 +52,9 @@ import org.slf4j.LoggerFactory;
 import com.owlplatform.sigvis.DataCache2;
 import com.owlplatform.sigvis.DataCache2.ValueType;
 import com.owlplatform.sigvis.ImageResources;
+import com.owlplatform.sigvis.panels.RenderMetrics.Phase;
 import com.owlplatform.sigvis.structs.ChartItem;
+import com.owlplatform.sigvis.structs.CompactSeries;
 
 public class LineChart extends JComponent implements DisplayPanel,
     MouseListener, MouseMotionListener, MouseWheelListener {
@@ -140,6 +141,11 @@ public class LineChart extends JComponent implements DisplayPanel,
   protected Composite fillUnderAlpha = AlphaComposite.getInstance(
       AlphaComposite.SRC_OVER, 0.2f);
 
+  /**
+   * Reused to read each stream while painting.
+   */
+  protected final CompactSeries.Cursor cursor = new CompactSeries.Cursor();
+
   protected String lastStream = null;
 
   protected long highlightTime = 2000l;
@@ -297,12 +303,14 @@ public class LineChart extends JComponent implements DisplayPanel,
       g2.setColor(drawColor);
 
       // TODO: Grab variance list instead
-      Collection<ChartItem<Float>> sampleList = this.generateDisplayedData(
+      RenderMetrics.mark(Phase.DRAW);
+      CompactSeries.Cursor sampleList = this.generateDisplayedData(
           this.deviceIsTransmitter ? this.displayedId : streamId,
           this.deviceIsTransmitter ? streamId: this.displayedId);
+      RenderMetrics.mark(Phase.DATA);
 
       ++streamNum;
-      if (sampleList == null || sampleList.isEmpty()) {
+      if (sampleList == null || !sampleList.hasNext()) {
 
         continue;
       }
@@ -338,18 +346,9 @@ public class LineChart extends JComponent implements DisplayPanel,
     long renderTime = System.currentTimeMillis() - this.lastRepaint;
     this.currFps = this.currFps * 0.875f + (1000f / renderTime) * 0.125f;
 
-    // if (this.enableAntiAliasing && (this.currFps < this.minFps * 0.9f)) {
-    // ++this.slowFrames;
-    // if (this.slowFrames > 3) {
-    // this.enableAntiAliasing = false;
-    // log.warn("FPS: {} Disabling Anti-Aliasing.", this.currFps);
-    // }
-    // } else if (this.enableAntiAliasing) {
-    // this.slowFrames = 0;
-    // }
   }
 
-  protected Collection<ChartItem<Float>> generateDisplayedData(String txer,
+  protected CompactSeries.Cursor generateDisplayedData(String txer,
       String rxer) {
     long youngestItem = this.lastRepaint - this.timeOffset;
     if (this.cache.isClone()) {
@@ -358,9 +357,11 @@ public class LineChart extends JComponent implements DisplayPanel,
     long oldestItem = youngestItem - this.maxAge;
     
     if (this.type == ValueType.RSSI) {
-      return this.cache.getRssiList(rxer, txer,oldestItem,youngestItem);
+      return this.cache.getRssiCursor(rxer, txer, oldestItem, youngestItem,
+          this.cursor);
     } else if (this.type == ValueType.VARIANCE) {
-      return this.cache.getVarianceList(rxer, txer, oldestItem, youngestItem);
+      return this.cache.getVarianceCursor(rxer, txer, oldestItem,
+          youngestItem, this.cursor);
     }
     return null;
   }
@@ -568,7 +569,7 @@ public class LineChart extends JComponent implements DisplayPanel,
   }
 
   protected float drawStream(final Graphics g, final String rxer,
-      final String txer, final Collection<ChartItem<Float>> streamValues,
+      final String txer, final CompactSeries.Cursor streamValues,
       final int screenWidth, final int screenHeight) {
 
     if (streamValues == null) {
@@ -578,7 +579,7 @@ public class LineChart extends JComponent implements DisplayPanel,
     boolean containsMax = false;
 
     // ChartItem<Float>[] items = streamValues.toArray(new ChartItem[] {});
-    if (streamValues.size() == 0) {
+    if (!streamValues.hasNext()) {
 
       return this.minValue;
     }
@@ -607,7 +608,6 @@ public class LineChart extends JComponent implements DisplayPanel,
 
     float itemXLocation = this.margins[MARGIN_LEFT];
     float previousXLocation = -1;
-    ChartItem<Float> previousItem = null;
     Graphics2D g2 = (Graphics2D) g;
 
     Composite origComposite = g2.getComposite();
@@ -635,33 +635,35 @@ public class LineChart extends JComponent implements DisplayPanel,
     // long oldestAgeDraw = youngestAgeDraw - this.maxAge;
     long lastItemTime = 0l;
     GeneralPath itemPath = new GeneralPath();
-    for (ChartItem<Float> item : streamValues) {
+    while (streamValues.next()) {
+      long itemTime = streamValues.getTime();
 
       // if (this.scrolling) {
-      if (item.getCreationTime() < oldestItem) {
+      if (itemTime < oldestItem) {
         continue;
       }
-      if (item.getCreationTime() > youngestItem) {
+      if (itemTime > youngestItem) {
         break;
       }
+      float itemValue = streamValues.getValue();
       // System.out.println("Just right!");
-      if (item.getValue() > maxValue) {
-        maxValue = item.getValue();
+      if (itemValue > maxValue) {
+        maxValue = itemValue;
       }
       // }
       itemXLocation = screenWidth - this.margins[MARGIN_RIGHT]
-          - (youngestItem - item.getCreationTime()) * timeScale;
-      float itemYLocation = (baseYLevel - (item.getValue() - this.minValue)
+          - (youngestItem - itemTime) * timeScale;
+      float itemYLocation = (baseYLevel - (itemValue - this.minValue)
           * valueScale);
 
-      if ((item.getCreationTime() - lastItemTime) > MAX_TIME_GAP) {
+      if ((itemTime - lastItemTime) > MAX_TIME_GAP) {
         isFirst = true;
 
         xValues.add(Integer.valueOf((int) previousXLocation));
         yValues.add(Integer.valueOf((int) baseYLevel));
         previousXLocation = -1;
       }
-      lastItemTime = item.getCreationTime();
+      lastItemTime = itemTime;
 
       if (this.useTransparency) {
         if (isFirst) {
@@ -679,28 +681,26 @@ public class LineChart extends JComponent implements DisplayPanel,
       if (previousXLocation >= 0) {
 
         itemPath.lineTo(itemXLocation,
-            (baseYLevel - (item.getValue() - this.minValue) * valueScale));
+            (baseYLevel - (itemValue - this.minValue) * valueScale));
 
         // g2.drawLine((int) previousXLocation,
         // (int) (baseYLevel - (previousItem.getValue() - this.minValue)
         // * valueScale), (int) itemXLocation,
-        // (int) (baseYLevel - (item.getValue() - this.minValue) * valueScale));
+        // (int) (baseYLevel - (itemValue - this.minValue) * valueScale));
       } else {
         itemPath.moveTo(itemXLocation,
-            (baseYLevel - (item.getValue() - this.minValue) * valueScale));
+            (baseYLevel - (itemValue - this.minValue) * valueScale));
       }
 
       // Draw the point if we should
       // if (this.drawPoints) {
       // Ellipse2D point = new Ellipse2D.Float(itemXLocation - 1f, baseYLevel
-      // - (item.getValue() - this.minValue) * valueScale - 1f, 2, 2);
+      // - (itemValue - this.minValue) * valueScale - 1f, 2, 2);
       // g2.fill(point);
       // }
 
       // Prepare for next iteration
       previousXLocation = itemXLocation;
-
-      previousItem = item;
       ++itemNumber;
     }
 
@@ -0,0 +1,363 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis.panels;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Records per-frame render timings for a display panel. Each frame is split
+ * into three phases: fetching data from the cache, computing geometry, and
+ * drawing. Timings are kept in fixed-bucket histograms so that percentiles can
+ * be reported without storing every frame.
+ *
+ * Panels mark the end of a phase by calling {@link #mark(Phase)} from their
+ * paint methods. The call is a no-op unless a frame is being recorded on the
+ * current thread, so panels painted directly by Swing are unaffected.
+ *
+ * @author Robert Moore
+ *
+ */
+public class RenderMetrics {
+
+  /**
+   * The parts of a frame that are timed separately.
+   */
+  public static enum Phase {
+    /**
+     * Retrieving values from the cache.
+     */
+    DATA,
+    /**
+     * Computing positions, triangulations, intersections, or rasters.
+     */
+    GEOMETRY,
+    /**
+     * Drawing to the graphics context.
+     */
+    DRAW
+  }
+
+  /**
+   * Width of each histogram bucket, in microseconds.
+   */
+  public static final int BUCKET_MICROS = 250;
+
+  /**
+   * Number of regular histogram buckets. Frames longer than
+   * {@code NUM_BUCKETS * BUCKET_MICROS} are counted in an overflow bucket.
+   */
+  public static final int NUM_BUCKETS = 1000;
+
+  private static final Font OVERLAY_FONT = new Font(Font.MONOSPACED,
+      Font.PLAIN, 11);
+
+  /**
+   * The metrics recording a frame on the current thread, if any.
+   */
+  private static final ThreadLocal<RenderMetrics> activeFrame = new ThreadLocal<RenderMetrics>();
+
+  /**
+   * Histograms for each phase, with the total frame time in the last row. The
+   * final bucket of each row is the overflow bucket.
+   */
+  protected final long[][] histograms = new long[Phase.values().length + 1][NUM_BUCKETS + 1];
+
+  protected final long[] totalNanos = new long[Phase.values().length + 1];
+
+  protected final long[] maxNanos = new long[Phase.values().length + 1];
+
+  protected long frameCount = 0;
+
+  /**
+   * Phase durations of the frame being recorded.
+   */
+  protected final long[] currentFrame = new long[Phase.values().length];
+
+  protected long frameStart = 0l;
+
+  protected long lastMark = 0l;
+
+  /**
+   * Phase durations of the most recently completed frame, for the overlay.
+   */
+  protected final long[] lastFrame = new long[Phase.values().length + 1];
+
+  /**
+   * Marks the end of {@code phase} for the frame being recorded on the current
+   * thread. Time since the previous mark (or the start of the frame) is added
+   * to {@code phase}.
+   *
+   * @param phase
+   *          the phase that just completed.
+   */
+  public static void mark(final Phase phase) {
+    RenderMetrics metrics = activeFrame.get();
+    if (metrics != null) {
+      metrics.markPhase(phase);
+    }
+  }
+
+  /**
+   * Starts recording a frame on the current thread.
+   */
+  public void beginFrame() {
+    activeFrame.set(this);
+    this.frameStart = System.nanoTime();
+    this.lastMark = this.frameStart;
+    for (int i = 0; i < this.currentFrame.length; ++i) {
+      this.currentFrame[i] = 0l;
+    }
+  }
+
+  protected void markPhase(final Phase phase) {
+    long now = System.nanoTime();
+    this.currentFrame[phase.ordinal()] += now - this.lastMark;
+    this.lastMark = now;
+  }
+
+  /**
+   * Finishes recording the current frame. Any time since the last mark is
+   * counted as drawing.
+   *
+   * @return the total duration of the frame, in nanoseconds.
+   */
+  public long endFrame() {
+    long now = System.nanoTime();
+    activeFrame.remove();
+    this.currentFrame[Phase.DRAW.ordinal()] += now - this.lastMark;
+    long total = now - this.frameStart;
+    synchronized (this) {
+      for (int i = 0; i < this.currentFrame.length; ++i) {
+        this.record(i, this.currentFrame[i]);
+        this.lastFrame[i] = this.currentFrame[i];
+      }
+      this.record(this.currentFrame.length, total);
+      this.lastFrame[this.currentFrame.length] = total;
+      ++this.frameCount;
+    }
+    return total;
+  }
+
+  private void record(final int row, final long nanos) {
+    int bucket = (int) (nanos / (BUCKET_MICROS * 1000l));
+    if (bucket > NUM_BUCKETS || bucket < 0) {
+      bucket = NUM_BUCKETS;
+    }
+    ++this.histograms[row][bucket];
+    this.totalNanos[row] += nanos;
+    if (nanos > this.maxNanos[row]) {
+      this.maxNanos[row] = nanos;
+    }
+  }
+
+  /**
+   * Returns the approximate percentile of the phase timings, in milliseconds.
+   * The value is the upper edge of the bucket containing the percentile.
+   *
+   * @param phase
+   *          the phase, or {@code null} for the total frame time.
+   * @param percentile
+   *          the percentile, between 0 and 1.
+   * @return the percentile value in milliseconds, or {@code Float.NaN} if no
+   *         frames have been recorded.
+   */
+  public synchronized float getPercentile(final Phase phase,
+      final float percentile) {
+    if (this.frameCount == 0) {
+      return Float.NaN;
+    }
+    int row = phase == null ? this.currentFrame.length : phase.ordinal();
+    long target = (long) Math.ceil(this.frameCount * percentile);
+    if (target < 1) {
+      target = 1;
+    }
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; ++i) {
+      seen += this.histograms[row][i];
+      if (seen >= target) {
+        return (i + 1) * BUCKET_MICROS / 1000f;
+      }
+    }
+    return this.maxNanos[row] / 1000000f;
+  }
+
+  /**
+   * @param phase
+   *          the phase, or {@code null} for the total frame time.
+   * @return the mean duration in milliseconds, or {@code Float.NaN} if no
+   *         frames have been recorded.
+   */
+  public synchronized float getMean(final Phase phase) {
+    if (this.frameCount == 0) {
+      return Float.NaN;
+    }
+    int row = phase == null ? this.currentFrame.length : phase.ordinal();
+    return this.totalNanos[row] / (this.frameCount * 1000000f);
+  }
+
+  /**
+   * @param phase
+   *          the phase, or {@code null} for the total frame time.
+   * @return the longest recorded duration in milliseconds.
+   */
+  public synchronized float getMax(final Phase phase) {
+    int row = phase == null ? this.currentFrame.length : phase.ordinal();
+    return this.maxNanos[row] / 1000000f;
+  }
+
+  public synchronized long getFrameCount() {
+    return this.frameCount;
+  }
+
+  /**
+   * Clears all recorded frames.
+   */
+  public synchronized void reset() {
+    for (int i = 0; i < this.histograms.length; ++i) {
+      for (int j = 0; j < this.histograms[i].length; ++j) {
+        this.histograms[i][j] = 0l;
+      }
+      this.totalNanos[i] = 0l;
+      this.maxNanos[i] = 0l;
+      this.lastFrame[i] = 0l;
+    }
+    this.frameCount = 0;
+  }
+
+  private static String rowName(final int row) {
+    if (row < Phase.values().length) {
+      return Phase.values()[row].name().toLowerCase();
+    }
+    return "total";
+  }
+
+  /**
+   * Writes a summary of each phase as CSV, one row per phase.
+   *
+   * @param out
+   *          the destination for the CSV data.
+   * @throws IOException
+   *           if an exception is thrown by {@code out}.
+   */
+  public void writeCsv(final Writer out) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    sb.append("phase,frames,mean_ms,p50_ms,p99_ms,max_ms\n");
+    Phase[] phases = Phase.values();
+    for (int row = 0; row <= phases.length; ++row) {
+      Phase phase = row < phases.length ? phases[row] : null;
+      sb.append(rowName(row)).append(',').append(this.getFrameCount())
+          .append(',').append(String.format("%.3f", this.getMean(phase)))
+          .append(',')
+          .append(String.format("%.3f", this.getPercentile(phase, 0.5f)))
+          .append(',')
+          .append(String.format("%.3f", this.getPercentile(phase, 0.99f)))
+          .append(',').append(String.format("%.3f", this.getMax(phase)))
+          .append('\n');
+    }
+    out.write(sb.toString());
+    out.flush();
+  }
+
+  /**
+   * @return a JSON object summarizing each phase.
+   */
+  public String toJson() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\"frames\":").append(this.getFrameCount());
+    sb.append(",\"bucketMicros\":").append(BUCKET_MICROS);
+    Phase[] phases = Phase.values();
+    for (int row = 0; row <= phases.length; ++row) {
+      Phase phase = row < phases.length ? phases[row] : null;
+      sb.append(",\"").append(rowName(row)).append("\":{");
+      sb.append("\"mean\":").append(jsonFloat(this.getMean(phase)));
+      sb.append(",\"p50\":")
+          .append(jsonFloat(this.getPercentile(phase, 0.5f)));
+      sb.append(",\"p99\":").append(
+          jsonFloat(this.getPercentile(phase, 0.99f)));
+      sb.append(",\"max\":").append(jsonFloat(this.getMax(phase)));
+      sb.append('}');
+    }
+    sb.append('}');
+    return sb.toString();
+  }
+
+  private static String jsonFloat(final float value) {
+    if (Float.isNaN(value) || Float.isInfinite(value)) {
+      return "null";
+    }
+    return String.format("%.3f", value);
+  }
+
+  /**
+   * Draws the most recent frame timings and the running percentiles in the
+   * bottom-right corner of the screen, clear of the panels' timestamp and
+   * legend at the top.
+   */
+  public void drawOverlay(final Graphics2D g2, final int screenWidth,
+      final int screenHeight) {
+    Phase[] phases = Phase.values();
+    String[] lines = new String[phases.length + 2];
+    synchronized (this) {
+      lines[0] = String.format("%d frames", this.frameCount);
+      for (int row = 0; row <= phases.length; ++row) {
+        Phase phase = row < phases.length ? phases[row] : null;
+        lines[row + 1] = String.format("%-8s %6.1f p50 %6.1f p99 %6.1f",
+            rowName(row), this.lastFrame[row] / 1000000f,
+            this.getPercentile(phase, 0.5f), this.getPercentile(phase, 0.99f));
+      }
+    }
+
+    Font origFont = g2.getFont();
+    g2.setFont(OVERLAY_FONT);
+    FontMetrics metrics = g2.getFontMetrics();
+    int lineHeight = metrics.getHeight();
+    int width = 0;
+    for (String line : lines) {
+      int lineWidth = metrics.stringWidth(line);
+      if (lineWidth > width) {
+        width = lineWidth;
+      }
+    }
+    int boxHeight = lineHeight * lines.length + 6;
+    int left = screenWidth - width - 10;
+    int top = Math.max(5, screenHeight - boxHeight - 5);
+
+    Color origColor = g2.getColor();
+    Composite origComposite = g2.getComposite();
+    g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.7f));
+    g2.setColor(Color.BLACK);
+    g2.fillRect(left - 5, top, width + 10, boxHeight);
+    g2.setComposite(origComposite);
+    g2.setColor(Color.GREEN);
+    for (int i = 0; i < lines.length; ++i) {
+      g2.drawString(lines[i], left, top + 3 + lineHeight * (i + 1)
+          - metrics.getDescent());
+    }
+    g2.setColor(origColor);
+    g2.setFont(origFont);
+  }
+}
@@ -0,0 +1,642 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis.panels;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import javax.swing.ToolTipManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hosts a {@link DisplayPanel} and renders it off of the Event Dispatch Thread.
+ * The hosted panel is drawn into a back buffer by a dedicated render thread,
+ * and the buffers are swapped once the frame is complete. The Event Dispatch
+ * Thread only copies the most recently completed frame to the screen. If a
+ * frame is still being rendered when the next one is requested, the request is
+ * dropped rather than queued.
+ *
+ * The hosted panel is not added to the component hierarchy, so mouse events
+ * and tool tips on the host are forwarded to it, and it is resized on the
+ * Event Dispatch Thread along with the host. Since calling {@code repaint()}
+ * on the hosted panel has no effect, a panel that has new content to show
+ * fires a {@link #REDRAW_PROPERTY} property change instead, which is passed to
+ * the redraw listener.
+ *
+ * Panel fields are not thread-safe, so once a panel is hosted its settings
+ * are changed by tasks passed to {@link #invokeOnPanel(Runnable)}. The render
+ * thread runs them at the start of the next frame, before painting. No lock is
+ * held while painting, so a slow frame never blocks the Event Dispatch Thread.
+ *
+ * Every frame is timed by a {@link RenderMetrics} instance. When frames take
+ * longer than the frame budget, transparency and then anti-aliasing are
+ * disabled on the panel, and they are restored once frames are consistently
+ * fast again. The quality listener is told of each change.
+ *
+ * @author Robert Moore
+ *
+ */
+public class RenderedDisplayHost extends JComponent implements MouseListener,
+    MouseMotionListener, MouseWheelListener {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(RenderedDisplayHost.class);
+
+  /**
+   * Property that a hosted panel changes when it needs a new frame.
+   */
+  public static final String REDRAW_PROPERTY = "redraw";
+
+  /**
+   * The panel being rendered, or {@code null} if there is none.
+   */
+  protected volatile JComponent panel = null;
+
+  /**
+   * Changes to the hosted panel, run by the render thread before each frame.
+   */
+  protected final Queue<Runnable> panelTasks = new ConcurrentLinkedQueue<Runnable>();
+
+  /**
+   * Told when the hosted panel needs a new frame, or {@code null}.
+   */
+  protected volatile Runnable redrawListener = null;
+
+  /**
+   * Told on the Event Dispatch Thread after the panel's quality is reduced or
+   * restored, or {@code null}.
+   */
+  protected volatile Runnable qualityListener = null;
+
+  protected final PropertyChangeListener redrawForwarder = new PropertyChangeListener() {
+    @Override
+    public void propertyChange(PropertyChangeEvent evt) {
+      Runnable listener = RenderedDisplayHost.this.redrawListener;
+      if (listener != null && evt.getSource() == RenderedDisplayHost.this.panel) {
+        listener.run();
+      }
+    }
+  };
+
+  /**
+   * Frame currently shown on the screen. Guarded by {@link #bufferLock}.
+   */
+  protected BufferedImage frontBuffer = null;
+
+  /**
+   * Frame being drawn by the render thread. Only accessed by the render thread
+   * except when swapping, which holds {@link #bufferLock}.
+   */
+  protected BufferedImage backBuffer = null;
+
+  protected final Object bufferLock = new Object();
+
+  /**
+   * Set while a frame is being rendered.
+   */
+  protected final AtomicBoolean rendering = new AtomicBoolean(false);
+
+  /**
+   * Renders frames for this host, one at a time.
+   */
+  protected final ExecutorService renderThread = Executors
+      .newSingleThreadExecutor(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "Panel Renderer");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+
+  /**
+   * Number of frame requests dropped because the previous frame was still
+   * being rendered.
+   */
+  protected final AtomicLong skippedFrames = new AtomicLong();
+
+  /**
+   * Duration of the most recently completed frame, in nanoseconds.
+   */
+  protected volatile long lastRenderNanos = 0l;
+
+  /**
+   * Number of consecutive slow frames before quality is reduced.
+   */
+  public static final int SLOW_FRAME_LIMIT = 3;
+
+  /**
+   * Number of consecutive fast frames before reduced quality is restored.
+   */
+  public static final int FAST_FRAME_LIMIT = 30;
+
+  protected final RenderMetrics metrics = new RenderMetrics();
+
+  /**
+   * Whether to draw the frame timings on top of each frame.
+   */
+  protected volatile boolean showMetrics = false;
+
+  /**
+   * Longest acceptable frame time, in nanoseconds.
+   */
+  protected volatile long frameBudgetNanos = 100000000l;
+
+  protected int slowFrames = 0;
+
+  protected int fastFrames = 0;
+
+  /**
+   * Set when transparency was disabled because frames were slow. Only written
+   * by the render thread.
+   */
+  protected volatile boolean reducedTransparency = false;
+
+  /**
+   * Set when anti-aliasing was disabled because frames were slow. Only written
+   * by the render thread.
+   */
+  protected volatile boolean reducedAntiAlias = false;
+
+  /**
+   * The panel that the quality state above applies to.
+   */
+  protected JComponent qualityPanel = null;
+
+  public RenderedDisplayHost() {
+    super();
+    this.setOpaque(true);
+    this.addMouseListener(this);
+    this.addMouseMotionListener(this);
+    this.addMouseWheelListener(this);
+    this.addComponentListener(new ComponentAdapter() {
+      @Override
+      public void componentResized(ComponentEvent e) {
+        RenderedDisplayHost.this.resizePanel();
+      }
+    });
+    ToolTipManager.sharedInstance().registerComponent(this);
+  }
+
+  /**
+   * Runs {@code task} on the render thread before the next frame is painted,
+   * and asks the redraw listener for that frame. Use it to change the settings
+   * of the hosted panel from any other thread. It never blocks.
+   */
+  public void invokeOnPanel(final Runnable task) {
+    this.panelTasks.add(task);
+    Runnable listener = this.redrawListener;
+    if (listener != null) {
+      listener.run();
+    }
+  }
+
+  /**
+   * Runs the queued panel tasks. Called only on the render thread.
+   */
+  protected void runPanelTasks() {
+    Runnable task;
+    while ((task = this.panelTasks.poll()) != null) {
+      try {
+        task.run();
+      } catch (RuntimeException re) {
+        log.warn("Unable to update panel.", re);
+      }
+    }
+  }
+
+  /**
+   * Gives the hosted panel the size of the host. Called on the Event Dispatch
+   * Thread.
+   */
+  protected void resizePanel() {
+    final JComponent currPanel = this.panel;
+    if (currPanel == null) {
+      return;
+    }
+    final int width = this.getWidth();
+    final int height = this.getHeight();
+    this.invokeOnPanel(new Runnable() {
+      @Override
+      public void run() {
+        currPanel.setSize(width, height);
+      }
+    });
+  }
+
+  /**
+   * Replaces the hosted panel. The next requested frame will render the new
+   * panel; until then the previous frame remains on the screen.
+   *
+   * @param panel
+   *          the new panel to render, which should also implement
+   *          {@link DisplayPanel}.
+   */
+  public void setPanel(final JComponent panel) {
+    JComponent oldPanel = this.panel;
+    if (oldPanel != null) {
+      oldPanel.removePropertyChangeListener(REDRAW_PROPERTY,
+          this.redrawForwarder);
+    }
+    if (panel != null) {
+      // Never let the panel use the shared Swing back buffer off of the EDT
+      panel.setDoubleBuffered(false);
+      panel.setSize(this.getWidth(), this.getHeight());
+      panel.addPropertyChangeListener(REDRAW_PROPERTY, this.redrawForwarder);
+    }
+    this.panel = panel;
+    this.metrics.reset();
+  }
+
+  public JComponent getPanel() {
+    return this.panel;
+  }
+
+  /**
+   * Sets what to run on the Event Dispatch Thread after transparency or
+   * anti-aliasing of the hosted panel is reduced or restored, so that menus
+   * can show the current settings.
+   */
+  public void setQualityListener(final Runnable qualityListener) {
+    this.qualityListener = qualityListener;
+  }
+
+  /**
+   * Forgets which settings of the hosted panel were reduced, so that settings
+   * the user just chose are not restored later. Call it from a panel task,
+   * after changing the settings.
+   */
+  public void resetQuality() {
+    this.slowFrames = 0;
+    this.fastFrames = 0;
+    this.reducedAntiAlias = false;
+    this.reducedTransparency = false;
+  }
+
+  /**
+   * @return {@code true} if anti-aliasing of the hosted panel is currently
+   *         disabled to keep up the frame rate.
+   */
+  public boolean isAntiAliasReduced() {
+    return this.reducedAntiAlias;
+  }
+
+  /**
+   * @return {@code true} if transparency of the hosted panel is currently
+   *         disabled to keep up the frame rate.
+   */
+  public boolean isTransparencyReduced() {
+    return this.reducedTransparency;
+  }
+
+  /**
+   * Sets what to tell when the hosted panel needs a new frame, such as a
+   * {@code FrameScheduler}. It may be called from any thread.
+   */
+  public void setRedrawListener(final Runnable redrawListener) {
+    this.redrawListener = redrawListener;
+  }
+
+  /**
+   * Requests that a new frame be rendered. If a frame is already being
+   * rendered, the request is dropped.
+   *
+   * @return {@code true} if a new frame was scheduled, else {@code false}.
+   */
+  public boolean requestFrame() {
+    final JComponent currPanel = this.panel;
+    final int width = this.getWidth();
+    final int height = this.getHeight();
+    if (currPanel == null || width <= 0 || height <= 0) {
+      return false;
+    }
+    if (!this.rendering.compareAndSet(false, true)) {
+      this.skippedFrames.incrementAndGet();
+      return false;
+    }
+    try {
+      this.renderThread.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            RenderedDisplayHost.this.renderFrame(currPanel);
+          } catch (Exception e) {
+            log.error("Unable to render frame.", e);
+          } finally {
+            RenderedDisplayHost.this.rendering.set(false);
+          }
+        }
+      });
+    } catch (RuntimeException re) {
+      this.rendering.set(false);
+      log.warn("Unable to schedule frame.", re);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Runs the queued panel tasks, draws {@code currPanel} into the back buffer
+   * at its current size, swaps the buffers and then schedules a repaint of the
+   * host. Called only on the render thread.
+   */
+  protected void renderFrame(final JComponent currPanel) {
+    long start = System.nanoTime();
+    this.runPanelTasks();
+    int width = currPanel.getWidth();
+    int height = currPanel.getHeight();
+    if (width <= 0 || height <= 0) {
+      return;
+    }
+    BufferedImage buffer = this.backBuffer;
+    if (buffer == null || buffer.getWidth() != width
+        || buffer.getHeight() != height) {
+      buffer = this.createBuffer(width, height);
+    }
+
+    Graphics2D g2 = buffer.createGraphics();
+    try {
+      g2.setColor(Color.BLACK);
+      g2.fillRect(0, 0, width, height);
+      g2.setColor(Color.WHITE);
+      g2.setFont(this.getFont());
+      this.metrics.beginFrame();
+      try {
+        currPanel.paint(g2);
+      } finally {
+        this.adjustQuality(currPanel, this.metrics.endFrame());
+      }
+      if (this.showMetrics) {
+        this.metrics.drawOverlay(g2, width, height);
+      }
+    } finally {
+      g2.dispose();
+    }
+
+    synchronized (this.bufferLock) {
+      this.backBuffer = this.frontBuffer;
+      this.frontBuffer = buffer;
+    }
+    this.lastRenderNanos = System.nanoTime() - start;
+    this.repaint();
+  }
+
+  /**
+   * Reduces the panel's drawing quality after several frames over budget, and
+   * restores it after many frames well under budget. Transparency is the first
+   * to go and the last to come back. Called only on the render thread.
+   */
+  protected void adjustQuality(final JComponent currPanel, final long frameNanos) {
+    if (!(currPanel instanceof DisplayPanel)) {
+      return;
+    }
+    DisplayPanel display = (DisplayPanel) currPanel;
+    if (currPanel != this.qualityPanel) {
+      this.qualityPanel = currPanel;
+      this.slowFrames = 0;
+      this.fastFrames = 0;
+      this.reducedAntiAlias = false;
+      this.reducedTransparency = false;
+    }
+    long budget = this.frameBudgetNanos;
+    float frameMillis = frameNanos / 1000000f;
+
+    if (frameNanos > budget) {
+      this.fastFrames = 0;
+      if (++this.slowFrames <= SLOW_FRAME_LIMIT) {
+        return;
+      }
+      this.slowFrames = 0;
+      if (display.supportsTransparency() && display.isTransparency()) {
+        display.setTransparency(false);
+        this.reducedTransparency = true;
+        this.qualityChanged();
+        log.warn("Frame time: {}ms Disabling Alpha Transparency.",
+            Float.valueOf(frameMillis));
+      } else if (display.supportsAntiAlias() && display.isAntiAlias()) {
+        display.setAntiAlias(false);
+        this.reducedAntiAlias = true;
+        this.qualityChanged();
+        log.warn("Frame time: {}ms Disabling Anti-Aliasing.",
+            Float.valueOf(frameMillis));
+      }
+    } else {
+      this.slowFrames = 0;
+      if (!this.reducedAntiAlias && !this.reducedTransparency) {
+        return;
+      }
+      if (frameNanos * 2 > budget) {
+        this.fastFrames = 0;
+        return;
+      }
+      if (++this.fastFrames <= FAST_FRAME_LIMIT) {
+        return;
+      }
+      this.fastFrames = 0;
+      if (this.reducedAntiAlias) {
+        display.setAntiAlias(true);
+        this.reducedAntiAlias = false;
+        this.qualityChanged();
+        log.info("Frame time: {}ms Restoring Anti-Aliasing.",
+            Float.valueOf(frameMillis));
+      } else {
+        display.setTransparency(true);
+        this.reducedTransparency = false;
+        this.qualityChanged();
+        log.info("Frame time: {}ms Restoring Alpha Transparency.",
+            Float.valueOf(frameMillis));
+      }
+    }
+  }
+
+  protected void qualityChanged() {
+    Runnable listener = this.qualityListener;
+    if (listener != null) {
+      SwingUtilities.invokeLater(listener);
+    }
+  }
+
+  protected BufferedImage createBuffer(final int width, final int height) {
+    GraphicsConfiguration config = this.getGraphicsConfiguration();
+    if (config != null) {
+      return config.createCompatibleImage(width, height);
+    }
+    return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+  }
+
+  @Override
+  protected void paintComponent(Graphics g) {
+    synchronized (this.bufferLock) {
+      if (this.frontBuffer == null) {
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, this.getWidth(), this.getHeight());
+        return;
+      }
+      // Stretch a stale frame while the window is being resized
+      g.drawImage(this.frontBuffer, 0, 0, this.getWidth(), this.getHeight(),
+          0, 0, this.frontBuffer.getWidth(), this.frontBuffer.getHeight(),
+          null);
+    }
+  }
+
+  /**
+   * Stops the render thread. The host cannot be used after this is called.
+   */
+  public void shutdown() {
+    this.renderThread.shutdownNow();
+  }
+
+  public RenderMetrics getMetrics() {
+    return this.metrics;
+  }
+
+  public boolean isShowMetrics() {
+    return this.showMetrics;
+  }
+
+  public void setShowMetrics(boolean showMetrics) {
+    this.showMetrics = showMetrics;
+  }
+
+  /**
+   * Sets the longest acceptable frame time based on the desired frame rate.
+   * Frames consistently slower than this will reduce the drawing quality.
+   *
+   * @param desiredFps
+   *          the desired frame rate.
+   */
+  public void setDesiredFps(final int desiredFps) {
+    this.frameBudgetNanos = 1000000000l / (desiredFps < 1 ? 1 : desiredFps);
+  }
+
+  public long getSkippedFrames() {
+    return this.skippedFrames.get();
+  }
+
+  /**
+   * @return the time spent rendering the most recent frame, in nanoseconds.
+   */
+  public long getLastRenderNanos() {
+    return this.lastRenderNanos;
+  }
+
+  @Override
+  public String getToolTipText(MouseEvent me) {
+    JComponent currPanel = this.panel;
+    if (currPanel == null) {
+      return null;
+    }
+    return currPanel.getToolTipText(this.convertEvent(currPanel, me));
+  }
+
+  /**
+   * Creates a copy of {@code me} with {@code target} as its source. The panel
+   * always has the same size and origin as the host, so no coordinate
+   * translation is needed.
+   */
+  protected MouseEvent convertEvent(final JComponent target,
+      final MouseEvent me) {
+    if (me instanceof MouseWheelEvent) {
+      MouseWheelEvent mwe = (MouseWheelEvent) me;
+      return new MouseWheelEvent(target, mwe.getID(), mwe.getWhen(),
+          mwe.getModifiers(), mwe.getX(), mwe.getY(), mwe.getClickCount(),
+          mwe.isPopupTrigger(), mwe.getScrollType(), mwe.getScrollAmount(),
+          mwe.getWheelRotation());
+    }
+    return new MouseEvent(target, me.getID(), me.getWhen(), me.getModifiers(),
+        me.getX(), me.getY(), me.getClickCount(), me.isPopupTrigger(),
+        me.getButton());
+  }
+
+  /**
+   * Passes {@code me} to the hosted panel on the Event Dispatch Thread,
+   * without waiting for a frame being rendered.
+   */
+  protected void forwardEvent(final MouseEvent me) {
+    JComponent currPanel = this.panel;
+    if (currPanel != null) {
+      currPanel.dispatchEvent(this.convertEvent(currPanel, me));
+    }
+  }
+
+  @Override
+  public void mouseClicked(MouseEvent e) {
+    this.forwardEvent(e);
+  }
+
+  @Override
+  public void mousePressed(MouseEvent e) {
+    this.forwardEvent(e);
+  }
+
+  @Override
+  public void mouseReleased(MouseEvent e) {
+    this.forwardEvent(e);
+  }
+
+  @Override
+  public void mouseEntered(MouseEvent e) {
+    this.forwardEvent(e);
+  }
+
+  @Override
+  public void mouseExited(MouseEvent e) {
+    this.forwardEvent(e);
+  }
+
+  @Override
+  public void mouseDragged(MouseEvent e) {
+    this.forwardEvent(e);
+  }
+
+  @Override
+  public void mouseMoved(MouseEvent e) {
+    this.forwardEvent(e);
+  }
+
+  @Override
+  public void mouseWheelMoved(MouseWheelEvent e) {
+    this.forwardEvent(e);
+  }
+}
@@ -24,13 +24,12 @@ import java.awt.Graphics2D;
 import java.awt.Polygon;
 import java.awt.geom.GeneralPath;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.Stack;
 
 import com.owlplatform.sigvis.DataCache2;
 import com.owlplatform.sigvis.DataCache2.ValueType;
-import com.owlplatform.sigvis.structs.ChartItem;
+import com.owlplatform.sigvis.structs.CompactSeries;
 
 public class RssiStDvLineChart extends LineChart {
 
@@ -41,7 +40,7 @@ public class RssiStDvLineChart extends LineChart {
 
   @Override
   protected float drawStream(final Graphics g, final String rxer,
-      final String txer, final Collection<ChartItem<Float>> streamValues,
+      final String txer, final CompactSeries.Cursor streamValues,
       final int screenWidth, final int screenHeight) {
 
     if (streamValues == null) {
@@ -51,7 +50,7 @@ public class RssiStDvLineChart extends LineChart {
     boolean containsMax = false;
 
     // ChartItem<Float>[] items = streamValues.toArray(new ChartItem[] {});
-    if (streamValues.size() == 0) {
+    if (!streamValues.hasNext()) {
 
       return this.minValue;
     }
@@ -77,7 +76,6 @@ public class RssiStDvLineChart extends LineChart {
     float previousXLocation = -1;
     float previousYLocation = -1;
 
-    ChartItem<Float> previousItem = null;
     Graphics2D g2 = (Graphics2D) g;
 
     Composite origComposite = g2.getComposite();
@@ -105,21 +103,22 @@ public class RssiStDvLineChart extends LineChart {
 
     long lastItemTime = 0l;
     GeneralPath itemPath = new GeneralPath();
-    for (ChartItem<Float> item : streamValues) {
+    while (streamValues.next()) {
+      long itemTime = streamValues.getTime();
 
-      if (item.getCreationTime() < oldestItem) {
+      if (itemTime < oldestItem) {
         continue;
       }
-      if (item.getCreationTime() > youngestItem) {
+      if (itemTime > youngestItem) {
         break;
       }
-      float value = item.getValue().floatValue();
+      float value = streamValues.getValue();
       if (value > maxValue) {
         maxValue = value;
       }
 
       float variance = this.cache.getVarianceAt(txer, rxer,
-          currentTime - item.getCreationTime(), 1000l);
+          currentTime - itemTime, 1000l);
 
       if (!(variance >= 1f)) {
         variance = 0f;
@@ -128,7 +127,7 @@ public class RssiStDvLineChart extends LineChart {
       }
 
       itemXLocation = screenWidth - this.margins[MARGIN_RIGHT]
-          - (youngestItem - item.getCreationTime()) * timeScale;
+          - (youngestItem - itemTime) * timeScale;
       float itemYLocation = (baseYLevel - (value - this.minValue) * valueScale);
 
       boolean finished = false;
@@ -136,7 +135,7 @@ public class RssiStDvLineChart extends LineChart {
       // First check to see if we should "close" an existing polygon
       // 1. A gap in the data means shut-down the polygon back at the previous
       // location
-      long gap = item.getCreationTime() - lastItemTime;
+      long gap = itemTime - lastItemTime;
       if (gap > MAX_TIME_GAP) {
 
         // POLY: If we have a previous polygon, finish it off... (end "]")
@@ -221,9 +220,7 @@ public class RssiStDvLineChart extends LineChart {
       // Prepare for next iteration
       previousXLocation = itemXLocation;
       previousYLocation = itemYLocation;
-      lastItemTime = item.getCreationTime();
-
-      previousItem = item;
+      lastItemTime = itemTime;
 
     }
 
@@ -290,7 +287,7 @@ public class RssiStDvLineChart extends LineChart {
   }
 
   @Override
-  protected Collection<ChartItem<Float>> generateDisplayedData(String txer,
+  protected CompactSeries.Cursor generateDisplayedData(String txer,
       String rxer) {
     long currentTime = this.lastRepaint;
 
@@ -300,7 +297,8 @@ public class RssiStDvLineChart extends LineChart {
       currentTime = this.cache.getCreationTs();
     }
     long oldestItem = youngestItem - this.maxAge;
-    return this.cache.getRssiList(rxer, txer,oldestItem, youngestItem);
+    return this.cache.getRssiCursor(rxer, txer, oldestItem, youngestItem,
+        this.cursor);
   }
 
   @Override
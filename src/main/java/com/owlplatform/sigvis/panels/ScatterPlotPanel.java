@@ -26,9 +26,9 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Line2D;
-import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 
 import javax.swing.JComponent;
 
@@ -36,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.owlplatform.sigvis.ImageResources;
+import com.owlplatform.sigvis.structs.PointRingBuffer;
 
 public class ScatterPlotPanel extends JComponent {
 
@@ -54,9 +55,38 @@ public class ScatterPlotPanel extends JComponent {
 
 	protected int maxElements = 2000;
 
-	protected final ConcurrentLinkedQueue<Point2D> dataPoints = new ConcurrentLinkedQueue<Point2D>();
+	protected volatile PointRingBuffer dataPoints = new PointRingBuffer(
+			this.maxElements);
 
-	protected volatile int numPoints = 0;
+	/**
+	 * Held while adding or clearing points and while replacing
+	 * {@link #dataPoints}, so no point is added to a buffer that is being
+	 * replaced. Painting reads the buffer without it.
+	 */
+	protected final Object pointsLock = new Object();
+
+	/**
+	 * Copies of the points being drawn. Only used while painting.
+	 */
+	protected float[] paintX = null;
+
+	protected float[] paintY = null;
+
+	/**
+	 * Draw the number of points at each pixel as a color instead of drawing
+	 * each point.
+	 */
+	protected volatile boolean densityMode = false;
+
+	/**
+	 * Number of points above which the density raster is drawn even if
+	 * {@link #densityMode} is not set.
+	 */
+	protected volatile int densityThreshold = 50000;
+
+	protected BufferedImage densityImage = null;
+
+	protected int[] densityCounts = null;
 
 	protected float minXValue = 0;
 
@@ -162,20 +192,31 @@ public class ScatterPlotPanel extends JComponent {
 
 		float tempMax = Float.MIN_VALUE;
 
-		for (Point2D point : this.dataPoints) {
-			float xOnScreen = this.margins[MARGIN_LEFT]
-					+ (float) (point.getX() - this.minXValue) * xScale;
-			float yOnScreen = screenHeight - this.margins[MARGIN_BOTTOM]
-					- (float) (point.getY() - this.minYValue) * yScale;
+		PointRingBuffer points = this.dataPoints;
+		if (this.paintX == null || this.paintX.length < points.getCapacity()) {
+			this.paintX = new float[points.getCapacity()];
+			this.paintY = new float[points.getCapacity()];
+		}
+		int count = points.copyTo(this.paintX, this.paintY);
 
-			if (point.getY() > tempMax) {
-				tempMax = (float) point.getY();
-			}
+		if (this.densityMode || count > this.densityThreshold) {
+			tempMax = this.drawDensity(g2, count, screenHeight, usableWidth,
+					usableHeight, xScale, yScale);
+		} else {
+			for (int i = 0; i < count; ++i) {
+				float xOnScreen = this.margins[MARGIN_LEFT]
+						+ (this.paintX[i] - this.minXValue) * xScale;
+				float yOnScreen = screenHeight - this.margins[MARGIN_BOTTOM]
+						- (this.paintY[i] - this.minYValue) * yScale;
 
-			drawPoint.setFrame(xOnScreen - 1.5f, yOnScreen - 1.5f, 3f, 3f);
+				if (this.paintY[i] > tempMax) {
+					tempMax = this.paintY[i];
+				}
 
-			g2.fill(drawPoint);
+				drawPoint.setFrame(xOnScreen - 1.5f, yOnScreen - 1.5f, 3f, 3f);
 
+				g2.fill(drawPoint);
+			}
 		}
 		if (this.selfAdjustMax) {
 			this.adjustMaxY(tempMax, yRange);
@@ -199,6 +240,67 @@ public class ScatterPlotPanel extends JComponent {
 		}
 	}
 	
+	/**
+	 * Draws the first {@code count} points of {@link #paintX} and
+	 * {@link #paintY} as a raster, colored by the logarithm of the number of
+	 * points at each pixel.
+	 * 
+	 * @return the largest y value drawn.
+	 */
+	protected float drawDensity(final Graphics2D g2, final int count,
+			final int screenHeight, final int usableWidth,
+			final int usableHeight, final float xScale, final float yScale) {
+		float tempMax = Float.MIN_VALUE;
+		if (usableWidth <= 0 || usableHeight <= 0) {
+			return tempMax;
+		}
+		if (this.densityImage == null
+				|| this.densityImage.getWidth() != usableWidth
+				|| this.densityImage.getHeight() != usableHeight) {
+			this.densityImage = new BufferedImage(usableWidth, usableHeight,
+					BufferedImage.TYPE_INT_ARGB);
+			this.densityCounts = new int[usableWidth * usableHeight];
+		} else {
+			Arrays.fill(this.densityCounts, 0);
+		}
+
+		int maxCount = 0;
+		for (int i = 0; i < count; ++i) {
+			if (this.paintY[i] > tempMax) {
+				tempMax = this.paintY[i];
+			}
+			int x = (int) ((this.paintX[i] - this.minXValue) * xScale);
+			int y = usableHeight - 1
+					- (int) ((this.paintY[i] - this.minYValue) * yScale);
+			if (x < 0 || x >= usableWidth || y < 0 || y >= usableHeight) {
+				continue;
+			}
+			int pixelCount = ++this.densityCounts[y * usableWidth + x];
+			if (pixelCount > maxCount) {
+				maxCount = pixelCount;
+			}
+		}
+
+		int[] pixels = ((DataBufferInt) this.densityImage.getRaster()
+				.getDataBuffer()).getData();
+		double logMax = Math.log(1 + maxCount);
+		for (int i = 0; i < pixels.length; ++i) {
+			int pixelCount = this.densityCounts[i];
+			if (pixelCount == 0) {
+				pixels[i] = 0;
+				continue;
+			}
+			float normal = logMax > 0 ? (float) (Math.log(1 + pixelCount) / logMax)
+					: 1f;
+			pixels[i] = 0xFF000000
+					| Color.HSBtoRGB(0.66f * (1f - normal), 0.9f, 1f);
+		}
+
+		g2.drawImage(this.densityImage, this.margins[MARGIN_LEFT],
+				screenHeight - this.margins[MARGIN_BOTTOM] - usableHeight, null);
+		return tempMax;
+	}
+
 	protected void drawAdjustInfo(Graphics g, int screenWidth, int screenHeight){
 		if(this.amLowerMaxY && this.downArrowImg != null){
 			g.drawImage(this.downArrowImg, screenWidth - this.margins[MARGIN_RIGHT], this.margins[MARGIN_TOP], screenWidth,this.margins[MARGIN_TOP]+this.margins[MARGIN_RIGHT],0,0,this.downArrowImg.getWidth(), this.downArrowImg.getHeight(),null);
@@ -347,13 +449,8 @@ public class ScatterPlotPanel extends JComponent {
 	}
 
 	public void addPoint(float xValue, float yValue) {
-		++this.numPoints;
-
-		this.dataPoints.offer(new Point2D.Float(xValue, yValue));
-
-		while (this.dataPoints.size() > this.maxElements) {
-			--this.numPoints;
-			this.dataPoints.poll();
+		synchronized (this.pointsLock) {
+			this.dataPoints.add(xValue, yValue);
 		}
 
 		if (this.selfAdjustMax) {
@@ -372,16 +469,58 @@ public class ScatterPlotPanel extends JComponent {
 	}
 
 	public void clear() {
-		this.numPoints = 0;
-		this.dataPoints.clear();
+		synchronized (this.pointsLock) {
+			this.dataPoints.clear();
+		}
+	}
+
+	/**
+	 * @return the number of points currently plotted.
+	 */
+	public int getNumPoints() {
+		return this.dataPoints.size();
 	}
 
 	public int getMaxElements() {
 		return maxElements;
 	}
 
+	/**
+	 * Changes the number of points kept, preserving the most recent ones.
+	 */
 	public void setMaxElements(int maxElements) {
-		this.maxElements = maxElements;
+		synchronized (this.pointsLock) {
+			if (maxElements == this.maxElements) {
+				return;
+			}
+			PointRingBuffer oldPoints = this.dataPoints;
+			float[] xValues = new float[oldPoints.getCapacity()];
+			float[] yValues = new float[oldPoints.getCapacity()];
+			int count = oldPoints.copyTo(xValues, yValues);
+
+			PointRingBuffer newPoints = new PointRingBuffer(maxElements);
+			for (int i = Math.max(0, count - maxElements); i < count; ++i) {
+				newPoints.add(xValues[i], yValues[i]);
+			}
+			this.maxElements = maxElements;
+			this.dataPoints = newPoints;
+		}
+	}
+
+	public boolean isDensityMode() {
+		return this.densityMode;
+	}
+
+	public void setDensityMode(boolean densityMode) {
+		this.densityMode = densityMode;
+	}
+
+	public int getDensityThreshold() {
+		return this.densityThreshold;
+	}
+
+	public void setDensityThreshold(int densityThreshold) {
+		this.densityThreshold = densityThreshold;
 	}
 
 	public float getMinXValue() {
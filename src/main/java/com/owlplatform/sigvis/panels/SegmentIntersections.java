@@ -0,0 +1,270 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis.panels;
+
+import java.awt.geom.Point2D;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Set;
+
+import compgeom.RLineSegment2D;
+import compgeom.RPoint2D;
+import compgeom.Rational;
+import compgeom.algorithms.BentleyOttmann;
+
+/**
+ * Computes the intersection points of a set of line segments. Segments are
+ * packed into a single array as {@code x1, y1, x2, y2} for each segment.
+ *
+ * The fast method uses double-precision arithmetic and a uniform grid, so that
+ * only segments sharing a grid cell are tested against each other. The exact
+ * method uses rational arithmetic and the Bentley-Ottmann sweep from CompGeom,
+ * and is much slower.
+ *
+ * @author Robert Moore
+ *
+ */
+public final class SegmentIntersections {
+
+  /**
+   * Tolerance for the segment parameters, so that segments sharing an endpoint
+   * are reported as intersecting.
+   */
+  private static final double EPSILON = 1e-9;
+
+  /**
+   * Largest number of grid cells along each axis.
+   */
+  private static final int MAX_GRID_SIZE = 256;
+
+  private SegmentIntersections() {
+    // Utility class
+  }
+
+  /**
+   * Finds the intersections of the segments using a uniform grid.
+   *
+   * @param segments
+   *          the segment endpoints, as {@code x1, y1, x2, y2} for each
+   *          segment.
+   * @param numSegments
+   *          the number of segments in {@code segments}.
+   * @return the distinct intersection points.
+   */
+  public static Collection<Point2D> fast(final float[] segments,
+      final int numSegments) {
+    Set<Point2D> points = new LinkedHashSet<Point2D>();
+    if (numSegments < 2) {
+      return points;
+    }
+
+    float minX = Float.POSITIVE_INFINITY;
+    float minY = Float.POSITIVE_INFINITY;
+    float maxX = Float.NEGATIVE_INFINITY;
+    float maxY = Float.NEGATIVE_INFINITY;
+    for (int i = 0; i < numSegments * 4; i += 2) {
+      minX = Math.min(minX, segments[i]);
+      maxX = Math.max(maxX, segments[i]);
+      minY = Math.min(minY, segments[i + 1]);
+      maxY = Math.max(maxY, segments[i + 1]);
+    }
+
+    int gridSize = (int) Math.ceil(Math.sqrt(numSegments));
+    if (gridSize > MAX_GRID_SIZE) {
+      gridSize = MAX_GRID_SIZE;
+    }
+    double cellWidth = (maxX - minX) / (double) gridSize;
+    double cellHeight = (maxY - minY) / (double) gridSize;
+    if (!(cellWidth > 0)) {
+      cellWidth = 1;
+    }
+    if (!(cellHeight > 0)) {
+      cellHeight = 1;
+    }
+
+    // Segment indices for each cell, in row-major order
+    int[][] cells = new int[gridSize * gridSize][];
+    int[] cellCounts = new int[gridSize * gridSize];
+
+    for (int s = 0; s < numSegments; ++s) {
+      double x1 = segments[s * 4];
+      double y1 = segments[s * 4 + 1];
+      double x2 = segments[s * 4 + 2];
+      double y2 = segments[s * 4 + 3];
+      if (x1 > x2) {
+        double tmp = x1;
+        x1 = x2;
+        x2 = tmp;
+        tmp = y1;
+        y1 = y2;
+        y2 = tmp;
+      }
+      int firstCol = cellIndex(x1 - minX, cellWidth, gridSize);
+      int lastCol = cellIndex(x2 - minX, cellWidth, gridSize);
+      double slope = x2 > x1 ? (y2 - y1) / (x2 - x1) : 0;
+      for (int col = firstCol; col <= lastCol; ++col) {
+        // Portion of the segment that falls within this column
+        double colLeft = Math.max(x1, minX + col * cellWidth);
+        double colRight = Math.min(x2, minX + (col + 1) * cellWidth);
+        double yA = x2 > x1 ? y1 + (colLeft - x1) * slope : y1;
+        double yB = x2 > x1 ? y1 + (colRight - x1) * slope : y2;
+        int firstRow = cellIndex(Math.min(yA, yB) - minY, cellHeight, gridSize);
+        int lastRow = cellIndex(Math.max(yA, yB) - minY, cellHeight, gridSize);
+        for (int row = firstRow; row <= lastRow; ++row) {
+          int cell = row * gridSize + col;
+          if (cells[cell] == null) {
+            cells[cell] = new int[4];
+          } else if (cellCounts[cell] == cells[cell].length) {
+            int[] larger = new int[cells[cell].length * 2];
+            System.arraycopy(cells[cell], 0, larger, 0, cellCounts[cell]);
+            cells[cell] = larger;
+          }
+          cells[cell][cellCounts[cell]++] = s;
+        }
+      }
+    }
+
+    double[] point = new double[2];
+    for (int cell = 0; cell < cells.length; ++cell) {
+      int count = cellCounts[cell];
+      if (count < 2) {
+        continue;
+      }
+      int[] members = cells[cell];
+      for (int i = 0; i < count - 1; ++i) {
+        for (int j = i + 1; j < count; ++j) {
+          if (!intersect(segments, members[i], members[j], point)) {
+            continue;
+          }
+          // Only report a pair in the cell that owns the point, so pairs
+          // sharing several cells are not reported more than once.
+          int col = cellIndex(point[0] - minX, cellWidth, gridSize);
+          int row = cellIndex(point[1] - minY, cellHeight, gridSize);
+          if (row * gridSize + col == cell) {
+            points.add(new Point2D.Float((float) point[0], (float) point[1]));
+          }
+        }
+      }
+    }
+    return points;
+  }
+
+  private static int cellIndex(final double offset, final double cellSize,
+      final int gridSize) {
+    int index = (int) Math.floor(offset / cellSize);
+    if (index < 0) {
+      return 0;
+    }
+    if (index >= gridSize) {
+      return gridSize - 1;
+    }
+    return index;
+  }
+
+  /**
+   * Intersects segments {@code a} and {@code b}, storing the point in
+   * {@code point}. Parallel segments are only reported if they share an
+   * endpoint.
+   *
+   * @return {@code true} if the segments intersect.
+   */
+  private static boolean intersect(final float[] segments, final int a,
+      final int b, final double[] point) {
+    double ax1 = segments[a * 4];
+    double ay1 = segments[a * 4 + 1];
+    double ax2 = segments[a * 4 + 2];
+    double ay2 = segments[a * 4 + 3];
+    double bx1 = segments[b * 4];
+    double by1 = segments[b * 4 + 1];
+    double bx2 = segments[b * 4 + 2];
+    double by2 = segments[b * 4 + 3];
+
+    double adx = ax2 - ax1;
+    double ady = ay2 - ay1;
+    double bdx = bx2 - bx1;
+    double bdy = by2 - by1;
+
+    double denom = adx * bdy - ady * bdx;
+    if (denom == 0) {
+      if ((ax1 == bx1 && ay1 == by1) || (ax1 == bx2 && ay1 == by2)) {
+        point[0] = ax1;
+        point[1] = ay1;
+        return true;
+      }
+      if ((ax2 == bx1 && ay2 == by1) || (ax2 == bx2 && ay2 == by2)) {
+        point[0] = ax2;
+        point[1] = ay2;
+        return true;
+      }
+      return false;
+    }
+
+    double dx = bx1 - ax1;
+    double dy = by1 - ay1;
+    double t = (dx * bdy - dy * bdx) / denom;
+    if (t < -EPSILON || t > 1 + EPSILON) {
+      return false;
+    }
+    double u = (dx * ady - dy * adx) / denom;
+    if (u < -EPSILON || u > 1 + EPSILON) {
+      return false;
+    }
+    point[0] = ax1 + t * adx;
+    point[1] = ay1 + t * ady;
+    return true;
+  }
+
+  /**
+   * Finds the intersections of the segments using exact rational arithmetic.
+   *
+   * @param segments
+   *          the segment endpoints, as {@code x1, y1, x2, y2} for each
+   *          segment.
+   * @param numSegments
+   *          the number of segments in {@code segments}.
+   * @return the distinct intersection points.
+   */
+  public static Collection<Point2D> exact(final float[] segments,
+      final int numSegments) {
+    Set<RLineSegment2D> compLines = new HashSet<RLineSegment2D>();
+    for (int s = 0; s < numSegments; ++s) {
+      Rational x1 = new Rational(Float.toString(segments[s * 4]));
+      Rational y1 = new Rational(Float.toString(segments[s * 4 + 1]));
+      Rational x2 = new Rational(Float.toString(segments[s * 4 + 2]));
+      Rational y2 = new Rational(Float.toString(segments[s * 4 + 3]));
+      compLines.add(new RLineSegment2D(new RPoint2D(x1, y1), new RPoint2D(x2,
+          y2)));
+    }
+
+    LinkedList<Point2D> returnPoints = new LinkedList<Point2D>();
+    if (compLines.isEmpty()) {
+      return returnPoints;
+    }
+
+    Set<RPoint2D> interCompPoints = BentleyOttmann.intersections(compLines);
+    for (RPoint2D compPoint : interCompPoints) {
+      returnPoints.add(new Point2D.Float(compPoint.x.floatValue(), compPoint.y
+          .floatValue()));
+    }
+    return returnPoints;
+  }
+}
@@ -36,8 +36,6 @@ import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 import javax.swing.JComponent;
@@ -48,6 +46,8 @@ import org.slf4j.LoggerFactory;
 
 import com.owlplatform.common.util.Pair;
 import com.owlplatform.sigvis.DataCache2;
+import com.owlplatform.sigvis.panels.RenderMetrics.Phase;
+import com.owlplatform.sigvis.structs.PathLossModel;
 import com.owlplatform.sigvis.structs.SignalToDistanceItem;
 
 /**
@@ -109,6 +109,20 @@ public class SignalToDistanceMap extends JComponent implements DisplayPanel {
   
   protected long timeOffset = 0l;
 
+  /**
+   * Whether to estimate the distance range from the path-loss fit when no
+   * cached signal-to-distance items match the signal.
+   */
+  protected boolean usePathLossFit = true;
+
+  public boolean isUsePathLossFit() {
+    return usePathLossFit;
+  }
+
+  public void setUsePathLossFit(boolean usePathLossFit) {
+    this.usePathLossFit = usePathLossFit;
+  }
+
   public boolean isDeviceTransmitter() {
     return isDeviceTransmitter;
   }
@@ -173,6 +187,7 @@ public class SignalToDistanceMap extends JComponent implements DisplayPanel {
 
     // Do drawing here
     for (String receiverId : receivers) {
+      RenderMetrics.mark(Phase.DRAW);
       Float signal = this.isDeviceTransmitter ? this.cache.getRssiAt(
           displayedId, receiverId,this.timeOffset, this.maxAge) : this.cache.getRssiAt(receiverId,
           this.displayedId,this.timeOffset, this.maxAge);
@@ -199,6 +214,7 @@ public class SignalToDistanceMap extends JComponent implements DisplayPanel {
               stdDev) : this.getDistanceRange(this.displayedId, receiverId,
           signal.floatValue(), stdDev);
 
+      RenderMetrics.mark(Phase.DATA);
       if (distanceRange == null) {
 
         continue;
@@ -243,6 +259,7 @@ public class SignalToDistanceMap extends JComponent implements DisplayPanel {
 
       Area ring = new Area(outerCircle);
       ring.subtract(new Area(innerCircle));
+      RenderMetrics.mark(Phase.GEOMETRY);
 
       // g2.setColor(Color.getHSBColor((float) receiverIndex
       // / receivers.length, 0.95f, .95f));
@@ -271,15 +288,6 @@ public class SignalToDistanceMap extends JComponent implements DisplayPanel {
     // log.info("Rendered in {}ms", renderTime);
     this.currFps = this.currFps * 0.875f + (1000f / renderTime) * 0.125f;
 
-    // if (this.transparency && (this.currFps < this.minFps * 0.9f)) {
-    // ++this.slowFrames;
-    // if (this.slowFrames > 3) {
-    // this.transparency = false;
-    // log.warn("FPS: {} Disabling Alpha Tranparency.", this.currFps);
-    // }
-    // } else if (this.transparency) {
-    // this.slowFrames = 0;
-    // }
   }
   
   protected void drawTimestamp(final Graphics2D g2, int screenWidth, int screenHeight){
@@ -342,92 +350,95 @@ public class SignalToDistanceMap extends JComponent implements DisplayPanel {
       youngestTime = this.cache.getCreationTs() - this.timeOffset;
     }
     long oldestTime = youngestTime - this.maxAge;
-    List<SignalToDistanceItem> receiverSigToDist = this.cache
-        .getSignalToDistance(receiverId,oldestTime,youngestTime);
+    List<SignalToDistanceItem> points = this.cache.getSignalToDistance(
+        receiverId, signal - signalDelta, signal + signalDelta, oldestTime,
+        youngestTime);
 
-    if (receiverSigToDist == null) {
+    if (points == null) {
       log.warn("No signal-to-distance data for {}", receiverId);
       return null;
     }
 
     log.debug("Searching for RSSI: {}", signal);
 
-
-    LinkedList<SignalToDistanceItem> points = new LinkedList<SignalToDistanceItem>();
-
-    // Need to get 4 values: next value ABOVE and BELOW signal,
-    // max signal <= than signal+signalDelta,
-    // and min signal >= than signal-signalDelta
-    for (Iterator<SignalToDistanceItem> iter = receiverSigToDist.iterator(); iter
-        .hasNext();) {
-
-      SignalToDistanceItem currItem = iter.next();
-
-      if (currItem.getCreationTime() < oldestTime) {
-        iter.remove();
-        continue;
-      }
+    // Min distance will be max RSSI
+    SignalToDistanceItem maxDistanceItem = null;
+    SignalToDistanceItem minDistanceItem = null;
+    for (SignalToDistanceItem currItem : points) {
       // Skip this object in guessing the distance. It's too easy.
       if (currItem.getRxer().equals(excludedId)
           || currItem.getTxer().equals(excludedId)) {
-        
-        iter.remove();
         continue;
       }
-
-      final float currSignal = currItem.getSignal();
-
-      if (currSignal <= (signal + signalDelta)
-          && currSignal >= (signal - signalDelta)) {
-        points.add(currItem);
+      if (maxDistanceItem == null
+          || currItem.getDistance() > maxDistanceItem.getDistance()) {
+        maxDistanceItem = currItem;
+      }
+      if (minDistanceItem == null
+          || currItem.getDistance() < minDistanceItem.getDistance()) {
+        minDistanceItem = currItem;
       }
+    }
 
+    Pair<Float, Float> distanceRange = new Pair<Float, Float>();
+    if (minDistanceItem != null) {
+      distanceRange.setValue1(minDistanceItem.getDistance());
+      distanceRange.setValue2(maxDistanceItem.getDistance());
+      return distanceRange;
     }
-    
-    
 
-    SignalToDistanceItem maxDistanceItem = null;
-    SignalToDistanceItem minDistanceItem = null;
-    // No points found in range, so search for "Next" values
-    if (points.isEmpty()) {
-      SignalToDistanceItem tempMinRssi = new SignalToDistanceItem("", "",
-          10000f, -100f);
-      SignalToDistanceItem tempMaxRssi = new SignalToDistanceItem("", "", 0f,
-          0f);
-      for (SignalToDistanceItem currItem : receiverSigToDist) {
-        if (currItem.getSignal() > signal
-            && currItem.getSignal() < tempMaxRssi.getSignal()) {
-          tempMaxRssi = currItem;
-        }
-        if (currItem.getSignal() < signal
-            && currItem.getSignal() > tempMinRssi.getSignal()) {
-          tempMinRssi = currItem;
-        }
+    // No points found in range, so try the receiver's path-loss fit
+    if (this.usePathLossFit) {
+      Pair<Float, Float> fitRange = this.getFittedDistanceRange(receiverId,
+          signal, signalDelta);
+      if (fitRange != null) {
+        return fitRange;
       }
-
-      Pair<Float, Float> distanceRange = new Pair<Float, Float>();
-      distanceRange.setValue1(tempMaxRssi.getDistance());
-      distanceRange.setValue2(tempMinRssi.getDistance());
-      return distanceRange;
     }
 
-    maxDistanceItem = points.getFirst();
-    minDistanceItem = points.getFirst();
+    // Otherwise use the next values above and below
+    SignalToDistanceItem nextAbove = this.cache.getNearestSignalToDistance(
+        receiverId, signal, true, oldestTime, youngestTime, excludedId);
+    SignalToDistanceItem nextBelow = this.cache.getNearestSignalToDistance(
+        receiverId, signal, false, oldestTime, youngestTime, excludedId);
 
-    for (SignalToDistanceItem currItem : points) {
-      if (currItem.getDistance() > maxDistanceItem.getDistance()) {
-        maxDistanceItem = currItem;
-      }
-      if (currItem.getDistance() < minDistanceItem.getDistance()) {
-        minDistanceItem = currItem;
-      }
+    distanceRange.setValue1(nextAbove == null || nextAbove.getSignal() >= 0f ? 0f
+        : nextAbove.getDistance());
+    distanceRange.setValue2(nextBelow == null || nextBelow.getSignal() <= -100f ? 10000f
+        : nextBelow.getDistance());
+    return distanceRange;
+  }
+
+  /**
+   * Estimates the distance range for a signal from the path-loss fit of the
+   * receiver, or the global fit if the receiver does not have one.
+   * 
+   * @return a Pair<Float,Float> that contains the min distance in value1 and
+   *         the max distance in value2, or {@code null} if there is no usable
+   *         fit.
+   */
+  protected Pair<Float, Float> getFittedDistanceRange(final String receiverId,
+      final float signal, final float signalDelta) {
+    PathLossModel.Fit fit = this.cache.getPathLossFit(receiverId);
+    if (fit == null) {
+      fit = this.cache.getGlobalPathLossFit();
+    }
+    // RSSI must fall off with distance for the inverse to make sense
+    if (fit == null || !(fit.getSlope() < 0f)) {
+      return null;
     }
 
-    // Min distance will be max RSSI
-    Pair<Float, Float> distanceRange = new Pair<Float, Float>();
-    distanceRange.setValue1(minDistanceItem.getDistance());
-    distanceRange.setValue2(maxDistanceItem.getDistance());
+    float near = fit.getDistanceAt(signal + signalDelta);
+    float far = fit.getDistanceAt(signal - signalDelta);
+    if (Float.isNaN(near) || Float.isInfinite(far)) {
+      return null;
+    }
+    log.debug("Estimated distance {}-{} for {} from {}", new Object[] { near,
+        far, receiverId, fit });
 
+    Pair<Float, Float> distanceRange = new Pair<Float, Float>();
+    distanceRange.setValue1(near);
+    distanceRange.setValue2(far);
     return distanceRange;
   }
 
@@ -48,6 +48,7 @@ import org.slf4j.LoggerFactory;
 
 import com.owlplatform.sigvis.DataCache2;
 import com.owlplatform.sigvis.DataCache2.ValueType;
+import com.owlplatform.sigvis.panels.RenderMetrics.Phase;
 import com.owlplatform.sigvis.structs.Item2DPoint;
 
 import delaunay.Pnt;
@@ -191,7 +192,9 @@ public class VoronoiHeatMap extends JComponent implements DisplayPanel {
     HashMap<Pnt, Item2DPoint> pntToItem = new HashMap<Pnt, Item2DPoint>();
     // long oldestItem = this.lastRepaint - this.maxAge;
 
+    RenderMetrics.mark(Phase.DRAW);
     Map<String, Item2DPoint> heatPoints = this.generateDisplayedValues();
+    RenderMetrics.mark(Phase.DATA);
 
     for (String hash : heatPoints.keySet()) {
       Item2DPoint point = heatPoints.get(hash);
@@ -215,6 +218,7 @@ public class VoronoiHeatMap extends JComponent implements DisplayPanel {
           * yScale);
       dt.delaunayPlace(newPnt);
     }
+    RenderMetrics.mark(Phase.GEOMETRY);
 
     // Keep track of sites done; no drawing for initial triangles sites
     HashSet<Pnt> done = new HashSet<Pnt>(this.initialTriangle);
@@ -267,15 +271,6 @@ public class VoronoiHeatMap extends JComponent implements DisplayPanel {
     long renderTime = System.currentTimeMillis() - this.lastRepaint;
     this.currFps = this.currFps * 0.875f + (1000f / renderTime) * 0.125f;
 
-    // if (this.transparency && (this.currFps < this.minFps * 0.9f)) {
-    // ++this.slowFrames;
-    // if (this.slowFrames > 3) {
-    // this.transparency = false;
-    // log.warn("FPS: {} Disabling Alpha Tranparency.", this.currFps);
-    // }
-    // } else if (this.transparency) {
-    // this.slowFrames = 0;
-    // }
   }
 
   protected void postDraw(Graphics2D g2, int screenWidth, int screenHeight,
@@ -0,0 +1,670 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis.server;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.owlplatform.sigvis.DataCache2;
+import com.owlplatform.sigvis.structs.ChartItem;
+
+/**
+ * Embedded HTTP server that lets remote dashboards read a {@link DataCache2}, so
+ * that one process connected to the world model can serve many viewers.
+ * Responses are JSON, or compact big-endian binary when the request includes
+ * {@code format=binary}. The supported requests are:
+ * <ul>
+ * <li>{@code GET /links} - the current value of every link.</li>
+ * <li>{@code GET /rssi?rx=R&tx=T&oldest=MS&youngest=MS} and
+ * {@code GET /variance?...} - the history of a link between two timestamps.</li>
+ * <li>{@code GET /rssiAt?rx=R&tx=T&offset=MS&window=MS} and
+ * {@code GET /varianceAt?...} - the value of a link at a time offset.</li>
+ * <li>{@code GET /stream} - a WebSocket that first receives every link, then
+ * the links that changed, coalesced to at most one message per push period.</li>
+ * </ul>
+ * 
+ * @author Robert Moore
+ * 
+ */
+public class CacheServer {
+
+  private static final Logger log = LoggerFactory.getLogger(CacheServer.class);
+
+  /**
+   * Default time between WebSocket pushes, in milliseconds.
+   */
+  public static final long DEFAULT_PUSH_PERIOD = 250l;
+
+  /**
+   * Default address to listen on, so that only local viewers can connect.
+   */
+  public static final String DEFAULT_BIND_ADDRESS = "127.0.0.1";
+
+  private static final int MAX_REQUEST_HEADER = 8192;
+
+  private static final int READ_TIMEOUT = 10000;
+
+  /**
+   * Changed links encoded once for all clients that were up to date with the
+   * previous push.
+   */
+  protected static final class PushFrame {
+    final long fromSequence;
+    final long toSequence;
+    final String json;
+    final byte[] binary;
+
+    PushFrame(final long fromSequence, final long toSequence,
+        final String json, final byte[] binary) {
+      this.fromSequence = fromSequence;
+      this.toSequence = toSequence;
+      this.json = json;
+      this.binary = binary;
+    }
+  }
+
+  /**
+   * A connected WebSocket client and the thread that sends it updates.
+   */
+  protected final class StreamClient extends Thread {
+    final WebSocketConnection connection;
+    final boolean binary;
+    volatile long sentSequence = 0;
+
+    StreamClient(final WebSocketConnection connection, final boolean binary) {
+      super("CacheServer stream " + connection.socket.getRemoteSocketAddress());
+      this.connection = connection;
+      this.binary = binary;
+      this.setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (this.connection.isOpen()) {
+          long latest;
+          PushFrame frame;
+          synchronized (CacheServer.this.pushLock) {
+            while (this.connection.isOpen()
+                && CacheServer.this.links.getSequence() <= this.sentSequence) {
+              CacheServer.this.pushLock.wait(1000);
+            }
+            latest = CacheServer.this.links.getSequence();
+            frame = CacheServer.this.lastFrame;
+          }
+          if (!this.connection.isOpen()) {
+            break;
+          }
+          if (frame != null && frame.fromSequence == this.sentSequence
+              && frame.toSequence == latest) {
+            if (this.binary) {
+              this.connection.sendBinary(frame.binary);
+            } else {
+              this.connection.sendText(frame.json);
+            }
+          } else {
+            // Joined late or fell behind, so gets everything it missed at once
+            List<LinkTable.LinkValue> changed = CacheServer.this.links
+                .getChangedSince(this.sentSequence);
+            if (this.binary) {
+              this.connection.sendBinary(LinkTable.toBinary(changed, latest));
+            } else {
+              this.connection.sendText(LinkTable.toJson(changed, latest));
+            }
+          }
+          this.sentSequence = latest;
+        }
+      } catch (InterruptedException ie) {
+        // Server stopping
+      } catch (IOException ioe) {
+        log.debug("Stream client {} disconnected.", this.getName());
+      }
+      this.connection.close();
+      CacheServer.this.clients.remove(this);
+    }
+  }
+
+  protected final DataCache2 cache;
+
+  protected final String bindAddress;
+
+  protected final int port;
+
+  protected final LinkTable links = new LinkTable();
+
+  protected final CopyOnWriteArrayList<StreamClient> clients = new CopyOnWriteArrayList<StreamClient>();
+
+  protected final Object pushLock = new Object();
+
+  protected volatile PushFrame lastFrame = null;
+
+  protected volatile long pushPeriod = DEFAULT_PUSH_PERIOD;
+
+  protected volatile String allowedOrigin = null;
+
+  protected volatile boolean keepRunning = false;
+
+  protected ServerSocket serverSocket = null;
+
+  protected ExecutorService requestWorkers = null;
+
+  protected Thread acceptThread = null;
+
+  protected Thread pushThread = null;
+
+  /**
+   * Creates a server that only accepts connections from the local host.
+   * 
+   * @param cache
+   *          the cache to serve.
+   * @param port
+   *          the TCP port to listen on, or 0 for any free port.
+   */
+  public CacheServer(final DataCache2 cache, final int port) {
+    this(cache, DEFAULT_BIND_ADDRESS, port);
+  }
+
+  /**
+   * @param cache
+   *          the cache to serve.
+   * @param bindAddress
+   *          the host name or address to listen on, or "0.0.0.0" for every
+   *          interface.
+   * @param port
+   *          the TCP port to listen on, or 0 for any free port.
+   */
+  public CacheServer(final DataCache2 cache, final String bindAddress,
+      final int port) {
+    this.cache = cache;
+    this.bindAddress = bindAddress == null ? DEFAULT_BIND_ADDRESS
+        : bindAddress;
+    this.port = port;
+  }
+
+  /**
+   * Starts listening for requests and pushing updates.
+   * 
+   * @throws IOException
+   *           if the port cannot be opened.
+   */
+  public synchronized void start() throws IOException {
+    if (this.keepRunning) {
+      return;
+    }
+    this.serverSocket = new ServerSocket();
+    this.serverSocket.setReuseAddress(true);
+    this.serverSocket.bind(new InetSocketAddress(this.bindAddress, this.port));
+    this.keepRunning = true;
+
+    this.requestWorkers = Executors.newCachedThreadPool(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "CacheServer request");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+
+    this.acceptThread = new Thread("CacheServer accept") {
+      @Override
+      public void run() {
+        CacheServer.this.acceptConnections();
+      }
+    };
+    this.acceptThread.setDaemon(true);
+    this.acceptThread.start();
+
+    this.pushThread = new Thread("CacheServer push") {
+      @Override
+      public void run() {
+        CacheServer.this.pushUpdates();
+      }
+    };
+    this.pushThread.setDaemon(true);
+    this.pushThread.start();
+    log.info("Serving cache on port {}",
+        Integer.valueOf(this.serverSocket.getLocalPort()));
+  }
+
+  /**
+   * Stops the server and disconnects all clients.
+   */
+  public synchronized void stop() {
+    if (!this.keepRunning) {
+      return;
+    }
+    this.keepRunning = false;
+    try {
+      this.serverSocket.close();
+    } catch (IOException ioe) {
+      // Ignored
+    }
+    this.pushThread.interrupt();
+    for (StreamClient client : this.clients) {
+      client.connection.close();
+      client.interrupt();
+    }
+    this.clients.clear();
+    this.requestWorkers.shutdownNow();
+    this.links.clear();
+    this.lastFrame = null;
+  }
+
+  /**
+   * @return the port the server is listening on, or -1 if it is not running.
+   */
+  public synchronized int getLocalPort() {
+    return this.keepRunning ? this.serverSocket.getLocalPort() : -1;
+  }
+
+  public long getPushPeriod() {
+    return this.pushPeriod;
+  }
+
+  /**
+   * Sets the time between WebSocket pushes. Changes to a link within one
+   * period are coalesced into a single update.
+   */
+  public void setPushPeriod(final long pushPeriod) {
+    if (pushPeriod <= 0) {
+      throw new IllegalArgumentException("Push period must be positive.");
+    }
+    this.pushPeriod = pushPeriod;
+  }
+
+  public String getBindAddress() {
+    return this.bindAddress;
+  }
+
+  public String getAllowedOrigin() {
+    return this.allowedOrigin;
+  }
+
+  /**
+   * Sets the origin that browser pages may read responses from, such as
+   * "http://dashboard.example.com" or "*". By default no cross-origin access
+   * is allowed.
+   */
+  public void setAllowedOrigin(final String allowedOrigin) {
+    this.allowedOrigin = allowedOrigin;
+  }
+
+  public int getNumStreamClients() {
+    return this.clients.size();
+  }
+
+  protected void acceptConnections() {
+    while (this.keepRunning) {
+      try {
+        final Socket socket = this.serverSocket.accept();
+        this.requestWorkers.execute(new Runnable() {
+          @Override
+          public void run() {
+            CacheServer.this.handleConnection(socket);
+          }
+        });
+      } catch (SocketException se) {
+        // Server socket closed
+      } catch (Exception e) {
+        log.warn("Unable to accept connection.", e);
+      }
+    }
+  }
+
+  /**
+   * Reads the cache's links once per push period, and wakes the stream
+   * clients if anything changed.
+   */
+  protected void pushUpdates() {
+    while (this.keepRunning) {
+      try {
+        Thread.sleep(this.pushPeriod);
+      } catch (InterruptedException ie) {
+        continue;
+      }
+      if (this.clients.isEmpty()) {
+        // Nothing is sent, so the first client gets a full snapshot
+        continue;
+      }
+      try {
+        long oldestSent = Long.MAX_VALUE;
+        for (StreamClient client : this.clients) {
+          oldestSent = Math.min(oldestSent, client.sentSequence);
+        }
+        // Removals every client has been sent are no longer needed
+        this.links.pruneRemoved(oldestSent);
+        long previous = this.links.getSequence();
+        long latest = this.links.update(this.cache);
+        List<LinkTable.LinkValue> changed = this.links
+            .getChangedSince(previous);
+        if (changed.isEmpty()) {
+          continue;
+        }
+        PushFrame frame = new PushFrame(previous, latest, LinkTable.toJson(
+            changed, latest), LinkTable.toBinary(changed, latest));
+        synchronized (this.pushLock) {
+          this.lastFrame = frame;
+          this.pushLock.notifyAll();
+        }
+      } catch (Exception e) {
+        log.error("Unable to push link updates.", e);
+      }
+    }
+  }
+
+  protected void handleConnection(final Socket socket) {
+    boolean keepOpen = false;
+    try {
+      socket.setSoTimeout(READ_TIMEOUT);
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      String header = readHeader(in);
+      if (header == null) {
+        return;
+      }
+      String[] lines = header.split("\r\n");
+      String[] requestLine = lines[0].split(" ");
+      Map<String, String> headers = new HashMap<String, String>();
+      for (int i = 1; i < lines.length; ++i) {
+        int colon = lines[i].indexOf(':');
+        if (colon > 0) {
+          headers.put(lines[i].substring(0, colon).trim()
+              .toLowerCase(Locale.US), lines[i].substring(colon + 1).trim());
+        }
+      }
+      OutputStream out = socket.getOutputStream();
+      if (requestLine.length < 2 || !"GET".equals(requestLine[0])) {
+        sendResponse(out, 405, "text/plain", "Only GET is supported.\n");
+        return;
+      }
+
+      String target = requestLine[1];
+      String path = target;
+      Map<String, String> params = new HashMap<String, String>();
+      int query = target.indexOf('?');
+      if (query >= 0) {
+        path = target.substring(0, query);
+        parseQuery(target.substring(query + 1), params);
+      }
+
+      if ("/stream".equals(path)) {
+        keepOpen = this.openStream(socket, in, out, headers, params);
+      } else {
+        this.handleRequest(out, path, params);
+      }
+    } catch (IOException ioe) {
+      log.debug("Request failed: {}", ioe.getMessage());
+    } catch (Exception e) {
+      log.warn("Unable to handle request.", e);
+    } finally {
+      if (!keepOpen) {
+        try {
+          socket.close();
+        } catch (IOException ioe) {
+          // Ignored
+        }
+      }
+    }
+  }
+
+  protected void handleRequest(final OutputStream out, final String path,
+      final Map<String, String> params) throws IOException {
+    boolean binary = "binary".equals(params.get("format"));
+    String rx = params.get("rx");
+    String tx = params.get("tx");
+
+    if ("/links".equals(path)) {
+      // Read directly so that the stream's change tracking isn't disturbed
+      LinkTable snapshot = new LinkTable();
+      long sequence = snapshot.update(this.cache);
+      List<LinkTable.LinkValue> all = snapshot.getChangedSince(0);
+      if (binary) {
+        sendResponse(out, 200, "application/octet-stream",
+            LinkTable.toBinary(all, sequence));
+      } else {
+        sendResponse(out, 200, "application/json",
+            LinkTable.toJson(all, sequence));
+      }
+      return;
+    }
+
+    if (!"/rssi".equals(path) && !"/variance".equals(path)
+        && !"/rssiAt".equals(path) && !"/varianceAt".equals(path)) {
+      sendResponse(out, 404, "text/plain", "Not found.\n");
+      return;
+    }
+    if (rx == null || tx == null) {
+      sendResponse(out, 400, "text/plain",
+          "Parameters rx and tx are required.\n");
+      return;
+    }
+
+    try {
+      if ("/rssi".equals(path) || "/variance".equals(path)) {
+        long youngest = params.containsKey("youngest") ? Long.parseLong(params
+            .get("youngest")) : Long.MAX_VALUE / 2;
+        long oldest = params.containsKey("oldest") ? Long.parseLong(params
+            .get("oldest")) : 0;
+        List<ChartItem<Float>> items = "/rssi".equals(path) ? this.cache
+            .getRssiList(rx, tx, oldest, youngest) : this.cache
+            .getVarianceList(rx, tx, oldest, youngest);
+        if (binary) {
+          sendResponse(out, 200, "application/octet-stream",
+              historyToBinary(items));
+        } else {
+          sendResponse(out, 200, "application/json", historyToJson(items));
+        }
+      } else {
+        long offset = params.containsKey("offset") ? Long.parseLong(params
+            .get("offset")) : 0;
+        long window = params.containsKey("window") ? Long.parseLong(params
+            .get("window")) : 10000l;
+        float value = "/rssiAt".equals(path) ? this.cache.getRssiAt(tx, rx,
+            offset, window) : this.cache.getVarianceAt(tx, rx, offset, window);
+        StringBuilder sb = new StringBuilder("{\"value\":");
+        LinkTable.appendFloat(sb, value);
+        sb.append('}');
+        sendResponse(out, 200, "application/json", sb.toString());
+      }
+    } catch (NumberFormatException nfe) {
+      sendResponse(out, 400, "text/plain", "Invalid number: "
+          + nfe.getMessage() + "\n");
+    }
+  }
+
+  /**
+   * Completes the WebSocket handshake and starts sending updates.
+   * 
+   * @return {@code true} if the socket is now owned by a stream client.
+   */
+  protected boolean openStream(final Socket socket, final InputStream in,
+      final OutputStream out, final Map<String, String> headers,
+      final Map<String, String> params) throws IOException {
+    String key = headers.get("sec-websocket-key");
+    String upgrade = headers.get("upgrade");
+    if (key == null || upgrade == null
+        || !"websocket".equalsIgnoreCase(upgrade)) {
+      sendResponse(out, 400, "text/plain", "WebSocket upgrade required.\n");
+      return false;
+    }
+    // Browsers do not apply the CORS header to WebSockets
+    String origin = headers.get("origin");
+    String allowed = this.allowedOrigin;
+    if (origin != null && !"*".equals(allowed) && !origin.equals(allowed)) {
+      sendResponse(out, 403, "text/plain", "Origin not allowed.\n");
+      return false;
+    }
+    String response = "HTTP/1.1 101 Switching Protocols\r\n"
+        + "Upgrade: websocket\r\n" + "Connection: Upgrade\r\n"
+        + "Sec-WebSocket-Accept: " + WebSocketConnection.getAcceptKey(key)
+        + "\r\n\r\n";
+    out.write(response.getBytes(WebSocketConnection.UTF8));
+    out.flush();
+    socket.setSoTimeout(0);
+
+    WebSocketConnection connection = new WebSocketConnection(socket, in);
+    StreamClient client = new StreamClient(connection,
+        "binary".equals(params.get("format")));
+    this.clients.add(client);
+    client.start();
+    // Use this request thread to read from the client until it disconnects
+    connection.readUntilClosed();
+    client.interrupt();
+    return true;
+  }
+
+  static String historyToJson(final List<ChartItem<Float>> items) {
+    StringBuilder sb = new StringBuilder("[");
+    if (items != null) {
+      boolean first = true;
+      for (ChartItem<Float> item : items) {
+        if (!first) {
+          sb.append(',');
+        }
+        first = false;
+        sb.append('[').append(item.getCreationTime()).append(',');
+        LinkTable.appendFloat(sb, item.getValue().floatValue());
+        sb.append(']');
+      }
+    }
+    return sb.append(']').toString();
+  }
+
+  /**
+   * Number of items (int), then each item's timestamp (long) and value
+   * (float).
+   */
+  static byte[] historyToBinary(final List<ChartItem<Float>> items)
+      throws IOException {
+    int count = items == null ? 0 : items.size();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 + count * 12);
+    DataOutputStream data = new DataOutputStream(bytes);
+    data.writeInt(count);
+    if (items != null) {
+      for (ChartItem<Float> item : items) {
+        data.writeLong(item.getCreationTime());
+        data.writeFloat(item.getValue().floatValue());
+      }
+    }
+    data.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Reads the request line and headers, up to the blank line.
+   * 
+   * @return the header text, or {@code null} if the stream ended first.
+   */
+  static String readHeader(final InputStream in) throws IOException {
+    ByteArrayOutputStream header = new ByteArrayOutputStream(512);
+    int matched = 0;
+    while (header.size() < MAX_REQUEST_HEADER) {
+      int b = in.read();
+      if (b < 0) {
+        return null;
+      }
+      header.write(b);
+      if ((matched % 2 == 0 && b == '\r') || (matched % 2 == 1 && b == '\n')) {
+        if (++matched == 4) {
+          String text = new String(header.toByteArray(), "ISO-8859-1");
+          return text.substring(0, text.length() - 4);
+        }
+      } else {
+        matched = b == '\r' ? 1 : 0;
+      }
+    }
+    throw new IOException("Request header too long.");
+  }
+
+  static void parseQuery(final String query, final Map<String, String> params)
+      throws UnsupportedEncodingException {
+    for (String pair : query.split("&")) {
+      if (pair.length() == 0) {
+        continue;
+      }
+      int equals = pair.indexOf('=');
+      if (equals < 0) {
+        params.put(URLDecoder.decode(pair, "UTF-8"), "");
+      } else {
+        params.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+            URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+      }
+    }
+  }
+
+  protected void sendResponse(final OutputStream out, final int status,
+      final String contentType, final String body) throws IOException {
+    sendResponse(out, status, contentType, body
+        .getBytes(WebSocketConnection.UTF8));
+  }
+
+  protected void sendResponse(final OutputStream out, final int status,
+      final String contentType, final byte[] body) throws IOException {
+    String reason;
+    switch (status) {
+    case 200:
+      reason = "OK";
+      break;
+    case 400:
+      reason = "Bad Request";
+      break;
+    case 403:
+      reason = "Forbidden";
+      break;
+    case 404:
+      reason = "Not Found";
+      break;
+    case 405:
+      reason = "Method Not Allowed";
+      break;
+    default:
+      reason = "Error";
+    }
+    String header = "HTTP/1.1 " + status + " " + reason + "\r\n"
+        + "Content-Type: " + contentType
+        + (contentType.startsWith("application/octet") ? "" : "; charset=utf-8")
+        + "\r\n" + "Content-Length: " + body.length + "\r\n"
+        + (this.allowedOrigin == null ? "" : "Access-Control-Allow-Origin: "
+            + this.allowedOrigin + "\r\n") + "Connection: close\r\n\r\n";
+    out.write(header.getBytes(WebSocketConnection.UTF8));
+    out.write(body);
+    out.flush();
+  }
+}
@@ -0,0 +1,394 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.owlplatform.sigvis.DataCache2;
+import com.owlplatform.sigvis.structs.ChartItem;
+
+/**
+ * The latest RSSI and variance value of every link in a cache, with a change
+ * sequence number per link so that the links that changed since any earlier
+ * update can be found. A link that leaves the cache is kept as a removal
+ * entry until {@link #pruneRemoved(long)} is told every reader has seen it.
+ * Only one thread may call {@link #update(DataCache2)}, but any thread may
+ * read.
+ * 
+ * @author Robert Moore
+ * 
+ */
+public class LinkTable {
+
+  /**
+   * Immutable value of a link as of one update.
+   */
+  public static final class LinkValue {
+    final String receiver;
+    final String transmitter;
+    final float rssi;
+    final long rssiTime;
+    final float variance;
+    final long varianceTime;
+    final long sequence;
+    final boolean removed;
+
+    LinkValue(final String receiver, final String transmitter,
+        final float rssi, final long rssiTime, final float variance,
+        final long varianceTime, final long sequence) {
+      this(receiver, transmitter, rssi, rssiTime, variance, varianceTime,
+          sequence, false);
+    }
+
+    private LinkValue(final String receiver, final String transmitter,
+        final float rssi, final long rssiTime, final float variance,
+        final long varianceTime, final long sequence, final boolean removed) {
+      this.receiver = receiver;
+      this.transmitter = transmitter;
+      this.rssi = rssi;
+      this.rssiTime = rssiTime;
+      this.variance = variance;
+      this.varianceTime = varianceTime;
+      this.sequence = sequence;
+      this.removed = removed;
+    }
+
+    /**
+     * @return an entry recording that a link left the cache.
+     */
+    static LinkValue removal(final String receiver, final String transmitter,
+        final long sequence) {
+      return new LinkValue(receiver, transmitter, Float.NaN, 0, Float.NaN, 0,
+          sequence, true);
+    }
+
+    public String getReceiver() {
+      return this.receiver;
+    }
+
+    public String getTransmitter() {
+      return this.transmitter;
+    }
+
+    public float getRssi() {
+      return this.rssi;
+    }
+
+    public long getRssiTime() {
+      return this.rssiTime;
+    }
+
+    public float getVariance() {
+      return this.variance;
+    }
+
+    public long getVarianceTime() {
+      return this.varianceTime;
+    }
+
+    /**
+     * @return {@code true} if the link has left the cache.
+     */
+    public boolean isRemoved() {
+      return this.removed;
+    }
+  }
+
+  /**
+   * Links keyed by receiver, then transmitter.
+   */
+  protected final ConcurrentHashMap<String, ConcurrentHashMap<String, LinkValue>> linksByRByT = new ConcurrentHashMap<String, ConcurrentHashMap<String, LinkValue>>();
+
+  /**
+   * Sequence number of the latest update.
+   */
+  protected volatile long sequence = 0;
+
+  /**
+   * Reads the current value of every link from {@code cache}, and assigns a new
+   * sequence number to the links that have changed or left the cache. The
+   * sequence number only advances if at least one link changed.
+   * 
+   * @return the latest sequence number.
+   */
+  public long update(final DataCache2 cache) {
+    long nextSequence = this.sequence + 1;
+    boolean changed = false;
+    Map<String, Set<String>> present = new HashMap<String, Set<String>>();
+    for (String receiver : cache.getReceiverIds()) {
+      ConcurrentHashMap<String, LinkValue> receiverLinks = this.linksByRByT
+          .get(receiver);
+      if (receiverLinks == null) {
+        receiverLinks = new ConcurrentHashMap<String, LinkValue>();
+        this.linksByRByT.put(receiver, receiverLinks);
+      }
+      Set<String> presentTransmitters = new HashSet<String>();
+      present.put(receiver, presentTransmitters);
+      for (String transmitter : cache.getLinkedTransmitterIds(receiver)) {
+        presentTransmitters.add(transmitter);
+        ChartItem<Float> rssiItem;
+        ChartItem<Float> varianceItem;
+        try {
+          rssiItem = cache.getCurrentRssiItem(transmitter, receiver);
+          varianceItem = cache.getCurrentVarianceItem(transmitter, receiver);
+        } catch (RuntimeException re) {
+          // Emptied while reading, so try again next update
+          continue;
+        }
+        float rssi = rssiItem == null ? Float.NaN : rssiItem.getValue()
+            .floatValue();
+        long rssiTime = rssiItem == null ? 0 : rssiItem.getCreationTime();
+        float variance = varianceItem == null ? Float.NaN : varianceItem
+            .getValue().floatValue();
+        long varianceTime = varianceItem == null ? 0 : varianceItem
+            .getCreationTime();
+
+        LinkValue previous = receiverLinks.get(transmitter);
+        if (previous != null && !previous.removed
+            && previous.rssiTime == rssiTime
+            && previous.varianceTime == varianceTime) {
+          continue;
+        }
+        receiverLinks.put(transmitter, new LinkValue(receiver, transmitter,
+            rssi, rssiTime, variance, varianceTime, nextSequence));
+        changed = true;
+      }
+    }
+
+    for (Map.Entry<String, ConcurrentHashMap<String, LinkValue>> rxEntry : this.linksByRByT
+        .entrySet()) {
+      Set<String> presentTransmitters = present.get(rxEntry.getKey());
+      for (Map.Entry<String, LinkValue> txEntry : rxEntry.getValue()
+          .entrySet()) {
+        if (txEntry.getValue().removed
+            || (presentTransmitters != null && presentTransmitters
+                .contains(txEntry.getKey()))) {
+          continue;
+        }
+        txEntry.setValue(LinkValue.removal(rxEntry.getKey(),
+            txEntry.getKey(), nextSequence));
+        changed = true;
+      }
+    }
+
+    if (changed) {
+      this.sequence = nextSequence;
+    }
+    return this.sequence;
+  }
+
+  /**
+   * Forgets the removal entries up to and including update
+   * {@code throughSequence}, once every reader has been sent them.
+   */
+  public void pruneRemoved(final long throughSequence) {
+    for (Iterator<ConcurrentHashMap<String, LinkValue>> rxIter = this.linksByRByT
+        .values().iterator(); rxIter.hasNext();) {
+      ConcurrentHashMap<String, LinkValue> receiverLinks = rxIter.next();
+      for (Iterator<LinkValue> txIter = receiverLinks.values().iterator(); txIter
+          .hasNext();) {
+        LinkValue link = txIter.next();
+        if (link.removed && link.sequence <= throughSequence) {
+          txIter.remove();
+        }
+      }
+      if (receiverLinks.isEmpty()) {
+        rxIter.remove();
+      }
+    }
+  }
+
+  public long getSequence() {
+    return this.sequence;
+  }
+
+  /**
+   * @return the links that changed or were removed after update
+   *         {@code fromSequence}, or every current link if
+   *         {@code fromSequence} is 0.
+   */
+  public List<LinkValue> getChangedSince(final long fromSequence) {
+    List<LinkValue> changed = new ArrayList<LinkValue>();
+    for (ConcurrentHashMap<String, LinkValue> receiverLinks : this.linksByRByT
+        .values()) {
+      for (LinkValue link : receiverLinks.values()) {
+        if (link.sequence > fromSequence
+            && !(link.removed && fromSequence == 0)) {
+          changed.add(link);
+        }
+      }
+    }
+    return changed;
+  }
+
+  public void clear() {
+    this.linksByRByT.clear();
+  }
+
+  /**
+   * Encodes links as a JSON object of the form
+   * {@code {"sequence":N,"links":[{"rx":..,"tx":..,"rssi":..,"rssiTime":..,"variance":..,"varianceTime":..},...],"removed":[{"rx":..,"tx":..},...]}}
+   * . Missing values are {@code null}.
+   */
+  public static String toJson(final List<LinkValue> links, final long sequence) {
+    StringBuilder sb = new StringBuilder(64 + links.size() * 128);
+    sb.append("{\"sequence\":").append(sequence).append(",\"links\":[");
+    boolean first = true;
+    for (LinkValue link : links) {
+      if (link.removed) {
+        continue;
+      }
+      if (!first) {
+        sb.append(',');
+      }
+      first = false;
+      sb.append("{\"rx\":");
+      appendString(sb, link.receiver);
+      sb.append(",\"tx\":");
+      appendString(sb, link.transmitter);
+      sb.append(",\"rssi\":");
+      appendFloat(sb, link.rssi);
+      sb.append(",\"rssiTime\":").append(link.rssiTime);
+      sb.append(",\"variance\":");
+      appendFloat(sb, link.variance);
+      sb.append(",\"varianceTime\":").append(link.varianceTime);
+      sb.append('}');
+    }
+    sb.append("],\"removed\":[");
+    first = true;
+    for (LinkValue link : links) {
+      if (!link.removed) {
+        continue;
+      }
+      if (!first) {
+        sb.append(',');
+      }
+      first = false;
+      sb.append("{\"rx\":");
+      appendString(sb, link.receiver);
+      sb.append(",\"tx\":");
+      appendString(sb, link.transmitter);
+      sb.append('}');
+    }
+    sb.append("]}");
+    return sb.toString();
+  }
+
+  /**
+   * Encodes links in big-endian binary: the sequence number (long) and number
+   * of links (int), then for each link the receiver and transmitter (modified
+   * UTF-8 as written by {@link DataOutputStream#writeUTF(String)}), RSSI
+   * (float), RSSI time (long), variance (float) and variance time (long).
+   * Missing values are NaN. These are followed by the number of removed links
+   * (int) and the receiver and transmitter of each.
+   */
+  public static byte[] toBinary(final List<LinkValue> links,
+      final long sequence) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+        16 + links.size() * 64);
+    DataOutputStream out = new DataOutputStream(bytes);
+    int numRemoved = 0;
+    for (LinkValue link : links) {
+      if (link.removed) {
+        ++numRemoved;
+      }
+    }
+    try {
+      out.writeLong(sequence);
+      out.writeInt(links.size() - numRemoved);
+      for (LinkValue link : links) {
+        if (link.removed) {
+          continue;
+        }
+        out.writeUTF(link.receiver);
+        out.writeUTF(link.transmitter);
+        out.writeFloat(link.rssi);
+        out.writeLong(link.rssiTime);
+        out.writeFloat(link.variance);
+        out.writeLong(link.varianceTime);
+      }
+      out.writeInt(numRemoved);
+      for (LinkValue link : links) {
+        if (link.removed) {
+          out.writeUTF(link.receiver);
+          out.writeUTF(link.transmitter);
+        }
+      }
+      out.flush();
+    } catch (IOException ioe) {
+      // Not thrown by ByteArrayOutputStream
+      throw new IllegalStateException(ioe);
+    }
+    return bytes.toByteArray();
+  }
+
+  static void appendFloat(final StringBuilder sb, final float value) {
+    if (Float.isNaN(value) || Float.isInfinite(value)) {
+      sb.append("null");
+    } else {
+      sb.append(value);
+    }
+  }
+
+  static void appendString(final StringBuilder sb, final String value) {
+    if (value == null) {
+      sb.append("null");
+      return;
+    }
+    sb.append('"');
+    for (int i = 0; i < value.length(); ++i) {
+      char c = value.charAt(i);
+      switch (c) {
+      case '"':
+        sb.append("\\\"");
+        break;
+      case '\\':
+        sb.append("\\\\");
+        break;
+      case '\n':
+        sb.append("\\n");
+        break;
+      case '\r':
+        sb.append("\\r");
+        break;
+      case '\t':
+        sb.append("\\t");
+        break;
+      default:
+        if (c < 0x20) {
+          sb.append(String.format("\\u%04x", Integer.valueOf(c)));
+        } else {
+          sb.append(c);
+        }
+      }
+    }
+    sb.append('"');
+  }
+}
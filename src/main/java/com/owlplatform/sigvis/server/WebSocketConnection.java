@@ -0,0 +1,208 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis.server;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Minimal server side of a WebSocket (RFC 6455) connection. Supports sending
+ * text and binary messages, and answers pings and close requests from the
+ * client. Messages from the client are otherwise ignored.
+ * 
+ * @author Robert Moore
+ * 
+ */
+public class WebSocketConnection {
+
+  public static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+  static final Charset UTF8 = Charset.forName("UTF-8");
+
+  static final int OP_CONTINUATION = 0x0;
+  static final int OP_TEXT = 0x1;
+  static final int OP_BINARY = 0x2;
+  static final int OP_CLOSE = 0x8;
+  static final int OP_PING = 0x9;
+  static final int OP_PONG = 0xA;
+
+  /**
+   * Largest client message that will be read, in bytes.
+   */
+  private static final int MAX_CLIENT_PAYLOAD = 65536;
+
+  private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+      .toCharArray();
+
+  protected final Socket socket;
+
+  protected final DataInputStream in;
+
+  protected final OutputStream out;
+
+  protected final Object writeLock = new Object();
+
+  protected volatile boolean open = true;
+
+  /**
+   * Wraps a socket whose opening handshake has already completed.
+   */
+  public WebSocketConnection(final Socket socket, final InputStream in)
+      throws IOException {
+    this.socket = socket;
+    this.in = new DataInputStream(in);
+    this.out = new BufferedOutputStream(socket.getOutputStream());
+  }
+
+  /**
+   * @return the value of the Sec-WebSocket-Accept header for a client's
+   *         Sec-WebSocket-Key.
+   */
+  public static String getAcceptKey(final String clientKey) {
+    try {
+      MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+      return base64(sha1.digest((clientKey.trim() + ACCEPT_GUID)
+          .getBytes(UTF8)));
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new IllegalStateException("SHA-1 is not available.", nsae);
+    }
+  }
+
+  static String base64(final byte[] data) {
+    StringBuilder sb = new StringBuilder((data.length + 2) / 3 * 4);
+    for (int i = 0; i < data.length; i += 3) {
+      int b0 = data[i] & 0xFF;
+      int b1 = i + 1 < data.length ? data[i + 1] & 0xFF : 0;
+      int b2 = i + 2 < data.length ? data[i + 2] & 0xFF : 0;
+      sb.append(BASE64[b0 >> 2]);
+      sb.append(BASE64[((b0 & 0x3) << 4) | (b1 >> 4)]);
+      sb.append(i + 1 < data.length ? BASE64[((b1 & 0xF) << 2) | (b2 >> 6)]
+          : '=');
+      sb.append(i + 2 < data.length ? BASE64[b2 & 0x3F] : '=');
+    }
+    return sb.toString();
+  }
+
+  public boolean isOpen() {
+    return this.open;
+  }
+
+  public void sendText(final String message) throws IOException {
+    this.sendFrame(OP_TEXT, message.getBytes(UTF8));
+  }
+
+  public void sendBinary(final byte[] message) throws IOException {
+    this.sendFrame(OP_BINARY, message);
+  }
+
+  protected void sendFrame(final int opcode, final byte[] payload)
+      throws IOException {
+    synchronized (this.writeLock) {
+      if (!this.open) {
+        throw new IOException("Connection is closed.");
+      }
+      this.out.write(0x80 | opcode);
+      if (payload.length < 126) {
+        this.out.write(payload.length);
+      } else if (payload.length <= 0xFFFF) {
+        this.out.write(126);
+        this.out.write(payload.length >> 8);
+        this.out.write(payload.length);
+      } else {
+        this.out.write(127);
+        long length = payload.length;
+        for (int shift = 56; shift >= 0; shift -= 8) {
+          this.out.write((int) (length >> shift));
+        }
+      }
+      this.out.write(payload);
+      this.out.flush();
+    }
+  }
+
+  /**
+   * Reads messages from the client until the connection closes, answering
+   * pings and close requests. Blocks the calling thread.
+   */
+  public void readUntilClosed() {
+    try {
+      while (this.open) {
+        int first = this.in.readUnsignedByte();
+        int second = this.in.readUnsignedByte();
+        int opcode = first & 0x0F;
+        boolean masked = (second & 0x80) != 0;
+        long length = second & 0x7F;
+        if (length == 126) {
+          length = this.in.readUnsignedShort();
+        } else if (length == 127) {
+          length = this.in.readLong();
+        }
+        if (length > MAX_CLIENT_PAYLOAD || length < 0) {
+          break;
+        }
+        byte[] mask = new byte[4];
+        if (masked) {
+          this.in.readFully(mask);
+        }
+        byte[] payload = new byte[(int) length];
+        this.in.readFully(payload);
+        if (masked) {
+          for (int i = 0; i < payload.length; ++i) {
+            payload[i] ^= mask[i & 3];
+          }
+        }
+
+        if (opcode == OP_CLOSE) {
+          try {
+            this.sendFrame(OP_CLOSE, payload.length >= 2 ? new byte[] {
+                payload[0], payload[1] } : new byte[0]);
+          } catch (IOException ioe) {
+            // Closing anyway
+          }
+          break;
+        } else if (opcode == OP_PING) {
+          this.sendFrame(OP_PONG, payload);
+        }
+      }
+    } catch (EOFException eofe) {
+      // Client went away
+    } catch (IOException ioe) {
+      // Connection failed or was closed locally
+    }
+    this.close();
+  }
+
+  public void close() {
+    this.open = false;
+    try {
+      this.socket.close();
+    } catch (IOException ioe) {
+      // Ignored
+    }
+  }
+}
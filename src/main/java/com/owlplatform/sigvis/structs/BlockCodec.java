@@ -0,0 +1,239 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis.structs;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compresses a block of timestamp offsets and 16-bit values into a bit stream.
+ * Each timestamp is stored as the difference between its delta and the
+ * previous delta, which is 0 or very small when values arrive at a steady
+ * rate. Each value is stored as its XOR with the previous value, using only
+ * the bits that differ, and reusing the previous value's window of meaningful
+ * bits when it fits.
+ *
+ * @author Robert Moore
+ *
+ */
+final class BlockCodec {
+
+  private BlockCodec() {
+    super();
+  }
+
+  /**
+   * Encodes {@code offsets} and {@code values} in [{@code from}, {@code to}).
+   * The offsets must be in increasing order.
+   */
+  static byte[] encode(final int[] offsets, final short[] values,
+      final int from, final int to) {
+    BitWriter out = new BitWriter((to - from) * 2 + 8);
+    if (to <= from) {
+      return out.toByteArray();
+    }
+    out.write(offsets[from], 32);
+    out.write(values[from], 16);
+
+    long prevOffset = offsets[from];
+    long prevDelta = 0;
+    int prevValue = values[from] & 0xFFFF;
+    int prevLeading = -1;
+    int prevTrailing = 0;
+    for (int i = from + 1; i < to; ++i) {
+      long delta = offsets[i] - prevOffset;
+      writeDeltaOfDelta(out, delta - prevDelta);
+      prevDelta = delta;
+      prevOffset = offsets[i];
+
+      int value = values[i] & 0xFFFF;
+      int xor = value ^ prevValue;
+      prevValue = value;
+      if (xor == 0) {
+        out.write(0, 1);
+        continue;
+      }
+      int leading = Integer.numberOfLeadingZeros(xor) - 16;
+      int trailing = Integer.numberOfTrailingZeros(xor);
+      if (prevLeading >= 0 && leading >= prevLeading
+          && trailing >= prevTrailing) {
+        out.write(2, 2);
+        out.write(xor >>> prevTrailing, 16 - prevLeading - prevTrailing);
+      } else {
+        int length = 16 - leading - trailing;
+        out.write(3, 2);
+        out.write(leading, 4);
+        out.write(length - 1, 4);
+        out.write(xor >>> trailing, length);
+        prevLeading = leading;
+        prevTrailing = trailing;
+      }
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Decodes {@code count} offsets and values from {@code data} into the start
+   * of {@code offsets} and {@code values}.
+   */
+  static void decode(final byte[] data, final int count, final int[] offsets,
+      final short[] values) {
+    decode(ByteBuffer.wrap(data), count, offsets, values);
+  }
+
+  /**
+   * Decodes {@code count} offsets and values from the start of {@code data},
+   * which may be a direct buffer, without changing its position.
+   */
+  static void decode(final ByteBuffer data, final int count,
+      final int[] offsets, final short[] values) {
+    if (count == 0) {
+      return;
+    }
+    BitReader in = new BitReader(data);
+    offsets[0] = (int) in.read(32);
+    values[0] = (short) in.read(16);
+
+    long prevOffset = offsets[0];
+    long prevDelta = 0;
+    int prevValue = values[0] & 0xFFFF;
+    int prevLeading = 0;
+    int prevTrailing = 0;
+    for (int i = 1; i < count; ++i) {
+      long delta = prevDelta + readDeltaOfDelta(in);
+      prevOffset += delta;
+      prevDelta = delta;
+      offsets[i] = (int) prevOffset;
+
+      if (in.read(1) != 0) {
+        int xor;
+        if (in.read(1) == 0) {
+          xor = (int) in.read(16 - prevLeading - prevTrailing) << prevTrailing;
+        } else {
+          prevLeading = (int) in.read(4);
+          int length = (int) in.read(4) + 1;
+          prevTrailing = 16 - prevLeading - length;
+          xor = (int) in.read(length) << prevTrailing;
+        }
+        prevValue ^= xor;
+      }
+      values[i] = (short) prevValue;
+    }
+  }
+
+  private static void writeDeltaOfDelta(final BitWriter out, final long dod) {
+    if (dod == 0) {
+      out.write(0, 1);
+    } else if (dod >= -64 && dod < 64) {
+      out.write(2, 2);
+      out.write(dod, 7);
+    } else if (dod >= -256 && dod < 256) {
+      out.write(6, 3);
+      out.write(dod, 9);
+    } else if (dod >= -2048 && dod < 2048) {
+      out.write(14, 4);
+      out.write(dod, 12);
+    } else {
+      out.write(15, 4);
+      out.write(dod, 64);
+    }
+  }
+
+  private static long readDeltaOfDelta(final BitReader in) {
+    int bits;
+    if (in.read(1) == 0) {
+      return 0;
+    } else if (in.read(1) == 0) {
+      bits = 7;
+    } else if (in.read(1) == 0) {
+      bits = 9;
+    } else if (in.read(1) == 0) {
+      bits = 12;
+    } else {
+      return in.read(64);
+    }
+    long value = in.read(bits);
+    // Sign-extend
+    return (value << (64 - bits)) >> (64 - bits);
+  }
+
+  private static final class BitWriter {
+    private byte[] bytes;
+    private int bitLength = 0;
+
+    BitWriter(final int capacity) {
+      this.bytes = new byte[Math.max(capacity, 8)];
+    }
+
+    /**
+     * Writes the low {@code bits} bits of {@code value}, most significant
+     * first.
+     */
+    void write(final long value, final int bits) {
+      int remaining = bits;
+      while (remaining > 0) {
+        int index = this.bitLength >>> 3;
+        if (index == this.bytes.length) {
+          byte[] grown = new byte[this.bytes.length * 2];
+          System.arraycopy(this.bytes, 0, grown, 0, this.bytes.length);
+          this.bytes = grown;
+        }
+        int free = 8 - (this.bitLength & 7);
+        int n = Math.min(free, remaining);
+        int chunk = (int) (value >>> (remaining - n)) & ((1 << n) - 1);
+        this.bytes[index] |= chunk << (free - n);
+        this.bitLength += n;
+        remaining -= n;
+      }
+    }
+
+    byte[] toByteArray() {
+      byte[] trimmed = new byte[(this.bitLength + 7) >>> 3];
+      System.arraycopy(this.bytes, 0, trimmed, 0, trimmed.length);
+      return trimmed;
+    }
+  }
+
+  private static final class BitReader {
+    private final ByteBuffer bytes;
+    private int position = 0;
+
+    BitReader(final ByteBuffer bytes) {
+      this.bytes = bytes;
+    }
+
+    /**
+     * Reads {@code bits} bits as an unsigned value.
+     */
+    long read(final int bits) {
+      long value = 0;
+      int remaining = bits;
+      while (remaining > 0) {
+        int available = 8 - (this.position & 7);
+        int n = Math.min(available, remaining);
+        int current = this.bytes.get(this.position >>> 3) & 0xFF;
+        int chunk = (current >>> (available - n)) & ((1 << n) - 1);
+        value = (value << n) | chunk;
+        this.position += n;
+        remaining -= n;
+      }
+      return value;
+    }
+  }
+}
@@ -0,0 +1,1043 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis.structs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Time-ordered series of float values stored in blocks of primitive arrays.
+ * Values are quantized to 16-bit fixed point with a fixed resolution, and
+ * timestamps are stored as 32-bit offsets from the base time of their block,
+ * so each value takes 6 bytes instead of a boxed {@code Float}, a chart item
+ * and a skip list node.
+ *
+ * Blocks that are older than {@link #HOT_WINDOW} behind the newest value are
+ * sealed: compressed with {@link BlockCodec} and decoded again only when they
+ * are read, through a small cache of decoded blocks shared by every series.
+ * Sealed blocks are unsealed if they have to be changed. A series can keep
+ * its sealed blocks off the heap in a {@link SlabAllocator}, in which case it
+ * frees them as soon as they are removed, unsealed or cleared.
+ *
+ * Like a set ordered by time, the series holds at most one value for each
+ * timestamp. Values normally arrive in order and are appended to the newest
+ * block, but older values are inserted in place. All methods are synchronized
+ * on the series, and readers get copies of the values, or read them through a
+ * {@link Cursor} without creating an object for each value.
+ *
+ * @author Robert Moore
+ *
+ */
+public class CompactSeries {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(CompactSeries.class);
+
+  /**
+   * Default resolution of the stored values, which keeps RSSI values within
+   * 0.01 of the original over a range of +/-511.98. Values outside of the
+   * range of a series are clamped to it and counted by
+   * {@link #getClampedCount()}.
+   */
+  public static final float DEFAULT_RESOLUTION = 1f / 64;
+
+  /**
+   * Resolution of variance values, which keeps them within 0.07 of the
+   * original over a range of +/-4095.88. That covers the variance of any RSSI
+   * values that are less than 128 dB apart.
+   */
+  public static final float VARIANCE_RESOLUTION = 1f / 8;
+
+  /**
+   * Most values stored in a single block.
+   */
+  public static final int BLOCK_SIZE = 256;
+
+  /**
+   * Bytes used by each uncompressed value, not counting block overhead.
+   */
+  public static final int VALUE_BYTES = 6;
+
+  /**
+   * Blocks with values this recent, in milliseconds behind the newest value,
+   * are never sealed.
+   */
+  public static final long HOT_WINDOW = 60000;
+
+  /**
+   * Most decoded blocks kept for reading sealed blocks, across all series.
+   */
+  public static final int DECODED_BLOCKS = 1024;
+
+  private static final int INITIAL_BLOCK_CAPACITY = 8;
+
+  /**
+   * How many values are appended to a block between checks for blocks to
+   * seal.
+   */
+  private static final int SEAL_CHECK_INTERVAL = 64;
+
+  /**
+   * Quantized value that represents {@code Float.NaN}.
+   */
+  private static final short QUANTIZED_NAN = Short.MIN_VALUE;
+
+  /**
+   * Recently decoded sealed blocks by their compressed data or off-heap chunk,
+   * from least to most recently used. Decoded blocks are never modified, so
+   * compressed data can be shared between trimmed blocks and copies of a
+   * series.
+   */
+  private static final Map<Object, Block> decodedBlocks = new LinkedHashMap<Object, Block>(
+      64, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<Object, Block> eldest) {
+      return this.size() > DECODED_BLOCKS;
+    }
+  };
+
+  /**
+   * A run of values that are all within 32 bits of a base timestamp.
+   */
+  private abstract static class Segment {
+    final long base;
+
+    Segment(final long base) {
+      this.base = base;
+    }
+
+    abstract long firstTime();
+
+    abstract long lastTime();
+
+    abstract int size();
+
+    abstract long getMemoryBytes();
+  }
+
+  /**
+   * Uncompressed values. The live values are in [start, end).
+   */
+  private static final class Block extends Segment {
+    int[] offsets;
+    short[] values;
+    int start = 0;
+    int end = 0;
+
+    Block(final long base, final int capacity) {
+      super(base);
+      this.offsets = new int[capacity];
+      this.values = new short[capacity];
+    }
+
+    Block(final long base, final int[] offsets, final short[] values,
+        final int start, final int end) {
+      super(base);
+      this.offsets = offsets;
+      this.values = values;
+      this.start = start;
+      this.end = end;
+    }
+
+    long timeAt(final int index) {
+      return this.base + this.offsets[index];
+    }
+
+    @Override
+    long firstTime() {
+      return this.timeAt(this.start);
+    }
+
+    @Override
+    long lastTime() {
+      return this.timeAt(this.end - 1);
+    }
+
+    @Override
+    int size() {
+      return this.end - this.start;
+    }
+
+    @Override
+    long getMemoryBytes() {
+      // Block, and the headers and contents of its arrays
+      return 32 + 32 + 4L * this.offsets.length + 2L * this.values.length;
+    }
+
+    boolean fits(final long time) {
+      long offset = time - this.base;
+      return offset >= Integer.MIN_VALUE && offset <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return the index of the first value at or after {@code time}, or
+     *         {@code end} if there is none.
+     */
+    int lowerBound(final long time) {
+      int low = this.start;
+      int high = this.end;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (this.timeAt(mid) < time) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * Moves the live values to the front of arrays with room for at least
+     * {@code capacity} values.
+     */
+    void resize(final int capacity) {
+      int count = this.end - this.start;
+      int[] newOffsets = capacity == this.offsets.length ? this.offsets
+          : new int[capacity];
+      short[] newValues = capacity == this.values.length ? this.values
+          : new short[capacity];
+      System.arraycopy(this.offsets, this.start, newOffsets, 0, count);
+      System.arraycopy(this.values, this.start, newValues, 0, count);
+      this.offsets = newOffsets;
+      this.values = newValues;
+      this.start = 0;
+      this.end = count;
+    }
+
+    /**
+     * Makes room for one more value, unless the block is already full.
+     * 
+     * @return {@code true} if there is room for another value.
+     */
+    boolean makeRoom() {
+      if (this.end < this.offsets.length) {
+        return true;
+      }
+      if (this.offsets.length < BLOCK_SIZE) {
+        this.resize(Math.min(BLOCK_SIZE, this.offsets.length * 2));
+        return true;
+      }
+      if (this.start > 0) {
+        this.resize(this.offsets.length);
+        return true;
+      }
+      return false;
+    }
+
+    Block copy() {
+      Block copy = new Block(this.base, Math.max(1, this.end - this.start));
+      System.arraycopy(this.offsets, this.start, copy.offsets, 0, this.end
+          - this.start);
+      System.arraycopy(this.values, this.start, copy.values, 0, this.end
+          - this.start);
+      copy.end = this.end - this.start;
+      return copy;
+    }
+  }
+
+  /**
+   * Compressed values, which are never modified. Trimming the oldest values
+   * creates a new block that skips them and shares the compressed data. The
+   * data is either in {@code data} on the heap or in {@code chunk} off the
+   * heap; a chunk belongs to a single series, and is handed over to the
+   * trimmed block that replaces it.
+   */
+  private static final class SealedBlock extends Segment {
+    final long firstTime;
+    final long lastTime;
+    final int skip;
+    final int count;
+    final byte[] data;
+    final SlabAllocator.Chunk chunk;
+
+    SealedBlock(final Block block, final SlabAllocator offHeap) {
+      super(block.base);
+      this.firstTime = block.firstTime();
+      this.lastTime = block.lastTime();
+      this.skip = 0;
+      this.count = block.size();
+      byte[] encoded = BlockCodec.encode(block.offsets, block.values,
+          block.start, block.end);
+      this.chunk = offHeap == null ? null : offHeap.store(encoded);
+      // Blocks too large for a chunk stay on the heap
+      this.data = this.chunk == null ? encoded : null;
+    }
+
+    private SealedBlock(final SealedBlock sealed, final int skip,
+        final long firstTime, final byte[] data) {
+      super(sealed.base);
+      this.firstTime = firstTime;
+      this.lastTime = sealed.lastTime;
+      this.skip = skip;
+      this.count = sealed.count;
+      this.data = data;
+      this.chunk = data == null ? sealed.chunk : null;
+    }
+
+    @Override
+    long firstTime() {
+      return this.firstTime;
+    }
+
+    @Override
+    long lastTime() {
+      return this.lastTime;
+    }
+
+    @Override
+    int size() {
+      return this.count - this.skip;
+    }
+
+    @Override
+    long getMemoryBytes() {
+      if (this.chunk != null) {
+        // Block and chunk
+        return 48 + 32;
+      }
+      // Block, and the header and contents of its array
+      return 48 + 16 + this.data.length;
+    }
+
+    long getOffHeapBytes() {
+      return this.chunk == null ? 0 : this.chunk.getLength();
+    }
+
+    Object key() {
+      return this.chunk == null ? this.data : this.chunk;
+    }
+
+    /**
+     * @return a block without the values before {@code index} of the decoded
+     *         block.
+     */
+    SealedBlock trim(final Block decoded, final int index) {
+      return new SealedBlock(this, index, decoded.timeAt(index), this.data);
+    }
+
+    /**
+     * @return this block with its data on the heap.
+     */
+    SealedBlock onHeap() {
+      if (this.chunk == null) {
+        return this;
+      }
+      byte[] copied = new byte[this.chunk.getLength()];
+      this.chunk.getBuffer().get(copied);
+      return new SealedBlock(this, this.skip, this.firstTime, copied);
+    }
+
+    /**
+     * Frees the off-heap data, if there is any. The block must not be read
+     * afterwards.
+     */
+    void release(final SlabAllocator offHeap) {
+      if (this.chunk == null) {
+        return;
+      }
+      synchronized (decodedBlocks) {
+        decodedBlocks.remove(this.chunk);
+      }
+      offHeap.free(this.chunk);
+    }
+
+    /**
+     * @return the decoded values, which must not be modified.
+     */
+    Block decode() {
+      Object key = this.key();
+      Block decoded;
+      synchronized (decodedBlocks) {
+        decoded = decodedBlocks.get(key);
+      }
+      if (decoded == null) {
+        decoded = new Block(this.base, this.count);
+        if (this.chunk == null) {
+          BlockCodec.decode(this.data, this.count, decoded.offsets,
+              decoded.values);
+        } else {
+          BlockCodec.decode(this.chunk.getBuffer(), this.count,
+              decoded.offsets, decoded.values);
+        }
+        decoded.end = this.count;
+        synchronized (decodedBlocks) {
+          decodedBlocks.put(key, decoded);
+        }
+      }
+      if (this.skip == 0) {
+        return decoded;
+      }
+      return new Block(this.base, decoded.offsets, decoded.values, this.skip,
+          this.count);
+    }
+  }
+
+  /**
+   * Reads the values in a time range of a series, from oldest to newest,
+   * through primitive accessors. Values are copied out of the series one block
+   * at a time, so a cursor sees values added or removed while it is open only
+   * in blocks that it hasn't reached yet. A cursor can be reused for any number
+   * of ranges and series, but must only be used by one thread at a time.
+   * 
+   * <pre>
+   * series.getCursor(oldest, youngest, cursor);
+   * while (cursor.next()) {
+   *   draw(cursor.getTime(), cursor.getValue());
+   * }
+   * </pre>
+   */
+  public static final class Cursor {
+    private CompactSeries series;
+    private long youngest;
+    private long nextFrom;
+    private long base;
+    private int[] offsets;
+    private short[] values;
+    private int index = 0;
+    private int end = 0;
+    private int[] offsetBuffer = null;
+    private short[] valueBuffer = null;
+    private long time = Long.MIN_VALUE;
+    private float value = Float.NaN;
+
+    void open(final CompactSeries series, final long oldest,
+        final long youngest) {
+      this.series = series;
+      this.youngest = youngest;
+      this.nextFrom = oldest;
+      this.offsets = null;
+      this.values = null;
+      this.index = 0;
+      this.end = 0;
+      this.time = Long.MIN_VALUE;
+      this.value = Float.NaN;
+      if (youngest < oldest) {
+        this.series = null;
+      }
+    }
+
+    /**
+     * @return {@code true} if there is another value in the range.
+     */
+    public boolean hasNext() {
+      while (this.index == this.end) {
+        if (this.series == null || !this.series.load(this)) {
+          this.series = null;
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Moves to the next value in the range.
+     * 
+     * @return {@code true} if there was another value, or {@code false} if the
+     *         end of the range has been reached.
+     */
+    public boolean next() {
+      if (!this.hasNext()) {
+        return false;
+      }
+      this.time = this.base + this.offsets[this.index];
+      this.value = this.series.dequantize(this.values[this.index]);
+      ++this.index;
+      return true;
+    }
+
+    /**
+     * @return the timestamp of the current value.
+     */
+    public long getTime() {
+      return this.time;
+    }
+
+    /**
+     * @return the current value, which may be {@code Float.NaN}.
+     */
+    public float getValue() {
+      return this.value;
+    }
+
+    /**
+     * Reads the rest of the values in the range into chart items.
+     */
+    public List<ChartItem<Float>> toList() {
+      LinkedList<ChartItem<Float>> items = new LinkedList<ChartItem<Float>>();
+      while (this.next()) {
+        items.add(new SimpleChartItem<Float>(Float.valueOf(this.value),
+            this.time));
+      }
+      return items;
+    }
+
+    /**
+     * Points the cursor at values [{@code first}, {@code last}) of a block,
+     * copying them if the block can still be changed.
+     */
+    void setBlock(final Block block, final boolean immutable,
+        final int first, final int last) {
+      this.base = block.base;
+      if (immutable) {
+        this.offsets = block.offsets;
+        this.values = block.values;
+        this.index = first;
+        this.end = last;
+      } else {
+        int count = last - first;
+        if (this.offsetBuffer == null || this.offsetBuffer.length < count) {
+          this.offsetBuffer = new int[Math.max(count, BLOCK_SIZE)];
+          this.valueBuffer = new short[this.offsetBuffer.length];
+        }
+        System.arraycopy(block.offsets, first, this.offsetBuffer, 0, count);
+        System.arraycopy(block.values, first, this.valueBuffer, 0, count);
+        this.offsets = this.offsetBuffer;
+        this.values = this.valueBuffer;
+        this.index = 0;
+        this.end = count;
+      }
+      this.nextFrom = block.timeAt(last - 1) + 1;
+    }
+  }
+
+  private final float resolution;
+
+  /**
+   * Where sealed blocks are stored, or {@code null} to keep them on the heap.
+   */
+  private final SlabAllocator offHeap;
+
+  private final ArrayList<Segment> blocks = new ArrayList<Segment>();
+
+  private int size = 0;
+
+  /**
+   * Number of values that were outside of the range of the series.
+   */
+  private int clampedCount = 0;
+
+  public CompactSeries() {
+    this(DEFAULT_RESOLUTION);
+  }
+
+  /**
+   * @param resolution
+   *          the smallest difference between two stored values.
+   */
+  public CompactSeries(final float resolution) {
+    this(resolution, null);
+  }
+
+  /**
+   * @param resolution
+   *          the smallest difference between two stored values.
+   * @param offHeap
+   *          where to store sealed blocks, or {@code null} to keep them on the
+   *          heap.
+   */
+  public CompactSeries(final float resolution, final SlabAllocator offHeap) {
+    if (!(resolution > 0)) {
+      throw new IllegalArgumentException("Resolution must be positive.");
+    }
+    this.resolution = resolution;
+    this.offHeap = offHeap;
+  }
+
+  public float getResolution() {
+    return this.resolution;
+  }
+
+  /**
+   * @return the number of values added that were outside of the range of the
+   *         series, {@code +/-Short.MAX_VALUE * resolution}, and were stored
+   *         as the nearest end of the range instead.
+   */
+  public synchronized int getClampedCount() {
+    return this.clampedCount;
+  }
+
+  /**
+   * Adds a value, unless the series already has a value at {@code time}.
+   * 
+   * @return {@code true} if the value was added.
+   */
+  public synchronized boolean add(final float value, final long time) {
+    short quantized = this.quantize(value);
+    int numBlocks = this.blocks.size();
+    if (numBlocks == 0 || time > this.blocks.get(numBlocks - 1).lastTime()) {
+      Block last = numBlocks == 0 ? null : this.unseal(numBlocks - 1);
+      if (last == null || !last.fits(time) || !last.makeRoom()) {
+        last = new Block(time, INITIAL_BLOCK_CAPACITY);
+        this.blocks.add(last);
+      }
+      last.offsets[last.end] = (int) (time - last.base);
+      last.values[last.end] = quantized;
+      ++last.end;
+      ++this.size;
+      if (last.end % SEAL_CHECK_INTERVAL == 1) {
+        this.sealBefore(time - HOT_WINDOW);
+      }
+      return true;
+    }
+
+    int blockIndex = this.findBlock(time);
+    Block block = this.read(blockIndex);
+    int index = block.lowerBound(time);
+    if (index < block.end && block.timeAt(index) == time) {
+      return false;
+    }
+    if (!block.fits(time)) {
+      block = new Block(time, INITIAL_BLOCK_CAPACITY);
+      this.blocks.add(
+          time < this.blocks.get(blockIndex).firstTime() ? blockIndex
+              : blockIndex + 1, block);
+    } else {
+      block = this.unseal(blockIndex);
+      if (!block.makeRoom()) {
+        // Split the block in half, sharing its base so the offsets still fit
+        Block upper = new Block(block.base, BLOCK_SIZE);
+        int mid = (block.start + block.end) >>> 1;
+        System.arraycopy(block.offsets, mid, upper.offsets, 0, block.end - mid);
+        System.arraycopy(block.values, mid, upper.values, 0, block.end - mid);
+        upper.end = block.end - mid;
+        block.end = mid;
+        this.blocks.add(blockIndex + 1, upper);
+        if (time > upper.timeAt(0)) {
+          block = upper;
+        }
+      }
+    }
+    index = block.lowerBound(time);
+    System.arraycopy(block.offsets, index, block.offsets, index + 1, block.end
+        - index);
+    System.arraycopy(block.values, index, block.values, index + 1, block.end
+        - index);
+    block.offsets[index] = (int) (time - block.base);
+    block.values[index] = quantized;
+    ++block.end;
+    ++this.size;
+    return true;
+  }
+
+  /**
+   * Adds every item in {@code items}.
+   * 
+   * @return the number of items added.
+   */
+  public synchronized int addAll(
+      final Collection<? extends ChartItem<Float>> items) {
+    int added = 0;
+    for (ChartItem<Float> item : items) {
+      Float value = item.getValue();
+      if (this.add(value == null ? Float.NaN : value.floatValue(),
+          item.getCreationTime())) {
+        ++added;
+      }
+    }
+    return added;
+  }
+
+  public synchronized int size() {
+    return this.size;
+  }
+
+  public synchronized boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  /**
+   * Removes all values, freeing any off-heap storage.
+   */
+  public synchronized void clear() {
+    for (Segment segment : this.blocks) {
+      this.release(segment);
+    }
+    this.blocks.clear();
+    this.size = 0;
+  }
+
+  /**
+   * @return the timestamp of the oldest value, or {@code Long.MIN_VALUE} if
+   *         the series is empty.
+   */
+  public synchronized long getOldestTime() {
+    if (this.blocks.isEmpty()) {
+      return Long.MIN_VALUE;
+    }
+    return this.blocks.get(0).firstTime();
+  }
+
+  /**
+   * @return the newest value, or {@code null} if the series is empty.
+   */
+  public synchronized ChartItem<Float> getNewest() {
+    if (this.blocks.isEmpty()) {
+      return null;
+    }
+    Block last = this.read(this.blocks.size() - 1);
+    return this.itemAt(last, last.end - 1);
+  }
+
+  /**
+   * Returns the values with timestamps in [{@code oldest}, {@code youngest}],
+   * from oldest to newest.
+   */
+  public synchronized List<ChartItem<Float>> getRange(final long oldest,
+      final long youngest) {
+    LinkedList<ChartItem<Float>> items = new LinkedList<ChartItem<Float>>();
+    if (this.blocks.isEmpty() || youngest < oldest) {
+      return items;
+    }
+    for (int b = this.findBlock(oldest); b < this.blocks.size(); ++b) {
+      if (this.blocks.get(b).firstTime() > youngest) {
+        break;
+      }
+      Block block = this.read(b);
+      for (int i = block.lowerBound(oldest); i < block.end; ++i) {
+        if (block.timeAt(i) > youngest) {
+          return items;
+        }
+        items.add(this.itemAt(block, i));
+      }
+    }
+    return items;
+  }
+
+  /**
+   * Opens a cursor over the values with timestamps in [{@code oldest},
+   * {@code youngest}].
+   * 
+   * @param cursor
+   *          the cursor to reuse, or {@code null} for a new one.
+   * @return the opened cursor.
+   */
+  public Cursor getCursor(final long oldest, final long youngest,
+      final Cursor cursor) {
+    Cursor opened = cursor == null ? new Cursor() : cursor;
+    opened.open(this, oldest, youngest);
+    return opened;
+  }
+
+  /**
+   * Returns the newest value with a timestamp in [{@code oldest},
+   * {@code youngest}].
+   * 
+   * @return the value, or {@code Float.NaN} if there is none.
+   */
+  public synchronized float getLatestValue(final long oldest,
+      final long youngest) {
+    if (this.blocks.isEmpty() || youngest < oldest) {
+      return Float.NaN;
+    }
+    Block block = this.read(this.findBlock(youngest));
+    int index = youngest == Long.MAX_VALUE ? block.end : block
+        .lowerBound(youngest + 1);
+    --index;
+    // Only the first block can start after youngest
+    if (index < block.start || block.timeAt(index) < oldest) {
+      return Float.NaN;
+    }
+    return this.dequantize(block.values[index]);
+  }
+
+  /**
+   * Removes the values older than {@code time}.
+   * 
+   * @return the number of values removed.
+   */
+  public synchronized int removeBefore(final long time) {
+    int removed = 0;
+    while (!this.blocks.isEmpty()) {
+      Segment first = this.blocks.get(0);
+      if (first.firstTime() >= time) {
+        break;
+      }
+      if (first.lastTime() < time) {
+        removed += first.size();
+        this.release(this.blocks.remove(0));
+        continue;
+      }
+      Block block = this.read(0);
+      int index = block.lowerBound(time);
+      removed += index - block.start;
+      if (first instanceof SealedBlock) {
+        this.blocks.set(0, ((SealedBlock) first).trim(block, index));
+      } else {
+        block.start = index;
+      }
+      break;
+    }
+    this.size -= removed;
+    return removed;
+  }
+
+  /**
+   * Removes every other value older than {@code time}, starting with the
+   * second-oldest, halving the resolution of the older part of the series.
+   * 
+   * @return the number of values removed.
+   */
+  public int downsample(final long time) {
+    return this.downsample(Long.MIN_VALUE, time);
+  }
+
+  /**
+   * Removes every other value from {@code from} up to, but not including,
+   * {@code time}, halving the resolution of that part of the series. Values
+   * outside the range are left alone, so a range that was already thinned
+   * isn't thinned again.
+   * 
+   * @return the number of values removed.
+   */
+  public synchronized int downsample(final long from, final long time) {
+    int removed = 0;
+    boolean keep = true;
+    for (int b = 0; b < this.blocks.size(); ++b) {
+      if (this.blocks.get(b).firstTime() >= time) {
+        break;
+      }
+      if (this.blocks.get(b).lastTime() < from) {
+        continue;
+      }
+      Block block = this.unseal(b);
+      int limit = block.lowerBound(time);
+      int write = block.lowerBound(from);
+      for (int read = write; read < limit; ++read) {
+        if (keep) {
+          block.offsets[write] = block.offsets[read];
+          block.values[write] = block.values[read];
+          ++write;
+        }
+        keep = !keep;
+      }
+      int tail = block.end - limit;
+      System.arraycopy(block.offsets, limit, block.offsets, write, tail);
+      System.arraycopy(block.values, limit, block.values, write, tail);
+      removed += limit - write;
+      block.end = write + tail;
+      if (block.start == block.end) {
+        this.blocks.remove(b--);
+      } else if (block.end - block.start <= block.offsets.length / 2) {
+        // Give back the space, since old values are rarely inserted
+        block.resize(block.end - block.start);
+      }
+    }
+    this.size -= removed;
+    return removed;
+  }
+
+  /**
+   * @return an independent copy of this series, which keeps all of its values
+   *         on the heap.
+   */
+  public synchronized CompactSeries copy() {
+    CompactSeries copy = new CompactSeries(this.resolution);
+    for (Segment segment : this.blocks) {
+      copy.blocks.add(segment instanceof Block ? ((Block) segment).copy()
+          : ((SealedBlock) segment).onHeap());
+    }
+    copy.size = this.size;
+    return copy;
+  }
+
+  /**
+   * @return the approximate number of bytes of heap used by this series.
+   */
+  public synchronized long getMemoryBytes() {
+    // Series, block list and its backing array
+    long bytes = 16 + 24 + 16 + 4L * this.blocks.size();
+    for (Segment segment : this.blocks) {
+      bytes += segment.getMemoryBytes();
+    }
+    return bytes;
+  }
+
+  /**
+   * @return the number of bytes of off-heap storage used by this series.
+   */
+  public synchronized long getOffHeapBytes() {
+    long bytes = 0;
+    for (Segment segment : this.blocks) {
+      if (segment instanceof SealedBlock) {
+        bytes += ((SealedBlock) segment).getOffHeapBytes();
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * @return the number of values in sealed blocks.
+   */
+  public synchronized int getSealedSize() {
+    int sealed = 0;
+    for (Segment segment : this.blocks) {
+      if (segment instanceof SealedBlock) {
+        sealed += segment.size();
+      }
+    }
+    return sealed;
+  }
+
+  /**
+   * Loads the cursor with the values of the next block in its range.
+   * 
+   * @return {@code false} if there are no more values in the range.
+   */
+  synchronized boolean load(final Cursor cursor) {
+    if (this.blocks.isEmpty()) {
+      return false;
+    }
+    for (int b = this.findBlock(cursor.nextFrom); b < this.blocks.size(); ++b) {
+      if (this.blocks.get(b).firstTime() > cursor.youngest) {
+        return false;
+      }
+      Block block = this.read(b);
+      int first = block.lowerBound(cursor.nextFrom);
+      if (first == block.end) {
+        continue;
+      }
+      int last = cursor.youngest == Long.MAX_VALUE ? block.end : block
+          .lowerBound(cursor.youngest + 1);
+      if (first == last) {
+        return false;
+      }
+      // Decoded blocks are never modified
+      cursor.setBlock(block, this.blocks.get(b) instanceof SealedBlock, first,
+          last);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Seals the blocks, other than the newest, whose values are all older than
+   * {@code time}.
+   */
+  private void sealBefore(final long time) {
+    for (int b = this.blocks.size() - 2; b >= 0; --b) {
+      Segment segment = this.blocks.get(b);
+      // Older blocks may have been unsealed to insert or thin values
+      if (segment instanceof Block && segment.lastTime() < time) {
+        this.blocks.set(b, new SealedBlock((Block) segment, this.offHeap));
+      }
+    }
+  }
+
+  /**
+   * @return the block at {@code index} for reading, decoding it if it is
+   *         sealed.
+   */
+  private Block read(final int index) {
+    Segment segment = this.blocks.get(index);
+    if (segment instanceof Block) {
+      return (Block) segment;
+    }
+    return ((SealedBlock) segment).decode();
+  }
+
+  /**
+   * @return the block at {@code index} for changing, replacing it with an
+   *         uncompressed copy if it is sealed.
+   */
+  private Block unseal(final int index) {
+    Segment segment = this.blocks.get(index);
+    if (segment instanceof Block) {
+      return (Block) segment;
+    }
+    Block block = ((SealedBlock) segment).decode().copy();
+    this.blocks.set(index, block);
+    this.release(segment);
+    return block;
+  }
+
+  /**
+   * Frees the off-heap storage of a segment that has been removed.
+   */
+  private void release(final Segment segment) {
+    if (segment instanceof SealedBlock) {
+      ((SealedBlock) segment).release(this.offHeap);
+    }
+  }
+
+  /**
+   * @return the index of the last block whose oldest value is at or before
+   *         {@code time}, or 0 if there is none.
+   */
+  private int findBlock(final long time) {
+    int low = 0;
+    int high = this.blocks.size() - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (this.blocks.get(mid).firstTime() <= time) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  private ChartItem<Float> itemAt(final Block block, final int index) {
+    return new SimpleChartItem<Float>(Float.valueOf(this
+        .dequantize(block.values[index])), block.timeAt(index));
+  }
+
+  private short quantize(final float value) {
+    if (Float.isNaN(value)) {
+      return QUANTIZED_NAN;
+    }
+    float scaled = value / this.resolution;
+    if (scaled >= Short.MAX_VALUE + 0.5f) {
+      this.clamped(value);
+      return Short.MAX_VALUE;
+    }
+    if (scaled <= -Short.MAX_VALUE - 0.5f) {
+      this.clamped(value);
+      return -Short.MAX_VALUE;
+    }
+    return (short) Math.round(scaled);
+  }
+
+  /**
+   * Counts a value that was outside of the range of the series, warning about
+   * the first one.
+   */
+  private void clamped(final float value) {
+    if (this.clampedCount++ == 0) {
+      log.warn("Value {} is outside of the range +/-{} and was clamped.",
+          Float.valueOf(value), Float.valueOf(Short.MAX_VALUE * this.resolution));
+    }
+  }
+
+  private float dequantize(final short quantized) {
+    if (quantized == QUANTIZED_NAN) {
+      return Float.NaN;
+    }
+    return quantized * this.resolution;
+  }
+}
@@ -0,0 +1,418 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis.structs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks when each device was first and last seen, how many samples it has
+ * produced and its recent sample rate. Recording a sample takes constant time.
+ * Devices that go quiet for longer than the idle timeout are expired by a
+ * timing wheel, so expiry does not scan every device.
+ *
+ * @author Robert Moore
+ *
+ */
+public class DeviceRegistry {
+
+  /**
+   * Time constant of the sample rate estimate, in milliseconds.
+   */
+  public static final long RATE_TIME_CONSTANT = 10000;
+
+  /**
+   * Fields that devices can be sorted by.
+   */
+  public static enum SortKey {
+    ID, FIRST_SEEN, LAST_SEEN, COUNT, RATE;
+  }
+
+  /**
+   * The activity of a single device.
+   */
+  public static class Device {
+    private final String id;
+    private long firstSeen;
+    private long lastSeen;
+    private long count;
+    private double rate;
+
+    /**
+     * The wheel tick at which this device will next be checked for expiry, or
+     * -1 if it isn't in the wheel.
+     */
+    long scheduledTick = -1;
+
+    Device(final String id, final long firstSeen) {
+      this.id = id;
+      this.firstSeen = firstSeen;
+      this.lastSeen = firstSeen;
+    }
+
+    /**
+     * Copies {@code source}, with its rate decayed to {@code now}.
+     */
+    Device(final Device source, final long now) {
+      synchronized (source) {
+        this.id = source.id;
+        this.firstSeen = source.firstSeen;
+        this.lastSeen = source.lastSeen;
+        this.count = source.count;
+        this.rate = source.getRate(now);
+      }
+    }
+
+    synchronized void sample(final long timestamp) {
+      long elapsed = timestamp - this.lastSeen;
+      if (elapsed > 0) {
+        this.rate *= Math.exp(-(double) elapsed / RATE_TIME_CONSTANT);
+        this.lastSeen = timestamp;
+        // Samples per second
+        this.rate += 1000d / RATE_TIME_CONSTANT;
+      } else {
+        // An older sample, such as from history, counts for what is left of it
+        this.rate += Math.exp((double) elapsed / RATE_TIME_CONSTANT) * 1000d
+            / RATE_TIME_CONSTANT;
+        if (timestamp < this.firstSeen) {
+          this.firstSeen = timestamp;
+        }
+      }
+      ++this.count;
+    }
+
+    public String getId() {
+      return this.id;
+    }
+
+    public synchronized long getFirstSeen() {
+      return this.firstSeen;
+    }
+
+    public synchronized long getLastSeen() {
+      return this.lastSeen;
+    }
+
+    public synchronized long getCount() {
+      return this.count;
+    }
+
+    /**
+     * @return the recent sample rate, in samples per second, as of the last
+     *         sample. For the copies returned by
+     *         {@link DeviceRegistry#getPage(SortKey, boolean, int, int, long)}
+     *         it is the rate as of the time the page was made.
+     */
+    public synchronized double getRate() {
+      return this.rate;
+    }
+
+    /**
+     * @return the recent sample rate, in samples per second, decayed from the
+     *         last sample to {@code now}, so a device that has gone quiet
+     *         slows down without new samples.
+     */
+    public synchronized double getRate(final long now) {
+      long elapsed = now - this.lastSeen;
+      if (elapsed <= 0) {
+        return this.rate;
+      }
+      return this.rate * Math.exp(-(double) elapsed / RATE_TIME_CONSTANT);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s: %d samples, %.2f/s", this.id,
+          Long.valueOf(this.getCount()), Double.valueOf(this.getRate()));
+    }
+  }
+
+  private final ConcurrentHashMap<String, Device> devices = new ConcurrentHashMap<String, Device>();
+
+  /**
+   * Devices to check for expiry, bucketed by tick. A device is only moved
+   * when its slot comes up, so recording a sample never touches the wheel.
+   */
+  private final List<List<Device>> wheel;
+
+  private final long tickLength;
+
+  private volatile long idleTimeout;
+
+  /**
+   * The next tick whose slot has not been processed.
+   */
+  private long currentTick = -1;
+
+  private final Object wheelLock = new Object();
+
+  /**
+   * @param idleTimeout
+   *          how long a device can go without samples before it expires, in
+   *          milliseconds.
+   * @param tickLength
+   *          the resolution of the timing wheel, in milliseconds.
+   * @param numSlots
+   *          the number of slots in the timing wheel.
+   */
+  public DeviceRegistry(final long idleTimeout, final long tickLength,
+      final int numSlots) {
+    if (tickLength < 1 || numSlots < 1) {
+      throw new IllegalArgumentException(
+          "Tick length and number of slots must be positive.");
+    }
+    this.idleTimeout = idleTimeout;
+    this.tickLength = tickLength;
+    this.wheel = new ArrayList<List<Device>>(numSlots);
+    for (int i = 0; i < numSlots; ++i) {
+      this.wheel.add(new ArrayList<Device>());
+    }
+  }
+
+  public long getIdleTimeout() {
+    return this.idleTimeout;
+  }
+
+  /**
+   * Changes the idle timeout. Devices already in the wheel are checked against
+   * the new timeout when their slots come up.
+   */
+  public void setIdleTimeout(final long idleTimeout) {
+    this.idleTimeout = idleTimeout;
+  }
+
+  /**
+   * Records a sample from a device. Samples may arrive out of order; the
+   * first-seen and last-seen times and the rate use the sample timestamps.
+   *
+   * @return {@code true} if the device was not already registered.
+   */
+  public boolean recordSample(final String deviceId, final long timestamp) {
+    Device device = this.devices.get(deviceId);
+    if (device != null) {
+      device.sample(timestamp);
+      return false;
+    }
+    device = new Device(deviceId, timestamp);
+    Device existing = this.devices.putIfAbsent(deviceId, device);
+    if (existing != null) {
+      existing.sample(timestamp);
+      return false;
+    }
+    device.sample(timestamp);
+    synchronized (this.wheelLock) {
+      this.schedule(device, timestamp + this.idleTimeout);
+    }
+    return true;
+  }
+
+  /**
+   * Must be called while holding {@link #wheelLock}.
+   */
+  private void schedule(final Device device, final long deadline) {
+    long tick = Math.max(deadline / this.tickLength, this.currentTick);
+    device.scheduledTick = tick;
+    this.wheel.get((int) (tick % this.wheel.size())).add(device);
+  }
+
+  /**
+   * Advances the timing wheel to {@code now} and removes every device that
+   * has been idle for longer than the idle timeout.
+   *
+   * @return the IDs of the expired devices.
+   */
+  public List<String> expire(final long now) {
+    List<String> expired = new ArrayList<String>();
+    synchronized (this.wheelLock) {
+      long nowTick = now / this.tickLength;
+      if (this.currentTick < 0) {
+        this.currentTick = nowTick;
+      }
+      // Never process more than one full turn of the wheel
+      long firstTick = Math.max(this.currentTick, nowTick
+          - this.wheel.size() + 1);
+      List<Device> rescheduled = new ArrayList<Device>();
+      for (long tick = firstTick; tick <= nowTick; ++tick) {
+        List<Device> slot = this.wheel.get((int) (tick % this.wheel.size()));
+        for (int i = slot.size() - 1; i >= 0; --i) {
+          Device device = slot.get(i);
+          if (device.scheduledTick > nowTick) {
+            // Belongs to a later turn of the wheel
+            continue;
+          }
+          slot.set(i, slot.get(slot.size() - 1));
+          slot.remove(slot.size() - 1);
+          if (this.devices.get(device.id) != device) {
+            // Removed or replaced
+            device.scheduledTick = -1;
+            continue;
+          }
+          long deadline = device.getLastSeen() + this.idleTimeout;
+          if (deadline <= now) {
+            this.devices.remove(device.id, device);
+            device.scheduledTick = -1;
+            expired.add(device.id);
+          } else {
+            rescheduled.add(device);
+          }
+        }
+      }
+      this.currentTick = nowTick + 1;
+      for (Device device : rescheduled) {
+        this.schedule(device, device.getLastSeen() + this.idleTimeout);
+      }
+    }
+    return expired;
+  }
+
+  /**
+   * @return the device, or {@code null} if it isn't registered.
+   */
+  public Device get(final String deviceId) {
+    return this.devices.get(deviceId);
+  }
+
+  public boolean contains(final String deviceId) {
+    return this.devices.containsKey(deviceId);
+  }
+
+  /**
+   * Removes a device without waiting for it to expire.
+   */
+  public void remove(final String deviceId) {
+    // Its wheel entry is discarded when its slot comes up
+    this.devices.remove(deviceId);
+  }
+
+  public void clear() {
+    synchronized (this.wheelLock) {
+      this.devices.clear();
+      for (List<Device> slot : this.wheel) {
+        slot.clear();
+      }
+    }
+  }
+
+  public int size() {
+    return this.devices.size();
+  }
+
+  public List<String> getIds() {
+    return new ArrayList<String>(this.devices.keySet());
+  }
+
+  /**
+   * Returns one page of devices in sorted order, with rates as of the current
+   * time.
+   *
+   * @see #getPage(SortKey, boolean, int, int, long)
+   */
+  public List<Device> getPage(final SortKey key, final boolean descending,
+      final int offset, final int limit) {
+    return this.getPage(key, descending, offset, limit,
+        System.currentTimeMillis());
+  }
+
+  /**
+   * Returns one page of devices in sorted order. Only {@code offset + limit}
+   * devices are kept while sorting, so a page near the start of a very large
+   * registry is cheap to produce. Rates are decayed to {@code now} before
+   * sorting, so the order reflects current activity.
+   *
+   * @param key
+   *          the field to sort by.
+   * @param descending
+   *          {@code true} to sort from largest to smallest.
+   * @param offset
+   *          the number of devices to skip.
+   * @param limit
+   *          the largest number of devices to return.
+   * @param now
+   *          the time to decay the rates to.
+   * @return copies of the devices on the page.
+   */
+  public List<Device> getPage(final SortKey key, final boolean descending,
+      final int offset, final int limit, final long now) {
+    if (offset < 0 || limit < 1) {
+      return new ArrayList<Device>(0);
+    }
+    Comparator<Device> order = getComparator(key);
+    if (descending) {
+      order = Collections.reverseOrder(order);
+    }
+    int keep = offset + limit;
+    // The head of the queue is the last device that would be kept
+    PriorityQueue<Device> best = new PriorityQueue<Device>(Math.min(keep,
+        Math.max(1, this.devices.size())), Collections.reverseOrder(order));
+    for (Device device : this.devices.values()) {
+      Device copy = new Device(device, now);
+      if (best.size() < keep) {
+        best.add(copy);
+      } else if (order.compare(copy, best.peek()) < 0) {
+        best.poll();
+        best.add(copy);
+      }
+    }
+    List<Device> sorted = new ArrayList<Device>(best);
+    Collections.sort(sorted, order);
+    if (offset >= sorted.size()) {
+      return new ArrayList<Device>(0);
+    }
+    return new ArrayList<Device>(sorted.subList(offset, sorted.size()));
+  }
+
+  /**
+   * @return a comparator of devices by {@code key}, ascending, with ties
+   *         broken by ID.
+   */
+  public static Comparator<Device> getComparator(final SortKey key) {
+    return new Comparator<Device>() {
+      @Override
+      public int compare(Device o1, Device o2) {
+        int diff;
+        switch (key) {
+        case FIRST_SEEN:
+          diff = compareLongs(o1.firstSeen, o2.firstSeen);
+          break;
+        case LAST_SEEN:
+          diff = compareLongs(o1.lastSeen, o2.lastSeen);
+          break;
+        case COUNT:
+          diff = compareLongs(o1.count, o2.count);
+          break;
+        case RATE:
+          diff = Double.compare(o1.rate, o2.rate);
+          break;
+        default:
+          diff = 0;
+        }
+        return diff != 0 ? diff : o1.id.compareTo(o2.id);
+      }
+    };
+  }
+
+  private static int compareLongs(final long a, final long b) {
+    return a < b ? -1 : (a == b ? 0 : 1);
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis.structs;
+
+/**
+ * Online least-squares fit of a log-distance path-loss model,
+ * {@code rssi = A - 10 * n * log10(distance)}, over a set of
+ * signal-to-distance items. Items can be added and removed in constant time,
+ * so the model can follow a sliding window as long as every item removed from
+ * the window is also removed here.
+ *
+ * @author Robert Moore
+ *
+ */
+public class PathLossModel {
+
+  /**
+   * Items closer than this distance are ignored, since the logarithm is
+   * undefined at 0 and the model does not hold in the near field.
+   */
+  public static final float MIN_DISTANCE = 0.01f;
+
+  /**
+   * Fewest items needed before a fit is reported.
+   */
+  public static final int MIN_SAMPLES = 3;
+
+  /**
+   * Fitted parameters of a path-loss model at a single point in time.
+   */
+  public static class Fit {
+    private final float intercept;
+    private final float slope;
+    private final float residualVariance;
+    private final int numSamples;
+
+    Fit(final float intercept, final float slope,
+        final float residualVariance, final int numSamples) {
+      this.intercept = intercept;
+      this.slope = slope;
+      this.residualVariance = residualVariance;
+      this.numSamples = numSamples;
+    }
+
+    /**
+     * @return the fitted RSSI at a distance of 1 (region units).
+     */
+    public float getIntercept() {
+      return this.intercept;
+    }
+
+    /**
+     * @return the fitted change in RSSI per decade of distance.
+     */
+    public float getSlope() {
+      return this.slope;
+    }
+
+    /**
+     * @return the path-loss exponent, {@code -slope / 10}.
+     */
+    public float getExponent() {
+      return -this.slope / 10f;
+    }
+
+    /**
+     * @return the variance of the RSSI values around the fitted curve.
+     */
+    public float getResidualVariance() {
+      return this.residualVariance;
+    }
+
+    public int getNumSamples() {
+      return this.numSamples;
+    }
+
+    /**
+     * @return the RSSI predicted by the model at {@code distance}.
+     */
+    public float getRssiAt(final float distance) {
+      return (float) (this.intercept + this.slope
+          * Math.log10(Math.max(distance, MIN_DISTANCE)));
+    }
+
+    /**
+     * @return the distance predicted by the model for {@code rssi}, or
+     *         {@code Float.NaN} if the fitted slope is 0.
+     */
+    public float getDistanceAt(final float rssi) {
+      if (this.slope == 0f) {
+        return Float.NaN;
+      }
+      return (float) Math.pow(10, (rssi - this.intercept) / this.slope);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("RSSI = %.2f %+.2f log10(d), var %.2f, %d samples",
+          Float.valueOf(this.intercept), Float.valueOf(this.slope),
+          Float.valueOf(this.residualVariance),
+          Integer.valueOf(this.numSamples));
+    }
+  }
+
+  private int count = 0;
+
+  private double sumX = 0;
+
+  private double sumY = 0;
+
+  private double sumXX = 0;
+
+  private double sumXY = 0;
+
+  private double sumYY = 0;
+
+  /**
+   * Adds an item to the model.
+   */
+  public void add(final SignalToDistanceItem item) {
+    if (item.getDistance() < MIN_DISTANCE) {
+      return;
+    }
+    double x = Math.log10(item.getDistance());
+    double y = item.getSignal();
+    synchronized (this) {
+      ++this.count;
+      this.sumX += x;
+      this.sumY += y;
+      this.sumXX += x * x;
+      this.sumXY += x * y;
+      this.sumYY += y * y;
+    }
+  }
+
+  /**
+   * Removes an item that was previously added to the model.
+   */
+  public void remove(final SignalToDistanceItem item) {
+    if (item.getDistance() < MIN_DISTANCE) {
+      return;
+    }
+    double x = Math.log10(item.getDistance());
+    double y = item.getSignal();
+    synchronized (this) {
+      if (--this.count <= 0) {
+        // Don't let rounding errors accumulate across an empty window
+        this.clear();
+        return;
+      }
+      this.sumX -= x;
+      this.sumY -= y;
+      this.sumXX -= x * x;
+      this.sumXY -= x * y;
+      this.sumYY -= y * y;
+    }
+  }
+
+  public synchronized void clear() {
+    this.count = 0;
+    this.sumX = 0;
+    this.sumY = 0;
+    this.sumXX = 0;
+    this.sumXY = 0;
+    this.sumYY = 0;
+  }
+
+  public synchronized int getCount() {
+    return this.count;
+  }
+
+  /**
+   * Computes the current fit from the running sums.
+   *
+   * @return the fitted model, or {@code null} if there are too few items or
+   *         they are all at the same distance.
+   */
+  public synchronized Fit getFit() {
+    if (this.count < MIN_SAMPLES) {
+      return null;
+    }
+    double n = this.count;
+    double denom = n * this.sumXX - this.sumX * this.sumX;
+    if (Math.abs(denom) < 1e-9 * n * n) {
+      return null;
+    }
+    double slope = (n * this.sumXY - this.sumX * this.sumY) / denom;
+    double intercept = (this.sumY - slope * this.sumX) / n;
+    double sse = this.sumYY - intercept * this.sumY - slope * this.sumXY;
+    double variance = sse > 0 ? sse / (n - 2) : 0;
+    return new Fit((float) intercept, (float) slope, (float) variance,
+        this.count);
+  }
+}
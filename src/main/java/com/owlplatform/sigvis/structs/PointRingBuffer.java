@@ -0,0 +1,144 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis.structs;
+
+/**
+ * Fixed-capacity ring buffer of (x, y) points stored in primitive arrays. Once
+ * the buffer is full, each new point replaces the oldest one.
+ *
+ * Writers are serialized with each other, and each point is published by
+ * advancing a volatile sequence number after it has been stored. Readers never
+ * block; they copy the published points and then discard any that a writer
+ * may have overwritten during the copy.
+ *
+ * @author Robert Moore
+ *
+ */
+public class PointRingBuffer {
+
+  private final float[] xValues;
+
+  private final float[] yValues;
+
+  private final int capacity;
+
+  /**
+   * Sequence number of the next point to be written. Every point with a lower
+   * sequence number has been completely stored.
+   */
+  private volatile long published = 0;
+
+  /**
+   * Sequence number of the oldest point that has not been cleared.
+   */
+  private volatile long cleared = 0;
+
+  private final Object writeLock = new Object();
+
+  /**
+   * @param capacity
+   *          the maximum number of points to keep.
+   */
+  public PointRingBuffer(final int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be positive.");
+    }
+    this.capacity = capacity;
+    this.xValues = new float[capacity];
+    this.yValues = new float[capacity];
+  }
+
+  public int getCapacity() {
+    return this.capacity;
+  }
+
+  /**
+   * Adds a point, replacing the oldest point if the buffer is full.
+   */
+  public void add(final float x, final float y) {
+    synchronized (this.writeLock) {
+      long sequence = this.published;
+      int index = (int) (sequence % this.capacity);
+      this.xValues[index] = x;
+      this.yValues[index] = y;
+      this.published = sequence + 1;
+    }
+  }
+
+  /**
+   * Removes all points.
+   */
+  public void clear() {
+    synchronized (this.writeLock) {
+      this.cleared = this.published;
+    }
+  }
+
+  /**
+   * @return the number of points currently in the buffer.
+   */
+  public int size() {
+    long end = this.published;
+    return (int) (end - this.getStart(end));
+  }
+
+  private long getStart(final long end) {
+    return Math.max(end - this.capacity, this.cleared);
+  }
+
+  /**
+   * Copies the points, from oldest to newest, into the provided arrays.
+   *
+   * @param xOut
+   *          destination for the x values, at least {@link #getCapacity()}
+   *          long.
+   * @param yOut
+   *          destination for the y values, at least {@link #getCapacity()}
+   *          long.
+   * @return the number of points copied.
+   */
+  public int copyTo(final float[] xOut, final float[] yOut) {
+    long end = this.published;
+    long start = this.getStart(end);
+    int count = (int) (end - start);
+    int first = (int) (start % this.capacity);
+    int firstPart = Math.min(count, this.capacity - first);
+    System.arraycopy(this.xValues, first, xOut, 0, firstPart);
+    System.arraycopy(this.yValues, first, yOut, 0, firstPart);
+    if (firstPart < count) {
+      System.arraycopy(this.xValues, 0, xOut, firstPart, count - firstPart);
+      System.arraycopy(this.yValues, 0, yOut, firstPart, count - firstPart);
+    }
+
+    // The writer may be storing the point after the latest published one, so
+    // the oldest valid point is one past the capacity behind it.
+    long validStart = Math.max(this.published - this.capacity + 1, start);
+    int skipped = (int) (validStart - start);
+    if (skipped <= 0) {
+      return count;
+    }
+    if (skipped >= count) {
+      return 0;
+    }
+    System.arraycopy(xOut, skipped, xOut, 0, count - skipped);
+    System.arraycopy(yOut, skipped, yOut, 0, count - skipped);
+    return count - skipped;
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis.structs;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Secondary index over signal-to-distance items, ordered by signal value.
+ * Locating the items within a range of signal values, or the nearest item above
+ * or below a signal value, takes logarithmic time in the number of items.
+ *
+ * Items must be removed from the index when they are removed from the
+ * time-ordered history.
+ *
+ * @author Robert Moore
+ *
+ */
+public class SignalToDistanceIndex {
+
+  /**
+   * Orders items by signal value, then by the natural (time) ordering so that
+   * it is consistent with the time-ordered history.
+   */
+  public static final Comparator<SignalToDistanceItem> SIGNAL_ORDER = new Comparator<SignalToDistanceItem>() {
+    @Override
+    public int compare(SignalToDistanceItem o1, SignalToDistanceItem o2) {
+      int diff = Float.compare(o1.getSignal(), o2.getSignal());
+      if (diff != 0) {
+        return diff;
+      }
+      return o1.compareTo(o2);
+    }
+  };
+
+  /**
+   * Probe timestamps. Halved because SignalToDistanceItem compares times by
+   * subtraction, which would overflow at the extremes.
+   */
+  private static final long MIN_PROBE_TIME = Long.MIN_VALUE / 2;
+
+  private static final long MAX_PROBE_TIME = Long.MAX_VALUE / 2;
+
+  protected final NavigableSet<SignalToDistanceItem> bySignal = new ConcurrentSkipListSet<SignalToDistanceItem>(
+      SIGNAL_ORDER);
+
+  public SignalToDistanceIndex() {
+    super();
+  }
+
+  /**
+   * Creates an index containing the items in {@code items}.
+   */
+  public SignalToDistanceIndex(final Collection<SignalToDistanceItem> items) {
+    this.bySignal.addAll(items);
+  }
+
+  public void add(final SignalToDistanceItem item) {
+    this.bySignal.add(item);
+  }
+
+  public void remove(final SignalToDistanceItem item) {
+    this.bySignal.remove(item);
+  }
+
+  public void clear() {
+    this.bySignal.clear();
+  }
+
+  public int size() {
+    return this.bySignal.size();
+  }
+
+  /**
+   * Returns the items with signal values in [{@code minSignal},
+   * {@code maxSignal}] and creation times in [{@code oldest},
+   * {@code youngest}], ordered by signal value.
+   */
+  public List<SignalToDistanceItem> getRange(final float minSignal,
+      final float maxSignal, final long oldest, final long youngest) {
+    LinkedList<SignalToDistanceItem> itemList = new LinkedList<SignalToDistanceItem>();
+    if (maxSignal < minSignal) {
+      return itemList;
+    }
+    for (SignalToDistanceItem item : this.bySignal.subSet(
+        lowerBound(minSignal), true, upperBound(maxSignal), true)) {
+      if (item.getCreationTime() >= oldest
+          && item.getCreationTime() <= youngest) {
+        itemList.add(item);
+      }
+    }
+    return itemList;
+  }
+
+  /**
+   * Returns the item with the smallest signal value strictly greater than
+   * {@code signal} within the time window, ignoring items to or from
+   * {@code excludedId}.
+   *
+   * @return the nearest item above {@code signal}, or {@code null} if there is
+   *         none.
+   */
+  public SignalToDistanceItem getNextAbove(final float signal,
+      final long oldest, final long youngest, final String excludedId) {
+    return firstMatch(
+        this.bySignal.tailSet(upperBound(signal), false).iterator(), oldest,
+        youngest, excludedId);
+  }
+
+  /**
+   * Returns the item with the largest signal value strictly less than
+   * {@code signal} within the time window, ignoring items to or from
+   * {@code excludedId}.
+   *
+   * @return the nearest item below {@code signal}, or {@code null} if there is
+   *         none.
+   */
+  public SignalToDistanceItem getNextBelow(final float signal,
+      final long oldest, final long youngest, final String excludedId) {
+    return firstMatch(
+        this.bySignal.headSet(lowerBound(signal), false).descendingIterator(),
+        oldest, youngest, excludedId);
+  }
+
+  private static SignalToDistanceItem firstMatch(
+      final Iterator<SignalToDistanceItem> iter, final long oldest,
+      final long youngest, final String excludedId) {
+    while (iter.hasNext()) {
+      SignalToDistanceItem item = iter.next();
+      if (item.getCreationTime() < oldest || item.getCreationTime() > youngest) {
+        continue;
+      }
+      if (excludedId != null
+          && (excludedId.equals(item.getRxer()) || excludedId.equals(item
+              .getTxer()))) {
+        continue;
+      }
+      return item;
+    }
+    return null;
+  }
+
+  /**
+   * @return a probe that sorts before every item with {@code signal}.
+   */
+  private static SignalToDistanceItem lowerBound(final float signal) {
+    return new SignalToDistanceItem("", "", 0f, signal, MIN_PROBE_TIME);
+  }
+
+  /**
+   * @return a probe that sorts after every item with {@code signal}.
+   */
+  private static SignalToDistanceItem upperBound(final float signal) {
+    return new SignalToDistanceItem("", "", 0f, signal, MAX_PROBE_TIME);
+  }
+}
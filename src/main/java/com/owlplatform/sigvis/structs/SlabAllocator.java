@@ -0,0 +1,269 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis.structs;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Allocates chunks of memory outside of the Java heap, from direct
+ * {@link ByteBuffer} slabs. Each slab is divided into chunks of a single
+ * power-of-two size, and each request is served from the smallest size that
+ * fits it. Chunks must be freed explicitly, after which they are reused by
+ * later requests. Slabs with no chunks in use are released by {@link #trim()}.
+ *
+ * Since nothing on the heap refers to the contents of a chunk, data stored
+ * here adds nothing to the work of the garbage collector.
+ *
+ * @author Robert Moore
+ *
+ */
+public class SlabAllocator {
+
+  /**
+   * Size of each slab in bytes.
+   */
+  public static final int SLAB_SIZE = 1 << 20;
+
+  /**
+   * Smallest chunk size in bytes.
+   */
+  public static final int MIN_CHUNK_SIZE = 64;
+
+  /**
+   * Largest chunk size in bytes. Larger requests are not served.
+   */
+  public static final int MAX_CHUNK_SIZE = 4096;
+
+  private static final int MIN_CHUNK_SHIFT = 6;
+
+  private static final int NUM_SIZE_CLASSES = 7;
+
+  /**
+   * A chunk of off-heap memory.
+   */
+  public static final class Chunk {
+    private final ByteBuffer slab;
+    private final int slabIndex;
+    private final int offset;
+    private final int length;
+    private boolean freed = false;
+
+    Chunk(final ByteBuffer slab, final int slabIndex, final int offset,
+        final int length) {
+      this.slab = slab;
+      this.slabIndex = slabIndex;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    /**
+     * @return the number of bytes requested for this chunk.
+     */
+    public int getLength() {
+      return this.length;
+    }
+
+    /**
+     * @return a new buffer over the contents of this chunk, with its own
+     *         position and limit.
+     */
+    public ByteBuffer getBuffer() {
+      ByteBuffer view = this.slab.duplicate();
+      view.limit(this.offset + this.length);
+      view.position(this.offset);
+      return view.slice();
+    }
+  }
+
+  private final List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+
+  /**
+   * Size class of each slab, or -1 for released slabs.
+   */
+  private int[] slabClasses = new int[8];
+
+  /**
+   * Chunks in use in each slab.
+   */
+  private int[] slabUsage = new int[8];
+
+  /**
+   * Free chunks of each size class, as slab index and offset pairs packed
+   * into longs.
+   */
+  private final long[][] freeChunks = new long[NUM_SIZE_CLASSES][];
+
+  private final int[] numFree = new int[NUM_SIZE_CLASSES];
+
+  private long allocatedBytes = 0;
+
+  public SlabAllocator() {
+    for (int i = 0; i < NUM_SIZE_CLASSES; ++i) {
+      this.freeChunks[i] = new long[16];
+    }
+  }
+
+  /**
+   * Allocates a chunk and copies {@code data} into it.
+   * 
+   * @return the chunk, or {@code null} if {@code data} is larger than
+   *         {@link #MAX_CHUNK_SIZE}.
+   */
+  public Chunk store(final byte[] data) {
+    Chunk chunk = this.allocate(data.length);
+    if (chunk != null) {
+      ByteBuffer buffer = chunk.getBuffer();
+      buffer.put(data);
+    }
+    return chunk;
+  }
+
+  /**
+   * Allocates a chunk of at least {@code length} bytes.
+   * 
+   * @return the chunk, or {@code null} if {@code length} is larger than
+   *         {@link #MAX_CHUNK_SIZE}.
+   */
+  public synchronized Chunk allocate(final int length) {
+    if (length > MAX_CHUNK_SIZE) {
+      return null;
+    }
+    int sizeClass = sizeClass(length);
+    if (this.numFree[sizeClass] == 0) {
+      this.addSlab(sizeClass);
+    }
+    long packed = this.freeChunks[sizeClass][--this.numFree[sizeClass]];
+    int slabIndex = (int) (packed >>> 32);
+    ++this.slabUsage[slabIndex];
+    this.allocatedBytes += chunkSize(sizeClass);
+    return new Chunk(this.slabs.get(slabIndex), slabIndex, (int) packed,
+        length);
+  }
+
+  /**
+   * Returns a chunk for reuse. Freeing a chunk more than once has no effect.
+   */
+  public synchronized void free(final Chunk chunk) {
+    if (chunk.freed || this.slabs.get(chunk.slabIndex) != chunk.slab) {
+      return;
+    }
+    chunk.freed = true;
+    int sizeClass = this.slabClasses[chunk.slabIndex];
+    this.pushFree(sizeClass, chunk.slabIndex, chunk.offset);
+    --this.slabUsage[chunk.slabIndex];
+    this.allocatedBytes -= chunkSize(sizeClass);
+  }
+
+  /**
+   * Releases the slabs with no chunks in use, so that their memory can be
+   * returned to the system.
+   */
+  public synchronized void trim() {
+    for (int i = 0; i < this.slabs.size(); ++i) {
+      if (this.slabs.get(i) != null && this.slabUsage[i] == 0) {
+        this.slabs.set(i, null);
+        this.slabClasses[i] = -1;
+      }
+    }
+    // Drop the free chunks of released slabs
+    for (int sizeClass = 0; sizeClass < NUM_SIZE_CLASSES; ++sizeClass) {
+      long[] free = this.freeChunks[sizeClass];
+      int kept = 0;
+      for (int i = 0; i < this.numFree[sizeClass]; ++i) {
+        if (this.slabs.get((int) (free[i] >>> 32)) != null) {
+          free[kept++] = free[i];
+        }
+      }
+      this.numFree[sizeClass] = kept;
+    }
+  }
+
+  /**
+   * @return the number of bytes in chunks that are in use.
+   */
+  public synchronized long getAllocatedBytes() {
+    return this.allocatedBytes;
+  }
+
+  /**
+   * @return the number of bytes in slabs that haven't been released.
+   */
+  public synchronized long getReservedBytes() {
+    long reserved = 0;
+    for (ByteBuffer slab : this.slabs) {
+      if (slab != null) {
+        reserved += SLAB_SIZE;
+      }
+    }
+    return reserved;
+  }
+
+  private void addSlab(final int sizeClass) {
+    int slabIndex = this.slabs.indexOf(null);
+    ByteBuffer slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+    if (slabIndex < 0) {
+      slabIndex = this.slabs.size();
+      this.slabs.add(slab);
+      if (slabIndex == this.slabClasses.length) {
+        int[] classes = new int[slabIndex * 2];
+        System.arraycopy(this.slabClasses, 0, classes, 0, slabIndex);
+        this.slabClasses = classes;
+        int[] usage = new int[slabIndex * 2];
+        System.arraycopy(this.slabUsage, 0, usage, 0, slabIndex);
+        this.slabUsage = usage;
+      }
+    } else {
+      this.slabs.set(slabIndex, slab);
+    }
+    this.slabClasses[slabIndex] = sizeClass;
+    this.slabUsage[slabIndex] = 0;
+    int chunkSize = chunkSize(sizeClass);
+    // Push in reverse so chunks are handed out from the start of the slab
+    for (int offset = SLAB_SIZE - chunkSize; offset >= 0; offset -= chunkSize) {
+      this.pushFree(sizeClass, slabIndex, offset);
+    }
+  }
+
+  private void pushFree(final int sizeClass, final int slabIndex,
+      final int offset) {
+    long[] free = this.freeChunks[sizeClass];
+    if (this.numFree[sizeClass] == free.length) {
+      long[] grown = new long[free.length * 2];
+      System.arraycopy(free, 0, grown, 0, free.length);
+      this.freeChunks[sizeClass] = grown;
+      free = grown;
+    }
+    free[this.numFree[sizeClass]++] = ((long) slabIndex << 32) | offset;
+  }
+
+  private static int sizeClass(final int length) {
+    int sizeClass = 0;
+    while ((MIN_CHUNK_SIZE << sizeClass) < length) {
+      ++sizeClass;
+    }
+    return sizeClass;
+  }
+
+  private static int chunkSize(final int sizeClass) {
+    return 1 << (MIN_CHUNK_SHIFT + sizeClass);
+  }
+}
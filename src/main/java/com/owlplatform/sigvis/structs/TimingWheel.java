@@ -0,0 +1,234 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis.structs;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel that tells each scheduled item when it is due.
+ * Scheduling an item takes constant time, and advancing the wheel only touches
+ * items whose slots have come up, rather than every scheduled item.
+ *
+ * The lowest level has one slot per tick. Each higher level has slots that
+ * span a full turn of the level below it, and its items are moved down a level
+ * as their slots come up. Items due beyond the highest level wait in an
+ * overflow list until the highest level wraps around.
+ *
+ * @author Robert Moore
+ *
+ */
+public class TimingWheel<T> {
+
+  /**
+   * Called for each item once it is due.
+   */
+  public static interface Handler<T> {
+    /**
+     * @param item
+     *          the due item.
+     * @param now
+     *          the time that the wheel was advanced to.
+     * @return the next time that {@code item} is due, or a negative value to
+     *         stop scheduling it.
+     */
+    public long itemDue(final T item, final long now);
+  }
+
+  private static final int SLOT_BITS = 6;
+
+  private static final int NUM_SLOTS = 1 << SLOT_BITS;
+
+  private static final int SLOT_MASK = NUM_SLOTS - 1;
+
+  private static final int NUM_LEVELS = 3;
+
+  private static class Entry<T> {
+    final T item;
+    final long dueTick;
+
+    Entry(final T item, final long dueTick) {
+      this.item = item;
+      this.dueTick = dueTick;
+    }
+  }
+
+  private final long tickLength;
+
+  /**
+   * Slots for each level, indexed by {@code level * NUM_SLOTS + slot}.
+   */
+  private final List<List<Entry<T>>> slots;
+
+  private final List<Entry<T>> overflow = new ArrayList<Entry<T>>();
+
+  /**
+   * Items that are due but haven't been handed to the handler yet.
+   */
+  private final ArrayDeque<Entry<T>> ready = new ArrayDeque<Entry<T>>();
+
+  /**
+   * The last tick that has been processed.
+   */
+  private long currentTick;
+
+  private int size = 0;
+
+  /**
+   * @param tickLength
+   *          the resolution of the wheel, in milliseconds.
+   * @param startTime
+   *          the current time, in milliseconds.
+   */
+  public TimingWheel(final long tickLength, final long startTime) {
+    if (tickLength < 1) {
+      throw new IllegalArgumentException("Tick length must be positive.");
+    }
+    this.tickLength = tickLength;
+    this.currentTick = startTime / tickLength;
+    this.slots = new ArrayList<List<Entry<T>>>(NUM_LEVELS * NUM_SLOTS);
+    for (int i = 0; i < NUM_LEVELS * NUM_SLOTS; ++i) {
+      this.slots.add(new ArrayList<Entry<T>>());
+    }
+  }
+
+  public long getTickLength() {
+    return this.tickLength;
+  }
+
+  /**
+   * Schedules {@code item} to be handed to the handler once the wheel has
+   * advanced past {@code dueTime}.
+   */
+  public synchronized void schedule(final T item, final long dueTime) {
+    ++this.size;
+    // Round up so that an item is never handed out before it is due
+    this.place(new Entry<T>(item, (dueTime + this.tickLength - 1)
+        / this.tickLength));
+  }
+
+  /**
+   * @return the number of scheduled items, including those that are due.
+   */
+  public synchronized int size() {
+    return this.size;
+  }
+
+  /**
+   * Removes every scheduled item.
+   */
+  public synchronized void clear() {
+    for (List<Entry<T>> slot : this.slots) {
+      slot.clear();
+    }
+    this.overflow.clear();
+    this.ready.clear();
+    this.size = 0;
+  }
+
+  private void place(final Entry<T> entry) {
+    long delta = entry.dueTick - this.currentTick;
+    if (delta <= 0) {
+      this.ready.add(entry);
+      return;
+    }
+    for (int level = 0; level < NUM_LEVELS; ++level) {
+      if (delta < (1L << (SLOT_BITS * (level + 1)))) {
+        int slot = (int) ((entry.dueTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        this.slots.get(level * NUM_SLOTS + slot).add(entry);
+        return;
+      }
+    }
+    this.overflow.add(entry);
+  }
+
+  /**
+   * Advances the wheel to {@code now} and hands up to {@code budget} due items
+   * to {@code handler}, rescheduling them at the times it returns. Due items
+   * beyond the budget are handled by later calls.
+   *
+   * @return the number of items handled.
+   */
+  public int advance(final long now, final int budget,
+      final Handler<T> handler) {
+    synchronized (this) {
+      long nowTick = now / this.tickLength;
+      while (this.currentTick < nowTick) {
+        this.tick();
+      }
+    }
+
+    int handled = 0;
+    while (handled < budget) {
+      Entry<T> entry;
+      synchronized (this) {
+        entry = this.ready.poll();
+        if (entry == null) {
+          break;
+        }
+        --this.size;
+      }
+      long nextDue = handler.itemDue(entry.item, now);
+      if (nextDue >= 0) {
+        this.schedule(entry.item, nextDue);
+      }
+      ++handled;
+    }
+    return handled;
+  }
+
+  /**
+   * Processes the next tick. Must be called while holding this object's lock.
+   */
+  private void tick() {
+    long tick = ++this.currentTick;
+    // Move items down from higher levels when the levels below wrap around,
+    // starting from the highest level
+    if ((tick & SLOT_MASK) == 0) {
+      int topLevel = 1;
+      while (topLevel < NUM_LEVELS - 1
+          && ((tick >>> (SLOT_BITS * topLevel)) & SLOT_MASK) == 0) {
+        ++topLevel;
+      }
+      if (topLevel == NUM_LEVELS - 1
+          && ((tick >>> (SLOT_BITS * NUM_LEVELS - SLOT_BITS)) & SLOT_MASK) == 0) {
+        this.cascade(this.overflow);
+      }
+      for (int level = topLevel; level >= 1; --level) {
+        int slot = (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        this.cascade(this.slots.get(level * NUM_SLOTS + slot));
+      }
+    }
+    List<Entry<T>> slot = this.slots.get((int) (tick & SLOT_MASK));
+    this.cascade(slot);
+  }
+
+  private void cascade(final List<Entry<T>> entries) {
+    if (entries.isEmpty()) {
+      return;
+    }
+    List<Entry<T>> moved = new ArrayList<Entry<T>>(entries);
+    entries.clear();
+    for (Entry<T> entry : moved) {
+      this.place(entry);
+    }
+  }
+}
@@ -0,0 +1,317 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis.structs;
+
+/**
+ * Count, mean, variance, minimum and maximum of the values within a sliding
+ * time window. Values are kept in a ring buffer along with running sums, and
+ * the minimum and maximum are tracked with monotonic queues, so adding and
+ * evicting values take amortized constant time.
+ *
+ * Timestamps are expected to arrive in order. A value older than the newest
+ * value is treated as if it arrived at the same time as the newest value. NaN
+ * values are not added to the window, only counted.
+ *
+ * @author Robert Moore
+ *
+ */
+public class WindowAggregate {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * Summary of the values in a window at a single point in time.
+   */
+  public static class Stats {
+    private final long window;
+    private final int count;
+    private final float mean;
+    private final float variance;
+    private final float min;
+    private final float max;
+    private final long newestTime;
+
+    Stats(final long window, final int count, final float mean,
+        final float variance, final float min, final float max,
+        final long newestTime) {
+      this.window = window;
+      this.count = count;
+      this.mean = mean;
+      this.variance = variance;
+      this.min = min;
+      this.max = max;
+      this.newestTime = newestTime;
+    }
+
+    /**
+     * @return the length of the window, in milliseconds.
+     */
+    public long getWindow() {
+      return this.window;
+    }
+
+    public int getCount() {
+      return this.count;
+    }
+
+    public float getMean() {
+      return this.mean;
+    }
+
+    /**
+     * @return the sample variance of the values, or 0 if there is only one.
+     */
+    public float getVariance() {
+      return this.variance;
+    }
+
+    public float getMin() {
+      return this.min;
+    }
+
+    public float getMax() {
+      return this.max;
+    }
+
+    /**
+     * @return the timestamp of the newest value in the window.
+     */
+    public long getNewestTime() {
+      return this.newestTime;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d values in %dms: mean %.2f, var %.2f, [%.2f, %.2f]",
+          Integer.valueOf(this.count), Long.valueOf(this.window),
+          Float.valueOf(this.mean), Float.valueOf(this.variance),
+          Float.valueOf(this.min), Float.valueOf(this.max));
+    }
+  }
+
+  private final long window;
+
+  /**
+   * Ring buffer of timestamps and values, indexed by sequence number.
+   */
+  private long[] times = new long[INITIAL_CAPACITY];
+
+  private float[] values = new float[INITIAL_CAPACITY];
+
+  /**
+   * Sequence number of the oldest value in the window.
+   */
+  private long head = 0;
+
+  /**
+   * Sequence number of the next value to be added.
+   */
+  private long tail = 0;
+
+  /**
+   * Sequence numbers of values in increasing order, for the minimum.
+   */
+  private long[] minQueue = new long[INITIAL_CAPACITY];
+
+  private int minHead = 0;
+
+  private int minSize = 0;
+
+  /**
+   * Sequence numbers of values in decreasing order, for the maximum.
+   */
+  private long[] maxQueue = new long[INITIAL_CAPACITY];
+
+  private int maxHead = 0;
+
+  private int maxSize = 0;
+
+  private double sum = 0;
+
+  private double sumSquares = 0;
+
+  private long newest = Long.MIN_VALUE;
+
+  private long skippedNaN = 0;
+
+  /**
+   * @param window
+   *          the length of the window, in milliseconds.
+   */
+  public WindowAggregate(final long window) {
+    this.window = window;
+  }
+
+  public long getWindow() {
+    return this.window;
+  }
+
+  /**
+   * @return the number of NaN values that were not added to the window.
+   */
+  public synchronized long getSkippedNaN() {
+    return this.skippedNaN;
+  }
+
+  /**
+   * Adds a value to the window and evicts any values that fall outside of it.
+   * A NaN value is skipped, since it would make the sums NaN until it was
+   * evicted.
+   */
+  public synchronized void add(final float value, final long timestamp) {
+    if (Float.isNaN(value)) {
+      ++this.skippedNaN;
+      return;
+    }
+    long time = timestamp;
+    if (time < this.newest) {
+      time = this.newest;
+    } else {
+      this.newest = time;
+    }
+
+    if (this.tail - this.head == this.times.length) {
+      this.grow();
+    }
+    int mask = this.times.length - 1;
+    int index = (int) (this.tail & mask);
+    this.times[index] = time;
+    this.values[index] = value;
+
+    while (this.maxSize > 0
+        && this.valueAt(this.maxQueue[(this.maxHead + this.maxSize - 1) & mask]) <= value) {
+      --this.maxSize;
+    }
+    this.maxQueue[(this.maxHead + this.maxSize++) & mask] = this.tail;
+
+    while (this.minSize > 0
+        && this.valueAt(this.minQueue[(this.minHead + this.minSize - 1) & mask]) >= value) {
+      --this.minSize;
+    }
+    this.minQueue[(this.minHead + this.minSize++) & mask] = this.tail;
+
+    this.sum += value;
+    this.sumSquares += (double) value * value;
+    ++this.tail;
+
+    this.evict(time);
+  }
+
+  /**
+   * Removes values older than {@code now} minus the window length.
+   */
+  public synchronized void evict(final long now) {
+    long oldest = now - this.window;
+    int mask = this.times.length - 1;
+    while (this.head < this.tail && this.times[(int) (this.head & mask)] < oldest) {
+      float value = this.values[(int) (this.head & mask)];
+      this.sum -= value;
+      this.sumSquares -= (double) value * value;
+      if (this.maxSize > 0 && this.maxQueue[this.maxHead] == this.head) {
+        this.maxHead = (this.maxHead + 1) & mask;
+        --this.maxSize;
+      }
+      if (this.minSize > 0 && this.minQueue[this.minHead] == this.head) {
+        this.minHead = (this.minHead + 1) & mask;
+        --this.minSize;
+      }
+      ++this.head;
+    }
+    if (this.head == this.tail) {
+      // Don't let rounding errors accumulate across an empty window
+      this.sum = 0;
+      this.sumSquares = 0;
+    }
+  }
+
+  public synchronized void clear() {
+    this.head = 0;
+    this.tail = 0;
+    this.minHead = 0;
+    this.minSize = 0;
+    this.maxHead = 0;
+    this.maxSize = 0;
+    this.sum = 0;
+    this.sumSquares = 0;
+    this.newest = Long.MIN_VALUE;
+    this.skippedNaN = 0;
+  }
+
+  /**
+   * Evicts values that are older than the window as of {@code now}, and then
+   * summarizes the remaining values.
+   *
+   * @return the summary, or {@code null} if the window is empty.
+   */
+  public synchronized Stats getStats(final long now) {
+    this.evict(now);
+    int count = (int) (this.tail - this.head);
+    if (count == 0) {
+      return null;
+    }
+    double mean = this.sum / count;
+    double variance = 0;
+    if (count > 1) {
+      variance = (this.sumSquares - this.sum * mean) / (count - 1);
+      if (variance < 0) {
+        variance = 0;
+      }
+    }
+    return new Stats(this.window, count, (float) mean, (float) variance,
+        this.valueAt(this.minQueue[this.minHead]),
+        this.valueAt(this.maxQueue[this.maxHead]), this.newest);
+  }
+
+  private float valueAt(final long sequence) {
+    return this.values[(int) (sequence & (this.values.length - 1))];
+  }
+
+  /**
+   * Doubles the capacity of the ring buffer and queues.
+   */
+  private void grow() {
+    int oldMask = this.times.length - 1;
+    int capacity = this.times.length * 2;
+    int mask = capacity - 1;
+
+    long[] newTimes = new long[capacity];
+    float[] newValues = new float[capacity];
+    for (long seq = this.head; seq < this.tail; ++seq) {
+      newTimes[(int) (seq & mask)] = this.times[(int) (seq & oldMask)];
+      newValues[(int) (seq & mask)] = this.values[(int) (seq & oldMask)];
+    }
+    this.times = newTimes;
+    this.values = newValues;
+
+    long[] newMin = new long[capacity];
+    for (int i = 0; i < this.minSize; ++i) {
+      newMin[i] = this.minQueue[(this.minHead + i) & oldMask];
+    }
+    this.minQueue = newMin;
+    this.minHead = 0;
+
+    long[] newMax = new long[capacity];
+    for (int i = 0; i < this.maxSize; ++i) {
+      newMax[i] = this.maxQueue[(this.maxHead + i) & oldMask];
+    }
+    this.maxQueue = newMax;
+    this.maxHead = 0;
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import com.owlplatform.sigvis.structs.ChartItem;
+import com.owlplatform.sigvis.structs.ChartItemTimeComparator;
+import com.owlplatform.sigvis.structs.CompactSeries;
+import com.owlplatform.sigvis.structs.SimpleChartItem;
+
+/**
+ * Measures the heap used by a full cache of RSSI and variance values, stored
+ * both as sets of chart items (as the cache used to store them) and as compact
+ * series. Run with a fixed heap size, for example {@code -Xms1g -Xmx1g}, so
+ * that the measurements aren't disturbed by the heap resizing.
+ * 
+ * @author Robert Moore
+ * 
+ */
+public class FootprintBenchmark {
+
+  public static final String USAGE = "Usage: FootprintBenchmark [LINKS [MINUTES [PERIOD_MS]]]\n"
+      + "  LINKS      number of receiver/transmitter links (default 500)\n"
+      + "  MINUTES    minutes of values per link (default 10)\n"
+      + "  PERIOD_MS  time between values on a link (default 1000)";
+
+  public static void main(String[] args) {
+    int numLinks = 500;
+    int minutes = 10;
+    long period = 1000;
+    try {
+      if (args.length > 0) {
+        numLinks = Integer.parseInt(args[0]);
+      }
+      if (args.length > 1) {
+        minutes = Integer.parseInt(args[1]);
+      }
+      if (args.length > 2) {
+        period = Long.parseLong(args[2]);
+      }
+    } catch (NumberFormatException nfe) {
+      System.err.println(USAGE);
+      return;
+    }
+    if (numLinks < 1 || minutes < 1 || period < 1) {
+      System.err.println(USAGE);
+      return;
+    }
+
+    int perLink = (int) (minutes * 60000L / period);
+    // RSSI and variance series for every link
+    long numValues = 2L * numLinks * perLink;
+    System.out.printf("%,d links, %d minutes at %d ms: %,d values%n",
+        Integer.valueOf(numLinks), Integer.valueOf(minutes),
+        Long.valueOf(period), Long.valueOf(numValues));
+
+    long before = usedHeap();
+    List<NavigableSet<ChartItem<Float>>> sets = buildSets(numLinks, perLink,
+        period);
+    long setBytes = usedHeap() - before;
+    report("Chart item sets", setBytes, numValues);
+    sets.clear();
+    sets = null;
+
+    before = usedHeap();
+    List<CompactSeries> series = buildSeries(numLinks, perLink, period);
+    long seriesBytes = usedHeap() - before;
+    report("Compact series", seriesBytes, numValues);
+
+    long estimated = 0;
+    for (CompactSeries s : series) {
+      estimated += s.getMemoryBytes();
+    }
+    report("Compact estimate", estimated, numValues);
+    long sealed = 0;
+    for (CompactSeries s : series) {
+      sealed += s.getSealedSize();
+    }
+    System.out.printf("%,d of %,d compact values are in sealed blocks.%n",
+        Long.valueOf(sealed), Long.valueOf(numValues));
+    if (seriesBytes > 0) {
+      System.out.printf("Compact series use %.1fx less heap.%n",
+          Double.valueOf((double) setBytes / seriesBytes));
+    }
+  }
+
+  private static List<NavigableSet<ChartItem<Float>>> buildSets(
+      final int numLinks, final int perLink, final long period) {
+    Random random = new Random(numLinks);
+    long start = System.currentTimeMillis();
+    List<NavigableSet<ChartItem<Float>>> sets = new ArrayList<NavigableSet<ChartItem<Float>>>();
+    for (int i = 0; i < 2 * numLinks; ++i) {
+      NavigableSet<ChartItem<Float>> set = new ConcurrentSkipListSet<ChartItem<Float>>(
+          new ChartItemTimeComparator(false));
+      float value = firstValue(i);
+      for (int j = 0; j < perLink; ++j) {
+        value = nextValue(random, value);
+        set.add(new SimpleChartItem<Float>(Float.valueOf(value), start + j
+            * period + random.nextInt(20)));
+      }
+      sets.add(set);
+    }
+    return sets;
+  }
+
+  private static List<CompactSeries> buildSeries(final int numLinks,
+      final int perLink, final long period) {
+    Random random = new Random(numLinks);
+    long start = System.currentTimeMillis();
+    List<CompactSeries> series = new ArrayList<CompactSeries>();
+    for (int i = 0; i < 2 * numLinks; ++i) {
+      CompactSeries s = new CompactSeries();
+      float value = firstValue(i);
+      for (int j = 0; j < perLink; ++j) {
+        value = nextValue(random, value);
+        s.add(value, start + j * period + random.nextInt(20));
+      }
+      series.add(s);
+    }
+    return series;
+  }
+
+  /**
+   * @return an RSSI value for even series and a variance value for odd ones.
+   */
+  private static float firstValue(final int series) {
+    return series % 2 == 0 ? -60f : 4f;
+  }
+
+  /**
+   * @return the next value of a random walk, like a smoothed link average.
+   */
+  private static float nextValue(final Random random, final float previous) {
+    float next = previous + (random.nextInt(9) - 4) * 0.125f;
+    // Variances stay positive
+    return previous > 0 ? Math.max(0f, next) : next;
+  }
+
+  private static void report(final String name, final long bytes,
+      final long numValues) {
+    System.out.printf("%-17s %,12d bytes, %6.1f bytes per value%n", name,
+        Long.valueOf(bytes), Double.valueOf((double) bytes / numValues));
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 4; ++i) {
+      System.gc();
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
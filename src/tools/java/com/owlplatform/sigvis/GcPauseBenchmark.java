@@ -0,0 +1,316 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import com.owlplatform.sigvis.structs.ChartItem;
+import com.owlplatform.sigvis.structs.ChartItemTimeComparator;
+import com.owlplatform.sigvis.structs.CompactSeries;
+import com.owlplatform.sigvis.structs.SimpleChartItem;
+import com.owlplatform.sigvis.structs.SlabAllocator;
+
+/**
+ * Compares garbage collection pauses for a full cache of RSSI and variance
+ * values stored as sets of chart items, as compact series on the heap, and as
+ * compact series with their sealed blocks off the heap. The cache is filled,
+ * and then values are appended, expired and read as fast as possible while a
+ * ticker thread measures how late it wakes up.
+ * 
+ * Run each mode in its own JVM with the same fixed heap size, for example
+ * {@code -Xms512m -Xmx512m}, so the collectors start from the same state.
+ * 
+ * @author Robert Moore
+ * 
+ */
+public class GcPauseBenchmark {
+
+  public static final String USAGE = "Usage: GcPauseBenchmark sets|heap|offheap [LINKS [MINUTES [SECONDS]]]\n"
+      + "  sets      store values in sets of chart items\n"
+      + "  heap      store values in compact series on the heap\n"
+      + "  offheap   store sealed blocks of compact series off the heap\n"
+      + "  LINKS     number of receiver/transmitter links (default 500)\n"
+      + "  MINUTES   minutes of values kept per link (default 30)\n"
+      + "  SECONDS   how long to run after filling the cache (default 30)";
+
+  /**
+   * Time between values on a link, in simulated milliseconds.
+   */
+  private static final long PERIOD = 1000;
+
+  /**
+   * How often the ticker thread wakes up, in milliseconds.
+   */
+  private static final long TICK = 5;
+
+  /**
+   * Stalls longer than this are counted, in milliseconds.
+   */
+  private static final long LONG_STALL = 50;
+
+  /**
+   * A series stored one of the ways being compared.
+   */
+  private abstract static class Series {
+    abstract void add(float value, long time);
+
+    abstract void removeBefore(long time);
+
+    abstract int countRange(long oldest, long youngest);
+  }
+
+  private static final class SetSeries extends Series {
+    private final NavigableSet<ChartItem<Float>> items = new ConcurrentSkipListSet<ChartItem<Float>>(
+        new ChartItemTimeComparator(false));
+
+    @Override
+    void add(final float value, final long time) {
+      this.items.add(new SimpleChartItem<Float>(Float.valueOf(value), time));
+    }
+
+    @Override
+    void removeBefore(final long time) {
+      while (!this.items.isEmpty()
+          && this.items.first().getCreationTime() < time) {
+        this.items.pollFirst();
+      }
+    }
+
+    @Override
+    int countRange(final long oldest, final long youngest) {
+      int count = 0;
+      for (ChartItem<Float> item : this.items) {
+        long time = item.getCreationTime();
+        if (time > youngest) {
+          break;
+        }
+        if (time >= oldest) {
+          ++count;
+        }
+      }
+      return count;
+    }
+  }
+
+  private static final class CompactSeriesAdapter extends Series {
+    private final CompactSeries series;
+
+    CompactSeriesAdapter(final SlabAllocator offHeap) {
+      this.series = new CompactSeries(CompactSeries.DEFAULT_RESOLUTION,
+          offHeap);
+    }
+
+    @Override
+    void add(final float value, final long time) {
+      this.series.add(value, time);
+    }
+
+    @Override
+    void removeBefore(final long time) {
+      this.series.removeBefore(time);
+    }
+
+    @Override
+    int countRange(final long oldest, final long youngest) {
+      return this.series.getRange(oldest, youngest).size();
+    }
+  }
+
+  /**
+   * Sleeps for a tick at a time and records how much later than expected it
+   * wakes up.
+   */
+  private static final class Ticker extends Thread {
+    private volatile boolean running = true;
+    private volatile long maxStall = 0;
+    private volatile int longStalls = 0;
+    private long totalStall = 0;
+    private int ticks = 0;
+
+    Ticker() {
+      super("GC Pause Ticker");
+      this.setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      long last = System.nanoTime();
+      while (this.running) {
+        try {
+          Thread.sleep(TICK);
+        } catch (InterruptedException ie) {
+          return;
+        }
+        long now = System.nanoTime();
+        long stall = (now - last) / 1000000 - TICK;
+        last = now;
+        if (stall < 0) {
+          stall = 0;
+        }
+        synchronized (this) {
+          this.totalStall += stall;
+          ++this.ticks;
+        }
+        if (stall > this.maxStall) {
+          this.maxStall = stall;
+        }
+        if (stall >= LONG_STALL) {
+          ++this.longStalls;
+        }
+      }
+    }
+
+    synchronized double getMeanStall() {
+      return this.ticks == 0 ? 0 : (double) this.totalStall / this.ticks;
+    }
+  }
+
+  public static void main(String[] args) {
+    if (args.length < 1) {
+      System.err.println(USAGE);
+      return;
+    }
+    String mode = args[0];
+    int numLinks = 500;
+    int minutes = 30;
+    int seconds = 30;
+    try {
+      if (args.length > 1) {
+        numLinks = Integer.parseInt(args[1]);
+      }
+      if (args.length > 2) {
+        minutes = Integer.parseInt(args[2]);
+      }
+      if (args.length > 3) {
+        seconds = Integer.parseInt(args[3]);
+      }
+    } catch (NumberFormatException nfe) {
+      System.err.println(USAGE);
+      return;
+    }
+    if (numLinks < 1 || minutes < 1 || seconds < 1) {
+      System.err.println(USAGE);
+      return;
+    }
+
+    SlabAllocator offHeap = null;
+    if ("offheap".equals(mode)) {
+      offHeap = new SlabAllocator();
+    } else if (!"sets".equals(mode) && !"heap".equals(mode)) {
+      System.err.println(USAGE);
+      return;
+    }
+
+    // RSSI and variance series for every link
+    List<Series> series = new ArrayList<Series>();
+    for (int i = 0; i < 2 * numLinks; ++i) {
+      series.add("sets".equals(mode) ? new SetSeries()
+          : new CompactSeriesAdapter(offHeap));
+    }
+    float[] values = new float[series.size()];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = i % 2 == 0 ? -60f : 4f;
+    }
+    Random random = new Random(numLinks);
+    long retention = minutes * 60000L;
+    long time = 0;
+
+    System.out.printf("%s: %,d links, %d minutes kept, %d seconds%n", mode,
+        Integer.valueOf(numLinks), Integer.valueOf(minutes),
+        Integer.valueOf(seconds));
+    for (; time < retention; time += PERIOD) {
+      appendAll(series, values, random, time);
+    }
+    System.gc();
+    GcTotals before = new GcTotals();
+
+    Ticker ticker = new Ticker();
+    ticker.start();
+    long end = System.currentTimeMillis() + seconds * 1000L;
+    long rounds = 0;
+    long read = 0;
+    while (System.currentTimeMillis() < end) {
+      appendAll(series, values, random, time);
+      for (Series s : series) {
+        s.removeBefore(time - retention);
+      }
+      // Redraw a few charts of the last five minutes
+      for (int i = 0; i < 4; ++i) {
+        read += series.get(random.nextInt(series.size())).countRange(
+            time - 300000, time);
+      }
+      time += PERIOD;
+      ++rounds;
+    }
+    ticker.running = false;
+    GcTotals after = new GcTotals();
+
+    System.out.printf("%,d rounds, %,d values appended, %,d values read%n",
+        Long.valueOf(rounds), Long.valueOf(rounds * series.size()),
+        Long.valueOf(read));
+    System.out.printf("GC: %,d collections, %,d ms total%n",
+        Long.valueOf(after.count - before.count),
+        Long.valueOf(after.time - before.time));
+    System.out.printf(
+        "Ticker stalls: max %d ms, mean %.2f ms, %d over %d ms%n",
+        Long.valueOf(ticker.maxStall), Double.valueOf(ticker.getMeanStall()),
+        Integer.valueOf(ticker.longStalls), Long.valueOf(LONG_STALL));
+    Runtime runtime = Runtime.getRuntime();
+    System.out.printf("Heap used: %,d bytes%n",
+        Long.valueOf(runtime.totalMemory() - runtime.freeMemory()));
+    if (offHeap != null) {
+      System.out.printf("Off-heap: %,d bytes used, %,d bytes reserved%n",
+          Long.valueOf(offHeap.getAllocatedBytes()),
+          Long.valueOf(offHeap.getReservedBytes()));
+    }
+  }
+
+  private static void appendAll(final List<Series> series,
+      final float[] values, final Random random, final long time) {
+    for (int i = 0; i < values.length; ++i) {
+      float next = values[i] + (random.nextInt(9) - 4) * 0.125f;
+      // Variances stay positive
+      values[i] = values[i] > 0 ? Math.max(0f, next) : next;
+      series.get(i).add(values[i], time + random.nextInt(20));
+    }
+  }
+
+  /**
+   * Collection counts and times summed over every collector.
+   */
+  private static final class GcTotals {
+    long count = 0;
+    long time = 0;
+
+    GcTotals() {
+      for (GarbageCollectorMXBean gc : ManagementFactory
+          .getGarbageCollectorMXBeans()) {
+        this.count += Math.max(0, gc.getCollectionCount());
+        this.time += Math.max(0, gc.getCollectionTime());
+      }
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis.panels;
+
+import java.util.Random;
+
+/**
+ * Compares the fast and exact segment intersection methods on randomly placed
+ * links. Each link connects two of a set of random device locations, like the
+ * links drawn by {@link IntersectionLineMap}.
+ *
+ * Usage: {@code IntersectionBenchmark [--fast-only] [numLines ...]}, which
+ * defaults to 500 and 2000 lines.
+ *
+ * @author Robert Moore
+ *
+ */
+public class IntersectionBenchmark {
+
+  private static final int WARMUP_RUNS = 3;
+
+  private static final int TIMED_RUNS = 10;
+
+  private static final float REGION_SIZE = 100f;
+
+  public static void main(String[] args) {
+    boolean fastOnly = false;
+    int numCounts = 0;
+    int[] counts = new int[args.length];
+    for (String arg : args) {
+      if ("--fast-only".equals(arg)) {
+        fastOnly = true;
+      } else {
+        counts[numCounts++] = Integer.parseInt(arg);
+      }
+    }
+    if (numCounts == 0) {
+      counts = new int[] { 500, 2000 };
+      numCounts = counts.length;
+    }
+
+    for (int i = 0; i < numCounts; ++i) {
+      float[] segments = generateLinks(counts[i], new Random(counts[i]));
+      System.out.println(String.format("%d lines:", Integer.valueOf(counts[i])));
+      runFast(segments, counts[i]);
+      if (!fastOnly) {
+        runExact(segments, counts[i]);
+      }
+    }
+  }
+
+  /**
+   * Generates {@code numLines} links between random device locations. The
+   * number of devices grows with the square root of the number of links, so
+   * many links share endpoints.
+   */
+  static float[] generateLinks(final int numLines, final Random rand) {
+    int numDevices = Math.max(10, (int) Math.ceil(Math.sqrt(numLines * 2.0)));
+    float[] devices = new float[numDevices * 2];
+    for (int i = 0; i < devices.length; ++i) {
+      devices[i] = rand.nextFloat() * REGION_SIZE;
+    }
+    float[] segments = new float[numLines * 4];
+    for (int i = 0; i < numLines; ++i) {
+      int a = rand.nextInt(numDevices);
+      int b = rand.nextInt(numDevices - 1);
+      if (b >= a) {
+        ++b;
+      }
+      segments[i * 4] = devices[a * 2];
+      segments[i * 4 + 1] = devices[a * 2 + 1];
+      segments[i * 4 + 2] = devices[b * 2];
+      segments[i * 4 + 3] = devices[b * 2 + 1];
+    }
+    return segments;
+  }
+
+  private static void runFast(final float[] segments, final int numLines) {
+    int found = 0;
+    for (int i = 0; i < WARMUP_RUNS; ++i) {
+      found = SegmentIntersections.fast(segments, numLines).size();
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < TIMED_RUNS; ++i) {
+      found = SegmentIntersections.fast(segments, numLines).size();
+    }
+    long elapsed = System.nanoTime() - start;
+    System.out.println(String.format("  fast:  %10.3f ms/frame, %d points",
+        Double.valueOf(elapsed / (TIMED_RUNS * 1e6)), Integer.valueOf(found)));
+  }
+
+  private static void runExact(final float[] segments, final int numLines) {
+    long start = System.nanoTime();
+    int found = SegmentIntersections.exact(segments, numLines).size();
+    long elapsed = System.nanoTime() - start;
+    System.out.println(String.format("  exact: %10.3f ms/frame, %d points",
+        Double.valueOf(elapsed / 1e6), Integer.valueOf(found)));
+  }
+}
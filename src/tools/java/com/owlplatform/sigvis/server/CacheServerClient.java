@@ -0,0 +1,178 @@
+/*
+ * Signal Visualization Tools for the Owl Platform
+ * Copyright (C) 2012 Robert Moore
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.owlplatform.sigvis.server;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+/**
+ * Stub client for checking a {@link CacheServer} by hand. Prints the current
+ * links, then prints a summary of each WebSocket update received.
+ * 
+ * Usage: {@code CacheServerClient HOST PORT [SECONDS] [binary]}, which
+ * listens for 10 seconds by default. Built with the "tools" profile and not
+ * part of the released jar.
+ * 
+ * @author Robert Moore
+ * 
+ */
+public class CacheServerClient {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err
+          .println("Usage: CacheServerClient HOST PORT [SECONDS] [binary]");
+      System.exit(1);
+    }
+    String host = args[0];
+    int port = Integer.parseInt(args[1]);
+    long seconds = args.length > 2 ? Long.parseLong(args[2]) : 10;
+    boolean binary = args.length > 3 && "binary".equals(args[3]);
+
+    System.out.println(get(host, port, "/links"));
+    stream(host, port, binary, seconds * 1000);
+  }
+
+  /**
+   * @return the body of the response to a GET request for {@code target}.
+   */
+  public static String get(final String host, final int port,
+      final String target) throws IOException {
+    Socket socket = new Socket(host, port);
+    try {
+      OutputStream out = socket.getOutputStream();
+      out.write(("GET " + target + " HTTP/1.1\r\nHost: " + host + "\r\n"
+          + "Connection: close\r\n\r\n").getBytes(WebSocketConnection.UTF8));
+      out.flush();
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      String header = CacheServer.readHeader(in);
+      if (header == null) {
+        throw new EOFException("No response.");
+      }
+      StringBuilder body = new StringBuilder();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        body.append(new String(buffer, 0, read, WebSocketConnection.UTF8));
+      }
+      return body.toString();
+    } finally {
+      socket.close();
+    }
+  }
+
+  /**
+   * Opens the update stream and prints each message for {@code duration}
+   * milliseconds.
+   */
+  public static void stream(final String host, final int port,
+      final boolean binary, final long duration) throws IOException {
+    byte[] keyBytes = new byte[16];
+    new Random().nextBytes(keyBytes);
+    String key = WebSocketConnection.base64(keyBytes);
+
+    Socket socket = new Socket(host, port);
+    try {
+      OutputStream out = socket.getOutputStream();
+      out.write(("GET /stream" + (binary ? "?format=binary" : "")
+          + " HTTP/1.1\r\nHost: " + host + "\r\nUpgrade: websocket\r\n"
+          + "Connection: Upgrade\r\nSec-WebSocket-Key: " + key + "\r\n"
+          + "Sec-WebSocket-Version: 13\r\n\r\n")
+          .getBytes(WebSocketConnection.UTF8));
+      out.flush();
+
+      InputStream buffered = new BufferedInputStream(socket.getInputStream());
+      String header = CacheServer.readHeader(buffered);
+      if (header == null || !header.startsWith("HTTP/1.1 101")
+          || !header.contains(WebSocketConnection.getAcceptKey(key))) {
+        throw new IOException("Handshake failed: " + header);
+      }
+      DataInputStream in = new DataInputStream(buffered);
+
+      long end = System.currentTimeMillis() + duration;
+      int messages = 0;
+      while (System.currentTimeMillis() < end) {
+        socket.setSoTimeout((int) Math.max(1,
+            end - System.currentTimeMillis()));
+        int opcode;
+        byte[] payload;
+        try {
+          opcode = in.readUnsignedByte() & 0x0F;
+          long length = in.readUnsignedByte() & 0x7F;
+          if (length == 126) {
+            length = in.readUnsignedShort();
+          } else if (length == 127) {
+            length = in.readLong();
+          }
+          payload = new byte[(int) length];
+          in.readFully(payload);
+        } catch (SocketTimeoutException ste) {
+          break;
+        }
+        ++messages;
+        if (opcode == WebSocketConnection.OP_TEXT) {
+          String text = new String(payload, WebSocketConnection.UTF8);
+          System.out.println(String.format("Text update %d (%d bytes): %s",
+              Integer.valueOf(messages), Integer.valueOf(payload.length),
+              text.length() > 200 ? text.substring(0, 200) + "..." : text));
+        } else if (opcode == WebSocketConnection.OP_BINARY) {
+          DataInputStream data = new DataInputStream(
+              new ByteArrayInputStream(payload));
+          long sequence = data.readLong();
+          int count = data.readInt();
+          for (int i = 0; i < count; ++i) {
+            data.readUTF();
+            data.readUTF();
+            data.readFloat();
+            data.readLong();
+            data.readFloat();
+            data.readLong();
+          }
+          int removed = data.readInt();
+          System.out.println(String.format(
+              "Binary update %d (%d bytes): sequence %d, %d links, %d removed",
+              Integer.valueOf(messages), Integer.valueOf(payload.length),
+              Long.valueOf(sequence), Integer.valueOf(count),
+              Integer.valueOf(removed)));
+        } else if (opcode == WebSocketConnection.OP_CLOSE) {
+          System.out.println("Server closed the stream.");
+          return;
+        }
+      }
+
+      // Masked close frame with an empty payload
+      out.write(new byte[] { (byte) (0x80 | WebSocketConnection.OP_CLOSE),
+          (byte) 0x80, 0, 0, 0, 0 });
+      out.flush();
+      System.out.println(String.format("Received %d updates.",
+          Integer.valueOf(messages)));
+    } finally {
+      socket.close();
+    }
+  }
+}